@@ -0,0 +1,248 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streaming evaluation of alert rules over the sensor channels.
+ *
+ * Rules are stored as parallel primitive arrays and every rule keeps a constant amount of state,
+ * so each sample costs O(1) per rule and evaluation never allocates. Supported rules:
+ * <ul>
+ *   <li>threshold: a channel is above (or below) a limit</li>
+ *   <li>rate: a channel changes faster than a limit, in units per second</li>
+ *   <li>asymmetry: |a - b| / (a + b) of two channels is above a limit, e.g. left against right</li>
+ * </ul>
+ * Any rule can require its condition to hold for a duration before it is raised, which is how
+ * "stays asymmetric for too long" is expressed. Raised rules are cleared only after the condition
+ * has been false for clear_ms, and a rule is not raised again within debounce_ms of being
+ * cleared, so a value hovering at a limit produces one event rather than a stream of them.
+ *
+ * Config format (alerts.json in the assets):
+ * <pre>
+ * {
+ *   "rules": [
+ *     { "id": "back_overload", "type": "threshold", "channel": "back", "above": 80, "duration_ms": 2000 },
+ *     { "id": "foot_low", "type": "threshold", "channel": "foot", "below": 2, "duration_ms": 5000 },
+ *     { "id": "foot_jump", "type": "rate", "channel": "foot", "limit": 150 },
+ *     { "id": "seat_asymmetry", "type": "asymmetry", "channel": "left", "other": "right",
+ *       "limit": 0.4, "duration_ms": 10000, "clear_ms": 2000, "debounce_ms": 30000 }
+ *   ]
+ * }
+ * </pre>
+ */
+public final class AlertRuleEngine {
+
+    /** Receives raise and clear events, called on the thread that evaluates the samples. */
+    public interface AlertListener {
+        void onAlert(AlertRuleEngine engine, int rule, boolean raised, float value, long timeMs);
+    }
+
+    public static final int TYPE_THRESHOLD = 0;
+    public static final int TYPE_RATE = 1;
+    public static final int TYPE_ASYMMETRY = 2;
+
+    // Sums below this are treated as an empty seat, not as a 100% asymmetry.
+    private static final float MIN_ASYMMETRY_LOAD = 1e-3f;
+
+    private final String[] ids;
+    private final int[] types;
+    private final int[] channels;
+    private final int[] otherChannels;
+    private final float[] limits;
+    // +1 fires above the limit, -1 below it
+    private final int[] directions;
+    private final long[] durationMs;
+    private final long[] clearMs;
+    private final long[] debounceMs;
+
+    // Per rule state
+    private final long[] conditionSince;
+    private final long[] falseSince;
+    private final long[] clearedAt;
+    private final boolean[] raised;
+    private final float[] lastValue;
+    private final long[] lastTimeMs;
+
+    private AlertListener listener;
+
+    private AlertRuleEngine(int count) {
+        ids = new String[count];
+        types = new int[count];
+        channels = new int[count];
+        otherChannels = new int[count];
+        limits = new float[count];
+        directions = new int[count];
+        durationMs = new long[count];
+        clearMs = new long[count];
+        debounceMs = new long[count];
+        conditionSince = new long[count];
+        falseSince = new long[count];
+        clearedAt = new long[count];
+        raised = new boolean[count];
+        lastValue = new float[count];
+        lastTimeMs = new long[count];
+        reset();
+    }
+
+    public void setListener(AlertListener listener) {
+        this.listener = listener;
+    }
+
+    public int getRuleCount() {
+        return ids.length;
+    }
+
+    public String getRuleId(int rule) {
+        return ids[rule];
+    }
+
+    public int getRuleType(int rule) {
+        return types[rule];
+    }
+
+    public int getRuleChannel(int rule) {
+        return channels[rule];
+    }
+
+    public int getRuleOtherChannel(int rule) {
+        return otherChannels[rule];
+    }
+
+    public float getRuleLimit(int rule) {
+        return limits[rule];
+    }
+
+    public boolean isRaised(int rule) {
+        return raised[rule];
+    }
+
+    /** Forgets every rule's state, raised rules are dropped without a clear event. */
+    public void reset() {
+        for (int rule = 0; rule < ids.length; rule++) {
+            conditionSince[rule] = -1;
+            falseSince[rule] = -1;
+            clearedAt[rule] = Long.MIN_VALUE / 2;
+            raised[rule] = false;
+            lastTimeMs[rule] = -1;
+        }
+    }
+
+    /** Evaluates every rule against one sample. values is indexed by channel. */
+    public void evaluate(float[] values, long timeMs) {
+        for (int rule = 0; rule < ids.length; rule++) {
+            float value = measure(rule, values, timeMs);
+            boolean condition = value == value && directions[rule] * (value - limits[rule]) > 0f;
+
+            if (condition) {
+                falseSince[rule] = -1;
+                if (conditionSince[rule] < 0) {
+                    conditionSince[rule] = timeMs;
+                }
+                if (!raised[rule]
+                        && timeMs - conditionSince[rule] >= durationMs[rule]
+                        && timeMs - clearedAt[rule] >= debounceMs[rule]) {
+                    raised[rule] = true;
+                    notify(rule, true, value, timeMs);
+                }
+            } else {
+                conditionSince[rule] = -1;
+                if (raised[rule]) {
+                    if (falseSince[rule] < 0) {
+                        falseSince[rule] = timeMs;
+                    }
+                    if (timeMs - falseSince[rule] >= clearMs[rule]) {
+                        raised[rule] = false;
+                        clearedAt[rule] = timeMs;
+                        falseSince[rule] = -1;
+                        notify(rule, false, value, timeMs);
+                    }
+                }
+            }
+        }
+    }
+
+    private float measure(int rule, float[] values, long timeMs) {
+        float value = values[channels[rule]];
+        switch (types[rule]) {
+            case TYPE_RATE: {
+                float rate = Float.NaN;
+                long last = lastTimeMs[rule];
+                if (last >= 0 && timeMs > last) {
+                    rate = Math.abs(value - lastValue[rule]) * 1000f / (timeMs - last);
+                }
+                lastValue[rule] = value;
+                lastTimeMs[rule] = timeMs;
+                return rate;
+            }
+            case TYPE_ASYMMETRY: {
+                float other = values[otherChannels[rule]];
+                float sum = value + other;
+                return sum < MIN_ASYMMETRY_LOAD ? 0f : Math.abs(value - other) / sum;
+            }
+            default:
+                return value;
+        }
+    }
+
+    private void notify(int rule, boolean raise, float value, long timeMs) {
+        if (listener != null) {
+            listener.onAlert(this, rule, raise, value, timeMs);
+        }
+    }
+
+    /** Parses the rules of a config, channel names are resolved against channelNames. */
+    public static AlertRuleEngine fromJson(JSONObject json, String[] channelNames) throws JSONException {
+        JSONArray list = json.getJSONArray("rules");
+        AlertRuleEngine engine = new AlertRuleEngine(list.length());
+        for (int rule = 0; rule < list.length(); rule++) {
+            JSONObject r = list.getJSONObject(rule);
+            engine.ids[rule] = r.getString("id");
+            engine.channels[rule] = channelIndex(r.getString("channel"), channelNames);
+            engine.durationMs[rule] = r.optLong("duration_ms", 0);
+            engine.clearMs[rule] = r.optLong("clear_ms", 0);
+            engine.debounceMs[rule] = r.optLong("debounce_ms", 0);
+            engine.directions[rule] = 1;
+
+            String type = r.getString("type");
+            switch (type) {
+                case "threshold":
+                    engine.types[rule] = TYPE_THRESHOLD;
+                    if (r.has("below")) {
+                        engine.limits[rule] = (float) r.getDouble("below");
+                        engine.directions[rule] = -1;
+                    } else {
+                        engine.limits[rule] = (float) r.getDouble("above");
+                    }
+                    break;
+                case "rate":
+                    engine.types[rule] = TYPE_RATE;
+                    engine.limits[rule] = (float) r.getDouble("limit");
+                    break;
+                case "asymmetry":
+                    engine.types[rule] = TYPE_ASYMMETRY;
+                    engine.otherChannels[rule] = channelIndex(r.getString("other"), channelNames);
+                    engine.limits[rule] = (float) r.getDouble("limit");
+                    break;
+                default:
+                    throw new JSONException("Unknown rule type: " + type);
+            }
+        }
+        return engine;
+    }
+
+    /** Engine without rules, evaluation does nothing. */
+    public static AlertRuleEngine empty() {
+        return new AlertRuleEngine(0);
+    }
+
+    private static int channelIndex(String name, String[] channelNames) throws JSONException {
+        for (int i = 0; i < channelNames.length; i++) {
+            if (channelNames[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new JSONException("Unknown channel: " + name);
+    }
+}
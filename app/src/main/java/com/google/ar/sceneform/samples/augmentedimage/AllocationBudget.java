@@ -0,0 +1,172 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.util.Locale;
+
+/**
+ * Counts what the calling thread allocates per frame, per message and per pipeline stage, and
+ * flags stages going over the bytes they are allowed per event. Meant for debug builds, the
+ * counter comes from the platform: android.os.Debug on a device, the thread MX bean on a JVM.
+ *
+ * Stages are indexed by int and may nest, e.g. decode inside message. Begin and end of a stage
+ * must be called on one thread, the thread the counter counts. What reading the counter itself
+ * allocates is measured once and subtracted. Apart from {@link #report} and
+ * {@link #checkBudgets}, does not allocate.
+ */
+public final class AllocationBudget {
+
+    /** Allocation counters of the calling thread. */
+    public interface Counter {
+        /** Objects allocated so far, negative when the platform doesn't count them. */
+        long getCount();
+
+        /** Bytes allocated so far. */
+        long getBytes();
+    }
+
+    private static final int CALIBRATION_ROUNDS = 16;
+
+    private final String[] stages;
+    private final long[] budgetBytes;
+    private final Counter counter;
+    private final long overheadCount;
+    private final long overheadBytes;
+
+    private final long[] startCount;
+    private final long[] startBytes;
+    private final long[] events;
+    private final long[] objects;
+    private final long[] bytes;
+    private final long[] maxBytes;
+    private final long[] overBudget;
+
+    /**
+     * @param stages name of every stage
+     * @param budgetBytes bytes each stage may allocate per event, same order
+     */
+    public AllocationBudget(String[] stages, long[] budgetBytes, Counter counter) {
+        if (stages.length != budgetBytes.length) {
+            throw new IllegalArgumentException("One budget per stage");
+        }
+        this.stages = stages.clone();
+        this.budgetBytes = budgetBytes.clone();
+        this.counter = counter;
+        int n = stages.length;
+        startCount = new long[n];
+        startBytes = new long[n];
+        events = new long[n];
+        objects = new long[n];
+        bytes = new long[n];
+        maxBytes = new long[n];
+        overBudget = new long[n];
+
+        // Smallest cost of an empty begin/end pair, boxing in a reflective counter and the like
+        long minCount = Long.MAX_VALUE;
+        long minBytes = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            long count = counter.getCount();
+            long allocated = counter.getBytes();
+            minCount = Math.min(minCount, counter.getCount() - count);
+            minBytes = Math.min(minBytes, counter.getBytes() - allocated);
+        }
+        overheadCount = Math.max(0, minCount);
+        overheadBytes = Math.max(0, minBytes);
+    }
+
+    public void begin(int stage) {
+        startCount[stage] = counter.getCount();
+        startBytes[stage] = counter.getBytes();
+    }
+
+    public void end(int stage) {
+        long count = counter.getCount() - startCount[stage] - overheadCount;
+        long allocated = Math.max(0, counter.getBytes() - startBytes[stage] - overheadBytes);
+        events[stage]++;
+        objects[stage] += Math.max(0, count);
+        bytes[stage] += allocated;
+        if (allocated > maxBytes[stage]) {
+            maxBytes[stage] = allocated;
+        }
+        if (allocated > budgetBytes[stage]) {
+            overBudget[stage]++;
+        }
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    public String getStageName(int stage) {
+        return stages[stage];
+    }
+
+    public long getBudgetBytes(int stage) {
+        return budgetBytes[stage];
+    }
+
+    public long getEvents(int stage) {
+        return events[stage];
+    }
+
+    /** Objects over every event, zero when the platform doesn't count them. */
+    public long getObjects(int stage) {
+        return objects[stage];
+    }
+
+    public long getBytes(int stage) {
+        return bytes[stage];
+    }
+
+    public long getMaxBytes(int stage) {
+        return maxBytes[stage];
+    }
+
+    /** Events that allocated more than the stage's budget. */
+    public long getOverBudgetCount(int stage) {
+        return overBudget[stage];
+    }
+
+    public void reset() {
+        for (int stage = 0; stage < stages.length; stage++) {
+            events[stage] = 0;
+            objects[stage] = 0;
+            bytes[stage] = 0;
+            maxBytes[stage] = 0;
+            overBudget[stage] = 0;
+        }
+    }
+
+    /**
+     * For tests and soak runs.
+     *
+     * @throws IllegalStateException naming every stage that went over its budget
+     */
+    public void checkBudgets() {
+        StringBuilder failed = null;
+        for (int stage = 0; stage < stages.length; stage++) {
+            if (overBudget[stage] == 0) {
+                continue;
+            }
+            failed = failed == null ? new StringBuilder("Over the allocation budget:") : failed.append(',');
+            failed.append(String.format(Locale.US, " %s %d of %d events, up to %d bytes of %d",
+                    stages[stage], overBudget[stage], events[stage], maxBytes[stage], budgetBytes[stage]));
+        }
+        if (failed != null) {
+            throw new IllegalStateException(failed.toString());
+        }
+    }
+
+    /** One line per stage that ran: events, mean objects and bytes, max bytes, budget. */
+    public String report() {
+        StringBuilder report = new StringBuilder("stage          events  obj/ev  B/ev    max B  budget  over");
+        for (int stage = 0; stage < stages.length; stage++) {
+            long n = events[stage];
+            if (n == 0) {
+                continue;
+            }
+            report.append(String.format(Locale.US, "%n%-12s %8d %7.1f %5d %8d %7d %5d",
+                    stages[stage], n, (double) objects[stage] / n, bytes[stage] / n,
+                    maxBytes[stage], budgetBytes[stage], overBudget[stage]));
+        }
+        return report.toString();
+    }
+}
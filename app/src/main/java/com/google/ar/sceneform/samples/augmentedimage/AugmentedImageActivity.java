@@ -16,19 +16,31 @@
 
 package com.google.ar.sceneform.samples.augmentedimage;
 
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.BatteryManager;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.SeekBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.ar.core.AugmentedImage;
 import com.google.ar.core.AugmentedImageDatabase;
+import com.google.ar.core.Camera;
 import com.google.ar.core.Config;
 import com.google.ar.core.Frame;
 import com.google.ar.core.Session;
@@ -37,18 +49,16 @@ import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.FrameTime;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.ModelRenderable;
-import com.google.ar.sceneform.samples.common.helpers.SnackbarHelper;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.TransformableNode;
 
-import org.eclipse.paho.client.mqttv3.IMqttActionListener;
-import org.eclipse.paho.client.mqttv3.IMqttToken;
-import org.eclipse.paho.client.mqttv3.MqttException;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -64,8 +74,16 @@ public class AugmentedImageActivity extends AppCompatActivity {
     // Augmented image and its associated center pose anchor, keyed by the augmented image in
     // the database.
     private final Map<AugmentedImage, AugmentedImageNode> augmentedImageMap = new HashMap<>();
+    // The same nodes in a list, walked every frame without an iterator
+    private final List<AugmentedImageNode> chairNodes = new ArrayList<>();
     AugmentedImageNode augmentedImageNode;
 
+    // Debounced tracking state of every image ARCore reported, in the same order as the images.
+    // The snackbar only changes when the message does.
+    private final List<AugmentedImage> trackedImages = new ArrayList<>();
+    private final List<ImageTrackingState> trackingStates = new ArrayList<>();
+    private MessageNotifier trackingNotifier;
+
     private Config config;
     private Session session;
     private AugmentedImageDatabase augmentedImageDatabase;
@@ -76,7 +94,23 @@ public class AugmentedImageActivity extends AppCompatActivity {
 
     private static final String TAG = "AugmentedImageFragment";
 
-    final String logTagTest = "test_mqtt";
+    // The pipeline lives in the ingest service and outlives this activity, e.g. across a
+    // configuration change. Null until bound. createdMs is for logging the resume latency.
+    private SensorPipeline pipeline;
+    private boolean foreground;
+    private long createdMs;
+    private final ServiceConnection ingestConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            onPipelineBound(((IngestService.LocalBinder) service).getPipeline());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Same process, only happens when it is killed along with the service
+            pipeline = null;
+        }
+    };
 
     Button polygon_button;
     Button cylinder_button;
@@ -89,9 +123,33 @@ public class AugmentedImageActivity extends AppCompatActivity {
 
     LinearLayout button_layout;
 
+    // Scrubs back through the recorded session, all the way right is live.
+    SeekBar scrub_bar;
+
+    // Most loaded chairs of the facility, tapping switches to the longest in alert. Redrawn at
+    // most once per frame, and only after the ranking changed.
+    TextView fleet_panel;
+    private boolean fleetPanelDirty;
+    private final StringBuilder fleetText = new StringBuilder();
+
+    // Camera matrices of the current frame, for the level of detail of every chair
+    private static final float LOD_NEAR = 0.1f;
+    private static final float LOD_FAR = 100f;
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+
+    // Lowers the quality when frames run late or the tablet heats up. Thermal status needs API 29,
+    // so until then it is derived from the battery temperature, polled every few seconds.
+    private static final long THERMAL_POLL_MS = 10_000;
+    // Battery temperatures in tenths of a degree from which each thermal status starts
+    private static final int[] THERMAL_TENTHS_C = {0, 380, 410, 440, 470, 500, 530};
+    private final QualityGovernor qualityGovernor = new QualityGovernor(QualityGovernor.DEFAULT_BUDGET_MS);
+    private long lastThermalPollMs;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdMs = SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_main);
 
         arFragment = (ArFragment) getSupportFragmentManager().findFragmentById(R.id.ux_fragment);
@@ -100,19 +158,144 @@ public class AugmentedImageActivity extends AppCompatActivity {
         cylinder_button = findViewById(R.id.cylinder_button);
         arrow_button = findViewById(R.id.arrow_button);
         button_layout = findViewById(R.id.button_layout);
-
+        scrub_bar = findViewById(R.id.scrub_bar);
+        fleet_panel = findViewById(R.id.fleet_panel);
 
         arFragment.getArSceneView().getScene().addOnUpdateListener(this::onUpdateFrame);
         augmentedImageNode = new AugmentedImageNode(this);
         polygon_button.setEnabled(false);
+        polygon_button.setOnClickListener(v -> setUpPolygonButton());
+        cylinder_button.setOnClickListener(v -> setUpCylinderButton());
+        arrow_button.setOnClickListener(v -> setUpArrowButton());
+        trackingNotifier = new MessageNotifier(this);
+        setUpScrubBar();
+        setUpFleetPanel();
+        setUpQualityGovernor();
+
+        // Started as well as bound so it keeps running while no activity is bound
+        Intent ingest = new Intent(this, IngestService.class);
+        ContextCompat.startForegroundService(this, ingest);
+        bindService(ingest, ingestConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    private void onPipelineBound(SensorPipeline bound) {
+        pipeline = bound;
+        Log.i(TAG, "Ingest service bound " + (SystemClock.elapsedRealtime() - createdMs) + " ms after onCreate, "
+                + (bound.getSampleCount() > 0 ? "warm with " + bound.getSampleCount() + " samples" : "cold"));
+        pipeline.setForeground(foreground);
+        pipeline.getFleetAggregator().setListener(fleet -> fleetPanelDirty = true);
+        fleetPanelDirty = pipeline.getFleetAggregator().getChairCount() > 0;
+        augmentedImageNode.attachPipeline(pipeline);
+    }
+
+    private void setUpQualityGovernor() {
+        qualityGovernor.setListener(
+                (from, to, trigger, value) -> {
+                    Log.i(TAG, String.format(Locale.US, "Quality level %d -> %d, %s %.1f", from, to, trigger, value));
+                    augmentedImageNode.applyQuality(qualityGovernor);
+                });
+    }
+
+    private void updateQuality(FrameTime frameTime) {
+        long nowMs = System.currentTimeMillis();
+        if (nowMs - lastThermalPollMs >= THERMAL_POLL_MS) {
+            lastThermalPollMs = nowMs;
+            // Sticky broadcast, nothing is registered
+            Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery != null) {
+                int tenths = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+                int status = QualityGovernor.THERMAL_NONE;
+                while (status + 1 < THERMAL_TENTHS_C.length && tenths >= THERMAL_TENTHS_C[status + 1]) {
+                    status++;
+                }
+                qualityGovernor.onThermalStatus(status, nowMs);
+            }
+        }
+        float frameMs = frameTime.getDeltaSeconds() * 1000f;
+        qualityGovernor.onFrame(frameMs, nowMs);
+        if (pipeline != null) {
+            pipeline.getHealthTelemetry().onFrame(frameMs);
+        }
+    }
+
+    private void setUpFleetPanel() {
+        fleet_panel.setOnClickListener(
+                v -> {
+                    if (pipeline != null) {
+                        FleetAggregator fleet = pipeline.getFleetAggregator();
+                        fleet.setRanking(fleet.getRanking() == FleetAggregator.BY_LOAD
+                                ? FleetAggregator.BY_ALERT_DURATION : FleetAggregator.BY_LOAD);
+                    }
+                });
+    }
+
+    private void refreshFleetPanel() {
+        if (!fleetPanelDirty || pipeline == null) {
+            return;
+        }
+        fleetPanelDirty = false;
+        FleetAggregator fleet = pipeline.getFleetAggregator();
+        long nowMs = System.currentTimeMillis();
+        boolean byLoad = fleet.getRanking() == FleetAggregator.BY_LOAD;
+
+        fleetText.setLength(0);
+        fleetText.append(byLoad ? "Most loaded" : "Longest in alert")
+                .append(" of ").append(fleet.getChairCount()).append(" chairs");
+        for (int rank = 0; rank < fleet.getRankedCount(); rank++) {
+            int chair = fleet.getRankedChair(rank);
+            fleetText.append('\n').append(String.format(Locale.US, "%2d %-12s %7.1f %5d s",
+                    rank + 1, fleet.getName(chair), fleet.getLoad(chair),
+                    fleet.getAlertDurationMs(chair, nowMs) / 1000));
+        }
+        fleet_panel.setText(fleetText);
+        fleet_panel.setVisibility(View.VISIBLE);
+    }
+
+    private void setUpScrubBar() {
+        scrub_bar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (!fromUser) {
+                    return;
+                }
+                if (progress == seekBar.getMax()) {
+                    augmentedImageNode.showLive();
+                } else {
+                    augmentedImageNode.showHistory((float) progress / seekBar.getMax());
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
+        foreground = true;
+        if (pipeline != null) {
+            pipeline.setForeground(true);
+        }
         if (augmentedImageMap.isEmpty()) {
             fitToScanView.setVisibility(View.VISIBLE);
             button_layout.setVisibility(View.INVISIBLE);
+            scrub_bar.setVisibility(View.INVISIBLE);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Keep only the latest message while nobody looks
+        foreground = false;
+        if (pipeline != null) {
+            pipeline.setForeground(false);
         }
     }
 
@@ -122,7 +305,28 @@ public class AugmentedImageActivity extends AppCompatActivity {
      * @param frameTime - time since last frame.
      */
     private void onUpdateFrame(FrameTime frameTime) {
+        // Debug builds count what each frame allocates, every build traces it
+        Tracing.RECORDER.begin(PipelineStages.FRAME);
+        AllocationBudget allocations = pipeline == null ? null : pipeline.getAllocationBudget();
+        if (allocations != null) {
+            allocations.begin(PipelineStages.FRAME);
+        }
+        updateFrame(frameTime);
+        if (allocations != null) {
+            allocations.end(PipelineStages.FRAME);
+        }
+        Tracing.RECORDER.end(PipelineStages.FRAME);
+    }
+
+    private void updateFrame(FrameTime frameTime) {
+        TraceRecorder trace = Tracing.RECORDER;
         Frame frame = arFragment.getArSceneView().getArFrame();
+        trace.begin(Tracing.QUALITY);
+        updateQuality(frameTime);
+        trace.end(Tracing.QUALITY);
+        trace.begin(Tracing.FLEET_PANEL);
+        refreshFleetPanel();
+        trace.end(Tracing.FLEET_PANEL);
 
         if (isTrackedFirstTime){
             enableImageDb();
@@ -135,54 +339,100 @@ public class AugmentedImageActivity extends AppCompatActivity {
             return;
         }
 
+        trace.begin(Tracing.LEVEL_OF_DETAIL);
+        updateLevelsOfDetail(frame.getCamera());
+        trace.end(Tracing.LEVEL_OF_DETAIL);
+
+        trace.begin(Tracing.IMAGE_TRACKING);
+        // Empty when nothing changed, then not even an iterator is created
         Collection<AugmentedImage> updatedAugmentedImages =
                 frame.getUpdatedTrackables(AugmentedImage.class);
+        long nowMs = System.currentTimeMillis();
+        if (!updatedAugmentedImages.isEmpty()) {
+            for (AugmentedImage augmentedImage : updatedAugmentedImages) {
+                reportTracking(augmentedImage, nowMs);
+            }
+        }
 
-//        augmentedImageNode = new AugmentedImageNode(this);
-
-        for (AugmentedImage augmentedImage : updatedAugmentedImages) {
-            switch (augmentedImage.getTrackingState()) {
-                case PAUSED:
-                    // When an image is in PAUSED state, but the camera is not PAUSED, it has been detected,
-                    // but not yet tracked.
-                    String text = "Detected Image";
-                    Log.w("TrackPic","Status: PAUSED");
-                    Log.w("TrackPic","Tracking Method: "+augmentedImage.getTrackingMethod().toString());
-
-                    SnackbarHelper.getInstance().showMessage(this, text);
-                    break;
-
-                case TRACKING:
-                    // Have to switch to UI Thread to update View.
-                    fitToScanView.setVisibility(View.GONE);
-                    button_layout.setVisibility(View.VISIBLE);
-//                    Log.w("TrackPic","Tracking Method: "+augmentedImage.getTrackingMethod().toString());
-
-                    // Create a new anchor for newly found images.
-                    if (!augmentedImageMap.containsKey(augmentedImage) ) {
-
-                        augmentedImageNode.setImage(augmentedImage);
-                        augmentedImageMap.put(augmentedImage, augmentedImageNode);
-                        arFragment.getArSceneView().getScene().addChild(augmentedImageNode);
-                    }
-                    if (augmentedImage.getTrackingMethod().toString().equals("LAST_KNOWN_POSE")) SnackbarHelper.getInstance().hide(this);
-
-
-                    break;
-
-                case STOPPED:
-                    Log.w("TrackPic","Status: STOPPED");
-                    Log.w("TrackPic","Tracking Method: "+augmentedImage.getTrackingMethod().toString());
-                    break;
+        // Changes ARCore reported once are committed here after they have settled
+        for (int i = 0; i < trackedImages.size(); i++) {
+            if (trackingStates.get(i).tick(nowMs)) {
+                onTrackingChanged(trackedImages.get(i), trackingStates.get(i).getState());
             }
         }
+        trace.end(Tracing.IMAGE_TRACKING);
+    }
 
-        polygon_button.setOnClickListener(v -> setUpPolygonButton());
+    private void reportTracking(AugmentedImage augmentedImage, long nowMs) {
+        ImageTrackingState.State reported;
+        switch (augmentedImage.getTrackingState()) {
+            case PAUSED:
+                // When an image is in PAUSED state, but the camera is not PAUSED, it has been detected,
+                // but not yet tracked.
+                reported = ImageTrackingState.State.DETECTED;
+                break;
+            case TRACKING:
+                reported = augmentedImage.getTrackingMethod() == AugmentedImage.TrackingMethod.FULL_TRACKING
+                        ? ImageTrackingState.State.TRACKING : ImageTrackingState.State.LAST_KNOWN_POSE;
+                break;
+            default:
+                reported = ImageTrackingState.State.STOPPED;
+                break;
+        }
 
-        cylinder_button.setOnClickListener(v -> setUpCylinderButton());
+        int index = trackedImages.indexOf(augmentedImage);
+        if (index < 0) {
+            index = trackedImages.size();
+            trackedImages.add(augmentedImage);
+            trackingStates.add(new ImageTrackingState(ImageTrackingState.DEFAULT_SETTLE_MS));
+        }
+        if (trackingStates.get(index).report(reported, nowMs)) {
+            onTrackingChanged(augmentedImage, reported);
+        }
+    }
 
-        arrow_button.setOnClickListener(v -> setUpArrowButton());
+    // Everything that depends on the tracking state happens here, once per change.
+    private void onTrackingChanged(AugmentedImage augmentedImage, ImageTrackingState.State state) {
+        Log.w("TrackPic", "Status: " + state);
+        AugmentedImageNode node = augmentedImageMap.get(augmentedImage);
+        switch (state) {
+            case DETECTED:
+                trackingNotifier.show("Detected Image");
+                break;
+
+            case TRACKING:
+                trackingNotifier.hide();
+                fitToScanView.setVisibility(View.GONE);
+                button_layout.setVisibility(View.VISIBLE);
+                scrub_bar.setVisibility(View.VISIBLE);
+
+                // Create a new anchor for newly found images.
+                if (node == null) {
+                    node = augmentedImageNode;
+                    node.setImage(augmentedImage);
+                    augmentedImageMap.put(augmentedImage, node);
+                    chairNodes.add(node);
+                    arFragment.getArSceneView().getScene().addChild(node);
+                }
+                break;
 
+            default:
+                // Out of view or stopped, there is nothing to point at
+                trackingNotifier.hide();
+                break;
+        }
+        // Lost chairs switch their data path to the cheap mode
+        if (node != null) {
+            node.setTracking(state == ImageTrackingState.State.TRACKING);
+        }
+    }
+
+    private void updateLevelsOfDetail(Camera camera) {
+        camera.getViewMatrix(viewMatrix, 0);
+        camera.getProjectionMatrix(projectionMatrix, 0, LOD_NEAR, LOD_FAR);
+        for (int i = 0; i < chairNodes.size(); i++) {
+            chairNodes.get(i).updateLevelOfDetail(viewMatrix, projectionMatrix);
+        }
     }
 
     // These three method are used for set the listener for each button to act like toggle button for each type of graphs
@@ -266,28 +516,19 @@ public class AugmentedImageActivity extends AppCompatActivity {
 
     }
 
-    // When terminate the app, disconnect from the Mqtt server
+    // The pipeline keeps running while the activity is re-created. Only when the app is left for
+    // good the service is stopped, which disconnects from the Mqtt server and closes the session.
     public void onDestroy(){
         super.onDestroy();
 
-        try {
-            IMqttToken disconToken = augmentedImageNode.mqttHelper.mqttAndroidClient.disconnect();
-            disconToken.setActionCallback(new IMqttActionListener() {
-                @Override
-                public void onSuccess(IMqttToken asyncActionToken) {
-                    Log.w(logTagTest,"Successfully Disconnected");
-                    // we are now successfully disconnected
-                }
-
-                @Override
-                public void onFailure(IMqttToken asyncActionToken,
-                                      Throwable exception) {
-                    Log.w(logTagTest,"Cannot disconnect");
-                    // something went wrong, but probably we are disconnected anyway
-                }
-            });
-        } catch (MqttException e) {
-            e.printStackTrace();
+        augmentedImageNode.detachPipeline();
+        if (pipeline != null) {
+            pipeline.getFleetAggregator().setListener(null);
+            pipeline = null;
+        }
+        unbindService(ingestConnection);
+        if (isFinishing()) {
+            stopService(new Intent(this, IngestService.class));
         }
     }
 }
@@ -16,28 +16,38 @@
 
 package com.google.ar.sceneform.samples.augmentedimage;
 
+import android.app.Activity;
 import android.content.Context;
-import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.TextView;
 
+import com.google.ar.core.Anchor;
 import com.google.ar.core.AugmentedImage;
+import com.google.ar.core.TrackingState;
 import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.FrameTime;
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.FixedHeightViewSizer;
-import com.google.ar.sceneform.rendering.ModelRenderable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.MaterialFactory;
 import com.google.ar.sceneform.rendering.ShapeFactory;
 import com.google.ar.sceneform.rendering.ViewRenderable;
+import com.google.ar.sceneform.samples.common.helpers.SnackbarHelper;
 
-import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.json.JSONObject;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.BACK;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.FOOT;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.LEFT;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.MID;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.RIGHT;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.SENSOR_COUNT;
 
 @SuppressWarnings({"AndroidApiChecker"})
 public class AugmentedImageNode extends AnchorNode {
@@ -45,52 +55,74 @@ public class AugmentedImageNode extends AnchorNode {
     /**
      * REMEMBER THIS NAMING
      * There are 5 parts of sensors which are named from the perspective where you look in the direction
-     * toward to the chair NOT from the patient who sit on the chair perspective.
+     * toward to the chair NOT from the patient who sit on the chair perspective. See ChairSensors
+     * for their indices.
      */
 
-    // All of these Node attributes will be added as a child node into the AR Scene
-    // each node can be set its ModelRenderable ( 3D model, arrow, bar, cylinder, etc.),
-    // ViewRenderable (2D UI of Android to be display in real world, like TextView in this app),
-    // scale, rotation, position and etc. like a GameObject in Unity.
-    private Node polygonNodeLeft;
-    private Node polygonNodeMid;
-    private Node polygonNodeRight;
-    private Node polygonNodeBack;
-    private Node polygonNodeFoot;
-
-    private Node cylinderNodeLeft;
-    private Node cylinderNodeMid;
-    private Node cylinderNodeRight;
-    private Node cylinderNodeBack;
-    private Node cylinderNodeFoot;
-
-    private Node arrowNodeLeft;
-    private Node arrowNodeMid;
-    private Node arrowNodeRight;
-    private Node arrowNodeBack;
-    private Node arrowNodeFoot;
-
+    // Centre of each bar relative to the image, xyz per sensor in the order above.
+    // "float 0.01f = 1 cm. in real world scale"
+    private static final float[] BAR_POSITIONS = {
+            -0.3f, 0.2f, -0.18f,
+            0f, 0.2f, -0.15f,
+            0.3f, 0.2f, -0.18f,
+            0f, 0f, -0.3f,
+            0f, 0.35f, 0.3f
+    };
+
+    // The arrow sits 5 cm further back than the bars, as the old arrow nodes did.
+    private static final float[] ARROW_POSITIONS = {
+            -0.3f, 0.2f, -0.23f,
+            0f, 0.2f, -0.2f,
+            0.3f, 0.2f, -0.23f,
+            0f, 0f, -0.35f,
+            0f, 0.35f, 0.25f
+    };
+
+    private static final float BAR_WIDTH = 0.03f;
+    private static final float INITIAL_BAR_LENGTH = 0.1f;
+
+    // All bars of every graph type are drawn by one node with one renderable,
+    // only the vertices of the bars that changed are rewritten per update.
+    private MergedGraphRenderer graphRenderer;
+
+    // Colour of the bars and of the pressure mat cells, quantized into buckets of the lookup table
+    // so that every colour comes out of a pool of materials built once.
+    private static final int COLOR_BUCKETS = 32;
+    private static final float COLOR_MIN_VALUE = 0.0f;
+    private static final float COLOR_MAX_VALUE = 100.0f;
+    private ColorLut.Palette palette = ColorLut.Palette.HEAT;
+
+    // The pressure mat lies flat on the seat, only created once a message carries mat cells.
+    private static final float MAT_CENTER_X = 0f;
+    private static final float MAT_HEIGHT = 0.19f;
+    private static final float MAT_CENTER_Z = -0.1f;
+    private static final float MAT_WIDTH = 0.6f;
+    private static final float MAT_DEPTH = 0.4f;
+    private PressureMatRenderer pressureMatRenderer;
+
+    // Node attributes will be added as a child node into the AR Scene
+    // each node can be set its ViewRenderable (2D UI of Android to be display in real world,
+    // like TextView in this app), scale, rotation, position and etc. like a GameObject in Unity.
     private Node leftSensor;
     private Node midSensor;
     private Node rightSensor;
     private Node backSensor;
     private Node footSensor;
+    // The same labels indexed by LEFT ... FOOT, null until built
+    private final Node[] sensorLabels = new Node[SENSOR_COUNT];
+
+    // Everything drawn for the chair. Culling disables this rather than the anchor node, which
+    // has to keep updating so its pose, and the level of detail taken from it, stay current.
+    private final Node content = new Node();
 
 
     //TextView is an Android View (like a UI for display texts on the screen) which in this case will be
     //displayed on the real world for each value read from force sensors.
-    private TextView leftSensor_textView;
-    private TextView midSensor_textView;
-    private TextView rightSensor_textView;
-    private TextView backSensor_textView;
-    private TextView footSensor_textView;
+    private final TextView[] sensorTextViews = new TextView[SENSOR_COUNT];
 
 
-    // Each object is a 2D or 3D object can be built and rendered which will later be added into node
-    // to be displayed on the screen
-    private ModelRenderable polygonRenderable;
-    private ModelRenderable cylinderRenderable;
-    private CompletableFuture<ModelRenderable> arrowRenderable;
+    // Shared materials of the merged graph and the pressure mat, built once and reused for every graph type.
+    private CompletableFuture<MaterialPool> materialPool;
 
     //////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -99,70 +131,308 @@ public class AugmentedImageNode extends AnchorNode {
 
     // The augmented image represented by this node.
     private AugmentedImage image;
+    private AugmentedImage anchoredImage;
 
-    // These attributes are used for MQTT part contains:
-    // context is for mqtthelper to know which Activity are running right now
-    // mqttHelper is for establishing connection to mqtt server.
-    // two Strings is for debugging, to see if connected or fail, to see if json received are correct or not
+    // Context of the activity, for the renderables and the alert snackbar
     private Context context;
-    MqttHelper mqttHelper;
-    private final String test_mqtt = "test_mqtt";
-    private final String test_json = "test_json";
 
-    // To make mqttHelper establish connection only once
-    private boolean flag = true;
+    // Connection, decode, filters, alerts, statistics and recording, kept in the ingest service so
+    // they outlive the activity. Null until the service is bound, the node only renders from it.
+    private SensorPipeline pipeline;
+    private final SensorPipeline.Listener pipelineListener = new SensorPipeline.Listener() {
+        @Override
+        public void onSample(SensorPipeline pipeline, long timeMs) {
+            onPipelineSample(timeMs);
+        }
 
-    // message received from Mqtt and converted into JSON and the extracted JSON
-    private String message;
-    private JSONObject messageJSON;
-    private JSONObject result;
+        @Override
+        public void onMatChanged(SensorPipeline pipeline, int changedCount) {
+            onPipelineMatChanged(changedCount);
+        }
 
-    // Using double for scaling the graph
-    private double leftValue;
-    private double midValue;
-    private double rightValue;
-    private double backValue;
-    private double footValue;
+        @Override
+        public void onAlert(String ruleId, boolean raised, float value) {
+            if (raised) {
+                SnackbarHelper.getInstance().showMessageWithDismiss((Activity) context, "Alert: " + ruleId);
+            }
+        }
+    };
+    // When the pipeline was attached, for logging how long until the first values are drawn
+    private long attachedMs = -1;
+    // Whether the image is actively tracked, passed on to the pipeline once attached
+    private boolean tracking = true;
+
+    // Level of detail, set every frame by the activity from the camera. Simplified shows cubes
+    // without labels at a lower rate, culled disables the whole node so it costs nothing per frame.
+    // The samples still go through filters, alerts, statistics and recording at every level.
+    // Rates and label intervals come from the quality governor of the activity.
+    private final SamplePresentation presentation = new SamplePresentation();
+    private LevelOfDetail.Level detail = LevelOfDetail.Level.FULL;
+    // Graph type picked with the buttons, shown at full detail
+    private GraphMesh.Shape selectedShape = GraphMesh.Shape.CUBE;
+    // Whether the last live sample was drawn, a full mat update follows it
+    private boolean presentedSample;
+
+    // Value of every sensor indexed by LEFT ... FOOT as currently shown on the labels, and its
+    // text. A TextView keeps the chars it was given, so every label has its own buffer.
+    private final float[] shownValues = new float[SENSOR_COUNT];
+    private final char[][] labelChars = new char[SENSOR_COUNT][SamplePresentation.LABEL_CAPACITY];
+    // Labels showing that the sender has no channel for their sensor
+    private final boolean[] shownMissing = new boolean[SENSOR_COUNT];
+
+    // Running statistics of every sensor kept by the pipeline, shown in a panel beside each
+    // number. The panels are refreshed a couple of times per second, not per sample.
+    // Raised by the quality governor when frames run late
+    private long statsRefreshMs = 500;
+    private static final float[] STATS_QUANTILES = {0.5f, 0.9f, 0.99f};
+    private final Node[] statsPanels = new Node[SENSOR_COUNT];
+    private final TextView[] statsTextViews = new TextView[SENSOR_COUNT];
+    private final float[] sessionQuantiles = new float[STATS_QUANTILES.length];
+    private final float[] windowQuantiles = new float[STATS_QUANTILES.length];
+    private long lastStatsRefreshMs;
+
+    // Marker following the centre of pressure across the seat, moved by two derived channels
+    // and hidden while the weight channel says nobody is sitting.
+    private static final float COP_MARKER_HEIGHT = 0.21f;
+    private static final float COP_MARKER_RADIUS = 0.015f;
+    private Node copMarker;
+    private final Vector3 copPosition = new Vector3();
+
+    // While the user scrubs back in time through the session recorded by the pipeline, the
+    // graphs show a recorded instant and live samples are only recorded.
+    private float[] historyValues;
+    private boolean showingHistory;
+
+    // Shown above the chair when no sample came in for a while, e.g. during a broker outage, so
+    // frozen bars are not taken for live ones. The numbers are dimmed at the same time.
+    private static final long STALE_AFTER_MS = 2000;
+    private static final long STALENESS_REFRESH_MS = 1000;
+    private static final float STALE_ALPHA = 0.4f;
+    private Node stalenessLabel;
+    private TextView stalenessTextView;
+    private boolean showingStale;
+    private long lastStalenessRefreshMs;
+
+
+    // After the constructor are called, create the materials of the graph
+    public AugmentedImageNode(Context context) {
+        this.context = context;
+        content.setParent(this);
+        createMaterialPool();
+        Arrays.fill(shownValues, Float.NaN);
+    }
 
+    /**
+     * Renders from the pipeline of the ingest service from now on. Whatever it already holds is
+     * drawn at once, so a re-created activity shows the warm state rather than waiting for data.
+     */
+    void attachPipeline(SensorPipeline pipeline) {
+        this.pipeline = pipeline;
+        pipeline.setListener(pipelineListener);
+        pipeline.setTracking(tracking);
+        attachedMs = SystemClock.elapsedRealtime();
+        createCopMarker();
+        presentWarmState();
+    }
 
-    // After the constructor are called, create each type of model
-    public AugmentedImageNode(Context context) {
-        this.context = context; // Saving context fot MQTT part
-        createPolygonModel();
-        createCylinderModel();
-        createArrowModel();
+    /** Stops rendering from the pipeline, called when the activity goes away. */
+    void detachPipeline() {
+        if (pipeline != null) {
+            pipeline.setListener(null);
+            pipeline = null;
+        }
     }
 
-    // For the create and render each type of model
-    private void createPolygonModel() {
+    /** Null while the ingest service is not bound. */
+    SensorPipeline getPipeline() {
+        return pipeline;
+    }
+
+    // Draws the latest values and mat the pipeline holds, if any arrived yet.
+    private void presentWarmState() {
+        if (pipeline == null || graphRenderer == null || pipeline.getSampleCount() == 0) {
+            return;
+        }
+        if (!showingHistory) {
+            presentValues(pipeline.getValues());
+            logFirstValues();
+        }
+        float[] cells = pipeline.getMatValues();
+        if (cells != null && ensurePressureMat(pipeline.getMatRows(), pipeline.getMatCols())) {
+            pressureMatRenderer.setCellValues(cells, cells.length);
+        }
+    }
 
-        MaterialFactory.makeOpaqueWithColor(context, new Color(android.graphics.Color.LTGRAY))
+    // The panel sits below its number and starts hidden, tapping the number toggles it.
+    private void attachStatsPanel(int sensor, Node label) {
+        ViewRenderable.builder().setView(context, R.layout.stats_panel).setSizer(new FixedHeightViewSizer(0.09f))
+                .build()
                 .thenAccept(
-                        material -> {
-                            polygonRenderable =
-                                    ShapeFactory.makeCube(new Vector3(1f,1f,1f), new Vector3(0, 0, 0), material); });
+                        viewRenderable -> {
+                            Node panel = new Node();
+                            panel.setParent(label);
+                            panel.setLocalPosition(new Vector3(0f, -0.09f, 0f));
+                            panel.setRenderable(viewRenderable);
+                            panel.setEnabled(false);
+                            statsPanels[sensor] = panel;
+                            statsTextViews[sensor] = (TextView) viewRenderable.getView();
+
+                            label.setOnTapListener(
+                                    (hitTestResult, motionEvent) -> {
+                                        panel.setEnabled(!panel.isEnabled());
+                                        lastStatsRefreshMs = 0;
+                                    });
+                        });
+    }
 
+    private void refreshStatsPanels(long nowMs) {
+        if (pipeline == null || nowMs - lastStatsRefreshMs < statsRefreshMs) {
+            return;
+        }
+        lastStatsRefreshMs = nowMs;
+
+        for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+            if (statsPanels[sensor] == null || !statsPanels[sensor].isEnabled()) {
+                continue;
+            }
+            StreamingStats stats = pipeline.getSensorStats(sensor);
+            stats.updateWindow(nowMs);
+            stats.getSessionSketch().getQuantiles(STATS_QUANTILES, sessionQuantiles);
+            stats.getWindowSketch().getQuantiles(STATS_QUANTILES, windowQuantiles);
+            RunningStats session = stats.getSession();
+            RunningStats window = stats.getWindow();
+
+            statsTextViews[sensor].setText(String.format(Locale.US,
+                    "       session   1 min%n"
+                            + "mean %8.1f %8.1f%n"
+                            + "sd   %8.1f %8.1f%n"
+                            + "min  %8.1f %8.1f%n"
+                            + "max  %8.1f %8.1f%n"
+                            + "p50  %8.1f %8.1f%n"
+                            + "p90  %8.1f %8.1f%n"
+                            + "p99  %8.1f %8.1f",
+                    session.getMean(), window.getMean(),
+                    session.getStandardDeviation(), window.getStandardDeviation(),
+                    session.getMin(), window.getMin(),
+                    session.getMax(), window.getMax(),
+                    sessionQuantiles[0], windowQuantiles[0],
+                    sessionQuantiles[1], windowQuantiles[1],
+                    sessionQuantiles[2], windowQuantiles[2]));
+        }
     }
 
-    private void createCylinderModel() {
+    /**
+     * Writes the session recorded so far in the compact columnar format, for uploading it.
+     * Streams one block at a time, does not close out.
+     */
+    public long exportSession(OutputStream out) throws IOException {
+        if (pipeline == null) {
+            throw new IOException("No session recorded");
+        }
+        return pipeline.exportSession(out);
+    }
 
-        MaterialFactory.makeOpaqueWithColor(context, new Color(android.graphics.Color.LTGRAY))
+    /**
+     * Shows the recorded instant at a fraction 0 .. 1 of the session so far. Only reads the one
+     * block holding that instant, the sparse index finds it.
+     */
+    public void showHistory(float fraction) {
+        SessionStore sessionStore = pipeline == null ? null : pipeline.getSessionStore();
+        if (sessionStore == null || sessionStore.getSampleCount() == 0 || graphRenderer == null) {
+            return;
+        }
+        if (historyValues == null) {
+            historyValues = new float[pipeline.getChannelNames().length];
+        }
+        long start = sessionStore.getStartTime();
+        long timeMs = start + (long) ((sessionStore.getEndTime() - start) * Math.max(0f, Math.min(1f, fraction)));
+        try {
+            sessionStore.sampleAt(timeMs, historyValues);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read the session at " + timeMs, e);
+            return;
+        }
+        showingHistory = true;
+        presentValues(historyValues);
+    }
+
+    /** Goes back to the live values after scrubbing. */
+    public void showLive() {
+        if (!showingHistory) {
+            return;
+        }
+        showingHistory = false;
+        if (graphRenderer != null && pipeline != null) {
+            presentValues(pipeline.getValues());
+        }
+    }
+
+    /** Whether the image is actively tracked, from the activity. Lost chairs switch the pipeline to its cheap mode. */
+    public void setTracking(boolean tracking) {
+        this.tracking = tracking;
+        if (pipeline != null) {
+            pipeline.setTracking(tracking);
+        }
+    }
+
+    private void createCopMarker() {
+        if (pipeline == null || pipeline.getCopXChannel() < 0 || pipeline.getCopZChannel() < 0
+                || copMarker != null || getAnchor() == null) {
+            return;
+        }
+        copMarker = new Node();
+        copMarker.setParent(content);
+        copMarker.setEnabled(false);
+        MaterialFactory.makeOpaqueWithColor(context, new Color(android.graphics.Color.WHITE))
                 .thenAccept(
-                        material -> {
-                            cylinderRenderable =
-                                    ShapeFactory.makeCylinder(0.7f,1f, new Vector3(0, 0, 0), material); });
+                        material ->
+                                copMarker.setRenderable(
+                                        ShapeFactory.makeSphere(COP_MARKER_RADIUS, Vector3.zero(), material)));
+    }
 
+    // Moves the marker in place, the position vector is reused so this doesn't allocate.
+    private void updateCopMarker(float[] values) {
+        if (copMarker == null) {
+            return;
+        }
+        int weightChannel = pipeline.getCopWeightChannel();
+        boolean occupied = weightChannel < 0 || values[weightChannel] >= pipeline.getCopMinWeight();
+        if (copMarker.isEnabled() != occupied) {
+            copMarker.setEnabled(occupied);
+        }
+        if (occupied) {
+            copPosition.set(values[pipeline.getCopXChannel()], COP_MARKER_HEIGHT, values[pipeline.getCopZChannel()]);
+            copMarker.setLocalPosition(copPosition);
+        }
     }
 
-    private void createArrowModel() {
+    private void createMaterialPool() {
 
-        arrowRenderable =
-                ModelRenderable.builder()
-                        .setSource(context, Uri.parse("arrow.sfb"))
-                        .build();
+        materialPool = MaterialPool.create(context, new ColorLut(palette, COLOR_BUCKETS, COLOR_MIN_VALUE, COLOR_MAX_VALUE));
 
     }
 
+    /**
+     * Select the colour palette of the graphs. The new pool is built in the background and swapped in
+     * once ready, bars and mat cells keep their buckets.
+     */
+    public void setPalette(ColorLut.Palette palette) {
+        if (this.palette == palette) {
+            return;
+        }
+        this.palette = palette;
+        createMaterialPool();
+        materialPool.thenAccept(
+                pool -> {
+                    if (graphRenderer != null) {
+                        graphRenderer.setMaterialPool(pool);
+                    }
+                    if (pressureMatRenderer != null) {
+                        pressureMatRenderer.setMaterialPool(pool);
+                    }
+                });
+    }
+
     /**
      * Called when the AugmentedImage is detected and should be rendered. A Sceneform node tree is
      * created based on an Anchor created from the image. The corners are then positioned based on the
@@ -173,11 +443,11 @@ public class AugmentedImageNode extends AnchorNode {
     public void setImage(AugmentedImage image) {
         this.image = image;
 
-        // If any of the models are not loaded, process this function
-        // until they all are loaded.
+        // If the materials are not loaded, process this function
+        // until they are loaded.
 
-        if (!arrowRenderable.isDone()) {
-            CompletableFuture.allOf(arrowRenderable)
+        if (!materialPool.isDone()) {
+            CompletableFuture.allOf(materialPool)
                     .thenAccept((Void aVoid) -> setImage(image))
                     .exceptionally(
                             throwable -> {
@@ -187,26 +457,37 @@ public class AugmentedImageNode extends AnchorNode {
             return;
         }
 
-        // Set the anchor based on the center of the image.
-        setAnchor(image.createAnchor(image.getCenterPose()));
+        // Set the anchor based on the center of the image. It is kept while the same image comes
+        // and goes, a new one is only needed for another image or once tracking stopped for good.
+        Anchor anchor = getAnchor();
+        if (anchor == null || anchoredImage != image || anchor.getTrackingState() == TrackingState.STOPPED) {
+            if (anchor != null) {
+                anchor.detach();
+            }
+            setAnchor(image.createAnchor(image.getCenterPose()));
+            anchoredImage = image;
+        }
 
-        // Initialize every type of node and set its parents and the Renderable.
-        visualisePolygonGraph();
-        visualiseCylinderGraph();
-        visualiseArrowGraph();
+        // Initialize the merged graph, only Polygon graphs are shown first.
+        if (graphRenderer == null) {
+            graphRenderer = new MergedGraphRenderer(content, materialPool.getNow(null));
+            showGraph(GraphMesh.Shape.CUBE);
+        }
 
         //This method render and display 3 Numbers which is measured value of Force from the sensors
         visualiseNumbers();
 
-        startMqtt();
+        createCopMarker();
+
+        createStalenessLabel();
+
+        // The pipeline may have been running for a while, e.g. after the activity was re-created
+        presentWarmState();
 
     }
 
     /**
      * For the localPosition use this scale for every type of node, "float 0.01f = 1 cm. in real world scale"
-     * and also for LocalScale of Polygon node and Cylinder node(Renderable from ShapeFactory class) as well.
-     *
-     * Note that, Arrow graph node scale differently from the others because of its initial scale from .obj file
      *
      * For the ViewRenderable or Numbers node use setSizer to scale and the size also depends on textSize in R.layout.popup file as well
      * you can find the file in app/res/layout/popup.xml
@@ -222,11 +503,16 @@ public class AugmentedImageNode extends AnchorNode {
                             leftSensor = new Node();
                             leftSensor.setLocalPosition(new Vector3(-0.3f, 0.2f, 0));
                             leftSensor.setLocalRotation(Quaternion.axisAngle(new Vector3(1f, 0, 0), -90));
-                            leftSensor.setParent(this);
+                            leftSensor.setParent(content);
+                            leftSensor.setEnabled(detail == LevelOfDetail.Level.FULL);
+                            sensorLabels[LEFT] = leftSensor;
                             leftSensor.setRenderable(viewRenderable);
 
                             //Get the textView to set text later
-                            leftSensor_textView = (TextView) viewRenderable.getView();
+                            sensorTextViews[LEFT] = (TextView) viewRenderable.getView();
+
+                            // Tap the number to show or hide its statistics
+                            attachStatsPanel(LEFT, leftSensor);
                         }
                 );
 
@@ -239,11 +525,16 @@ public class AugmentedImageNode extends AnchorNode {
                             midSensor = new Node();
                             midSensor.setLocalPosition(new Vector3(0, 0.2f, -0.05f));
                             midSensor.setLocalRotation(Quaternion.axisAngle(new Vector3(1f, 0, 0), -90));
-                            midSensor.setParent(this);
+                            midSensor.setParent(content);
+                            midSensor.setEnabled(detail == LevelOfDetail.Level.FULL);
+                            sensorLabels[MID] = midSensor;
                             midSensor.setRenderable(viewRenderable);
 
                             //Get the textView to set text later
-                            midSensor_textView = (TextView) viewRenderable.getView();
+                            sensorTextViews[MID] = (TextView) viewRenderable.getView();
+
+                            // Tap the number to show or hide its statistics
+                            attachStatsPanel(MID, midSensor);
 
                         }
                 );
@@ -257,11 +548,16 @@ public class AugmentedImageNode extends AnchorNode {
                             rightSensor = new Node();
                             rightSensor.setLocalPosition(new Vector3(0.3f, 0.2f, 0));
                             rightSensor.setLocalRotation(Quaternion.axisAngle(new Vector3(1f, 0, 0), -90));
-                            rightSensor.setParent(this);
+                            rightSensor.setParent(content);
+                            rightSensor.setEnabled(detail == LevelOfDetail.Level.FULL);
+                            sensorLabels[RIGHT] = rightSensor;
                             rightSensor.setRenderable(viewRenderable);
 
                             //Get the textView to set text later
-                            rightSensor_textView = (TextView) viewRenderable.getView();
+                            sensorTextViews[RIGHT] = (TextView) viewRenderable.getView();
+
+                            // Tap the number to show or hide its statistics
+                            attachStatsPanel(RIGHT, rightSensor);
 
                         }
                 );
@@ -275,11 +571,16 @@ public class AugmentedImageNode extends AnchorNode {
                             backSensor = new Node();
                             backSensor.setLocalPosition(new Vector3(0, 0, -0.2f));
                             backSensor.setLocalRotation(Quaternion.axisAngle(new Vector3(1f, 0, 0), -90));
-                            backSensor.setParent(this);
+                            backSensor.setParent(content);
+                            backSensor.setEnabled(detail == LevelOfDetail.Level.FULL);
+                            sensorLabels[BACK] = backSensor;
                             backSensor.setRenderable(viewRenderable);
 
                             //Get the textView to set text later
-                            backSensor_textView = (TextView) viewRenderable.getView();
+                            sensorTextViews[BACK] = (TextView) viewRenderable.getView();
+
+                            // Tap the number to show or hide its statistics
+                            attachStatsPanel(BACK, backSensor);
 
                         }
                 );
@@ -293,366 +594,299 @@ public class AugmentedImageNode extends AnchorNode {
                             footSensor = new Node();
                             footSensor.setLocalPosition(new Vector3(0, 0.35f, 0.40f));
                             footSensor.setLocalRotation(Quaternion.axisAngle(new Vector3(1f, 0, 0), -90));
-                            footSensor.setParent(this);
+                            footSensor.setParent(content);
+                            footSensor.setEnabled(detail == LevelOfDetail.Level.FULL);
+                            sensorLabels[FOOT] = footSensor;
                             footSensor.setRenderable(viewRenderable);
 
                             //Get the textView to set text later
-                            footSensor_textView = (TextView) viewRenderable.getView();
+                            sensorTextViews[FOOT] = (TextView) viewRenderable.getView();
+
+                            // Tap the number to show or hide its statistics
+                            attachStatsPanel(FOOT, footSensor);
 
                         }
                 );
 
     }
 
-    private void visualisePolygonGraph(){
-
-        Vector3 initialScale = new Vector3(0.04f,0.04f,0.1f);                         // Scale Y from 0.001f - 0.1f (100 scale)
-        float initialY = 0.2f;
-        float initialZ = -0.18f;
-
-        polygonNodeLeft = new Node();
-        polygonNodeLeft.setParent(this);
-        polygonNodeLeft.setRenderable(polygonRenderable);
-        polygonNodeLeft.setLocalScale(initialScale);
-        polygonNodeLeft.setLocalPosition(new Vector3(-0.3f, initialY, initialZ));
-
-        polygonNodeMid = new Node();
-        polygonNodeMid.setParent(this);
-        polygonNodeMid.setRenderable(polygonRenderable);
-        polygonNodeMid.setLocalScale(initialScale);
-        polygonNodeMid.setLocalPosition(new Vector3(0, initialY, -0.15f));
-
-        polygonNodeRight = new Node();
-        polygonNodeRight.setParent(this);
-        polygonNodeRight.setRenderable(polygonRenderable);
-        polygonNodeRight.setLocalScale(initialScale);
-        polygonNodeRight.setLocalPosition(new Vector3(0.3f, initialY, initialZ));
-
-        polygonNodeBack = new Node();
-        polygonNodeBack.setParent(this);
-        polygonNodeBack.setRenderable(polygonRenderable);
-        polygonNodeBack.setLocalScale(initialScale);
-        polygonNodeBack.setLocalPosition(new Vector3(0, 0, -0.3f));
-
-        polygonNodeFoot = new Node();
-        polygonNodeFoot.setParent(this);
-        polygonNodeFoot.setRenderable(polygonRenderable);
-        polygonNodeFoot.setLocalScale(initialScale);
-        polygonNodeFoot.setLocalPosition(new Vector3(0, 0.35f, 0.3f));
-
-
+    private void createStalenessLabel() {
+        if (stalenessLabel != null) {
+            return;
+        }
+        ViewRenderable.builder().setView(context, R.layout.stats_panel).setSizer(new FixedHeightViewSizer(0.04f))
+                .build()
+                .thenAccept(
+                        viewRenderable -> {
+                            stalenessLabel = new Node();
+                            stalenessLabel.setLocalPosition(new Vector3(0f, 0.5f, 0f));
+                            stalenessLabel.setLocalRotation(Quaternion.axisAngle(new Vector3(1f, 0, 0), -90));
+                            stalenessLabel.setParent(content);
+                            stalenessLabel.setRenderable(viewRenderable);
+                            stalenessLabel.setEnabled(false);
+                            stalenessTextView = (TextView) viewRenderable.getView();
+                        });
     }
 
-    private void visualiseCylinderGraph(){
-
-        Quaternion rotateValue = Quaternion.axisAngle(new Vector3(1f, 0, 0), 90);    // Rotate 90 degree around X axis
-        Vector3 initialScale = new Vector3(0.04f,0.1f,0.04f);                         // Scale Y from 0.001f - 0.1f (100 scale)
-        float initialY = 0.2f;
-        float initialZ = -0.18f;
-
-        cylinderNodeLeft = new Node();
-        cylinderNodeLeft.setParent(this);
-        cylinderNodeLeft.setRenderable(cylinderRenderable);
-        cylinderNodeLeft.setLocalScale(initialScale);
-        cylinderNodeLeft.setLocalPosition(new Vector3(-0.3f, initialY, initialZ));
-        cylinderNodeLeft.setLocalRotation(rotateValue);
-
-
-        cylinderNodeMid = new Node();
-        cylinderNodeMid.setParent(this);
-        cylinderNodeMid.setRenderable(cylinderRenderable);
-        cylinderNodeMid.setLocalScale(initialScale);
-        cylinderNodeMid.setLocalPosition(new Vector3(0, initialY, -0.15f));
-        cylinderNodeMid.setLocalRotation(rotateValue);
-
-
-        cylinderNodeRight = new Node();
-        cylinderNodeRight.setParent(this);
-        cylinderNodeRight.setRenderable(cylinderRenderable);
-        cylinderNodeRight.setLocalScale(initialScale);
-        cylinderNodeRight.setLocalPosition(new Vector3(0.3f, initialY, initialZ));
-        cylinderNodeRight.setLocalRotation(rotateValue);
-
-
-        cylinderNodeBack = new Node();
-        cylinderNodeBack.setParent(this);
-        cylinderNodeBack.setRenderable(cylinderRenderable);
-        cylinderNodeBack.setLocalScale(initialScale);
-        cylinderNodeBack.setLocalPosition(new Vector3(0, 0, -0.3f));
-        cylinderNodeBack.setLocalRotation(rotateValue);
-
-
-
-        cylinderNodeFoot = new Node();
-        cylinderNodeFoot.setParent(this);
-        cylinderNodeFoot.setRenderable(cylinderRenderable);
-        cylinderNodeFoot.setLocalScale(initialScale);
-        cylinderNodeFoot.setLocalPosition(new Vector3(0, 0.35f, 0.3f));
-        cylinderNodeFoot.setLocalRotation(rotateValue);
-
+    private void refreshStaleness(long nowMs) {
+        ConnectionManager connection = pipeline == null ? null : pipeline.getConnectionManager();
+        if (stalenessLabel == null || connection == null || nowMs - lastStalenessRefreshMs < STALENESS_REFRESH_MS) {
+            return;
+        }
+        lastStalenessRefreshMs = nowMs;
 
-        //Show only Polygon graphs first
-        hideCylinderGraph(true);
+        long staleness = connection.getStalenessMs();
+        boolean stale = !connection.isConnected() || staleness > STALE_AFTER_MS;
+        if (stale) {
+            String since = staleness < 0 ? "" : " for " + staleness / 1000 + " s";
+            stalenessTextView.setText(connection.isConnected() ? "No data" + since : "Reconnecting, no data" + since);
+        }
+        if (stale != showingStale) {
+            showingStale = stale;
+            stalenessLabel.setEnabled(stale);
+            for (TextView textView : sensorTextViews) {
+                if (textView != null) {
+                    textView.setAlpha(stale ? STALE_ALPHA : 1f);
+                }
+            }
+        }
     }
 
-    private void visualiseArrowGraph(){
-
-        Quaternion rotateValue = Quaternion.axisAngle(new Vector3(1f, 0, 0), 90);    // Rotate 90 degree around X axis
-        Vector3 initialScale = new Vector3( 0.28f,0.4f,0.28f);                        // Scale Y from 0.004f - 0.4f (100 scale, 0.04/scale)
-        float initialY = 0.2f;
-        float initialZ = -0.23f;
-
-        arrowNodeLeft = new Node();
-        arrowNodeLeft.setParent(this);
-        arrowNodeLeft.setRenderable(arrowRenderable.getNow(null));
-        arrowNodeLeft.setLocalPosition(new Vector3(-0.3f, initialY, initialZ));
-        arrowNodeLeft.setLocalScale(initialScale);
-        arrowNodeLeft.setLocalRotation(rotateValue);
-
-
-        arrowNodeMid = new Node();
-        arrowNodeMid.setParent(this);
-        arrowNodeMid.setRenderable(arrowRenderable.getNow(null));
-        arrowNodeMid.setLocalPosition(new Vector3(0, initialY, -0.2f));
-        arrowNodeMid.setLocalScale(initialScale);
-        arrowNodeMid.setLocalRotation(rotateValue);
-
-
-        arrowNodeRight = new Node();
-        arrowNodeRight.setParent(this);
-        arrowNodeRight.setRenderable(arrowRenderable.getNow(null));
-        arrowNodeRight.setLocalPosition(new Vector3(0.3f, initialY, initialZ));
-        arrowNodeRight.setLocalScale(initialScale);
-        arrowNodeRight.setLocalRotation(rotateValue);
-
-
-        arrowNodeBack = new Node();
-        arrowNodeBack.setParent(this);
-        arrowNodeBack.setRenderable(arrowRenderable.getNow(null));
-        arrowNodeBack.setLocalPosition(new Vector3(0, 0, -0.35f));
-        arrowNodeBack.setLocalScale(initialScale);
-        arrowNodeBack.setLocalRotation(rotateValue);
-
-
-        arrowNodeFoot = new Node();
-        arrowNodeFoot.setParent(this);
-        arrowNodeFoot.setRenderable(arrowRenderable.getNow(null));
-        arrowNodeFoot.setLocalPosition(new Vector3(0, 0.35f, 0.25f));
-        arrowNodeFoot.setLocalScale(initialScale);
-        arrowNodeFoot.setLocalRotation(rotateValue);
-
-
-        //Show only Polygon graphs first
-        hideArrowGraph(true);
+    // Switch the merged graph to another shape, keeping the current bar lengths.
+    private void showGraph(GraphMesh.Shape shape) {
+        selectedShape = shape;
+        applyGraphShape();
+        graphRenderer.setVisible(true);
     }
 
-
-    public void hidePolygonGraph(Boolean hide){
-
-        if (hide){
-            polygonNodeLeft.setEnabled(false);
-            polygonNodeMid.setEnabled(false);
-            polygonNodeRight.setEnabled(false);
-            polygonNodeBack.setEnabled(false);
-            polygonNodeFoot.setEnabled(false);
-        } else {
-            polygonNodeLeft.setEnabled(true);
-            polygonNodeMid.setEnabled(true);
-            polygonNodeRight.setEnabled(true);
-            polygonNodeBack.setEnabled(true);
-            polygonNodeFoot.setEnabled(true);
+    // The selected shape at full detail, plain cubes otherwise.
+    private void applyGraphShape() {
+        GraphMesh.Shape shape = detail == LevelOfDetail.Level.FULL ? selectedShape : GraphMesh.Shape.CUBE;
+        if (graphRenderer.getShape() != shape) {
+            float[] positions = shape == GraphMesh.Shape.ARROW ? ARROW_POSITIONS : BAR_POSITIONS;
+            graphRenderer.setShape(shape, positions, BAR_WIDTH, INITIAL_BAR_LENGTH);
         }
-
     }
 
-    public void hideCylinderGraph(Boolean hide){
-
-        if (hide){
-            cylinderNodeLeft.setEnabled(false);
-            cylinderNodeMid.setEnabled(false);
-            cylinderNodeRight.setEnabled(false);
-            cylinderNodeBack.setEnabled(false);
-            cylinderNodeFoot.setEnabled(false);
-
-        } else {
-            cylinderNodeLeft.setEnabled(true);
-            cylinderNodeMid.setEnabled(true);
-            cylinderNodeRight.setEnabled(true);
-            cylinderNodeBack.setEnabled(true);
-            cylinderNodeFoot.setEnabled(true);
+    /**
+     * Picks the level of detail from the camera, call once per frame. Takes the anchor position
+     * from the world matrix Sceneform already keeps, so nothing is allocated.
+     */
+    public void updateLevelOfDetail(float[] viewMatrix, float[] projectionMatrix) {
+        if (getAnchor() == null) {
+            return;
         }
+        float[] world = getWorldModelMatrix().data;
+        setLevelOfDetail(presentation.updateLevelOfDetail(viewMatrix, projectionMatrix, world[12], world[13], world[14]));
+    }
 
+    /** Takes the settings of the governor's current level. */
+    public void applyQuality(QualityGovernor governor) {
+        presentation.applyQuality(governor);
+        statsRefreshMs = governor.getStatsRefreshMs();
     }
 
-    public void hideArrowGraph(Boolean hide){
+    public LevelOfDetail.Level getLevelOfDetail() {
+        return detail;
+    }
 
-        if (hide){
-            arrowNodeLeft.setEnabled(false);
-            arrowNodeMid.setEnabled(false);
-            arrowNodeRight.setEnabled(false);
-            arrowNodeBack.setEnabled(false);
-            arrowNodeFoot.setEnabled(false);
-        } else {
-            arrowNodeLeft.setEnabled(true);
-            arrowNodeMid.setEnabled(true);
-            arrowNodeRight.setEnabled(true);
-            arrowNodeBack.setEnabled(true);
-            arrowNodeFoot.setEnabled(true);
+    private void setLevelOfDetail(LevelOfDetail.Level level) {
+        if (level == detail) {
+            return;
         }
-
+        Log.i(TAG, "Level of detail " + detail + " -> " + level + " at "
+                + presentation.getLevelOfDetail().getDistance() + " m");
+        detail = level;
+
+        // Nothing under a disabled node is drawn
+        content.setEnabled(level != LevelOfDetail.Level.CULLED);
+        boolean labels = level == LevelOfDetail.Level.FULL;
+        for (Node label : sensorLabels) {
+            if (label != null) {
+                label.setEnabled(labels);
+            }
+        }
+        if (graphRenderer == null || level == LevelOfDetail.Level.CULLED || pipeline == null) {
+            return;
+        }
+        applyGraphShape();
+        // Catch up with what arrived while less was drawn
+        presentation.refreshLabelsNext();
+        presentValues(showingHistory ? historyValues : pipeline.getValues());
     }
 
-
-    /**
-     * For the left and right graph use a multiplier to scale the graph faster
-     */
-    private void scaleAllLeftGraph(float value) {
-
-        float multiplier = 2.0f;
-        polygonNodeLeft.setLocalScale(new Vector3(0.03f,0.03f,value * multiplier));
-        cylinderNodeLeft.setLocalScale(new Vector3(0.03f,value * multiplier,0.03f));
-        arrowNodeLeft.setLocalScale(new Vector3( 0.31f,value * multiplier * 4.0f,0.31f));
-
+    // Hiding a graph type only hides the merged graph if that type is the one currently shown.
+    private void hideGraph(GraphMesh.Shape shape, Boolean hide) {
+        if (graphRenderer == null) {
+            return;
+        }
+        if (!hide) {
+            showGraph(shape);
+        } else if (selectedShape == shape) {
+            graphRenderer.setVisible(false);
+        }
     }
 
-    private void scaleAllMidGraph(float value) {
-
-        polygonNodeMid.setLocalScale(new Vector3(0.03f,0.03f,value));
-        cylinderNodeMid.setLocalScale(new Vector3(0.03f,value,0.03f));
-        arrowNodeMid.setLocalScale(new Vector3( 0.31f,value * 4.0f,0.31f));
-
+    public void hidePolygonGraph(Boolean hide){
+        hideGraph(GraphMesh.Shape.CUBE, hide);
     }
 
-    private void scaleAllRightGraph(float value) {
-
-        float multiplier = 2.0f;
-        polygonNodeRight.setLocalScale(new Vector3(0.03f,0.03f,value * multiplier));
-        cylinderNodeRight.setLocalScale(new Vector3(0.03f,value * multiplier,0.03f));
-        arrowNodeRight.setLocalScale(new Vector3( 0.31f,value * multiplier * 4.0f,0.31f));
-
+    public void hideCylinderGraph(Boolean hide){
+        hideGraph(GraphMesh.Shape.CYLINDER, hide);
     }
 
-    private void scaleAllBackGraph(float value) {
-
-        float multiplier = 2.0f;
-        polygonNodeBack.setLocalScale(new Vector3(0.03f,0.03f,value));
-        cylinderNodeBack.setLocalScale(new Vector3(0.03f,value,0.03f));
-        arrowNodeBack.setLocalScale(new Vector3( 0.31f,value * 4.0f,0.31f));
-
+    public void hideArrowGraph(Boolean hide){
+        hideGraph(GraphMesh.Shape.ARROW, hide);
     }
 
-    private void scaleAllFootGraph(float value) {
-
-        polygonNodeFoot.setLocalScale(new Vector3(0.03f,0.03f,value));
-        cylinderNodeFoot.setLocalScale(new Vector3(0.03f,value,0.03f));
-        arrowNodeFoot.setLocalScale(new Vector3( 0.31f,value * 4.0f,0.31f));
-
+    // The bar length is the calibrated value, one table read whatever the curve is.
+    private void scaleGraph(int sensor, float value) {
+        graphRenderer.setBarLength(sensor, pipeline.getCalibration().apply(sensor, value));
     }
 
-    private void startMqtt() {
-
-        if (flag){
-            mqttHelper = new MqttHelper(context);
-            mqttHelper.setCallback(new MqttCallbackExtended() {
-                @Override
-                public void connectComplete(boolean b, String s) {
-                    Log.w(test_mqtt,"Connected! Successfully StartMqtt");
-
-                }
-
-                @Override
-                public void connectionLost(Throwable throwable) {
-                    Log.w(test_mqtt,"Connection Lost!");
-
-                }
-
-                @Override
-                public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
-
-//                    Log.w(test_mqtt, "Received: "+topic+" - "+mqttMessage.toString());
+    // The sender's schema has no channel for the sensor.
+    private void showMissing(int sensor) {
+        TextView textView = sensorTextViews[sensor];
+        if (textView != null && !shownMissing[sensor]) {
+            shownMissing[sensor] = true;
+            // Any value redraws it again
+            shownValues[sensor] = Float.NaN;
+            textView.setText("n/a");
+        }
+    }
 
-                    // replace all ' to " in the received message in order to covert it the JSON
-                    message = mqttMessage.toString().trim().replaceAll("'","\"");
+    // Only redraw a label when the value it shows actually changed.
+    private void showValue(int sensor, float value) {
+        TextView textView = sensorTextViews[sensor];
+        if (textView != null && shownValues[sensor] != value) {
+            shownMissing[sensor] = false;
+            shownValues[sensor] = value;
+            char[] chars = labelChars[sensor];
+            textView.setText(chars, 0, SamplePresentation.formatLabel(value, chars));
+        }
+    }
 
-//                    Log.w(test_json, "Received JSON: "+message);
+    // Colour a bar from its value through the lookup table of the current pool.
+    private void colorGraph(int sensor, float value) {
+        MaterialPool pool = materialPool.getNow(null);
+        if (pool != null) {
+            graphRenderer.setBarColor(sensor, pool.getColorLut().bucketOf(value));
+        }
+    }
 
-                    // Example of JSON
-                    /*
-                        {
-                            "value":{
-                                         "left":0.0,
-                                         "mid":0.0,
-                                         "right":0.0,
-                                         "back":0.0,
-                                         "foot":0.0
-                                    }
-                        }
-                    */
-
-                    messageJSON = new JSONObject(message);
-                    result = messageJSON.getJSONObject("value");
-
-                    leftValue = result.getDouble("left");
-                    midValue = result.getDouble("mid");
-                    rightValue = result.getDouble("right");
-                    backValue = result.getDouble("back");
-                    footValue = result.getDouble("foot");
-
-//                    Log.w(test_json, "Received double: "+leftValue + ", " + midValue + ", " + rightValue + ", " + backValue + ", " + footValue);
-
-                    leftSensor_textView.setText(String.valueOf(leftValue));
-                    midSensor_textView.setText(String.valueOf(midValue));
-                    rightSensor_textView.setText(String.valueOf(rightValue));
-                    backSensor_textView.setText(String.valueOf(backValue));
-                    footSensor_textView.setText(String.valueOf(footValue));
-
-                    // These method use for setting the minimum or maximum value for the graph to scale
-                    // in this case is 0.0 - 100.0, if more than 100.0 the number will be set to 100.0 and also 0.0 vice versa.
-                    leftValue = roundValue(leftValue);
-                    midValue = roundValue(midValue);
-                    rightValue = roundValue(rightValue);
-                    backValue = roundValue(backValue);
-                    footValue = roundValue(footValue);
-
-//                    Log.w(test_json, "After round and convert to float: "+leftValue + ", " + midValue + ", " + rightValue + ", " + backValue + ", " + footValue);
-
-                    // Scale down the value to be a multiplier for each node scale
-                    // Note that for the arrow will always have a 4 times scale more than the other
-                    scaleAllLeftGraph((float) leftValue);
-                    scaleAllMidGraph((float) midValue);
-                    scaleAllRightGraph((float) rightValue);
-                    scaleAllBackGraph((float) backValue);
-                    scaleAllFootGraph((float) footValue);
-                }
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
-                    Log.w(test_mqtt,"Delivery Complete");
-                }
-            });
+    // Labels, bars and marker for one set of channel values, live or recorded.
+    private void presentValues(float[] values) {
+        updateCopMarker(values);
+
+        boolean labels = presentation.shouldRefreshLabels(System.currentTimeMillis());
+        for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+            // Hidden labels keep their old text, it is refreshed when they come back
+            if (labels && !showingHistory && pipeline.isSensorMissing(sensor)) {
+                showMissing(sensor);
+            } else if (labels) {
+                showValue(sensor, values[sensor]);
+            }
+
+            // Colour each bar by its value before the value is scaled down for the length.
+            colorGraph(sensor, values[sensor]);
+
+            // The calibration clamps each value to its input range and scales it down
+            // to be the length of each bar
+            scaleGraph(sensor, values[sensor]);
+        }
+    }
 
-            // Make it connect only once
-            flag = false;
+    // Creates the mat, or a new one when the size changed. False while the materials are loading.
+    private boolean ensurePressureMat(int rows, int cols) {
+        MaterialPool pool = materialPool.getNow(null);
+        if (pool == null) {
+            return false;
         }
 
+        if (pressureMatRenderer == null
+                || pressureMatRenderer.getMesh().getRows() != rows
+                || pressureMatRenderer.getMesh().getCols() != cols) {
+            if (pressureMatRenderer != null) {
+                pressureMatRenderer.release();
+            }
+            PressureMatMesh mesh = new PressureMatMesh(rows, cols, MAT_CENTER_X, MAT_HEIGHT, MAT_CENTER_Z, MAT_WIDTH, MAT_DEPTH);
+            pressureMatRenderer = new PressureMatRenderer(content, mesh, pool);
+        }
+        return true;
+    }
 
+    // Vertex changes made by the MQTT callback are pushed to the renderable once per frame.
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        super.onUpdate(frameTime);
+        TraceRecorder trace = Tracing.RECORDER;
+        trace.begin(PipelineStages.NODE_UPDATE);
+        AllocationBudget allocations = pipeline == null ? null : pipeline.getAllocationBudget();
+        if (allocations != null) {
+            allocations.begin(PipelineStages.NODE_UPDATE);
+        }
+        if (graphRenderer != null) {
+            trace.begin(Tracing.GRAPH_COMMIT);
+            graphRenderer.commit();
+            trace.end(Tracing.GRAPH_COMMIT);
+        }
+        if (pressureMatRenderer != null) {
+            trace.begin(Tracing.MAT_COMMIT);
+            pressureMatRenderer.commit();
+            trace.end(Tracing.MAT_COMMIT);
+        }
+        long nowMs = System.currentTimeMillis();
+        refreshStatsPanels(nowMs);
+        refreshStaleness(nowMs);
+        if (allocations != null) {
+            allocations.end(PipelineStages.NODE_UPDATE);
+        }
+        trace.end(PipelineStages.NODE_UPDATE);
     }
 
-    private double roundValue(double value){
-        if ( value <= 0.0) {
-            value = 0.001;
-            return  value;
+    // A sample went through the pipeline, on the main thread.
+    private void onPipelineSample(long nowMs) {
+        presentedSample = false;
+        // While scrubbing, the graphs stay on the recorded instant
+        if (showingHistory || graphRenderer == null) {
+            return;
+        }
 
+        if (!presentation.shouldPresent(nowMs)) {
+            pipeline.getHealthTelemetry().onConflated();
+            return;
         }
-        else if ( value > 100.0) {
-            value = 0.1;
-            return  value;
+        presentedSample = true;
+        presentValues(pipeline.getValues());
+        logFirstValues();
+    }
 
+    // Resume latency: right away from a warm pipeline, after the first message from a cold one.
+    private void logFirstValues() {
+        if (attachedMs >= 0) {
+            Log.i(TAG, "First values drawn " + (SystemClock.elapsedRealtime() - attachedMs)
+                    + " ms after attaching the pipeline, " + pipeline.getSampleCount() + " samples decoded");
+            attachedMs = -1;
         }
-        else {
-            value = value / 1000.0;
-            return  value;
+    }
 
+    // Dense mat messages recolour every cell along with a drawn sample, sparse ones only the
+    // cells that changed, whether drawn or not.
+    private void onPipelineMatChanged(int changedCount) {
+        if (changedCount < 0 && !presentedSample) {
+            return;
+        }
+        if (!ensurePressureMat(pipeline.getMatRows(), pipeline.getMatCols())) {
+            return;
+        }
+        float[] cells = pipeline.getMatValues();
+        if (changedCount < 0) {
+            pressureMatRenderer.setCellValues(cells, cells.length);
+            return;
+        }
+        for (int i = 0; i < changedCount; i++) {
+            int cell = pipeline.getChangedCell(i);
+            pressureMatRenderer.setCellValue(cell, cells[cell]);
         }
     }
 }
-
@@ -0,0 +1,46 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with full jitter: the n-th retry waits a random time between 0 and
+ * min(max, base * 2^n), so many clients losing the same broker don't all come back at once.
+ */
+public final class Backoff {
+
+    private final long baseMs;
+    private final long maxMs;
+    private final Random random;
+    private int attempt;
+
+    public Backoff(long baseMs, long maxMs) {
+        this(baseMs, maxMs, new Random());
+    }
+
+    public Backoff(long baseMs, long maxMs, Random random) {
+        if (baseMs <= 0 || maxMs < baseMs) {
+            throw new IllegalArgumentException("Need 0 < baseMs <= maxMs");
+        }
+        this.baseMs = baseMs;
+        this.maxMs = maxMs;
+        this.random = random;
+    }
+
+    /** Delay before the next retry, each call counts as one more attempt. */
+    public long nextDelayMs() {
+        // Only shift while the result stays within maxMs, so it can't overflow and wrap around
+        // to a smaller ceiling on a later attempt.
+        long ceiling = attempt >= 63 || baseMs > maxMs >> attempt ? maxMs : baseMs << attempt;
+        attempt++;
+        return (long) (random.nextDouble() * (ceiling + 1.0));
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /** Called after a success, the next failure starts again from the base delay. */
+    public void reset() {
+        attempt = 0;
+    }
+}
@@ -0,0 +1,81 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Which broker of an ordered list {@link ConnectionManager} connects to: every broker is probed in
+ * parallel and the first of the list that answered within the timeout wins, so a reachable
+ * primary is picked as soon as it answers even when a fallback answered before it. Without the
+ * Android parts so the ordering runs on the JVM.
+ */
+final class BrokerProbes {
+
+    /** Returns when the broker is reachable, throws when it isn't. */
+    interface Probe {
+        void probe(String serverUri, int timeoutMs) throws IOException;
+    }
+
+    /** A plain TCP connect to the broker's port. */
+    static final Probe TCP = BrokerProbes::connect;
+
+    private final String[] serverUris;
+    private final int timeoutMs;
+    private final ExecutorService executor;
+    private final Probe probe;
+
+    BrokerProbes(String[] serverUris, int timeoutMs, ExecutorService executor, Probe probe) {
+        this.serverUris = serverUris.clone();
+        this.timeoutMs = timeoutMs;
+        this.executor = executor;
+        this.probe = probe;
+    }
+
+    /** The first broker of the list that answered, null when none did within the timeout. */
+    String firstReachable() {
+        Future<?>[] probes = new Future<?>[serverUris.length];
+        for (int i = 0; i < serverUris.length; i++) {
+            String serverUri = serverUris[i];
+            probes[i] = executor.submit(() -> {
+                probe.probe(serverUri, timeoutMs);
+                return null;
+            });
+        }
+        long deadline = System.nanoTime() / 1_000_000 + timeoutMs;
+        String best = null;
+        // In list order, a later broker only counts once every earlier one failed or timed out
+        for (int i = 0; i < probes.length && best == null; i++) {
+            try {
+                probes[i].get(Math.max(0, deadline - System.nanoTime() / 1_000_000), TimeUnit.MILLISECONDS);
+                best = serverUris[i];
+            } catch (ExecutionException | TimeoutException e) {
+                // Unreachable, try the next one
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Future<?> pending : probes) {
+            pending.cancel(true);
+        }
+        return best;
+    }
+
+    private static void connect(String serverUri, int timeoutMs) throws IOException {
+        URI uri = URI.create(serverUri);
+        int port = uri.getPort();
+        if (port < 0) {
+            port = "ssl".equals(uri.getScheme()) ? 8883 : 1883;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(uri.getHost(), port), timeoutMs);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Per-channel calibration compiled into dense lookup tables.
+ *
+ * Every channel has a transfer curve, a zero offset, a gain and an output clamp. All of that is
+ * sampled once over the channel's raw input range into a float table, so on the sample path any
+ * curve costs the same: one table read with linear interpolation between two neighbouring entries.
+ * A Calibration is immutable, a new one is compiled and swapped in whenever the config changes.
+ *
+ * Config format (the same for the asset and for the MQTT calibration topic):
+ * <pre>
+ * {
+ *   "version": 1,
+ *   "table_size": 1024,
+ *   "default": { "type": "linear", "slope": 0.001, "in_min": 0, "in_max": 100, "out_min": 0.001 },
+ *   "channels": {
+ *     "left": { "gain": 2.0 },
+ *     "back": { "type": "log", "a": 0.02, "b": 0.05, "zero_offset": 1.5 },
+ *     "foot": { "type": "piecewise", "points": [[0, 0], [50, 0.03], [100, 0.1]] },
+ *     "mid":  { "type": "polynomial", "coefficients": [0, 0.0008, 0.000002] }
+ *   }
+ * }
+ * </pre>
+ * Channel entries override the fields of "default" they mention.
+ */
+public final class Calibration {
+
+    public static final int DEFAULT_TABLE_SIZE = 1024;
+
+    /** Everything needed to compile one channel. */
+    public static final class ChannelSpec {
+        public TransferFunction curve = TransferFunction.linear(1f, 0f);
+        // Subtracted from the raw reading before the curve.
+        public float zeroOffset = 0f;
+        // Multiplied with the curve output.
+        public float gain = 1f;
+        // Raw range covered by the table, readings outside are clamped to it.
+        public float inMin = 0f;
+        public float inMax = 100f;
+        // Clamp of the calibrated output.
+        public float outMin = Float.NEGATIVE_INFINITY;
+        public float outMax = Float.POSITIVE_INFINITY;
+
+        public ChannelSpec copy() {
+            ChannelSpec copy = new ChannelSpec();
+            copy.curve = curve;
+            copy.zeroOffset = zeroOffset;
+            copy.gain = gain;
+            copy.inMin = inMin;
+            copy.inMax = inMax;
+            copy.outMin = outMin;
+            copy.outMax = outMax;
+            return copy;
+        }
+    }
+
+    private final int version;
+    private final int channelCount;
+    private final int tableSize;
+    private final float[] tables;
+    private final float[] inMin;
+    private final float[] inverseStep;
+
+    public Calibration(ChannelSpec[] specs, int tableSize, int version) {
+        if (tableSize < 2) {
+            throw new IllegalArgumentException("tableSize must be at least 2");
+        }
+        this.version = version;
+        this.channelCount = specs.length;
+        this.tableSize = tableSize;
+        this.tables = new float[channelCount * tableSize];
+        this.inMin = new float[channelCount];
+        this.inverseStep = new float[channelCount];
+
+        for (int channel = 0; channel < channelCount; channel++) {
+            ChannelSpec spec = specs[channel];
+            if (!(spec.inMax > spec.inMin)) {
+                throw new IllegalArgumentException("in_max must be greater than in_min on channel " + channel);
+            }
+            float step = (spec.inMax - spec.inMin) / (tableSize - 1);
+            inMin[channel] = spec.inMin;
+            inverseStep[channel] = 1f / step;
+
+            int base = channel * tableSize;
+            for (int i = 0; i < tableSize; i++) {
+                float raw = spec.inMin + i * step;
+                float value = spec.gain * spec.curve.apply(raw - spec.zeroOffset);
+                tables[base + i] = Math.max(spec.outMin, Math.min(spec.outMax, value));
+            }
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /** Calibrated value of a raw reading. Allocation free, the hot path of every sample. */
+    public float apply(int channel, float raw) {
+        float position = (raw - inMin[channel]) * inverseStep[channel];
+        int last = tableSize - 1;
+        int base = channel * tableSize;
+        if (!(position > 0f)) {
+            // also catches NaN
+            return tables[base];
+        }
+        if (position >= last) {
+            return tables[base + last];
+        }
+        int index = (int) position;
+        float fraction = position - index;
+        float low = tables[base + index];
+        return low + (tables[base + index + 1] - low) * fraction;
+    }
+
+    /** Parses and compiles a config, channels are ordered as in channelNames. */
+    public static Calibration fromJson(JSONObject json, String[] channelNames) throws JSONException {
+        ChannelSpec defaults = new ChannelSpec();
+        JSONObject defaultJson = json.optJSONObject("default");
+        if (defaultJson != null) {
+            readSpec(defaultJson, defaults);
+        }
+
+        JSONObject channelsJson = json.optJSONObject("channels");
+        ChannelSpec[] specs = new ChannelSpec[channelNames.length];
+        for (int channel = 0; channel < channelNames.length; channel++) {
+            specs[channel] = defaults.copy();
+            JSONObject channelJson = channelsJson == null ? null : channelsJson.optJSONObject(channelNames[channel]);
+            if (channelJson != null) {
+                readSpec(channelJson, specs[channel]);
+            }
+        }
+
+        return new Calibration(specs, json.optInt("table_size", DEFAULT_TABLE_SIZE), json.optInt("version", 0));
+    }
+
+    private static void readSpec(JSONObject json, ChannelSpec spec) throws JSONException {
+        if (json.has("type")) {
+            spec.curve = readCurve(json);
+        }
+        spec.zeroOffset = (float) json.optDouble("zero_offset", spec.zeroOffset);
+        spec.gain = (float) json.optDouble("gain", spec.gain);
+        spec.inMin = (float) json.optDouble("in_min", spec.inMin);
+        spec.inMax = (float) json.optDouble("in_max", spec.inMax);
+        spec.outMin = (float) json.optDouble("out_min", spec.outMin);
+        spec.outMax = (float) json.optDouble("out_max", spec.outMax);
+    }
+
+    private static TransferFunction readCurve(JSONObject json) throws JSONException {
+        String type = json.getString("type");
+        switch (type) {
+            case "linear":
+                return TransferFunction.linear((float) json.optDouble("slope", 1.0), (float) json.optDouble("intercept", 0.0));
+            case "log":
+                return TransferFunction.log((float) json.getDouble("a"), (float) json.getDouble("b"));
+            case "piecewise": {
+                JSONArray points = json.getJSONArray("points");
+                float[] xs = new float[points.length()];
+                float[] ys = new float[points.length()];
+                for (int i = 0; i < points.length(); i++) {
+                    JSONArray point = points.getJSONArray(i);
+                    xs[i] = (float) point.getDouble(0);
+                    ys[i] = (float) point.getDouble(1);
+                }
+                return TransferFunction.piecewise(xs, ys);
+            }
+            case "polynomial": {
+                JSONArray coefficients = json.getJSONArray("coefficients");
+                float[] c = new float[coefficients.length()];
+                for (int i = 0; i < c.length; i++) {
+                    c[i] = (float) coefficients.getDouble(i);
+                }
+                return TransferFunction.polynomial(c);
+            }
+            default:
+                throw new JSONException("Unknown calibration curve type: " + type);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * The five sensors of the chair, named from the perspective of someone looking at the chair, NOT
+ * of the patient sitting on it. The indices are used for the bars of the merged graph and for the
+ * value arrays throughout the pipeline.
+ */
+public final class ChairSensors {
+
+    public static final int LEFT = 0;
+    public static final int MID = 1;
+    public static final int RIGHT = 2;
+    public static final int BACK = 3;
+    public static final int FOOT = 4;
+    public static final int SENSOR_COUNT = 5;
+    /** Names by index, as the senders name their channels. */
+    public static final String[] SENSOR_NAMES = {"left", "mid", "right", "back", "foot"};
+
+    private ChairSensors() {
+    }
+}
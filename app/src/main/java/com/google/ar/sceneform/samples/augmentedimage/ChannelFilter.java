@@ -0,0 +1,16 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * One stage of the per-channel filter chain between decode and presentation.
+ *
+ * Implementations keep all of their state in primitive arrays sized once for a fixed number of
+ * channels, so filtering a sample never allocates.
+ */
+public interface ChannelFilter {
+
+    /** Filters one new reading of a channel and returns the filtered value. */
+    float filter(int channel, float value);
+
+    /** Forgets the history of every channel, the next reading starts fresh. */
+    void reset();
+}
@@ -0,0 +1,138 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Channels a sender announces before sending its samples by position, retained on the schema
+ * topic so every subscriber gets it first:
+ * <pre>
+ * {
+ *   "version": 2,
+ *   "channels": [
+ *     { "name": "left", "unit": "N", "min": 0, "max": 1000 },
+ *     { "name": "mid", "unit": "N", "min": 0, "max": 1000 }
+ *   ]
+ * }
+ * </pre>
+ * The order of the channels is the order of the values in the data messages, see
+ * {@link SensorDecoder}. Unit and range are optional, the decoder clamps values to the range and
+ * the unit shows in the logs. Immutable, names are looked up once when the schema is interned,
+ * never per sample.
+ */
+public final class ChannelSchema {
+
+    private final int version;
+    private final String[] names;
+    private final String[] units;
+    private final float[] min;
+    private final float[] max;
+
+    private ChannelSchema(int version, String[] names, String[] units, float[] min, float[] max) {
+        this.version = version;
+        this.names = names;
+        this.units = units;
+        this.min = min;
+        this.max = max;
+    }
+
+    /** @throws IllegalArgumentException without channels, with a name twice or a range upside down */
+    public static ChannelSchema fromJson(JSONObject json) throws JSONException {
+        int version = json.getInt("version");
+        JSONArray channels = json.getJSONArray("channels");
+        int count = channels.length();
+        if (count == 0) {
+            throw new IllegalArgumentException("Schema " + version + " has no channels");
+        }
+        String[] names = new String[count];
+        String[] units = new String[count];
+        float[] min = new float[count];
+        float[] max = new float[count];
+        for (int i = 0; i < count; i++) {
+            JSONObject channel = channels.getJSONObject(i);
+            names[i] = channel.getString("name");
+            for (int j = 0; j < i; j++) {
+                if (names[j].equals(names[i])) {
+                    throw new IllegalArgumentException("Channel " + names[i] + " declared twice");
+                }
+            }
+            units[i] = channel.optString("unit", "");
+            min[i] = (float) channel.optDouble("min", Double.NEGATIVE_INFINITY);
+            max[i] = (float) channel.optDouble("max", Double.POSITIVE_INFINITY);
+            if (min[i] > max[i]) {
+                throw new IllegalArgumentException("Channel " + names[i] + " has min above max");
+            }
+        }
+        return new ChannelSchema(version, names, units, min, max);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getChannelCount() {
+        return names.length;
+    }
+
+    public String getName(int channel) {
+        return names[channel];
+    }
+
+    /** Empty when not announced. */
+    public String getUnit(int channel) {
+        return units[channel];
+    }
+
+    /** Negative infinity when not announced. */
+    public float getMin(int channel) {
+        return min[channel];
+    }
+
+    /** Positive infinity when not announced. */
+    public float getMax(int channel) {
+        return max[channel];
+    }
+
+    /** Position of the channel in the data messages, -1 if the schema has none by that name. */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * For every channel of the schema, the index of the same name in targetNames, -1 for the
+     * channels the target doesn't have.
+     */
+    public int[] mapTo(String[] targetNames) {
+        int[] map = new int[names.length];
+        Arrays.fill(map, -1);
+        for (int i = 0; i < names.length; i++) {
+            for (int target = 0; target < targetNames.length; target++) {
+                if (names[i].equals(targetNames[target])) {
+                    map[i] = target;
+                    break;
+                }
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("schema ").append(version).append(':');
+        for (int i = 0; i < names.length; i++) {
+            text.append(' ').append(names[i]);
+            if (!units[i].isEmpty()) {
+                text.append(" [").append(units[i]).append(']');
+            }
+        }
+        return text.toString();
+    }
+}
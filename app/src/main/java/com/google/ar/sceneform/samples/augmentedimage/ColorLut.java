@@ -0,0 +1,123 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Precomputed value to colour lookup table.
+ *
+ * The palette gradient is evaluated once into {@link #LUT_SIZE} packed ARGB entries. Values are
+ * then quantized into a small number of colour buckets, each bucket being one entry of the table,
+ * so that the renderers can keep one shared material (or one texel) per bucket and never create a
+ * colour at runtime. Mapping a value to its bucket is one multiply and one clamp.
+ */
+public final class ColorLut {
+
+    public enum Palette {
+        // Same grey as the original graphs at every value, keeps height as the only signal.
+        GRAYSCALE(0xFF505050, 0xFFE0E0E0),
+        // Cold blue through green and yellow to red, the usual pressure map colours.
+        HEAT(0xFF0000FF, 0xFF00FFFF, 0xFF00FF00, 0xFFFFFF00, 0xFFFF0000),
+        // Perceptually uniform, readable for colour blind users.
+        VIRIDIS(0xFF440154, 0xFF3B528B, 0xFF21908C, 0xFF5DC963, 0xFFFDE725),
+        // Diverging blue - white - red, for values around a neutral midpoint.
+        BLUE_RED(0xFF2166AC, 0xFFF7F7F7, 0xFFB2182B);
+
+        private final int[] stops;
+
+        Palette(int... stops) {
+            this.stops = stops;
+        }
+    }
+
+    // Resolution of the precomputed gradient, also the width of the palette texture.
+    public static final int LUT_SIZE = 256;
+
+    private final Palette palette;
+    private final int bucketCount;
+    private final int[] bucketColors;
+
+    private float min;
+    private float scale;
+
+    /**
+     * @param palette     gradient to precompute
+     * @param bucketCount number of distinct colours values are quantized to, at most LUT_SIZE
+     * @param min         value mapped to the first bucket
+     * @param max         value mapped to the last bucket
+     */
+    public ColorLut(Palette palette, int bucketCount, float min, float max) {
+        if (bucketCount < 2 || bucketCount > LUT_SIZE) {
+            throw new IllegalArgumentException("bucketCount must be in 2.." + LUT_SIZE);
+        }
+        this.palette = palette;
+        this.bucketCount = bucketCount;
+
+        int[] lut = new int[LUT_SIZE];
+        for (int i = 0; i < LUT_SIZE; i++) {
+            lut[i] = evaluate(palette.stops, (float) i / (LUT_SIZE - 1));
+        }
+
+        bucketColors = new int[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            bucketColors[b] = lut[b * (LUT_SIZE - 1) / (bucketCount - 1)];
+        }
+
+        setRange(min, max);
+    }
+
+    public Palette getPalette() {
+        return palette;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public void setRange(float min, float max) {
+        if (!(max > min)) {
+            throw new IllegalArgumentException("max must be greater than min");
+        }
+        this.min = min;
+        this.scale = (bucketCount - 1) / (max - min);
+    }
+
+    /** Quantized colour bucket of a value, clamped to the configured range. */
+    public int bucketOf(float value) {
+        float position = (value - min) * scale + 0.5f;
+        if (!(position > 0f)) {
+            // also catches NaN
+            return 0;
+        }
+        int bucket = (int) position;
+        return bucket >= bucketCount ? bucketCount - 1 : bucket;
+    }
+
+    /** Packed ARGB colour of a bucket. */
+    public int colorOf(int bucket) {
+        return bucketColors[bucket];
+    }
+
+    /**
+     * Horizontal texture coordinate of the centre of a bucket's texel, for meshes that pick
+     * their colour from a bucketCount x 1 palette texture.
+     */
+    public float textureCoordinateOf(int bucket) {
+        return (bucket + 0.5f) / bucketCount;
+    }
+
+    private static int evaluate(int[] stops, float t) {
+        float position = t * (stops.length - 1);
+        int index = Math.min((int) position, stops.length - 2);
+        float fraction = position - index;
+        int from = stops[index];
+        int to = stops[index + 1];
+        return 0xFF000000
+                | lerpChannel(from, to, 16, fraction) << 16
+                | lerpChannel(from, to, 8, fraction) << 8
+                | lerpChannel(from, to, 0, fraction);
+    }
+
+    private static int lerpChannel(int from, int to, int shift, float fraction) {
+        int a = (from >> shift) & 0xFF;
+        int b = (to >> shift) & 0xFF;
+        return Math.round(a + (b - a) * fraction);
+    }
+}
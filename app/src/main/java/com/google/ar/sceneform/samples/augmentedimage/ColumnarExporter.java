@@ -0,0 +1,262 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Compact columnar export of a recorded session, for uploading over slow networks.
+ *
+ * The session is streamed one stored block at a time, so memory stays constant however long the
+ * session is. Each exported block holds the timestamps as one column and then one column per
+ * channel:
+ * <ul>
+ *   <li>timestamps: the first one, the first delta, then delta-of-delta, which is zero for a
+ *   steady sample rate,</li>
+ *   <li>values: quantized to a multiple of the quantum (0.01 by default), the first one then the
+ *   difference to the previous sample.</li>
+ * </ul>
+ * Every number is written zig-zag encoded as a varint, so small differences take a single byte.
+ * Blocks are framed as sample count, payload length, payload and the CRC32 of the payload, and a
+ * sample count of 0 ends the file. Each block decodes on its own.
+ *
+ * Values are only as exact as the quantum, NaN and infinities are exported as 0.
+ */
+public final class ColumnarExporter {
+
+    public static final float DEFAULT_QUANTUM = 0.01f;
+
+    private static final int MAGIC = 0x41525343; // "ARSC"
+    private static final int VERSION = 1;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private ColumnarExporter() {}
+
+    /**
+     * Writes the whole session to out. Does not close out.
+     *
+     * @return the number of samples exported
+     */
+    public static long export(SessionStore session, OutputStream out, float quantum) throws IOException {
+        if (!(quantum > 0)) {
+            throw new IllegalArgumentException("quantum must be positive");
+        }
+        String[] names = session.getChannelNames();
+        int channels = names.length;
+        int samplesPerBlock = session.getSamplesPerBlock();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(channels);
+        data.writeInt(samplesPerBlock);
+        data.writeFloat(quantum);
+        for (String name : names) {
+            data.writeUTF(name);
+        }
+
+        long[] times = new long[samplesPerBlock];
+        float[] values = new float[samplesPerBlock * channels];
+        byte[] payload = new byte[MAX_VARINT_BYTES * samplesPerBlock * (channels + 1)];
+        byte[] header = new byte[MAX_VARINT_BYTES * 2];
+        CRC32 crc = new CRC32();
+        long exported = 0;
+
+        for (int block = 0; block < session.getBlockCount(); block++) {
+            int count = session.readBlock(block, times, values);
+            if (count == 0) {
+                continue;
+            }
+
+            int length = 0;
+            long previousDelta = 0;
+            for (int s = 0; s < count; s++) {
+                long encoded;
+                if (s == 0) {
+                    encoded = times[0];
+                } else {
+                    long delta = times[s] - times[s - 1];
+                    encoded = s == 1 ? delta : delta - previousDelta;
+                    previousDelta = delta;
+                }
+                length = writeVarint(payload, length, zigZag(encoded));
+            }
+            for (int channel = 0; channel < channels; channel++) {
+                long previous = 0;
+                for (int s = 0; s < count; s++) {
+                    long quantized = quantize(values[s * channels + channel], quantum);
+                    length = writeVarint(payload, length, zigZag(quantized - previous));
+                    previous = quantized;
+                }
+            }
+
+            crc.reset();
+            crc.update(payload, 0, length);
+            int headerLength = writeVarint(header, 0, count);
+            headerLength = writeVarint(header, headerLength, length);
+            data.write(header, 0, headerLength);
+            data.write(payload, 0, length);
+            data.writeInt((int) crc.getValue());
+            exported += count;
+        }
+
+        data.write(0);
+        data.flush();
+        return exported;
+    }
+
+    private static long quantize(float value, float quantum) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return 0;
+        }
+        return Math.round((double) value / quantum);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /** Reads an exported session back, one block at a time with constant memory. */
+    public static final class Decoder {
+
+        private final DataInputStream in;
+        private final String[] channelNames;
+        private final int samplesPerBlock;
+        private final float quantum;
+        private final byte[] payload;
+        private final CRC32 crc = new CRC32();
+        private int position;
+        private int limit;
+        private boolean ended;
+
+        public Decoder(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC || this.in.readInt() != VERSION) {
+                throw new IOException("Not a columnar session export");
+            }
+            int channels = this.in.readInt();
+            this.samplesPerBlock = this.in.readInt();
+            this.quantum = this.in.readFloat();
+            if (channels < 0 || samplesPerBlock < 1 || !(quantum > 0)) {
+                throw new IOException("Bad export header");
+            }
+            this.channelNames = new String[channels];
+            for (int i = 0; i < channels; i++) {
+                channelNames[i] = this.in.readUTF();
+            }
+            this.payload = new byte[MAX_VARINT_BYTES * samplesPerBlock * (channels + 1)];
+        }
+
+        public String[] getChannelNames() {
+            return channelNames.clone();
+        }
+
+        public int getSamplesPerBlock() {
+            return samplesPerBlock;
+        }
+
+        public float getQuantum() {
+            return quantum;
+        }
+
+        /**
+         * Decodes the next block, same layout as {@link SessionStore#readBlock}.
+         *
+         * @return the number of samples, -1 after the last block
+         * @throws IOException on a truncated file or a checksum mismatch
+         */
+        public int nextBlock(long[] times, float[] values) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            long count = readStreamVarint();
+            if (count == 0) {
+                ended = true;
+                return -1;
+            }
+            long length = readStreamVarint();
+            if (count > samplesPerBlock || length > payload.length) {
+                throw new IOException("Bad block header");
+            }
+            in.readFully(payload, 0, (int) length);
+            crc.reset();
+            crc.update(payload, 0, (int) length);
+            if ((int) crc.getValue() != in.readInt()) {
+                throw new IOException("Block checksum mismatch");
+            }
+
+            position = 0;
+            limit = (int) length;
+            int samples = (int) count;
+            int channels = channelNames.length;
+            long delta = 0;
+            for (int s = 0; s < samples; s++) {
+                long encoded = unZigZag(readPayloadVarint());
+                if (s == 0) {
+                    times[0] = encoded;
+                } else {
+                    delta = s == 1 ? encoded : delta + encoded;
+                    times[s] = times[s - 1] + delta;
+                }
+            }
+            for (int channel = 0; channel < channels; channel++) {
+                long quantized = 0;
+                for (int s = 0; s < samples; s++) {
+                    quantized += unZigZag(readPayloadVarint());
+                    values[s * channels + channel] = (float) (quantized * (double) quantum);
+                }
+            }
+            if (position != limit) {
+                throw new IOException("Block payload has trailing bytes");
+            }
+            return samples;
+        }
+
+        private long readStreamVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Truncated export");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Bad varint");
+        }
+
+        private long readPayloadVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new IOException("Truncated block");
+                }
+                int b = payload[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Bad varint");
+        }
+    }
+}
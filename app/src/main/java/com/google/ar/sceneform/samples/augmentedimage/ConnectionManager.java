@@ -0,0 +1,215 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.eclipse.paho.android.service.MqttAndroidClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the MQTT client connected to the best reachable broker out of an ordered list, the local
+ * gateway first and fallbacks after it.
+ *
+ * Whenever the client isn't connected, every broker is probed in parallel with a plain TCP connect
+ * and the client connects to the first broker of the list that answered, see {@link BrokerProbes}. When no broker answers,
+ * or the connection fails, the next attempt waits for a jittered exponential backoff. After each
+ * connection the listener restores the session state (subscriptions, queued messages).
+ *
+ * Time to reconnect (connection lost until connected again) and time to the first sample after a
+ * reconnect are kept in quantile sketches. Everything but the probes runs on the main thread.
+ */
+class ConnectionManager {
+
+    interface Listener {
+        /** Connected to serverUri, resubscribe and restore anything else the broker should know. */
+        void onConnected(String serverUri, boolean reconnect);
+    }
+
+    private static final String TAG = "ConnectionManager";
+    private static final int PROBE_TIMEOUT_MS = 2000;
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30_000;
+
+    private final MqttAndroidClient client;
+    private final MqttConnectOptions options;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService probeExecutor = Executors.newCachedThreadPool();
+    private final BrokerProbes probes;
+    private final Backoff backoff = new Backoff(BACKOFF_BASE_MS, BACKOFF_MAX_MS);
+    private final Runnable attemptRunnable = this::probeAndConnect;
+
+    private boolean connecting;
+    private boolean stopped;
+    private boolean everConnected;
+    private String currentServerUri;
+
+    // elapsedRealtime of the last loss and of the last reconnect, -1 when not applicable
+    private long lostAtMs = -1;
+    private long reconnectedAtMs = -1;
+    private boolean awaitingFirstSample;
+    private volatile long lastSampleMs = -1;
+
+    private final KllSketch reconnectTimes = new KllSketch();
+    private final KllSketch firstSampleTimes = new KllSketch();
+
+    /**
+     * @param options used for every connection, automatic reconnect must be off as this class
+     * reconnects itself
+     */
+    ConnectionManager(MqttAndroidClient client, String[] serverUris, MqttConnectOptions options, Listener listener) {
+        if (serverUris.length == 0) {
+            throw new IllegalArgumentException("No broker");
+        }
+        this.client = client;
+        this.probes = new BrokerProbes(serverUris, PROBE_TIMEOUT_MS, probeExecutor, BrokerProbes.TCP);
+        this.options = options;
+        this.listener = listener;
+        options.setAutomaticReconnect(false);
+    }
+
+    void start() {
+        stopped = false;
+        probeAndConnect();
+    }
+
+    void stop() {
+        stopped = true;
+        handler.removeCallbacks(attemptRunnable);
+        probeExecutor.shutdownNow();
+    }
+
+    boolean isConnected() {
+        return currentServerUri != null;
+    }
+
+    /** Broker currently connected to, null while disconnected. */
+    String getServerUri() {
+        return currentServerUri;
+    }
+
+    /** Called by the MQTT callback, starts probing for a broker again. */
+    void onConnectionLost(Throwable cause) {
+        Log.w(TAG, "Lost " + currentServerUri + ": " + cause);
+        currentServerUri = null;
+        if (lostAtMs < 0) {
+            lostAtMs = SystemClock.elapsedRealtime();
+        }
+        awaitingFirstSample = false;
+        scheduleAttempt();
+    }
+
+    /** Called for every data message, feeds the staleness and first sample measurements. */
+    void onSample() {
+        long now = SystemClock.elapsedRealtime();
+        lastSampleMs = now;
+        if (awaitingFirstSample) {
+            awaitingFirstSample = false;
+            firstSampleTimes.update(now - reconnectedAtMs);
+        }
+    }
+
+    /** Milliseconds since the last data message, -1 before the first one. */
+    long getStalenessMs() {
+        long last = lastSampleMs;
+        return last < 0 ? -1 : SystemClock.elapsedRealtime() - last;
+    }
+
+    /** Time from losing the connection to being connected again, in ms. */
+    KllSketch getReconnectTimes() {
+        return reconnectTimes;
+    }
+
+    /** Time from reconnecting to the first data message, in ms. */
+    KllSketch getFirstSampleTimes() {
+        return firstSampleTimes;
+    }
+
+    private void scheduleAttempt() {
+        if (stopped) {
+            return;
+        }
+        long delay = backoff.nextDelayMs();
+        Log.w(TAG, "Next connection attempt in " + delay + " ms (attempt " + backoff.getAttempt() + ")");
+        handler.removeCallbacks(attemptRunnable);
+        handler.postDelayed(attemptRunnable, delay);
+    }
+
+    private void probeAndConnect() {
+        if (connecting || stopped || isConnected()) {
+            return;
+        }
+        connecting = true;
+        try {
+            probeExecutor.execute(
+                    () -> {
+                        String best = probes.firstReachable();
+                        handler.post(() -> connectTo(best));
+                    });
+        } catch (RuntimeException e) {
+            // Executor shut down by stop()
+            connecting = false;
+        }
+    }
+
+    private void connectTo(String serverUri) {
+        if (stopped) {
+            connecting = false;
+            return;
+        }
+        if (serverUri == null) {
+            Log.w(TAG, "No broker reachable");
+            connecting = false;
+            scheduleAttempt();
+            return;
+        }
+        options.setServerURIs(new String[]{serverUri});
+        try {
+            client.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    onConnected(serverUri);
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    Log.w(TAG, "Failed to connect to: " + serverUri + " " + exception);
+                    connecting = false;
+                    scheduleAttempt();
+                }
+            });
+        } catch (MqttException e) {
+            Log.w(TAG, "Failed to connect to: " + serverUri + " " + e);
+            connecting = false;
+            scheduleAttempt();
+        }
+    }
+
+    private void onConnected(String serverUri) {
+        connecting = false;
+        currentServerUri = serverUri;
+        backoff.reset();
+        long now = SystemClock.elapsedRealtime();
+        boolean reconnect = everConnected;
+        everConnected = true;
+        if (lostAtMs >= 0) {
+            reconnectTimes.update(now - lostAtMs);
+            lostAtMs = -1;
+            Log.w(TAG, String.format(Locale.US, "Reconnected to %s, reconnect p50 %.0f ms p90 %.0f ms over %d outages",
+                    serverUri, reconnectTimes.getQuantile(0.5f), reconnectTimes.getQuantile(0.9f),
+                    reconnectTimes.getCount()));
+        }
+        reconnectedAtMs = now;
+        awaitingFirstSample = reconnect;
+        listener.onConnected(serverUri, reconnect);
+    }
+}
@@ -0,0 +1,37 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Holds the output of a channel until the input moves more than the band away from it. Placed at
+ * the end of the chain it stops the remaining jitter from reaching the bars and labels at all.
+ */
+public final class DeadBandFilter implements ChannelFilter {
+
+    private final float band;
+    private final float[] output;
+    private final boolean[] primed;
+
+    public DeadBandFilter(int channels, float band) {
+        if (!(band >= 0f)) {
+            throw new IllegalArgumentException("band must not be negative");
+        }
+        this.band = band;
+        this.output = new float[channels];
+        this.primed = new boolean[channels];
+    }
+
+    @Override
+    public float filter(int channel, float value) {
+        if (!primed[channel] || Math.abs(value - output[channel]) > band) {
+            primed[channel] = true;
+            output[channel] = value;
+        }
+        return output[channel];
+    }
+
+    @Override
+    public void reset() {
+        for (int channel = 0; channel < primed.length; channel++) {
+            primed[channel] = false;
+        }
+    }
+}
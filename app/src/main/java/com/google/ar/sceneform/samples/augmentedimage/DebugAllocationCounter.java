@@ -0,0 +1,25 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Debug;
+
+/**
+ * Allocation counters of the calling thread from the runtime, for debug builds only. The
+ * counting itself slows allocation down, it is started once and never stopped.
+ */
+@SuppressWarnings("deprecation")
+final class DebugAllocationCounter implements AllocationBudget.Counter {
+
+    DebugAllocationCounter() {
+        Debug.startAllocCounting();
+    }
+
+    @Override
+    public long getCount() {
+        return Debug.getThreadAllocCount();
+    }
+
+    @Override
+    public long getBytes() {
+        return Debug.getThreadAllocSize();
+    }
+}
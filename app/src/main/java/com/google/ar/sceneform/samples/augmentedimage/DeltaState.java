@@ -0,0 +1,145 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Per-channel state rebuilt from sparse delta messages.
+ *
+ * Every message carries a sequence number. A keyframe sets every channel, a delta only the
+ * channels that changed. Each channel remembers the sequence number of its last update, so a
+ * delta arriving late never overwrites a newer value. Gaps, reordering and duplicates are told
+ * apart by a {@link SequenceTracker}. After a gap, or before the first keyframe, the state can't
+ * be trusted and {@link #needsKeyframe()} stays true until the next keyframe.
+ *
+ * A keyframe is authoritative: one too old to place means the sender started over, e.g. after a
+ * gateway restart, so tracking restarts from its number and it is applied. The channels are
+ * rebased on the new numbering, the same happens when the tracker itself sees a restart.
+ *
+ * Applying a message costs in proportion to the channels it carries, the channels it actually
+ * changed are listed by {@link #getChangedChannel}. Does not allocate.
+ */
+public final class DeltaState {
+
+    public static final int APPLIED = 0;
+    /** Applied, but messages were missed so some channels may be out of date. */
+    public static final int GAP = 1;
+    /** Already seen or too old to place, nothing applied. */
+    public static final int IGNORED = 2;
+
+    private final float[] values;
+    private final int[] channelSequence;
+    private final boolean[] hasValue;
+    private final int[] changed;
+    private int changedCount;
+    private final SequenceTracker sequences = new SequenceTracker();
+    private boolean needsKeyframe = true;
+    private long keyframes;
+    private long deltas;
+
+    public DeltaState(int channelCount) {
+        values = new float[channelCount];
+        channelSequence = new int[channelCount];
+        hasValue = new boolean[channelCount];
+        changed = new int[channelCount];
+    }
+
+    public int getChannelCount() {
+        return values.length;
+    }
+
+    /** Current value of every channel, not to be modified. */
+    public float[] getValues() {
+        return values;
+    }
+
+    /** Number of channels whose value changed with the last applied message. */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public int getChangedChannel(int i) {
+        return changed[i];
+    }
+
+    public boolean needsKeyframe() {
+        return needsKeyframe;
+    }
+
+    public SequenceTracker getSequences() {
+        return sequences;
+    }
+
+    public long getKeyframeCount() {
+        return keyframes;
+    }
+
+    public long getDeltaCount() {
+        return deltas;
+    }
+
+    /** Sets every channel from full[0 .. getChannelCount() - 1]. */
+    public int applyKeyframe(int sequence, float[] full) {
+        int kind = sequences.accept(sequence);
+        if (kind == SequenceTracker.TOO_OLD) {
+            sequences.restart();
+            kind = sequences.accept(sequence);
+            rebase(sequence);
+        } else if (kind == SequenceTracker.RESTARTED) {
+            rebase(sequence);
+        } else if (kind == SequenceTracker.DUPLICATE) {
+            return IGNORED;
+        }
+        keyframes++;
+        changedCount = 0;
+        for (int channel = 0; channel < values.length; channel++) {
+            set(channel, sequence, full[channel]);
+        }
+        // A keyframe older than some applied delta still leaves those newer channels alone.
+        needsKeyframe = false;
+        return APPLIED;
+    }
+
+    /** Sets channels[i] to deltaValues[i] for i below count. Out of range channels are skipped. */
+    public int applyDelta(int sequence, int[] channels, float[] deltaValues, int count) {
+        int kind = sequences.accept(sequence);
+        if (kind == SequenceTracker.DUPLICATE || kind == SequenceTracker.TOO_OLD) {
+            return IGNORED;
+        }
+        if (kind == SequenceTracker.RESTARTED) {
+            rebase(sequence);
+        }
+        deltas++;
+        changedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int channel = channels[i];
+            if (channel >= 0 && channel < values.length) {
+                set(channel, sequence, deltaValues[i]);
+            }
+        }
+        if (kind == SequenceTracker.GAP || kind == SequenceTracker.FIRST || kind == SequenceTracker.RESTARTED) {
+            needsKeyframe = true;
+        }
+        return needsKeyframe ? GAP : APPLIED;
+    }
+
+    // Every channel becomes older than sequence, whatever numbers set it before the restart.
+    private void rebase(int sequence) {
+        for (int channel = 0; channel < values.length; channel++) {
+            channelSequence[channel] = sequence - 1;
+        }
+    }
+
+    private void set(int channel, int sequence, float value) {
+        if (hasValue[channel] && sequence - channelSequence[channel] < 0) {
+            // A later message already set this channel
+            return;
+        }
+        channelSequence[channel] = sequence;
+        if (!hasValue[channel] || values[channel] != value) {
+            values[channel] = value;
+            // A channel repeated within one message is only listed while there is room
+            if (changedCount < changed.length) {
+                changed[changedCount++] = channel;
+            }
+        }
+        hasValue[channel] = true;
+    }
+}
@@ -0,0 +1,397 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Computed channels such as total load, centre of pressure or left/right ratio, declared as
+ * expressions over the raw channels.
+ *
+ * All expressions are parsed once and compiled into one flat stack program. Evaluating every
+ * derived channel is then a single pass over that program, reading from and writing into the same
+ * float[] of channel values: raw channels come first, derived channels follow in declaration
+ * order, so an expression may use any raw channel and any derived channel declared before it.
+ * Evaluation does not allocate.
+ *
+ * Expressions support numbers, channel names, + - * / with the usual precedence, unary minus,
+ * parentheses and the functions min(a, b), max(a, b), abs(x) and sqrt(x).
+ *
+ * Config format (derived_channels.json in the assets):
+ * <pre>
+ * {
+ *   "channels": [
+ *     { "name": "total", "expr": "left + mid + right + back + foot" },
+ *     { "name": "lr_ratio", "expr": "left / max(right, 0.001)" }
+ *   ]
+ * }
+ * </pre>
+ */
+public final class DerivedChannels {
+
+    private static final int OP_LOAD = 0;
+    private static final int OP_CONST = 1;
+    private static final int OP_ADD = 2;
+    private static final int OP_SUB = 3;
+    private static final int OP_MUL = 4;
+    private static final int OP_DIV = 5;
+    private static final int OP_NEG = 6;
+    private static final int OP_MIN = 7;
+    private static final int OP_MAX = 8;
+    private static final int OP_ABS = 9;
+    private static final int OP_SQRT = 10;
+    private static final int OP_STORE = 11;
+
+    private final String[] names;
+    private final int inputCount;
+    private final int[] code;
+    private final float[] constants;
+    private final float[] stack;
+
+    private DerivedChannels(String[] names, int inputCount, int[] code, float[] constants, int maxStack) {
+        this.names = names;
+        this.inputCount = inputCount;
+        this.code = code;
+        this.constants = constants;
+        this.stack = new float[Math.max(maxStack, 1)];
+    }
+
+    /** Number of derived channels. */
+    public int getCount() {
+        return names.length;
+    }
+
+    public String getName(int derived) {
+        return names[derived];
+    }
+
+    /** Index in the values array of a derived channel, or -1 if there is none with that name. */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return inputCount + i;
+            }
+        }
+        return -1;
+    }
+
+    /** Input channel names followed by the derived channel names, in values array order. */
+    public String[] allChannelNames(String[] inputNames) {
+        String[] all = Arrays.copyOf(inputNames, inputNames.length + names.length);
+        System.arraycopy(names, 0, all, inputNames.length, names.length);
+        return all;
+    }
+
+    /**
+     * Computes every derived channel. values holds the input channels at 0 .. inputCount - 1 and
+     * receives the derived channels after them, so it needs inputCount + getCount() entries.
+     */
+    public void evaluate(float[] values) {
+        final int[] code = this.code;
+        final float[] stack = this.stack;
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case OP_LOAD:
+                    stack[sp++] = values[code[pc++]];
+                    break;
+                case OP_CONST:
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case OP_ADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case OP_SUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case OP_MUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case OP_DIV:
+                    sp--;
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                case OP_NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case OP_MIN:
+                    sp--;
+                    stack[sp - 1] = Math.min(stack[sp - 1], stack[sp]);
+                    break;
+                case OP_MAX:
+                    sp--;
+                    stack[sp - 1] = Math.max(stack[sp - 1], stack[sp]);
+                    break;
+                case OP_ABS:
+                    stack[sp - 1] = Math.abs(stack[sp - 1]);
+                    break;
+                case OP_SQRT:
+                    stack[sp - 1] = (float) Math.sqrt(stack[sp - 1]);
+                    break;
+                case OP_STORE:
+                    values[code[pc++]] = stack[--sp];
+                    break;
+                default:
+                    throw new IllegalStateException("Bad opcode at " + (pc - 1));
+            }
+        }
+    }
+
+    /** Derived channels without any channel, evaluation does nothing. */
+    public static DerivedChannels empty(int inputCount) {
+        return new DerivedChannels(new String[0], inputCount, new int[0], new float[0], 0);
+    }
+
+    public static DerivedChannels fromJson(JSONObject json, String[] inputNames) throws JSONException {
+        JSONArray list = json.getJSONArray("channels");
+        String[] names = new String[list.length()];
+        String[] expressions = new String[list.length()];
+        for (int i = 0; i < names.length; i++) {
+            JSONObject channel = list.getJSONObject(i);
+            names[i] = channel.getString("name");
+            expressions[i] = channel.getString("expr");
+        }
+        try {
+            return compile(inputNames, names, expressions);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles derived channels, names[i] being computed by expressions[i].
+     *
+     * @throws IllegalArgumentException on a syntax error or an unknown channel or function
+     */
+    public static DerivedChannels compile(String[] inputNames, String[] names, String[] expressions) {
+        Compiler compiler = new Compiler(inputNames, names);
+        for (int i = 0; i < names.length; i++) {
+            compiler.compileChannel(i, expressions[i]);
+        }
+        return new DerivedChannels(names.clone(), inputNames.length,
+                Arrays.copyOf(compiler.code, compiler.codeLength),
+                Arrays.copyOf(compiler.constants, compiler.constantCount),
+                compiler.maxDepth);
+    }
+
+    /** Recursive descent parser emitting stack code while it parses. */
+    private static final class Compiler {
+        private final String[] inputNames;
+        private final String[] names;
+        // Derived channels compiled so far, later ones can't be referenced yet.
+        private int available;
+
+        int[] code = new int[64];
+        int codeLength;
+        float[] constants = new float[16];
+        int constantCount;
+        int depth;
+        int maxDepth;
+
+        private String source;
+        private int position;
+
+        Compiler(String[] inputNames, String[] names) {
+            this.inputNames = inputNames;
+            this.names = names;
+        }
+
+        void compileChannel(int derived, String expression) {
+            source = expression;
+            position = 0;
+            depth = 0;
+            parseExpression();
+            skipSpaces();
+            if (position != source.length()) {
+                throw error("Unexpected '" + source.charAt(position) + "'");
+            }
+            emit(OP_STORE, inputNames.length + derived, -1);
+            available = derived + 1;
+        }
+
+        private void parseExpression() {
+            parseTerm();
+            while (true) {
+                if (accept('+')) {
+                    parseTerm();
+                    emit(OP_ADD, -1);
+                } else if (accept('-')) {
+                    parseTerm();
+                    emit(OP_SUB, -1);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void parseTerm() {
+            parseUnary();
+            while (true) {
+                if (accept('*')) {
+                    parseUnary();
+                    emit(OP_MUL, -1);
+                } else if (accept('/')) {
+                    parseUnary();
+                    emit(OP_DIV, -1);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void parseUnary() {
+            if (accept('-')) {
+                parseUnary();
+                emit(OP_NEG, 0);
+            } else {
+                parsePrimary();
+            }
+        }
+
+        private void parsePrimary() {
+            skipSpaces();
+            if (accept('(')) {
+                parseExpression();
+                expect(')');
+                return;
+            }
+            if (position >= source.length()) {
+                throw error("Unexpected end of expression");
+            }
+            char c = source.charAt(position);
+            if (Character.isDigit(c) || c == '.') {
+                int start = position;
+                while (position < source.length()
+                        && (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+                    position++;
+                }
+                float value;
+                try {
+                    value = Float.parseFloat(source.substring(start, position));
+                } catch (NumberFormatException e) {
+                    throw error("Bad number");
+                }
+                emit(OP_CONST, addConstant(value), 1);
+                return;
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int start = position;
+                while (position < source.length()
+                        && (Character.isLetterOrDigit(source.charAt(position)) || source.charAt(position) == '_')) {
+                    position++;
+                }
+                String identifier = source.substring(start, position);
+                if (accept('(')) {
+                    parseCall(identifier);
+                } else {
+                    emit(OP_LOAD, channelIndex(identifier), 1);
+                }
+                return;
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        private void parseCall(String function) {
+            switch (function) {
+                case "min":
+                case "max":
+                    parseExpression();
+                    expect(',');
+                    parseExpression();
+                    expect(')');
+                    emit(function.equals("min") ? OP_MIN : OP_MAX, -1);
+                    break;
+                case "abs":
+                case "sqrt":
+                    parseExpression();
+                    expect(')');
+                    emit(function.equals("abs") ? OP_ABS : OP_SQRT, 0);
+                    break;
+                default:
+                    throw error("Unknown function " + function);
+            }
+        }
+
+        private int channelIndex(String name) {
+            for (int i = 0; i < inputNames.length; i++) {
+                if (inputNames[i].equals(name)) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < available; i++) {
+                if (names[i].equals(name)) {
+                    return inputNames.length + i;
+                }
+            }
+            throw error("Unknown channel " + name);
+        }
+
+        private int addConstant(float value) {
+            for (int i = 0; i < constantCount; i++) {
+                if (Float.compare(constants[i], value) == 0) {
+                    return i;
+                }
+            }
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            return constantCount++;
+        }
+
+        private void emit(int op, int stackChange) {
+            ensureCode(1);
+            code[codeLength++] = op;
+            adjustDepth(stackChange);
+        }
+
+        private void emit(int op, int operand, int stackChange) {
+            ensureCode(2);
+            code[codeLength++] = op;
+            code[codeLength++] = operand;
+            adjustDepth(stackChange);
+        }
+
+        private void adjustDepth(int change) {
+            depth += change;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void ensureCode(int extra) {
+            if (codeLength + extra > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (position < source.length() && source.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private void skipSpaces() {
+            while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + position + " in \"" + source + "\"");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Exponentially weighted moving average, y += alpha * (x - y). The first reading of a channel is
+ * passed through unchanged so the output doesn't ramp up from zero.
+ */
+public final class EwmaFilter implements ChannelFilter {
+
+    private final float alpha;
+    private final float[] average;
+    private final boolean[] primed;
+
+    /** @param alpha weight of the newest reading, 0 < alpha <= 1, smaller is smoother */
+    public EwmaFilter(int channels, float alpha) {
+        if (!(alpha > 0f && alpha <= 1f)) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]");
+        }
+        this.alpha = alpha;
+        this.average = new float[channels];
+        this.primed = new boolean[channels];
+    }
+
+    @Override
+    public float filter(int channel, float value) {
+        if (!primed[channel]) {
+            primed[channel] = true;
+            average[channel] = value;
+        } else {
+            average[channel] += alpha * (value - average[channel]);
+        }
+        return average[channel];
+    }
+
+    @Override
+    public void reset() {
+        for (int channel = 0; channel < primed.length; channel++) {
+            primed[channel] = false;
+        }
+    }
+}
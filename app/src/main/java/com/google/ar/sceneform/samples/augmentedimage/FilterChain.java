@@ -0,0 +1,95 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Ordered chain of {@link ChannelFilter}s applied to every channel of a sample.
+ *
+ * Runs on the thread that decodes the messages, right after decode and before anything is shown.
+ * The chain and its filters are built once; processing a sample only walks preallocated arrays.
+ *
+ * Config format (filters.json in the assets):
+ * <pre>
+ * {
+ *   "filters": [
+ *     { "type": "median", "window": 5 },
+ *     { "type": "ewma", "alpha": 0.3 },
+ *     { "type": "kalman", "process_noise": 0.05, "measurement_noise": 2.0 },
+ *     { "type": "deadband", "band": 0.5 }
+ *   ]
+ * }
+ * </pre>
+ */
+public final class FilterChain {
+
+    private final int channels;
+    private final ChannelFilter[] filters;
+
+    public FilterChain(int channels, ChannelFilter... filters) {
+        this.channels = channels;
+        this.filters = filters.clone();
+    }
+
+    /** Chain without any filter, values pass through unchanged. */
+    public static FilterChain passThrough(int channels) {
+        return new FilterChain(channels);
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    public int getFilterCount() {
+        return filters.length;
+    }
+
+    public float filter(int channel, float value) {
+        for (ChannelFilter filter : filters) {
+            value = filter.filter(channel, value);
+        }
+        return value;
+    }
+
+    /** Filters the first count channels of in into out, in and out may be the same array. */
+    public void process(float[] in, float[] out, int count) {
+        for (int channel = 0; channel < count; channel++) {
+            out[channel] = filter(channel, in[channel]);
+        }
+    }
+
+    public void reset() {
+        for (ChannelFilter filter : filters) {
+            filter.reset();
+        }
+    }
+
+    public static FilterChain fromJson(JSONObject json, int channels) throws JSONException {
+        JSONArray list = json.getJSONArray("filters");
+        ChannelFilter[] filters = new ChannelFilter[list.length()];
+        for (int i = 0; i < filters.length; i++) {
+            JSONObject filter = list.getJSONObject(i);
+            String type = filter.getString("type");
+            switch (type) {
+                case "median":
+                    filters[i] = new MedianFilter(channels, filter.getInt("window"));
+                    break;
+                case "ewma":
+                    filters[i] = new EwmaFilter(channels, (float) filter.getDouble("alpha"));
+                    break;
+                case "kalman":
+                    filters[i] = new KalmanFilter(channels,
+                            (float) filter.getDouble("process_noise"),
+                            (float) filter.getDouble("measurement_noise"));
+                    break;
+                case "deadband":
+                    filters[i] = new DeadBandFilter(channels, (float) filter.getDouble("band"));
+                    break;
+                default:
+                    throw new JSONException("Unknown filter type: " + type);
+            }
+        }
+        return new FilterChain(channels, filters);
+    }
+}
@@ -0,0 +1,344 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Summaries of every chair in the facility, from the samples each one publishes on its own topic
+ * under a common prefix (subscribed with a wildcard), and the chairs ranked by current load or by
+ * how long they have been above the alert load.
+ *
+ * Chairs get an int id the first time they are heard of and from then on everything is kept in
+ * primitive arrays indexed by it. Both rankings are kept up to date by a {@link TopKTracker}, so a
+ * sample costs a hash lookup on the topic, a scan of the payload and O(log n) per ranking. The
+ * listener only hears about samples that changed who is in the shown ranking or their order.
+ * Payloads are scanned as received, bytes or chars, so samples don't allocate once a chair is
+ * known. Not thread safe, call from one thread.
+ */
+public final class FleetAggregator {
+
+    public interface Listener {
+        void onRankingChanged(FleetAggregator fleet);
+    }
+
+    public static final int BY_LOAD = 0;
+    public static final int BY_ALERT_DURATION = 1;
+
+    // What the app shows: the ten heaviest chairs, in alert from 300 on
+    public static final int DEFAULT_SHOWN = 10;
+    public static final float DEFAULT_ALERT_LOAD = 300f;
+
+    private static final String VALUE_KEY = "\"value\"";
+
+    private final String topicPrefix;
+    private final float alertLoad;
+    private final HashMap<String, Integer> idsByTopic;
+    private final String[] names;
+    private final float[] loads;
+    private final long[] lastSampleMs;
+    // Since when the load has been at or above alertLoad, -1 when it isn't
+    private final long[] alertSinceMs;
+    private final long[] sampleCounts;
+    private int chairCount;
+    private long rejectedCount;
+    // Payload bytes seen as chars, reused
+    private final ByteChars payloadChars = new ByteChars();
+
+    private final TopKTracker byLoad;
+    private final TopKTracker byAlertDuration;
+    private int ranking = BY_LOAD;
+    private Listener listener;
+
+    /**
+     * @param topicPrefix the topic of a chair is this prefix followed by the chair's name
+     * @param capacity chairs tracked, samples of further chairs are ignored
+     * @param shown length of the rankings
+     * @param alertLoad load at or above which a chair counts as in alert
+     */
+    public FleetAggregator(String topicPrefix, int capacity, int shown, float alertLoad) {
+        this.topicPrefix = topicPrefix;
+        this.alertLoad = alertLoad;
+        idsByTopic = new HashMap<>(capacity * 2);
+        names = new String[capacity];
+        loads = new float[capacity];
+        lastSampleMs = new long[capacity];
+        alertSinceMs = new long[capacity];
+        sampleCounts = new long[capacity];
+        byLoad = new TopKTracker(capacity, shown);
+        byAlertDuration = new TopKTracker(capacity, shown);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** BY_LOAD or BY_ALERT_DURATION. */
+    public void setRanking(int ranking) {
+        if (ranking != this.ranking) {
+            this.ranking = ranking;
+            notifyListener();
+        }
+    }
+
+    public int getRanking() {
+        return ranking;
+    }
+
+    public boolean handles(String topic) {
+        return topic.startsWith(topicPrefix);
+    }
+
+    /**
+     * Takes a sample as the MQTT client hands it over, UTF-8 bytes, without decoding them.
+     *
+     * @return false if the topic isn't a chair topic or the sample has no values
+     */
+    public boolean onSample(String topic, byte[] payload, long nowMs) {
+        payloadChars.bytes = payload;
+        return onSample(topic, payloadChars, nowMs);
+    }
+
+    /**
+     * Takes a sample published by a chair, {"value": {"name": number, ...}}. The load of the chair
+     * is the sum of the values.
+     *
+     * @return false if the topic isn't a chair topic or the sample has no values
+     */
+    public boolean onSample(String topic, CharSequence payload, long nowMs) {
+        if (!handles(topic)) {
+            return false;
+        }
+        float load = sumValues(payload);
+        if (Float.isNaN(load)) {
+            return false;
+        }
+        int id = idOf(topic);
+        if (id < 0) {
+            return false;
+        }
+
+        loads[id] = load;
+        lastSampleMs[id] = nowMs;
+        sampleCounts[id]++;
+        if (load < alertLoad) {
+            alertSinceMs[id] = -1;
+        } else if (alertSinceMs[id] < 0) {
+            alertSinceMs[id] = nowMs;
+        }
+
+        boolean loadChanged = byLoad.update(id, load);
+        boolean alertChanged = byAlertDuration.update(id, getAlertDurationMs(id, nowMs));
+        if (ranking == BY_LOAD ? loadChanged : alertChanged) {
+            notifyListener();
+        }
+        return true;
+    }
+
+    public int getChairCount() {
+        return chairCount;
+    }
+
+    /** Samples ignored because capacity chairs were already tracked. */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Chairs in the current ranking, at most the shown length. */
+    public int getRankedCount() {
+        return tracker().getCount();
+    }
+
+    /** Id of the chair at a rank of the current ranking, 0 being the most loaded or longest in alert. */
+    public int getRankedChair(int rank) {
+        return tracker().getId(rank);
+    }
+
+    public String getName(int chair) {
+        return names[chair];
+    }
+
+    public float getLoad(int chair) {
+        return loads[chair];
+    }
+
+    public long getLastSampleMs(int chair) {
+        return lastSampleMs[chair];
+    }
+
+    public long getSampleCount(int chair) {
+        return sampleCounts[chair];
+    }
+
+    /** How long the chair has been in alert as of nowMs, 0 if it isn't. */
+    public long getAlertDurationMs(int chair, long nowMs) {
+        return alertSinceMs[chair] < 0 ? 0 : nowMs - alertSinceMs[chair];
+    }
+
+    private TopKTracker tracker() {
+        return ranking == BY_LOAD ? byLoad : byAlertDuration;
+    }
+
+    private void notifyListener() {
+        if (listener != null) {
+            listener.onRankingChanged(this);
+        }
+    }
+
+    private int idOf(String topic) {
+        Integer id = idsByTopic.get(topic);
+        if (id != null) {
+            return id;
+        }
+        if (chairCount == names.length) {
+            rejectedCount++;
+            return -1;
+        }
+        int chair = chairCount++;
+        names[chair] = topic.substring(topicPrefix.length());
+        alertSinceMs[chair] = -1;
+        idsByTopic.put(topic, chair);
+        return chair;
+    }
+
+    /**
+     * Sums the numbers of the "value" object of a sample without building a JSON tree, NaN if
+     * there is none. Strings and nested objects inside it are not expected and not supported.
+     */
+    static float sumValues(CharSequence payload) {
+        int i = indexOf(payload, VALUE_KEY);
+        if (i < 0) {
+            return Float.NaN;
+        }
+        i = indexOf(payload, '{', i + VALUE_KEY.length());
+        if (i < 0) {
+            return Float.NaN;
+        }
+        int length = payload.length();
+        double sum = 0;
+        int count = 0;
+        for (i++; i < length; i++) {
+            char c = payload.charAt(i);
+            if (c == '}') {
+                return count == 0 ? Float.NaN : (float) sum;
+            }
+            if (c != ':') {
+                continue;
+            }
+            // Skip blanks after the colon
+            i++;
+            while (i < length && payload.charAt(i) <= ' ') {
+                i++;
+            }
+            int end = numberEnd(payload, i);
+            if (end > i) {
+                sum += parseNumber(payload, i, end);
+                count++;
+            }
+            i = end - 1;
+        }
+        return Float.NaN;
+    }
+
+    private static int indexOf(CharSequence s, String target) {
+        int last = s.length() - target.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < target.length() && s.charAt(i + j) == target.charAt(j)) {
+                j++;
+            }
+            if (j == target.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int numberEnd(CharSequence s, int start) {
+        int i = start;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    // Parses a JSON number in s[start, end) without allocating
+    private static double parseNumber(CharSequence s, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (s.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        double mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    scale--;
+                }
+            } else if (c == '.') {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExponent = s.charAt(i) == '-';
+                i++;
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                exponent = exponent * 10 + (s.charAt(i) - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        double value = scale == 0 ? mantissa : mantissa * Math.pow(10, scale);
+        return negative ? -value : value;
+    }
+
+    // UTF-8 bytes as chars one by one. Bytes of multi-byte characters are all above the ASCII
+    // the scan looks for, so names in any language pass through.
+    private static final class ByteChars implements CharSequence {
+        byte[] bytes;
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.util.Arrays;
+
+/**
+ * Plain Java vertex data for every bar of one chair merged into a single mesh.
+ *
+ * Each bar is a copy of a unit shape template (cube, cylinder or arrow) that spans -0.5..0.5 on
+ * every axis and grows along Z, the same axis the old scaled nodes grew along. Changing the length
+ * of one bar only rewrites that bar's slice of the position array and marks it dirty, so the
+ * renderer can copy just the changed vertices into the Sceneform vertex list.
+ *
+ * Bars are coloured like the pressure mat: every vertex of a bar points at one texel of a palette
+ * texture, so all bars share one material and one draw call and a colour change only rewrites the
+ * bar's texture coordinates.
+ *
+ * This class has no Android dependency on purpose, so mesh generation can be checked on the JVM.
+ */
+public final class GraphMesh {
+
+    public enum Shape {
+        CUBE,
+        CYLINDER,
+        ARROW
+    }
+
+    // Number of segments around the cylinder and arrow, enough to look round at arm's length.
+    private static final int RADIAL_SEGMENTS = 16;
+
+    // Arrow proportions in template space, the head takes the last 35% of the length.
+    private static final float ARROW_SHAFT_RADIUS = 0.2f;
+    private static final float ARROW_HEAD_RADIUS = 0.5f;
+    private static final float ARROW_HEAD_START = 0.15f;
+
+    private final Shape shape;
+    private final int barCount;
+    private final Template template;
+
+    // xyz per bar, the centre of each bar relative to the chair anchor
+    private final float[] centers;
+    private final float width;
+    private final float[] lengths;
+    // Palette coordinate of every bar, NaN until set
+    private final float[] barUs;
+
+    private final float[] positions;
+    private final float[] normals;
+    private final float[] uvs;
+    private final int[] triangleIndices;
+
+    // Range of bars whose positions or texture coordinates changed since the last clearDirty().
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = -1;
+
+    /**
+     * @param shape   template copied for every bar
+     * @param centers xyz centre of every bar, so its length is a multiple of 3
+     * @param width   width (X and Y extent) of every bar in meters
+     * @param initialLength length (Z extent) every bar starts with
+     */
+    public GraphMesh(Shape shape, float[] centers, float width, float initialLength) {
+        if (centers.length % 3 != 0) {
+            throw new IllegalArgumentException("centers must hold xyz triples");
+        }
+        this.shape = shape;
+        this.barCount = centers.length / 3;
+        this.centers = centers.clone();
+        this.width = width;
+        this.template = templateFor(shape);
+
+        int templateVertices = template.getVertexCount();
+        int vertexCount = templateVertices * barCount;
+        positions = new float[vertexCount * 3];
+        normals = new float[vertexCount * 3];
+        uvs = new float[vertexCount * 2];
+        triangleIndices = new int[template.indices.length * barCount];
+        lengths = new float[barCount];
+        barUs = new float[barCount];
+        Arrays.fill(barUs, Float.NaN);
+
+        for (int bar = 0; bar < barCount; bar++) {
+            int vertexStart = bar * templateVertices;
+            System.arraycopy(template.normals, 0, normals, vertexStart * 3, templateVertices * 3);
+            System.arraycopy(template.uvs, 0, uvs, vertexStart * 2, templateVertices * 2);
+
+            int indexStart = bar * template.indices.length;
+            for (int i = 0; i < template.indices.length; i++) {
+                triangleIndices[indexStart + i] = vertexStart + template.indices[i];
+            }
+
+            lengths[bar] = initialLength;
+            writeBar(bar);
+        }
+        clearDirty();
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public int getBarCount() {
+        return barCount;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getVerticesPerBar() {
+        return template.getVertexCount();
+    }
+
+    /** Triangle indices of one bar, every bar's indices are contiguous in bar order. */
+    public int getIndicesPerBar() {
+        return template.indices.length;
+    }
+
+    public float getBarLength(int bar) {
+        return lengths[bar];
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public float[] getUvs() {
+        return uvs;
+    }
+
+    public int[] getTriangleIndices() {
+        return triangleIndices;
+    }
+
+    /**
+     * Rewrites the vertices of a single bar. Returns false and touches nothing when the length is
+     * unchanged, so repeated identical samples cost no vertex work at all.
+     */
+    public boolean setBarLength(int bar, float length) {
+        if (lengths[bar] == length) {
+            return false;
+        }
+        lengths[bar] = length;
+        writeBar(bar);
+        if (bar < dirtyFrom) dirtyFrom = bar;
+        if (bar > dirtyTo) dirtyTo = bar;
+        return true;
+    }
+
+    /**
+     * Points every vertex of a bar at palette texture coordinate (u, 0.5). Returns false and
+     * touches nothing when the bar already has that colour.
+     */
+    public boolean setBarU(int bar, float u) {
+        if (barUs[bar] == u) {
+            return false;
+        }
+        barUs[bar] = u;
+        int perBar = template.getVertexCount();
+        for (int v = bar * perBar; v < (bar + 1) * perBar; v++) {
+            uvs[v * 2] = u;
+            uvs[v * 2 + 1] = 0.5f;
+        }
+        if (bar < dirtyFrom) dirtyFrom = bar;
+        if (bar > dirtyTo) dirtyTo = bar;
+        return true;
+    }
+
+    public boolean isDirty() {
+        return dirtyTo >= 0;
+    }
+
+    /** First dirty bar, only meaningful while {@link #isDirty()}. */
+    public int getDirtyFrom() {
+        return dirtyFrom;
+    }
+
+    /** Last dirty bar (inclusive), only meaningful while {@link #isDirty()}. */
+    public int getDirtyTo() {
+        return dirtyTo;
+    }
+
+    public void clearDirty() {
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
+    }
+
+    private void writeBar(int bar) {
+        float cx = centers[bar * 3];
+        float cy = centers[bar * 3 + 1];
+        float cz = centers[bar * 3 + 2];
+        float length = lengths[bar];
+
+        float[] src = template.positions;
+        int offset = bar * template.getVertexCount() * 3;
+        for (int i = 0; i < src.length; i += 3) {
+            positions[offset + i] = cx + src[i] * width;
+            positions[offset + i + 1] = cy + src[i + 1] * width;
+            positions[offset + i + 2] = cz + src[i + 2] * length;
+        }
+    }
+
+    private static Template templateFor(Shape shape) {
+        Template template = new Template();
+        switch (shape) {
+            case CUBE:
+                template.addCube();
+                break;
+            case CYLINDER:
+                template.addFrustum(0.5f, -0.5f, 0.5f, 0.5f);
+                template.addDisk(0.5f, 0.5f, true);
+                template.addDisk(0.5f, -0.5f, false);
+                break;
+            case ARROW:
+                template.addFrustum(ARROW_SHAFT_RADIUS, -0.5f, ARROW_SHAFT_RADIUS, ARROW_HEAD_START);
+                template.addDisk(ARROW_SHAFT_RADIUS, -0.5f, false);
+                template.addFrustum(ARROW_HEAD_RADIUS, ARROW_HEAD_START, 0f, 0.5f);
+                template.addDisk(ARROW_HEAD_RADIUS, ARROW_HEAD_START, false);
+                break;
+        }
+        return template.trim();
+    }
+
+    /**
+     * Growable unit shape used only while building, trimmed to exact sizes afterwards. Triangles
+     * are wound counter-clockwise when seen from outside, which is what Sceneform treats as front.
+     */
+    private static final class Template {
+        float[] positions = new float[64 * 3];
+        float[] normals = new float[64 * 3];
+        float[] uvs = new float[64 * 2];
+        int[] indices = new int[64 * 3];
+        int vertexCount;
+        int indexCount;
+
+        int getVertexCount() {
+            return vertexCount;
+        }
+
+        void addCube() {
+            // normal, u axis, v axis for each face, chosen so that u x v = normal
+            float[][] faces = {
+                    {1, 0, 0, 0, 1, 0, 0, 0, 1},
+                    {-1, 0, 0, 0, 0, 1, 0, 1, 0},
+                    {0, 1, 0, 0, 0, 1, 1, 0, 0},
+                    {0, -1, 0, 1, 0, 0, 0, 0, 1},
+                    {0, 0, 1, 1, 0, 0, 0, 1, 0},
+                    {0, 0, -1, 0, 1, 0, 1, 0, 0}
+            };
+            float[] corners = {-1, -1, 1, -1, 1, 1, -1, 1};
+            for (float[] f : faces) {
+                int first = vertexCount;
+                for (int c = 0; c < 4; c++) {
+                    float su = corners[c * 2] * 0.5f;
+                    float sv = corners[c * 2 + 1] * 0.5f;
+                    addVertex(
+                            f[0] * 0.5f + f[3] * su + f[6] * sv,
+                            f[1] * 0.5f + f[4] * su + f[7] * sv,
+                            f[2] * 0.5f + f[5] * su + f[8] * sv,
+                            f[0], f[1], f[2],
+                            su + 0.5f, sv + 0.5f);
+                }
+                addTriangle(first, first + 1, first + 2);
+                addTriangle(first, first + 2, first + 3);
+            }
+        }
+
+        /** Side wall around Z from radius r0 at z0 to radius r1 at z1, a cylinder or a cone. */
+        void addFrustum(float r0, float z0, float r1, float z1) {
+            float height = z1 - z0;
+            float slope = r0 - r1;
+            float normalLength = (float) Math.sqrt(height * height + slope * slope);
+            int first = vertexCount;
+            for (int i = 0; i <= RADIAL_SEGMENTS; i++) {
+                double angle = 2 * Math.PI * i / RADIAL_SEGMENTS;
+                float cos = (float) Math.cos(angle);
+                float sin = (float) Math.sin(angle);
+                float nx = cos * height / normalLength;
+                float ny = sin * height / normalLength;
+                float nz = slope / normalLength;
+                float u = (float) i / RADIAL_SEGMENTS;
+                addVertex(cos * r0, sin * r0, z0, nx, ny, nz, u, 0f);
+                addVertex(cos * r1, sin * r1, z1, nx, ny, nz, u, 1f);
+            }
+            for (int i = 0; i < RADIAL_SEGMENTS; i++) {
+                int bottom = first + i * 2;
+                int top = bottom + 1;
+                int nextBottom = bottom + 2;
+                int nextTop = bottom + 3;
+                addTriangle(bottom, nextBottom, nextTop);
+                addTriangle(bottom, nextTop, top);
+            }
+        }
+
+        /** Flat cap at height z facing +Z when up is true, -Z otherwise. */
+        void addDisk(float radius, float z, boolean up) {
+            float nz = up ? 1f : -1f;
+            int center = vertexCount;
+            addVertex(0f, 0f, z, 0f, 0f, nz, 0.5f, 0.5f);
+            for (int i = 0; i <= RADIAL_SEGMENTS; i++) {
+                double angle = 2 * Math.PI * i / RADIAL_SEGMENTS;
+                float cos = (float) Math.cos(angle);
+                float sin = (float) Math.sin(angle);
+                addVertex(cos * radius, sin * radius, z, 0f, 0f, nz, 0.5f + cos * 0.5f, 0.5f + sin * 0.5f);
+            }
+            for (int i = 0; i < RADIAL_SEGMENTS; i++) {
+                int ring = center + 1 + i;
+                if (up) {
+                    addTriangle(center, ring, ring + 1);
+                } else {
+                    addTriangle(center, ring + 1, ring);
+                }
+            }
+        }
+
+        private void addVertex(float x, float y, float z, float nx, float ny, float nz, float u, float v) {
+            if (vertexCount * 3 == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+                normals = Arrays.copyOf(normals, normals.length * 2);
+                uvs = Arrays.copyOf(uvs, uvs.length * 2);
+            }
+            int p = vertexCount * 3;
+            positions[p] = x;
+            positions[p + 1] = y;
+            positions[p + 2] = z;
+            normals[p] = nx;
+            normals[p + 1] = ny;
+            normals[p + 2] = nz;
+            uvs[vertexCount * 2] = u;
+            uvs[vertexCount * 2 + 1] = v;
+            vertexCount++;
+        }
+
+        private void addTriangle(int a, int b, int c) {
+            if (indexCount + 3 > indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[indexCount++] = a;
+            indices[indexCount++] = b;
+            indices[indexCount++] = c;
+        }
+
+        Template trim() {
+            positions = Arrays.copyOf(positions, vertexCount * 3);
+            normals = Arrays.copyOf(normals, vertexCount * 3);
+            uvs = Arrays.copyOf(uvs, vertexCount * 2);
+            indices = Arrays.copyOf(indices, indexCount);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * Health of the app as seen from the inside, published so a fleet of tablets can be watched from
+ * the broker: messages per second, decode and frame time p99, dropped and conflated samples,
+ * reconnects and heap. Configured by telemetry.json:
+ * <pre>
+ * {"interval_ms": 15000, "batch": 4, "max_payload_bytes": 2048}
+ * </pre>
+ * One record covers interval_ms, batch records go out in one message of at most
+ * max_payload_bytes, the oldest records are left out of a message that would be larger. The
+ * message then says how many in "left_out".
+ *
+ * Collection is double buffered. The collecting thread counts into the active window and, once
+ * per interval, calls {@link #swap} which hands the window over and continues in the other one.
+ * The writer thread turns the handed over window into a record with {@link #writeRecord} and
+ * gives it back. The collecting thread never waits: when the writer still has the previous window,
+ * the swap is skipped and the active window simply covers a longer interval.
+ */
+public final class HealthTelemetry {
+
+    public static final long DEFAULT_INTERVAL_MS = 15_000;
+    public static final int DEFAULT_BATCH = 4;
+    public static final int DEFAULT_MAX_PAYLOAD_BYTES = 2048;
+
+    private static final float P99 = 0.99f;
+
+    // Everything counted over one interval, collecting thread until handed over.
+    private static final class Window {
+        long startMs;
+        long endMs;
+        long messages;
+        long conflated;
+        final KllSketch decodeMicros = new KllSketch();
+        final KllSketch frameMs = new KllSketch();
+        // Stamped by swap
+        long dropped;
+        long reconnects;
+        long reconnectsTotal;
+        long heapUsedBytes;
+        long heapMaxBytes;
+
+        void reset(long nowMs) {
+            startMs = nowMs;
+            endMs = nowMs;
+            messages = 0;
+            conflated = 0;
+            decodeMicros.reset();
+            frameMs.reset();
+        }
+    }
+
+    private final String device;
+    private final long intervalMs;
+    private final int batch;
+    private final int maxPayloadBytes;
+
+    private Window active = new Window();
+    private Window standby = new Window();
+    // Window with the writer, null once it's been given back
+    private volatile Window handedOver;
+    private long lastDroppedTotal = -1;
+    private long lastReconnectsTotal = -1;
+    private long skippedSwaps;
+
+    // Writer thread only
+    private final ArrayDeque<JSONObject> records = new ArrayDeque<>();
+    // Of the batch being taken
+    private int recordsLeftOut;
+    private long recordsLeftOutTotal;
+
+    public HealthTelemetry(String device, long intervalMs, int batch, int maxPayloadBytes) {
+        if (intervalMs <= 0 || batch < 1 || maxPayloadBytes < 1) {
+            throw new IllegalArgumentException("Interval, batch and payload size must be positive");
+        }
+        this.device = device;
+        this.intervalMs = intervalMs;
+        this.batch = batch;
+        this.maxPayloadBytes = maxPayloadBytes;
+        active.reset(System.currentTimeMillis());
+    }
+
+    public static HealthTelemetry fromJson(JSONObject json, String device) {
+        return new HealthTelemetry(device,
+                json.optLong("interval_ms", DEFAULT_INTERVAL_MS),
+                json.optInt("batch", DEFAULT_BATCH),
+                json.optInt("max_payload_bytes", DEFAULT_MAX_PAYLOAD_BYTES));
+    }
+
+    public static HealthTelemetry withDefaults(String device) {
+        return new HealthTelemetry(device, DEFAULT_INTERVAL_MS, DEFAULT_BATCH, DEFAULT_MAX_PAYLOAD_BYTES);
+    }
+
+    /** How often to call {@link #swap}. */
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /** Records left out of a message to keep it under max_payload_bytes, so far. Writer thread only. */
+    public long getRecordsLeftOutTotal() {
+        return recordsLeftOutTotal;
+    }
+
+    /** Swaps skipped because the writer was still busy, collecting thread only. */
+    public long getSkippedSwaps() {
+        return skippedSwaps;
+    }
+
+    /** A message was decoded, collecting thread only. */
+    public void onMessage(long decodeNanos) {
+        active.messages++;
+        active.decodeMicros.update(decodeNanos / 1000f);
+    }
+
+    /** A frame was drawn, collecting thread only. */
+    public void onFrame(float frameMs) {
+        active.frameMs.update(frameMs);
+    }
+
+    /** A decoded sample was not drawn, collecting thread only. */
+    public void onConflated() {
+        active.conflated++;
+    }
+
+    /**
+     * Ends the interval and hands the window to the writer, collecting thread only. Counters
+     * the app keeps for itself are passed as totals.
+     *
+     * @param droppedTotal samples lost so far
+     * @param reconnectsTotal reconnects so far
+     * @return whether the writer should now call {@link #writeRecord}, false when it still has
+     * the previous window
+     */
+    public boolean swap(long nowMs, long droppedTotal, long reconnectsTotal, long heapUsedBytes, long heapMaxBytes) {
+        if (handedOver != null) {
+            skippedSwaps++;
+            return false;
+        }
+        Window window = active;
+        window.endMs = nowMs;
+        window.dropped = lastDroppedTotal < 0 ? droppedTotal : droppedTotal - lastDroppedTotal;
+        window.reconnects = lastReconnectsTotal < 0 ? reconnectsTotal : reconnectsTotal - lastReconnectsTotal;
+        window.reconnectsTotal = reconnectsTotal;
+        window.heapUsedBytes = heapUsedBytes;
+        window.heapMaxBytes = heapMaxBytes;
+        lastDroppedTotal = droppedTotal;
+        lastReconnectsTotal = reconnectsTotal;
+
+        active = standby;
+        active.reset(nowMs);
+        standby = window;
+        handedOver = window;
+        return true;
+    }
+
+    /**
+     * Turns the handed over window into a record and gives the window back, writer thread only.
+     *
+     * @return the payload to publish once a batch is complete, otherwise null
+     */
+    public String writeRecord() throws JSONException {
+        Window window = handedOver;
+        if (window == null) {
+            return null;
+        }
+        JSONObject record;
+        try {
+            record = toRecord(window);
+        } finally {
+            handedOver = null;
+        }
+        records.addLast(record);
+        return records.size() >= batch ? takeBatch() : null;
+    }
+
+    /** Whatever records are waiting as one payload, e.g. before closing, null when none. Writer thread only. */
+    public String flush() throws JSONException {
+        return records.isEmpty() ? null : takeBatch();
+    }
+
+    private String takeBatch() throws JSONException {
+        recordsLeftOut = 0;
+        String payload = toPayload();
+        while (utf8Length(payload) > maxPayloadBytes && records.size() > 1) {
+            records.removeFirst();
+            recordsLeftOut++;
+            payload = toPayload();
+        }
+        recordsLeftOutTotal += recordsLeftOut;
+        records.clear();
+        return payload;
+    }
+
+    private String toPayload() throws JSONException {
+        JSONObject payload = new JSONObject();
+        payload.put("device", device);
+        if (recordsLeftOut > 0) {
+            payload.put("left_out", recordsLeftOut);
+        }
+        JSONArray list = new JSONArray();
+        for (JSONObject record : records) {
+            list.put(record);
+        }
+        payload.put("records", list);
+        return payload.toString();
+    }
+
+    private static JSONObject toRecord(Window window) throws JSONException {
+        JSONObject record = new JSONObject();
+        long spanMs = Math.max(1, window.endMs - window.startMs);
+        record.put("t", window.endMs);
+        record.put("span_ms", spanMs);
+        record.put("msgs_s", round(window.messages * 1000.0 / spanMs));
+        // Left out when nothing was measured, JSON has no NaN
+        if (window.decodeMicros.getCount() > 0) {
+            record.put("decode_p99_us", round(window.decodeMicros.getQuantile(P99)));
+        }
+        if (window.frameMs.getCount() > 0) {
+            record.put("frame_p99_ms", round(window.frameMs.getQuantile(P99)));
+        }
+        record.put("dropped", window.dropped);
+        record.put("conflated", window.conflated);
+        record.put("reconnects", window.reconnects);
+        record.put("reconnects_total", window.reconnectsTotal);
+        record.put("heap_kb", window.heapUsedBytes / 1024);
+        record.put("heap_max_kb", window.heapMaxBytes / 1024);
+        return record;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
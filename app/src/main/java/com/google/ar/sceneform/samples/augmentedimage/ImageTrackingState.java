@@ -0,0 +1,75 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Debounced tracking state of one augmented image.
+ *
+ * ARCore reports an image as PAUSED, TRACKING (fully or at its last known pose) or STOPPED, and
+ * near the edge of the view it can flip between those from one frame to the next. Getting back to
+ * TRACKING counts at once. Any other change only counts once ARCore has reported it for settleMs
+ * without interruption, so a single bad frame changes nothing. Since ARCore only reports images
+ * whose state changed, {@link #tick} commits a pending state on frames without a report.
+ */
+public final class ImageTrackingState {
+
+    public enum State {
+        /** Not reported yet. */
+        NONE,
+        /** Detected but not tracked yet. */
+        DETECTED,
+        TRACKING,
+        /** Out of view, its pose is where it was last seen. */
+        LAST_KNOWN_POSE,
+        STOPPED
+    }
+
+    /** How long the app lets a state settle, a few frames at 30 fps. */
+    public static final long DEFAULT_SETTLE_MS = 300;
+
+    private final long settleMs;
+    private State state = State.NONE;
+    private State pending = State.NONE;
+    private long pendingSinceMs;
+
+    public ImageTrackingState(long settleMs) {
+        this.settleMs = settleMs;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Takes the state ARCore reported.
+     *
+     * @return true when the debounced state changed
+     */
+    public boolean report(State reported, long nowMs) {
+        if (reported == state) {
+            pending = state;
+            return false;
+        }
+        if (reported == State.TRACKING || state == State.NONE) {
+            return commit(reported);
+        }
+        if (reported != pending) {
+            pending = reported;
+            pendingSinceMs = nowMs;
+        }
+        return tick(nowMs);
+    }
+
+    /**
+     * Commits the pending state once it has lasted settleMs, call every frame.
+     *
+     * @return true when the debounced state changed
+     */
+    public boolean tick(long nowMs) {
+        return pending != state && nowMs - pendingSinceMs >= settleMs && commit(pending);
+    }
+
+    private boolean commit(State next) {
+        state = next;
+        pending = next;
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Foreground service hosting the {@link SensorPipeline}, so the connection, the decoder state,
+ * the statistics and the session recording survive the activity being destroyed and re-created.
+ * The activity starts it, binds to it and renders from its pipeline. Only stopped once the
+ * activity finishes for good.
+ */
+public class IngestService extends Service {
+
+    private static final String TAG = "IngestService";
+    private static final String CHANNEL_ID = "ingest";
+    private static final int NOTIFICATION_ID = 1;
+
+    /** Handed to the activity on bind, same process only. */
+    class LocalBinder extends Binder {
+        SensorPipeline getPipeline() {
+            return pipeline;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private SensorPipeline pipeline;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Tracing.RECORDER.nameCurrentThread("main");
+        long startMs = System.currentTimeMillis();
+        pipeline = new SensorPipeline(this);
+        pipeline.start();
+        Log.i(TAG, "Pipeline started in " + (System.currentTimeMillis() - startMs) + " ms");
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForeground(NOTIFICATION_ID, buildNotification());
+        // Nothing to show without the activity, it starts the service again
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        pipeline.close();
+        stopForeground(true);
+        super.onDestroy();
+    }
+
+    /**
+     * With the argument "trace", writes the trace of the last seconds as Chrome trace event JSON,
+     * see {@link Tracing}. Otherwise a line on the trace.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        TraceRecorder trace = Tracing.RECORDER;
+        if (args != null && args.length > 0 && args[0].equals("trace")) {
+            try {
+                trace.writeChromeTrace(writer);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to write the trace", e);
+            }
+            writer.flush();
+            return;
+        }
+        writer.println("Trace: " + trace.getRecordedCount() + " events recorded, last "
+                + trace.getCapacity() + " kept, dump with the argument trace");
+    }
+
+    private Notification buildNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.ingest_channel_name), NotificationManager.IMPORTANCE_LOW);
+            getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.ingest_notification_text))
+                .setOngoing(true)
+                .build();
+    }
+}
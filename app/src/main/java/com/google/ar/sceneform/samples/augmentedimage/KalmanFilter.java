@@ -0,0 +1,54 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Scalar Kalman filter per channel with a constant value model. Follows slow load changes closely
+ * while smoothing measurement noise, and unlike a fixed EWMA it adapts its gain to how much it
+ * already trusts its estimate.
+ */
+public final class KalmanFilter implements ChannelFilter {
+
+    private final float processNoise;
+    private final float measurementNoise;
+    private final float[] estimate;
+    private final float[] errorCovariance;
+    private final boolean[] primed;
+
+    /**
+     * @param processNoise     variance the true load drifts by between two readings (q)
+     * @param measurementNoise variance of the sensor noise (r)
+     */
+    public KalmanFilter(int channels, float processNoise, float measurementNoise) {
+        if (!(processNoise >= 0f) || !(measurementNoise > 0f)) {
+            throw new IllegalArgumentException("noise variances must be positive");
+        }
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        this.estimate = new float[channels];
+        this.errorCovariance = new float[channels];
+        this.primed = new boolean[channels];
+    }
+
+    @Override
+    public float filter(int channel, float value) {
+        if (!primed[channel]) {
+            primed[channel] = true;
+            estimate[channel] = value;
+            errorCovariance[channel] = measurementNoise;
+            return value;
+        }
+        // Predict
+        float p = errorCovariance[channel] + processNoise;
+        // Update
+        float gain = p / (p + measurementNoise);
+        estimate[channel] += gain * (value - estimate[channel]);
+        errorCovariance[channel] = (1f - gain) * p;
+        return estimate[channel];
+    }
+
+    @Override
+    public void reset() {
+        for (int channel = 0; channel < primed.length; channel++) {
+            primed[channel] = false;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch in bounded memory (Karnin, Lang and Liberty's KLL).
+ *
+ * Items are kept in a stack of compactors. An item at level h stands for 2^h stream values. Once
+ * the sketch is full, the lowest level at its capacity is sorted and every other item is promoted
+ * to the level above, the other half being dropped. Capacities shrink geometrically (by 2/3) going
+ * down from the top level, so the whole sketch holds O(k) items however long the stream is, with
+ * a normalized rank error of roughly 1.7% for k = 200. An update costs O(1) amortized plus an
+ * occasional sort of one level, i.e. O(log k) amortized.
+ *
+ * Not thread safe, quantile queries reuse scratch arrays and are meant for display refresh rate.
+ */
+public final class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final int MIN_CAPACITY = 8;
+    private static final int MAX_LEVELS = 61;
+
+    private final int k;
+    private final float[][] levels = new float[MAX_LEVELS][];
+    private final int[] sizes = new int[MAX_LEVELS];
+    private int levelCount;
+    private long count;
+    private int retained;
+    // Sum of every level's capacity, the sketch compacts only once it holds this many items.
+    private int totalCapacity;
+
+    // Deterministic coin choosing which half of a level is promoted, alternates per compaction.
+    private boolean coin;
+
+    // Query scratch: sorted copy of every level and a read position into each.
+    private final float[][] sortedLevels = new float[MAX_LEVELS][];
+    private final int[] cursors = new int[MAX_LEVELS];
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    public KllSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY);
+        }
+        this.k = k;
+        reset();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /** Number of items currently retained, bounded by O(k). */
+    public int getRetainedItems() {
+        return retained;
+    }
+
+    public void reset() {
+        for (int h = 0; h < levelCount; h++) {
+            sizes[h] = 0;
+        }
+        levelCount = 1;
+        count = 0;
+        retained = 0;
+        if (levels[0] == null) {
+            levels[0] = new float[k * 2];
+        }
+        updateTotalCapacity();
+    }
+
+    public void update(float value) {
+        if (value != value) {
+            // NaN has no rank
+            return;
+        }
+        if (sizes[0] == levels[0].length) {
+            levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+        }
+        levels[0][sizes[0]++] = value;
+        count++;
+        retained++;
+        if (retained >= totalCapacity) {
+            compress();
+        }
+    }
+
+    /** Adds everything other has seen. other is left unchanged. */
+    public void merge(KllSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        while (levelCount < other.levelCount) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levelCount; h++) {
+            append(h, other.levels[h], 0, other.sizes[h]);
+        }
+        count += other.count;
+        compress();
+    }
+
+    public void copyFrom(KllSketch other) {
+        reset();
+        merge(other);
+    }
+
+    /** Value at a rank fraction 0..1, NaN when empty. */
+    public float getQuantile(float fraction) {
+        float[] fractions = {fraction};
+        float[] result = new float[1];
+        getQuantiles(fractions, result);
+        return result[0];
+    }
+
+    /**
+     * Values at several rank fractions in one pass. fractions must be ascending. Allocation free
+     * once the scratch arrays have grown to the sketch size.
+     */
+    public void getQuantiles(float[] fractions, float[] out) {
+        if (count == 0) {
+            Arrays.fill(out, 0, fractions.length, Float.NaN);
+            return;
+        }
+        for (int h = 0; h < levelCount; h++) {
+            if (sortedLevels[h] == null || sortedLevels[h].length < sizes[h]) {
+                sortedLevels[h] = new float[Math.max(sizes[h], k * 2)];
+            }
+            System.arraycopy(levels[h], 0, sortedLevels[h], 0, sizes[h]);
+            sort(sortedLevels[h], 0, sizes[h]);
+            cursors[h] = 0;
+        }
+
+        // Merge walk over the sorted levels, accumulating each item's weight 2^h.
+        long seen = 0;
+        int next = 0;
+        float last = Float.NaN;
+        while (next < fractions.length) {
+            int best = -1;
+            for (int h = 0; h < levelCount; h++) {
+                if (cursors[h] < sizes[h]
+                        && (best < 0 || sortedLevels[h][cursors[h]] < sortedLevels[best][cursors[best]])) {
+                    best = h;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            last = sortedLevels[best][cursors[best]++];
+            seen += 1L << best;
+            while (next < fractions.length && seen >= (long) Math.ceil(fractions[next] * count)) {
+                out[next++] = last;
+            }
+        }
+        while (next < fractions.length) {
+            out[next++] = last;
+        }
+    }
+
+    private int capacity(int level) {
+        int depth = levelCount - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    /** Compacts the lowest full levels until the sketch is back under its total capacity. */
+    private void compress() {
+        while (retained >= totalCapacity) {
+            int h = 0;
+            while (h < levelCount && sizes[h] < capacity(h)) {
+                h++;
+            }
+            if (h == levelCount) {
+                // Only reachable after a merge filled every level below capacity, grow instead.
+                addLevel();
+                continue;
+            }
+            if (h + 1 == levelCount) {
+                addLevel();
+            }
+            compact(h);
+        }
+    }
+
+    private void updateTotalCapacity() {
+        int total = 0;
+        for (int h = 0; h < levelCount; h++) {
+            total += capacity(h);
+        }
+        totalCapacity = total;
+    }
+
+    private void compact(int h) {
+        float[] level = levels[h];
+        int size = sizes[h];
+        sort(level, 0, size);
+
+        // An odd item out stays on this level so no weight is lost.
+        int kept = size & 1;
+        int pairs = size - kept;
+        int offset = coin ? 1 : 0;
+        coin = !coin;
+
+        float[] up = ensureLevelCapacity(h + 1, sizes[h + 1] + pairs / 2);
+        int upSize = sizes[h + 1];
+        for (int i = offset; i < pairs; i += 2) {
+            up[upSize++] = level[i];
+        }
+        sizes[h + 1] = upSize;
+
+        if (kept == 1) {
+            level[0] = level[size - 1];
+        }
+        sizes[h] = kept;
+        retained -= pairs / 2;
+    }
+
+    private void addLevel() {
+        if (levelCount == MAX_LEVELS) {
+            throw new IllegalStateException("KllSketch level limit reached");
+        }
+        if (levels[levelCount] == null) {
+            levels[levelCount] = new float[k * 2];
+        }
+        sizes[levelCount] = 0;
+        levelCount++;
+        updateTotalCapacity();
+    }
+
+    private void append(int h, float[] items, int from, int length) {
+        float[] level = ensureLevelCapacity(h, sizes[h] + length);
+        System.arraycopy(items, from, level, sizes[h], length);
+        sizes[h] += length;
+        retained += length;
+    }
+
+    /**
+     * Sorts a[from .. to - 1] in place. Arrays.sort allocates a merge buffer for input made of
+     * sorted runs, which is what the upper levels are, so the sketch sorts on its own: quicksort
+     * recursing into the smaller part, insertion sort for short ranges. No NaN gets this far.
+     */
+    private static void sort(float[] a, int from, int to) {
+        while (to - from > 16) {
+            int middle = (from + to) >>> 1;
+            // Median of three as the pivot, guards against the runs
+            if (a[middle] < a[from]) {
+                swap(a, middle, from);
+            }
+            if (a[to - 1] < a[from]) {
+                swap(a, to - 1, from);
+            }
+            if (a[to - 1] < a[middle]) {
+                swap(a, to - 1, middle);
+            }
+            float pivot = a[middle];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (a[i] < pivot) {
+                    i++;
+                }
+                while (a[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(a, i++, j--);
+                }
+            }
+            if (j + 1 - from < to - i) {
+                sort(a, from, j + 1);
+                from = i;
+            } else {
+                sort(a, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            float v = a[i];
+            int j = i - 1;
+            while (j >= from && a[j] > v) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
+        }
+    }
+
+    private static void swap(float[] a, int i, int j) {
+        float t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private float[] ensureLevelCapacity(int h, int needed) {
+        if (levels[h].length < needed) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(needed, levels[h].length * 2));
+        }
+        return levels[h];
+    }
+}
@@ -0,0 +1,90 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * How much detail a chair is drawn with, from where it is relative to the camera.
+ *
+ * A chair is a bounding sphere around its anchor. Close to the camera it gets every label and the
+ * chosen graph, further away a simplified graph without labels, and off screen or very far away
+ * nothing at all. Each threshold has a hysteresis band so a chair sitting on a boundary doesn't
+ * flip every frame. Matrices are column-major, as ARCore's Camera and android.opengl.Matrix give
+ * them. Does not allocate.
+ */
+public final class LevelOfDetail {
+
+    public enum Level {
+        FULL,
+        SIMPLIFIED,
+        CULLED
+    }
+
+    private final float fullDistance;
+    private final float cullDistance;
+    private final float radius;
+    private final float hysteresis;
+    private float distanceScale = 1f;
+    private Level level = Level.FULL;
+    private float distance;
+
+    /**
+     * @param fullDistance meters up to which everything is drawn
+     * @param cullDistance meters beyond which nothing is drawn
+     * @param radius meters, of the sphere around the anchor holding everything drawn for a chair
+     * @param hysteresis fraction of a threshold a chair has to move past it before the level changes
+     */
+    public LevelOfDetail(float fullDistance, float cullDistance, float radius, float hysteresis) {
+        if (fullDistance <= 0 || cullDistance <= fullDistance || radius <= 0 || hysteresis < 0) {
+            throw new IllegalArgumentException("Bad level of detail thresholds");
+        }
+        this.fullDistance = fullDistance;
+        this.cullDistance = cullDistance;
+        this.radius = radius;
+        this.hysteresis = hysteresis;
+    }
+
+    /** Multiplies both distances, below 1 to draw less in full when frames run late. */
+    public void setDistanceScale(float distanceScale) {
+        this.distanceScale = distanceScale;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /** Distance from the camera to the anchor at the last update, in meters. */
+    public float getDistance() {
+        return distance;
+    }
+
+    /**
+     * Updates the level for an anchor at world position x, y, z.
+     *
+     * @return the level, which only changes once past a threshold and its band
+     */
+    public Level update(float[] view, float[] projection, float x, float y, float z) {
+        // Camera space
+        float ex = view[0] * x + view[4] * y + view[8] * z + view[12];
+        float ey = view[1] * x + view[5] * y + view[9] * z + view[13];
+        float ez = view[2] * x + view[6] * y + view[10] * z + view[14];
+        distance = (float) Math.sqrt(ex * ex + ey * ey + ez * ez);
+
+        // Clip space, the sphere is visible while it reaches inside every side of the frustum
+        float cx = projection[0] * ex + projection[4] * ey + projection[8] * ez + projection[12];
+        float cy = projection[1] * ex + projection[5] * ey + projection[9] * ez + projection[13];
+        float w = projection[3] * ex + projection[7] * ey + projection[11] * ez + projection[15];
+        // Culling takes a larger margin than coming back into view
+        float margin = level == Level.CULLED ? radius : radius * (1 + hysteresis);
+        boolean visible = w > -margin
+                && Math.abs(cx) <= w + margin * Math.abs(projection[0])
+                && Math.abs(cy) <= w + margin * Math.abs(projection[5]);
+
+        float band = level == Level.CULLED ? 1 - hysteresis : 1 + hysteresis;
+        if (!visible || distance > cullDistance * distanceScale * band) {
+            level = Level.CULLED;
+            return level;
+        }
+
+        band = level == Level.FULL ? 1 + hysteresis : 1 - hysteresis;
+        level = distance <= fullDistance * distanceScale * band ? Level.FULL : Level.SIMPLIFIED;
+        return level;
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * In-process source: messages handed to {@link #send} are delivered through the same main thread
+ * path as the network sources. With a rate set it also generates slowly moving values for every
+ * sensor, to run the app without the chair or a broker.
+ */
+class LoopbackSensorSource implements SensorSource {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final float rateHz;
+    private final Runnable generator = this::generate;
+    private Listener listener;
+    private long received;
+    private long startMs;
+
+    /** @param rateHz generated messages per second, 0 to only deliver what is sent */
+    LoopbackSensorSource(float rateHz) {
+        this.rateHz = rateHz;
+    }
+
+    @Override
+    public String getName() {
+        return "loopback";
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        if (rateHz > 0) {
+            startMs = SystemClock.elapsedRealtime();
+            mainHandler.post(generator);
+        }
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /** Delivers a message to the listener, from any thread. */
+    void send(String payload) {
+        mainHandler.post(
+                () -> {
+                    if (listener != null) {
+                        received++;
+                        listener.onMessage(payload);
+                    }
+                });
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received;
+    }
+
+    @Override
+    public long getLostCount() {
+        return 0;
+    }
+
+    private void generate() {
+        if (listener == null) {
+            return;
+        }
+        double t = (SystemClock.elapsedRealtime() - startMs) / 1000.0;
+        StringBuilder message = new StringBuilder("{\"value\":{");
+        for (int sensor = 0; sensor < ChairSensors.SENSOR_COUNT; sensor++) {
+            double value = 50 + 40 * Math.sin(t * 0.5 + sensor);
+            if (sensor > 0) {
+                message.append(',');
+            }
+            message.append('"').append(ChairSensors.SENSOR_NAMES[sensor]).append("\":")
+                    .append(String.format(Locale.US, "%.1f", value));
+        }
+        message.append("}}");
+        received++;
+        listener.onMessage(message.toString());
+        mainHandler.postDelayed(generator, (long) (1000 / rateHz));
+    }
+}
@@ -0,0 +1,59 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.MaterialFactory;
+import com.google.ar.sceneform.rendering.Texture;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The material of a {@link ColorLut}, built once up front: textured with the whole palette, one
+ * texel per bucket. Bars and mat cells pick their colour with their texture coordinates, so every
+ * colour of a chair is drawn with this one material and no material is ever created while data
+ * is streaming.
+ */
+@SuppressWarnings({"AndroidApiChecker"})
+class MaterialPool {
+
+    private final ColorLut colorLut;
+    private final Material paletteMaterial;
+
+    private MaterialPool(ColorLut colorLut, Material paletteMaterial) {
+        this.colorLut = colorLut;
+        this.paletteMaterial = paletteMaterial;
+    }
+
+    /** Builds the palette texture material of the lookup table. */
+    static CompletableFuture<MaterialPool> create(Context context, ColorLut colorLut) {
+        int bucketCount = colorLut.getBucketCount();
+        int[] pixels = new int[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            pixels[bucket] = colorLut.colorOf(bucket);
+        }
+
+        Bitmap paletteBitmap = Bitmap.createBitmap(pixels, bucketCount, 1, Bitmap.Config.ARGB_8888);
+        return Texture.builder()
+                        .setSource(paletteBitmap)
+                        .setUsage(Texture.Usage.COLOR)
+                        .setSampler(
+                                Texture.Sampler.builder()
+                                        .setMinFilter(Texture.Sampler.MinFilter.NEAREST)
+                                        .setMagFilter(Texture.Sampler.MagFilter.NEAREST)
+                                        .setWrapMode(Texture.Sampler.WrapMode.CLAMP_TO_EDGE)
+                                        .build())
+                        .build()
+                .thenCompose(texture -> MaterialFactory.makeOpaqueWithTexture(context, texture))
+                .thenApply(palette -> new MaterialPool(colorLut, palette));
+    }
+
+    ColorLut getColorLut() {
+        return colorLut;
+    }
+
+    Material getPaletteMaterial() {
+        return paletteMaterial;
+    }
+}
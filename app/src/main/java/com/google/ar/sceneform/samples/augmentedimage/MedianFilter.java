@@ -0,0 +1,58 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Median of the last N readings of each channel, rejects single sample spikes while keeping steps
+ * sharp. Until N readings have arrived the median of the readings so far is used.
+ */
+public final class MedianFilter implements ChannelFilter {
+
+    private final int window;
+    // Last readings of every channel, channel * window + slot
+    private final float[] history;
+    private final int[] next;
+    private final int[] filled;
+    // Scratch copy sorted per call, window is small so insertion sort is the fastest option.
+    private final float[] sorted;
+
+    public MedianFilter(int channels, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        this.window = window;
+        this.history = new float[channels * window];
+        this.next = new int[channels];
+        this.filled = new int[channels];
+        this.sorted = new float[window];
+    }
+
+    @Override
+    public float filter(int channel, float value) {
+        int base = channel * window;
+        history[base + next[channel]] = value;
+        next[channel] = (next[channel] + 1) % window;
+        if (filled[channel] < window) {
+            filled[channel]++;
+        }
+
+        int count = filled[channel];
+        for (int i = 0; i < count; i++) {
+            float v = history[base + i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > v) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = v;
+        }
+        int middle = count / 2;
+        return (count & 1) == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) * 0.5f;
+    }
+
+    @Override
+    public void reset() {
+        for (int channel = 0; channel < next.length; channel++) {
+            next[channel] = 0;
+            filled[channel] = 0;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.util.Log;
+
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.RenderableDefinition;
+import com.google.ar.sceneform.rendering.RenderableDefinition.Submesh;
+import com.google.ar.sceneform.rendering.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Draws all bars of one chair with a single Node and a single ModelRenderable.
+ *
+ * The vertex data comes from {@link GraphMesh}. Every Sceneform {@link Vertex} keeps its own
+ * Vector3 which is mutated in place, so an update only touches the vertices of the bars that
+ * changed and allocates nothing. The renderable is refreshed at most once per frame from
+ * {@link #commit()}, no matter how many samples arrived in between.
+ *
+ * All bars are one submesh with the palette material of the {@link MaterialPool}, so a chair is a
+ * single draw call whatever the number of bars. Colours are buckets of a {@link ColorLut} and
+ * recolouring a bar moves its texture coordinates to another texel of the palette, the way the
+ * pressure mat does.
+ */
+@SuppressWarnings({"AndroidApiChecker"})
+class MergedGraphRenderer {
+
+    private static final String TAG = "MergedGraphRenderer";
+
+    private final Node graphNode = new Node();
+    private MaterialPool materialPool;
+
+    private GraphMesh mesh;
+    private final List<Vertex> vertices = new ArrayList<>();
+    private final List<Vector3> vertexPositions = new ArrayList<>();
+    private final List<Vertex.UvCoordinate> vertexUvs = new ArrayList<>();
+    private List<Submesh> submeshes;
+    private RenderableDefinition definition;
+    private ModelRenderable renderable;
+
+    // Bar lengths and colours survive a shape switch so the new mesh starts from the current values.
+    private float[] barLengths;
+    private int[] barBuckets;
+    private boolean materialDirty;
+
+    MergedGraphRenderer(Node parent, MaterialPool materialPool) {
+        this.materialPool = materialPool;
+        graphNode.setParent(parent);
+    }
+
+    Node getNode() {
+        return graphNode;
+    }
+
+    GraphMesh.Shape getShape() {
+        return mesh == null ? null : mesh.getShape();
+    }
+
+    /**
+     * Rebuilds the vertex buffer for another shape. Only happens when the user picks a different
+     * graph type, never on the sample path.
+     */
+    void setShape(GraphMesh.Shape shape, float[] centers, float width, float initialLength) {
+        int barCount = centers.length / 3;
+        if (barLengths == null || barLengths.length != barCount) {
+            barLengths = new float[barCount];
+            Arrays.fill(barLengths, initialLength);
+            barBuckets = new int[barCount];
+        }
+
+        mesh = new GraphMesh(shape, centers, width, initialLength);
+        ColorLut colorLut = materialPool.getColorLut();
+        for (int bar = 0; bar < barCount; bar++) {
+            mesh.setBarLength(bar, barLengths[bar]);
+            mesh.setBarU(bar, colorLut.textureCoordinateOf(barBuckets[bar]));
+        }
+        mesh.clearDirty();
+
+        buildDefinition();
+
+        ModelRenderable.builder()
+                .setSource(definition)
+                .build()
+                .thenAccept(
+                        modelRenderable -> {
+                            renderable = modelRenderable;
+                            renderable.setShadowCaster(false);
+                            graphNode.setRenderable(renderable);
+                        })
+                .exceptionally(
+                        throwable -> {
+                            Log.e(TAG, "Unable to build merged graph renderable", throwable);
+                            return null;
+                        });
+    }
+
+    void setVisible(boolean visible) {
+        graphNode.setEnabled(visible);
+    }
+
+    boolean isVisible() {
+        return graphNode.isEnabled();
+    }
+
+    /** Sets the length of one bar, copying only that bar's vertices into the Sceneform list. */
+    void setBarLength(int bar, float length) {
+        if (mesh == null) {
+            return;
+        }
+        barLengths[bar] = length;
+        mesh.setBarLength(bar, length);
+    }
+
+    /** Colours one bar with a bucket of the pool's lookup table. */
+    void setBarColor(int bar, int bucket) {
+        if (mesh == null || barBuckets[bar] == bucket) {
+            return;
+        }
+        barBuckets[bar] = bucket;
+        mesh.setBarU(bar, materialPool.getColorLut().textureCoordinateOf(bucket));
+    }
+
+    /** Switches palette, every bar keeps its bucket and picks the same texel of the new palette. */
+    void setMaterialPool(MaterialPool materialPool) {
+        this.materialPool = materialPool;
+        if (mesh == null) {
+            return;
+        }
+        ColorLut colorLut = materialPool.getColorLut();
+        for (int bar = 0; bar < mesh.getBarCount(); bar++) {
+            mesh.setBarU(bar, colorLut.textureCoordinateOf(barBuckets[bar]));
+        }
+        submeshes.get(0).setMaterial(materialPool.getPaletteMaterial());
+        materialDirty = true;
+    }
+
+    /**
+     * Pushes dirty vertices and colours to the renderable. Call once per frame, from Node.onUpdate.
+     */
+    void commit() {
+        if (mesh == null || renderable == null || !(mesh.isDirty() || materialDirty)) {
+            return;
+        }
+        materialDirty = false;
+        if (!mesh.isDirty()) {
+            renderable.updateFromDefinition(definition);
+            return;
+        }
+
+        int perBar = mesh.getVerticesPerBar();
+        int from = mesh.getDirtyFrom() * perBar;
+        int to = (mesh.getDirtyTo() + 1) * perBar;
+        float[] positions = mesh.getPositions();
+        float[] uvs = mesh.getUvs();
+        for (int v = from; v < to; v++) {
+            Vector3 position = vertexPositions.get(v);
+            position.set(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+            Vertex.UvCoordinate uv = vertexUvs.get(v);
+            uv.x = uvs[v * 2];
+            uv.y = uvs[v * 2 + 1];
+            Vertex vertex = vertices.get(v);
+            vertex.setPosition(position);
+            vertex.setUvCoordinate(uv);
+        }
+        mesh.clearDirty();
+
+        renderable.updateFromDefinition(definition);
+    }
+
+    private void buildDefinition() {
+        vertices.clear();
+        vertexPositions.clear();
+        vertexUvs.clear();
+
+        float[] positions = mesh.getPositions();
+        float[] normals = mesh.getNormals();
+        float[] uvs = mesh.getUvs();
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            Vector3 position = new Vector3(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+            vertexPositions.add(position);
+            Vertex.UvCoordinate uv = new Vertex.UvCoordinate(uvs[v * 2], uvs[v * 2 + 1]);
+            vertexUvs.add(uv);
+            vertices.add(
+                    Vertex.builder()
+                            .setPosition(position)
+                            .setNormal(new Vector3(normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2]))
+                            .setUvCoordinate(uv)
+                            .build());
+        }
+
+        int[] indices = mesh.getTriangleIndices();
+        List<Integer> triangleIndices = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            triangleIndices.add(index);
+        }
+        submeshes =
+                Collections.singletonList(
+                        Submesh.builder()
+                                .setTriangleIndices(triangleIndices)
+                                .setMaterial(materialPool.getPaletteMaterial())
+                                .build());
+
+        definition =
+                RenderableDefinition.builder()
+                        .setVertices(vertices)
+                        .setSubmeshes(submeshes)
+                        .build();
+    }
+}
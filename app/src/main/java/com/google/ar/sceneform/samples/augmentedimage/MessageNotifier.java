@@ -0,0 +1,37 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.app.Activity;
+
+import com.google.ar.sceneform.samples.common.helpers.SnackbarHelper;
+
+/**
+ * Front of the snackbar for messages that would otherwise be repeated every frame. Posts to the
+ * UI thread only when the message shown actually changes, asking for the same one again costs a
+ * comparison. Call from one thread.
+ */
+final class MessageNotifier {
+
+    private final Activity activity;
+    // Null while hidden
+    private String shown;
+
+    MessageNotifier(Activity activity) {
+        this.activity = activity;
+    }
+
+    void show(String message) {
+        if (message.equals(shown)) {
+            return;
+        }
+        shown = message;
+        SnackbarHelper.getInstance().showMessage(activity, message);
+    }
+
+    void hide() {
+        if (shown == null) {
+            return;
+        }
+        shown = null;
+        SnackbarHelper.getInstance().hide(activity);
+    }
+}
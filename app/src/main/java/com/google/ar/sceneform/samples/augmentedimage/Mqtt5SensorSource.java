@@ -0,0 +1,92 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.eclipse.paho.mqttv5.common.MqttException;
+
+/**
+ * The data topic over MQTT 5, for brokers that support it.
+ *
+ * <ul>
+ *   <li>Receive maximum: the broker keeps at most RECEIVE_MAXIMUM QoS 1 samples in flight to us.
+ *   Acks are sent manually once the main thread has processed a sample, so a slow frame holds the
+ *   broker back instead of piling samples up in the app.</li>
+ *   <li>Topic aliases: the broker may replace topic names by a small number, which matters when
+ *   many chair topics flow over one connection.</li>
+ *   <li>Message expiry: the session outlives a short disconnect, and samples the gateway publishes
+ *   with an expiry interval are dropped by the broker once stale instead of being replayed.</li>
+ * </ul>
+ *
+ * The session itself is {@link Mqtt5Subscription}, this hands its samples to the main thread.
+ */
+class Mqtt5SensorSource implements SensorSource {
+
+    private static final String TAG = "Mqtt5SensorSource";
+
+    private final String serverUri;
+    private final String topic;
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30_000;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Mqtt5Subscription subscription;
+
+    Mqtt5SensorSource(String serverUri, String topic, String username, String password, String clientId) {
+        this.serverUri = serverUri;
+        this.topic = topic;
+        subscription = new Mqtt5Subscription(serverUri, topic, username, password, clientId,
+                mainHandler::post, mainHandler::postDelayed, new Backoff(BACKOFF_BASE_MS, BACKOFF_MAX_MS),
+                new Mqtt5Subscription.Events() {
+                    @Override
+                    public void onConnected(boolean reconnect, String uri) {
+                        Log.w(TAG, (reconnect ? "Reconnected to " : "Connected to ") + uri);
+                    }
+
+                    @Override
+                    public void onDisconnected(String reason) {
+                        Log.w(TAG, "Disconnected: " + reason);
+                    }
+
+                    @Override
+                    public void onError(String what, Throwable e) {
+                        Log.w(TAG, what + ": " + e);
+                    }
+                });
+    }
+
+    @Override
+    public String getName() {
+        return "mqtt5:" + serverUri + "/" + topic;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        try {
+            subscription.start(listener);
+        } catch (MqttException e) {
+            Log.e(TAG, "Unable to connect to " + serverUri, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        mainHandler.removeCallbacksAndMessages(null);
+        try {
+            subscription.stop();
+        } catch (MqttException e) {
+            Log.w(TAG, "Disconnect failed: " + e);
+        }
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return subscription.getReceivedCount();
+    }
+
+    @Override
+    public long getLostCount() {
+        return 0;
+    }
+}
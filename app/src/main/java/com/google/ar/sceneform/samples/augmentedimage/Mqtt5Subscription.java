@@ -0,0 +1,221 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * The MQTT 5 session behind {@link Mqtt5SensorSource}: options, subscription and manual acks,
+ * without the Android parts so it runs against a broker on the JVM. Samples are handed to the
+ * executor and acked once the listener has taken them there, so the broker never has more than
+ * RECEIVE_MAXIMUM samples in flight to us. A first connect that fails is retried with a jittered
+ * backoff, after that paho reconnects on its own.
+ */
+final class Mqtt5Subscription {
+
+    /** What the session went through, for the log. */
+    interface Events {
+        void onConnected(boolean reconnect, String serverUri);
+
+        void onDisconnected(String reason);
+
+        void onError(String what, Throwable e);
+    }
+
+    /** Runs a task after a delay, a Handler on Android. */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    static final int RECEIVE_MAXIMUM = 16;
+    static final int TOPIC_ALIAS_MAXIMUM = 32;
+    static final long SESSION_EXPIRY_S = 300;
+    static final int SAMPLE_QOS = 1;
+    private static final long DISCONNECT_TIMEOUT_MS = 1000;
+
+    private final String serverUri;
+    private final String topic;
+    private final String username;
+    private final String password;
+    private final String clientId;
+    private final Executor deliverer;
+    private final Scheduler retries;
+    private final Backoff backoff;
+    private final Events events;
+    private volatile MqttAsyncClient client;
+    private volatile SensorSource.Listener listener;
+    // Deliverer only
+    private long received;
+    // Callback thread only, for the trace
+    private boolean callbackNamed;
+    private long handoffs;
+
+    Mqtt5Subscription(String serverUri, String topic, String username, String password, String clientId,
+                      Executor deliverer, Scheduler retries, Backoff backoff, Events events) {
+        this.serverUri = serverUri;
+        this.topic = topic;
+        this.username = username;
+        this.password = password;
+        this.clientId = clientId;
+        this.deliverer = deliverer;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.events = events;
+    }
+
+    /** Clean start off with a session that outlives a short disconnect, reconnecting on its own. */
+    static MqttConnectionOptions newOptions(String username, String password) {
+        MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setCleanStart(false);
+        options.setSessionExpiryInterval(SESSION_EXPIRY_S);
+        options.setReceiveMaximum(RECEIVE_MAXIMUM);
+        options.setTopicAliasMaximum(TOPIC_ALIAS_MAXIMUM);
+        options.setAutomaticReconnect(true);
+        if (username != null) {
+            options.setUserName(username);
+        }
+        if (password != null) {
+            options.setPassword(password.getBytes(StandardCharsets.UTF_8));
+        }
+        return options;
+    }
+
+    void start(SensorSource.Listener listener) throws MqttException {
+        this.listener = listener;
+        client = new MqttAsyncClient(serverUri, clientId, new MemoryPersistence());
+        client.setManualAcks(true);
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                events.onConnected(reconnect, serverURI);
+                subscribe();
+            }
+
+            @Override
+            public void disconnected(MqttDisconnectResponse disconnectResponse) {
+                events.onDisconnected(disconnectResponse.getReasonString());
+            }
+
+            @Override
+            public void mqttErrorOccurred(MqttException exception) {
+                events.onError("Error", exception);
+            }
+
+            @Override
+            public void messageArrived(String messageTopic, MqttMessage message) {
+                TraceRecorder trace = Tracing.RECORDER;
+                if (!callbackNamed) {
+                    callbackNamed = true;
+                    trace.nameCurrentThread("Mqtt5SensorSource");
+                }
+                trace.begin(Tracing.RECEIVE);
+                String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
+                int id = message.getId();
+                int qos = message.getQos();
+                long handoff = ++handoffs;
+                trace.asyncBegin(Tracing.HANDOFF, handoff);
+                deliverer.execute(() -> {
+                    trace.asyncEnd(Tracing.HANDOFF, handoff);
+                    deliver(payload, id, qos);
+                });
+                trace.end(Tracing.RECEIVE);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttToken token) {
+            }
+
+            @Override
+            public void authPacketArrived(int reasonCode, MqttProperties properties) {
+            }
+        });
+        connect(client);
+    }
+
+    /** Disconnects, the broker keeps the session for SESSION_EXPIRY_S. */
+    void stop() throws MqttException {
+        listener = null;
+        if (client == null) {
+            return;
+        }
+        MqttAsyncClient closing = client;
+        client = null;
+        closing.disconnectForcibly(DISCONNECT_TIMEOUT_MS);
+        closing.close();
+    }
+
+    long getReceivedCount() {
+        return received;
+    }
+
+    // Until the first connect succeeds, automatic reconnect only covers losing a connection
+    private void connect(MqttAsyncClient connecting) {
+        if (client != connecting) {
+            return;
+        }
+        try {
+            connecting.connect(newOptions(username, password), null, new MqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    backoff.reset();
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable exception) {
+                    retry(connecting, exception);
+                }
+            });
+        } catch (MqttException e) {
+            retry(connecting, e);
+        }
+    }
+
+    private void retry(MqttAsyncClient connecting, Throwable cause) {
+        if (client != connecting) {
+            return;
+        }
+        long delayMs = backoff.nextDelayMs();
+        events.onError("Unable to connect to " + serverUri + ", retry " + backoff.getAttempt()
+                + " in " + delayMs + " ms", cause);
+        retries.schedule(() -> connect(connecting), delayMs);
+    }
+
+    private void subscribe() {
+        MqttAsyncClient connected = client;
+        if (connected == null) {
+            return;
+        }
+        try {
+            connected.subscribe(topic, SAMPLE_QOS);
+        } catch (MqttException e) {
+            events.onError("Unable to subscribe to " + topic, e);
+        }
+    }
+
+    // Processes a sample on the deliverer and only then lets the broker send the next one.
+    private void deliver(String payload, int id, int qos) {
+        SensorSource.Listener current = listener;
+        if (current != null) {
+            received++;
+            current.onMessage(payload);
+        }
+        MqttAsyncClient connected = client;
+        if (connected != null && qos > 0) {
+            try {
+                connected.messageArrivedComplete(id, qos);
+            } catch (MqttException e) {
+                events.onError("Unable to ack message " + id, e);
+            }
+        }
+    }
+}
@@ -2,12 +2,14 @@ package com.google.ar.sceneform.samples.augmentedimage;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.ar.sceneform.samples.common.helpers.SnackbarHelper;
 
 import org.eclipse.paho.android.service.MqttAndroidClient;
-import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.IMqttToken;
@@ -16,14 +18,34 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 public class MqttHelper {
 
     MqttAndroidClient mqttAndroidClient;
 
     // Just only edit these 4 attributes to match any mqtt server
     // Uri should be starts with tcp://
-    private final String serverUri = "tcp://postman.cloudmqtt.com:10055";
+    // Brokers in order of preference, the local sensor gateway first and the cloud broker as fallback.
+    private final String[] serverUris = {
+            "tcp://sensor-gateway.local:1883",
+            "tcp://postman.cloudmqtt.com:10055"
+    };
     private final String subscriptionTopic = "test/result";
+    // Calibration configs pushed to the app, see calibration.json in the assets for the format
+    private final String calibrationTopic = "test/calibration";
+    // Channel schema of the sensor gateway, retained so it arrives before the samples, see ChannelSchema
+    private final String schemaTopic = "test/schema";
+    // Alerts raised and cleared by the rule engine are published here
+    private final String alertTopic = "test/alert";
+    // Requests to the sensor gateway, e.g. for a keyframe after missing delta messages
+    private final String controlTopic = "test/control";
+    // Every chair of the facility publishes its samples on fleetTopicPrefix + its name
+    private final String fleetTopicPrefix = "test/fleet/";
+    // Every tablet publishes its health on statusTopicPrefix + its device id
+    private final String statusTopicPrefix = "test/status/";
     private final String username = "jesjyagv";
     private final String password = "S4t6tC5tRdra";
 
@@ -32,72 +54,338 @@ public class MqttHelper {
     private Context context;
     private final String test_mqtt = "test_mqtt";
 
+    // Messages published with QoS 1 or 2 (alerts, acknowledgements) go through a queue of segment
+    // files and are drained in order, at a limited rate, whenever the client is connected. This
+    // replaces the in-memory disconnected buffer which dropped everything past 100 messages and
+    // everything on restart. All queue work happens on its own thread.
+    private static final String OUTBOUND_DIRECTORY = "outbound";
+    private static final long OUTBOUND_SYNC_INTERVAL_MS = OutboundQueue.DEFAULT_SYNC_INTERVAL_MS;
+    private static final int DRAIN_MESSAGES_PER_SECOND = 20;
+    private static final long DRAIN_RETRY_MS = 2000;
+    private final HandlerThread queueThread;
+    private final Handler queueHandler;
+    private volatile OutboundQueue outboundQueue;
+    private final Runnable drainRunnable = this::drain;
+    private final Runnable syncRunnable = this::syncOutboundQueue;
+    // Only touched on the queue thread
+    private boolean draining;
+    private long nextDrainMs;
+    private long drainStartMs = -1;
+    private long drainStartCount;
+    private volatile float lastDrainRate;
+
+    // Callback of the app, the helper's own callback forwards to it.
+    private volatile MqttCallbackExtended callback;
+
+    // Receives the data topic when MQTT is the sensor source, see MqttSensorSource.
+    private volatile SensorSource.Listener dataListener;
+    // False while nobody wants the data topic, the broker then stops sending it
+    private volatile boolean dataSubscribed = true;
+
+    // Picks a broker, reconnects with backoff and measures outages.
+    private ConnectionManager connectionManager;
+
     public MqttHelper(Context context){
         this.context = context;
-        mqttAndroidClient = new MqttAndroidClient(context, serverUri, clientId);
+
+        queueThread = new HandlerThread("MqttOutboundQueue");
+        queueThread.start();
+        queueHandler = new Handler(queueThread.getLooper());
+        File outboundDirectory = new File(context.getFilesDir(), OUTBOUND_DIRECTORY);
+        queueHandler.post(() -> openOutboundQueue(outboundDirectory));
+
+        mqttAndroidClient = new MqttAndroidClient(context, serverUris[0], clientId);
         mqttAndroidClient.setCallback(new MqttCallbackExtended() {
             @Override
             public void connectComplete(boolean b, String s) {
                 Log.w(test_mqtt, s);
+                // Send what was queued while the broker was unreachable
+                queueHandler.post(drainRunnable);
+                if (callback != null) {
+                    callback.connectComplete(b, s);
+                }
             }
 
             @Override
             public void connectionLost(Throwable throwable) {
-
+                connectionManager.onConnectionLost(throwable);
+                if (callback != null) {
+                    callback.connectionLost(throwable);
+                }
             }
 
             @Override
             public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
 //                Log.w(test_mqtt, mqttMessage.toString());
+                SensorSource.Listener data = dataListener;
+                if (data != null && topic.equals(subscriptionTopic)) {
+                    // Delivered on the main thread by the MQTT service, nothing is handed off
+                    Tracing.RECORDER.begin(Tracing.RECEIVE);
+                    String payload = mqttMessage.toString();
+                    Tracing.RECORDER.end(Tracing.RECEIVE);
+                    data.onMessage(payload);
+                    return;
+                }
+                if (callback != null) {
+                    callback.messageArrived(topic, mqttMessage);
+                }
             }
 
             @Override
             public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
-
+                if (callback != null) {
+                    callback.deliveryComplete(iMqttDeliveryToken);
+                }
             }
         });
         connect();
     }
 
     public void setCallback(MqttCallbackExtended callback) {
-        mqttAndroidClient.setCallback(callback);
+        this.callback = callback;
     }
 
-    private void connect(){
-        MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
-        mqttConnectOptions.setAutomaticReconnect(true);
-        mqttConnectOptions.setCleanSession(false);
-        mqttConnectOptions.setUserName(username);
-        mqttConnectOptions.setPassword(password.toCharArray());
+    void setDataListener(SensorSource.Listener dataListener) {
+        this.dataListener = dataListener;
+    }
 
+    /** Subscribes to or unsubscribes from the data topic, now and after every reconnect. */
+    void setDataSubscribed(boolean subscribed) {
+        if (dataSubscribed == subscribed) {
+            return;
+        }
+        dataSubscribed = subscribed;
+        if (!mqttAndroidClient.isConnected()) {
+            return;
+        }
+        if (subscribed) {
+            subscribeToTopic(subscriptionTopic);
+            return;
+        }
         try {
+            mqttAndroidClient.unsubscribe(subscriptionTopic);
+        } catch (MqttException ex) {
+            Log.w(test_mqtt, "Unsubscribe from " + subscriptionTopic + " failed: " + ex.toString());
+        }
+    }
 
-            mqttAndroidClient.connect(mqttConnectOptions, null, new IMqttActionListener() {
-                @Override
-                public void onSuccess(IMqttToken asyncActionToken) {
+    public String getSubscriptionTopic() {
+        return subscriptionTopic;
+    }
 
-                    DisconnectedBufferOptions disconnectedBufferOptions = new DisconnectedBufferOptions();
-                    disconnectedBufferOptions.setBufferEnabled(true);
-                    disconnectedBufferOptions.setBufferSize(100);
-                    disconnectedBufferOptions.setPersistBuffer(false);
-                    disconnectedBufferOptions.setDeleteOldestMessages(true);
-                    mqttAndroidClient.setBufferOpts(disconnectedBufferOptions);
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
 
-                    subscribeToTopic(subscriptionTopic);
+    /** Queue of outgoing messages waiting for the broker, for its depth and counters. Null until opened. */
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
 
+    /** Messages per second of the last complete drain of the outbound queue. */
+    public float getLastDrainRate() {
+        return lastDrainRate;
+    }
+
+    /** Syncs and closes the outbound queue, what is left is sent after the next start. */
+    public void close() {
+        connectionManager.stop();
+        queueHandler.removeCallbacksAndMessages(null);
+        queueHandler.post(
+                () -> {
+                    if (outboundQueue != null) {
+                        try {
+                            outboundQueue.close();
+                        } catch (IOException e) {
+                            Log.w(test_mqtt, "Unable to close the outbound queue: " + e.toString());
+                        }
+                        outboundQueue = null;
+                    }
+                });
+        queueThread.quitSafely();
+    }
+
+    public String getCalibrationTopic() {
+        return calibrationTopic;
+    }
+
+    public String getSchemaTopic() {
+        return schemaTopic;
+    }
+
+    public String getFleetTopicPrefix() {
+        return fleetTopicPrefix;
+    }
+
+    public String getStatusTopicPrefix() {
+        return statusTopicPrefix;
+    }
 
+    public String getControlTopic() {
+        return controlTopic;
+    }
+
+    public String getAlertTopic() {
+        return alertTopic;
+    }
+
+    /**
+     * QoS 0 messages are sent right away and lost while disconnected. QoS 1 and 2 messages are
+     * queued on disk and sent in order as soon as the broker is reachable.
+     */
+    public void publish(String topic, String payload, int qos) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (qos == 0) {
+            MqttMessage message = new MqttMessage(bytes);
+            message.setQos(0);
+            try {
+                mqttAndroidClient.publish(topic, message);
+            } catch (MqttException ex) {
+                Log.w(test_mqtt, "Publish to " + topic + " failed: " + ex.toString());
+            }
+            return;
+        }
+
+        queueHandler.post(
+                () -> {
+                    if (outboundQueue == null) {
+                        Log.w(test_mqtt, "No outbound queue, dropped message to " + topic);
+                        return;
+                    }
+                    try {
+                        outboundQueue.append(topic, bytes, qos);
+                    } catch (IOException | IllegalArgumentException e) {
+                        Log.w(test_mqtt, "Unable to queue message to " + topic + ": " + e.toString());
+                        return;
+                    }
+                    queueHandler.removeCallbacks(syncRunnable);
+                    queueHandler.postDelayed(syncRunnable, OUTBOUND_SYNC_INTERVAL_MS);
+                    drain();
+                });
+    }
+
+    private void openOutboundQueue(File directory) {
+        try {
+            outboundQueue = new OutboundQueue(directory, OutboundQueue.DEFAULT_MAX_BYTES,
+                    OutboundQueue.DEFAULT_SEGMENT_BYTES, OutboundQueue.DEFAULT_SYNC_EVERY, OUTBOUND_SYNC_INTERVAL_MS);
+            if (outboundQueue.getDepth() > 0) {
+                Log.w(test_mqtt, outboundQueue.getDepth() + " messages left from the last run");
+            }
+        } catch (IOException e) {
+            Log.w(test_mqtt, "Unable to open the outbound queue: " + e.toString());
+        }
+    }
+
+    private void syncOutboundQueue() {
+        if (outboundQueue == null) {
+            return;
+        }
+        try {
+            outboundQueue.sync();
+        } catch (IOException e) {
+            Log.w(test_mqtt, "Unable to sync the outbound queue: " + e.toString());
+        }
+    }
+
+    // Sends the oldest queued message and, once the broker has it, the next one. Runs on the queue
+    // thread, one message in flight at a time so that the order is kept.
+    private void drain() {
+        if (draining || outboundQueue == null || !mqttAndroidClient.isConnected()) {
+            return;
+        }
+        OutboundQueue.Message queued;
+        try {
+            queued = outboundQueue.peek();
+        } catch (IOException e) {
+            Log.w(test_mqtt, "Unable to read the outbound queue: " + e.toString());
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (queued == null) {
+            if (drainStartMs >= 0) {
+                long sent = outboundQueue.getRemovedCount() - drainStartCount;
+                long elapsed = Math.max(1, now - drainStartMs);
+                lastDrainRate = sent * 1000f / elapsed;
+                Log.w(test_mqtt, "Drained " + sent + " messages in " + elapsed + " ms, "
+                        + outboundQueue.getDroppedCount() + " dropped to the disk limit so far");
+                drainStartMs = -1;
+            }
+            return;
+        }
+        if (drainStartMs < 0) {
+            drainStartMs = now;
+            drainStartCount = outboundQueue.getRemovedCount();
+        }
+
+        // Rate limit so a long backlog doesn't flood the broker right after reconnecting
+        if (now < nextDrainMs) {
+            queueHandler.removeCallbacks(drainRunnable);
+            queueHandler.postDelayed(drainRunnable, nextDrainMs - now);
+            return;
+        }
+        nextDrainMs = now + 1000 / DRAIN_MESSAGES_PER_SECOND;
+
+        MqttMessage message = new MqttMessage(queued.payload);
+        message.setQos(queued.qos);
+        draining = true;
+        try {
+            mqttAndroidClient.publish(queued.topic, message, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    queueHandler.post(
+                            () -> {
+                                draining = false;
+                                if (outboundQueue == null) {
+                                    return;
+                                }
+                                try {
+                                    outboundQueue.remove(queued);
+                                } catch (IOException e) {
+                                    Log.w(test_mqtt, "Unable to update the outbound queue: " + e.toString());
+                                }
+                                // Save the read position with the next batched sync
+                                queueHandler.removeCallbacks(syncRunnable);
+                                queueHandler.postDelayed(syncRunnable, OUTBOUND_SYNC_INTERVAL_MS);
+                                drain();
+                            });
                 }
 
                 @Override
                 public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-                    Log.w(test_mqtt, "Failed to connect to: " + serverUri + exception.toString());
+                    queueHandler.post(
+                            () -> {
+                                draining = false;
+                                queueHandler.postDelayed(drainRunnable, DRAIN_RETRY_MS);
+                            });
                 }
             });
+        } catch (MqttException ex) {
+            draining = false;
+            Log.w(test_mqtt, "Publish to " + queued.topic + " failed: " + ex.toString());
+            queueHandler.postDelayed(drainRunnable, DRAIN_RETRY_MS);
+        }
+    }
 
+    private void connect(){
+        MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
+        mqttConnectOptions.setCleanSession(false);
+        mqttConnectOptions.setUserName(username);
+        mqttConnectOptions.setPassword(password.toCharArray());
 
-        } catch (MqttException ex){
-            ex.printStackTrace();
-        }
+        // Reconnecting is left to the connection manager, which may also switch broker, so the
+        // subscriptions are made again after every connection.
+        connectionManager = new ConnectionManager(mqttAndroidClient, serverUris, mqttConnectOptions,
+                (serverUri, reconnect) -> {
+                    Log.w(test_mqtt, (reconnect ? "Reconnected to: " : "Connected to: ") + serverUri);
+                    if (dataSubscribed) {
+                        subscribeToTopic(subscriptionTopic);
+                    }
+                    subscribeToTopic(calibrationTopic);
+                    subscribeToTopic(schemaTopic);
+                    subscribeToTopic(fleetTopicPrefix + "+");
+                });
+        connectionManager.start();
     }
 
 
@@ -107,19 +395,21 @@ public class MqttHelper {
                 @Override
                 public void onSuccess(IMqttToken asyncActionToken) {
                     Log.w(test_mqtt,"Subscribed to: "+topic);
-                    SnackbarHelper.getInstance().showMessageWithDismiss((Activity) context,"Subscribed to: "+topic);
+                    // Created by the ingest service now, only an activity can show a snackbar
+                    if (context instanceof Activity) {
+                        SnackbarHelper.getInstance().showMessageWithDismiss((Activity) context,"Subscribed to: "+topic);
+                    }
 
                 }
 
                 @Override
                 public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-                    Log.w(test_mqtt, "Subscribed fail!");
+                    Log.w(test_mqtt, "Subscribe to " + topic + " failed", exception);
                 }
             });
 
         } catch (MqttException ex) {
-            System.err.println("Exception whilst subscribing");
-            ex.printStackTrace();
+            Log.e(test_mqtt, "Exception whilst subscribing", ex);
         }
     }
 }
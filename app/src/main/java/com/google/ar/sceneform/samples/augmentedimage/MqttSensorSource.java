@@ -0,0 +1,43 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/** Messages of the MQTT data topic, the default source. */
+class MqttSensorSource implements SensorSource {
+
+    private final MqttHelper mqttHelper;
+    private long received;
+
+    MqttSensorSource(MqttHelper mqttHelper) {
+        this.mqttHelper = mqttHelper;
+    }
+
+    @Override
+    public String getName() {
+        return "mqtt:" + mqttHelper.getSubscriptionTopic();
+    }
+
+    @Override
+    public void start(Listener listener) {
+        mqttHelper.setDataSubscribed(true);
+        mqttHelper.setDataListener(
+                payload -> {
+                    received++;
+                    listener.onMessage(payload);
+                });
+    }
+
+    @Override
+    public void stop() {
+        mqttHelper.setDataListener(null);
+        mqttHelper.setDataSubscribed(false);
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received;
+    }
+
+    @Override
+    public long getLostCount() {
+        return 0;
+    }
+}
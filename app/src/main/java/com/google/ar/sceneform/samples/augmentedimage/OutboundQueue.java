@@ -0,0 +1,482 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Store-and-forward queue of outgoing messages kept in segment files, so alerts and
+ * acknowledgements published while the broker is unreachable survive until it is back, even
+ * across an app restart.
+ *
+ * Messages are appended to the newest segment file and read back in order from the oldest one.
+ * Each record is its length, the CRC32 of its body and the body (qos, topic, payload), so a torn
+ * write at the end of a segment is detected and cut off when the queue is reopened. A segment is
+ * deleted once every message in it has been removed, and the read position within the oldest
+ * segment is saved in a small cursor file. Delivery is at least once: after a crash the messages
+ * removed since the last sync are sent again.
+ *
+ * Disk usage is bounded: when appending would exceed the limit, the oldest segment is dropped and
+ * its messages are counted as dropped. fsync is batched, it happens after a number of appends or
+ * once a time interval has passed, whichever comes first, and on {@link #sync()}.
+ *
+ * Thread safe, but meant to be driven from a single background thread since it does file I/O.
+ */
+public final class OutboundQueue implements Closeable {
+
+    // Sizing used by the app: a few hours of alerts, fsync at least every second
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_BYTES = 256L * 1024;
+    public static final int DEFAULT_SYNC_EVERY = 16;
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 1000;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".q";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /** A queued message. */
+    public static final class Message {
+        public final String topic;
+        public final byte[] payload;
+        public final int qos;
+
+        Message(String topic, byte[] payload, int qos) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+        }
+    }
+
+    private static final class Segment {
+        final long id;
+        final File file;
+        long bytes;
+        int records;
+
+        Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final int syncEveryMessages;
+    private final long syncIntervalMs;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long totalBytes;
+    private long depth;
+    private long nextSegmentId;
+
+    // Writer of the newest segment
+    private FileOutputStream writeStream;
+    private FileChannel writeChannel;
+    private int unsyncedMessages;
+    private long lastSyncMs;
+
+    // Reader of the oldest segment, headOffset is the next record to send.
+    private RandomAccessFile readFile;
+    private long readSegmentId = -1;
+    private long headOffset;
+    private int headRecordBytes;
+    private Message head;
+    private boolean cursorDirty;
+
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(1024);
+
+    // Metrics
+    private long appendedCount;
+    private long removedCount;
+    private long droppedCount;
+
+    /**
+     * @param maxBytes disk space the segments may use together
+     * @param segmentBytes size at which a new segment is started
+     * @param syncEveryMessages appends between two fsyncs at most
+     * @param syncIntervalMs time between two fsyncs at most, checked on append and sync
+     */
+    public OutboundQueue(File directory, long maxBytes, long segmentBytes, int syncEveryMessages,
+                         long syncIntervalMs) throws IOException {
+        if (segmentBytes <= 0 || maxBytes < segmentBytes * 2) {
+            throw new IllegalArgumentException("maxBytes must hold at least two segments");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.syncEveryMessages = Math.max(1, syncEveryMessages);
+        this.syncIntervalMs = syncIntervalMs;
+        this.lastSyncMs = System.currentTimeMillis();
+        recover();
+    }
+
+    /** Messages waiting to be sent. */
+    public synchronized long getDepth() {
+        return depth;
+    }
+
+    /** Disk space used by the segments, removed messages of the oldest segment included. */
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getAppendedCount() {
+        return appendedCount;
+    }
+
+    /** Messages sent and removed since the queue was opened. */
+    public synchronized long getRemovedCount() {
+        return removedCount;
+    }
+
+    /** Messages lost to the disk limit since the queue was opened. */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized void append(String topic, byte[] payload, int qos) throws IOException {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int bodyBytes = 1 + 2 + topicBytes.length + payload.length;
+        int recordBytes = RECORD_HEADER_BYTES + bodyBytes;
+        if (topicBytes.length > 0xFFFF || recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Message too large for a segment");
+        }
+
+        Segment last = segments.peekLast();
+        if (last == null || last.bytes + recordBytes > segmentBytes) {
+            last = startSegment();
+        }
+        while (totalBytes + recordBytes > maxBytes && segments.size() > 1) {
+            dropOldestSegment();
+        }
+
+        if (recordBuffer.capacity() < recordBytes) {
+            recordBuffer = ByteBuffer.allocate(Math.max(recordBytes, recordBuffer.capacity() * 2));
+        }
+        ByteBuffer record = recordBuffer;
+        record.clear();
+        record.putInt(bodyBytes);
+        record.putInt(0);
+        record.put((byte) qos);
+        record.putShort((short) topicBytes.length);
+        record.put(topicBytes);
+        record.put(payload);
+        crc.reset();
+        crc.update(record.array(), RECORD_HEADER_BYTES, bodyBytes);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            writeChannel.write(record);
+        }
+
+        last.bytes += recordBytes;
+        last.records++;
+        totalBytes += recordBytes;
+        depth++;
+        appendedCount++;
+        unsyncedMessages++;
+        if (unsyncedMessages >= syncEveryMessages) {
+            sync();
+        } else {
+            syncIfDue();
+        }
+    }
+
+    /** Oldest message not yet removed, or null when the queue is empty. */
+    public synchronized Message peek() throws IOException {
+        if (head != null) {
+            return head;
+        }
+        while (depth > 0) {
+            Segment first = segments.peekFirst();
+            if (headOffset < first.bytes) {
+                head = readHead(first);
+                return head;
+            }
+            // Oldest segment fully sent, move on to the next one.
+            deleteSegment(segments.pollFirst());
+        }
+        return null;
+    }
+
+    /**
+     * Removes a message returned by peek() once it has been delivered.
+     *
+     * @return false if the message is no longer at the head, e.g. it was dropped to the disk limit
+     * while it was being sent
+     */
+    public synchronized boolean remove(Message delivered) throws IOException {
+        if (delivered == null || peek() != delivered) {
+            return false;
+        }
+        head = null;
+        headOffset += headRecordBytes;
+        depth--;
+        removedCount++;
+        cursorDirty = true;
+
+        Segment first = segments.peekFirst();
+        if (headOffset >= first.bytes && first != segments.peekLast()) {
+            deleteSegment(segments.pollFirst());
+        }
+        return true;
+    }
+
+    /** fsyncs the newest segment and saves the read position. */
+    public synchronized void sync() throws IOException {
+        if (writeChannel != null && unsyncedMessages > 0) {
+            writeChannel.force(false);
+        }
+        unsyncedMessages = 0;
+        lastSyncMs = System.currentTimeMillis();
+        if (cursorDirty) {
+            writeCursor();
+        }
+    }
+
+    /** Syncs only if the sync interval has passed since the last one. */
+    public synchronized void syncIfDue() throws IOException {
+        if ((unsyncedMessages > 0 || cursorDirty) && System.currentTimeMillis() - lastSyncMs >= syncIntervalMs) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            closeWriter();
+            closeReader();
+        }
+    }
+
+    private Segment startSegment() throws IOException {
+        if (writeChannel != null) {
+            sync();
+            closeWriter();
+        }
+        long id = nextSegmentId++;
+        Segment segment = new Segment(id, segmentFile(id));
+        segments.addLast(segment);
+        openWriter(segment, false);
+        return segment;
+    }
+
+    private void openWriter(Segment segment, boolean append) throws IOException {
+        writeStream = new FileOutputStream(segment.file, append);
+        writeChannel = writeStream.getChannel();
+    }
+
+    private void closeWriter() throws IOException {
+        if (writeStream != null) {
+            writeStream.close();
+            writeStream = null;
+            writeChannel = null;
+        }
+    }
+
+    private void closeReader() throws IOException {
+        if (readFile != null) {
+            readFile.close();
+            readFile = null;
+            readSegmentId = -1;
+        }
+    }
+
+    private void dropOldestSegment() throws IOException {
+        Segment oldest = segments.pollFirst();
+        int unsent = oldest.records - countRecordsBefore(oldest, headOffset);
+        depth -= unsent;
+        droppedCount += unsent;
+        deleteSegment(oldest);
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        if (readSegmentId == segment.id) {
+            closeReader();
+        }
+        totalBytes -= segment.bytes;
+        if (!segment.file.delete()) {
+            throw new IOException("Unable to delete " + segment.file);
+        }
+        head = null;
+        headOffset = 0;
+        cursorDirty = true;
+    }
+
+    private Message readHead(Segment segment) throws IOException {
+        if (readSegmentId != segment.id) {
+            closeReader();
+            readFile = new RandomAccessFile(segment.file, "r");
+            readSegmentId = segment.id;
+        }
+        readFile.seek(headOffset);
+        int bodyBytes = readFile.readInt();
+        int checksum = readFile.readInt();
+        byte[] body = new byte[bodyBytes];
+        readFile.readFully(body);
+        crc.reset();
+        crc.update(body, 0, bodyBytes);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt record in " + segment.file + " at " + headOffset);
+        }
+        headRecordBytes = RECORD_HEADER_BYTES + bodyBytes;
+        int topicBytes = ((body[1] & 0xFF) << 8) | (body[2] & 0xFF);
+        String topic = new String(body, 3, topicBytes, StandardCharsets.UTF_8);
+        return new Message(topic, Arrays.copyOfRange(body, 3 + topicBytes, bodyBytes), body[0]);
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format(Locale.US, "%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    // Rebuilds the segment list from the directory, cutting off a torn write at the end of a segment
+    // and skipping what the cursor says was already sent.
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        long[] ids = new long[files == null ? 0 : files.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            String name = files[i].getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    ids[count++] = Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    count--;
+                }
+            }
+        }
+        Arrays.sort(ids, 0, count);
+
+        long cursorSegment = -1;
+        long cursorOffset = 0;
+        File cursor = new File(directory, CURSOR_FILE);
+        if (cursor.isFile()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(cursor))) {
+                cursorSegment = in.readLong();
+                cursorOffset = in.readLong();
+            } catch (IOException e) {
+                // A torn cursor only means resending, start from the oldest segment.
+                cursorSegment = -1;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Segment segment = new Segment(ids[i], segmentFile(ids[i]));
+            if (ids[i] < cursorSegment) {
+                // Fully sent before the restart
+                if (!segment.file.delete()) {
+                    throw new IOException("Unable to delete " + segment.file);
+                }
+                continue;
+            }
+            scanSegment(segment);
+            segments.addLast(segment);
+            totalBytes += segment.bytes;
+            depth += segment.records;
+        }
+
+        // Ids keep growing so that a new segment is never mistaken for one the cursor has passed.
+        nextSegmentId = Math.max(count == 0 ? 0 : ids[count - 1] + 1, cursorSegment + 1);
+
+        Segment first = segments.peekFirst();
+        if (first != null && first.id == cursorSegment && cursorOffset <= first.bytes) {
+            int sent = countRecordsBefore(first, cursorOffset);
+            depth -= sent;
+            headOffset = cursorOffset;
+        }
+
+        Segment last = segments.peekLast();
+        if (last != null && last.bytes < segmentBytes) {
+            openWriter(last, true);
+        }
+    }
+
+    // Counts the valid records of a segment and truncates it after the last one.
+    private void scanSegment(Segment segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw")) {
+            long length = file.length();
+            long offset = 0;
+            byte[] body = new byte[0];
+            while (offset + RECORD_HEADER_BYTES <= length) {
+                file.seek(offset);
+                int bodyBytes = file.readInt();
+                int checksum = file.readInt();
+                if (bodyBytes < 3 || offset + RECORD_HEADER_BYTES + bodyBytes > length) {
+                    break;
+                }
+                if (body.length < bodyBytes) {
+                    body = new byte[bodyBytes];
+                }
+                file.readFully(body, 0, bodyBytes);
+                crc.reset();
+                crc.update(body, 0, bodyBytes);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                offset += RECORD_HEADER_BYTES + bodyBytes;
+                segment.records++;
+            }
+            if (offset < length) {
+                file.setLength(offset);
+            }
+            segment.bytes = offset;
+        }
+    }
+
+    private int countRecordsBefore(Segment segment, long limit) throws IOException {
+        if (limit == 0) {
+            return 0;
+        }
+        int records = 0;
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            long offset = 0;
+            while (offset < limit && offset < segment.bytes) {
+                file.seek(offset);
+                offset += RECORD_HEADER_BYTES + file.readInt();
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private void writeCursor() throws IOException {
+        Segment first = segments.peekFirst();
+        File temporary = new File(directory, CURSOR_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeLong(first == null ? 0 : first.id);
+            out.writeLong(first == null ? 0 : headOffset);
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, CURSOR_FILE))) {
+            throw new IOException("Unable to save the queue cursor");
+        }
+        cursorDirty = false;
+    }
+}
@@ -0,0 +1,39 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Stages of the ingest and frame loop, as counted by {@link AllocationBudget} and traced by
+ * {@link Tracing}. Shared by SensorPipeline on the device and SoakRunner off it, so the headless
+ * run is held to the same budgets.
+ *
+ * Budgets are bytes per event. Decode is JSON and allocates anyway, filter, derived and stats
+ * must not allocate at all.
+ */
+public final class PipelineStages {
+
+    public static final int FRAME = 0;
+    public static final int NODE_UPDATE = 1;
+    public static final int MESSAGE = 2;
+    public static final int DECODE = 3;
+    public static final int FILTER = 4;
+    public static final int DERIVED = 5;
+    public static final int ALERTS = 6;
+    public static final int STATS = 7;
+    public static final int RECORD = 8;
+    public static final int PRESENT = 9;
+
+    static final String[] NAMES = {
+            "frame", "node update", "message", "decode", "filter",
+            "derived", "alerts", "stats", "record", "present"
+    };
+    static final long[] BUDGETS = {
+            4096, 1024, 65536, 65536, 0,
+            0, 512, 0, 256, 1024
+    };
+
+    private PipelineStages() {}
+
+    /** A tracker of every stage with its budget, counting through counter. */
+    public static AllocationBudget newBudget(AllocationBudget.Counter counter) {
+        return new AllocationBudget(NAMES, BUDGETS, counter);
+    }
+}
@@ -0,0 +1,128 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Decides how much of the data path runs for a chair from whether it is tracked and whether the
+ * app is in the foreground, and keeps count of what that saved.
+ *
+ * <ul>
+ *   <li>ACTIVE: every message goes through the pipeline and is drawn.</li>
+ *   <li>CHEAP: the chair is lost or the app is in the background. Messages still go through
+ *   decode, alerts, statistics and the recording, only the listener and the drawing are skipped.
+ *   The current values are drawn as soon as the chair comes back.</li>
+ *   <li>SUSPENDED: still cheap after the grace period, the source is stopped so nothing is
+ *   received at all. Values arriving after it is restarted are the first ones drawn.</li>
+ * </ul>
+ *
+ * Savings are estimates: skipped presentations times the measured average presentation time, and
+ * for the suspended time the message rate, size and pipeline time seen while receiving. Does not
+ * allocate.
+ */
+public final class PipelineSuspension {
+
+    public static final int ACTIVE = 0;
+    public static final int CHEAP = 1;
+    public static final int SUSPENDED = 2;
+
+    /** Grace period of the app, long enough to walk around the chair without losing the source. */
+    public static final long DEFAULT_GRACE_MS = 30_000;
+
+    // Weight of a new measurement in the running averages
+    private static final double SMOOTHING = 0.05;
+
+    private final long graceMs;
+    private int state = ACTIVE;
+    private long cheapSinceMs;
+    private long suspendedSinceMs;
+
+    private double decodeNanos;
+    private double presentNanos;
+    private double messageBytes;
+    private double messagesPerSecond;
+    private long lastDecodedMs = -1;
+
+    private long skipped;
+    private long suspendedMs;
+
+    /** @param graceMs how long a chair stays in cheap mode before its source is stopped */
+    public PipelineSuspension(long graceMs) {
+        this.graceMs = graceMs;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Moves to the state for the given conditions.
+     *
+     * @return the state, compare with the previous one to start or stop work
+     */
+    public int update(boolean tracking, boolean foreground, long nowMs) {
+        if (tracking && foreground) {
+            if (state == SUSPENDED) {
+                suspendedMs += nowMs - suspendedSinceMs;
+            }
+            state = ACTIVE;
+        } else if (state == ACTIVE) {
+            state = CHEAP;
+            cheapSinceMs = nowMs;
+        } else if (state == CHEAP && nowMs - cheapSinceMs >= graceMs) {
+            state = SUSPENDED;
+            suspendedSinceMs = nowMs;
+        }
+        return state;
+    }
+
+    /** Time left until a cheap chair gets suspended, for scheduling the next update. */
+    public long getGraceLeftMs(long nowMs) {
+        return Math.max(0, cheapSinceMs + graceMs - nowMs);
+    }
+
+    /** A message of the given size went through the whole pipeline in nanos, drawing included. */
+    public void onDecoded(long nanos, int bytes, long nowMs) {
+        decodeNanos = average(decodeNanos, nanos);
+        messageBytes = average(messageBytes, bytes);
+        if (lastDecodedMs >= 0 && nowMs > lastDecodedMs) {
+            messagesPerSecond = average(messagesPerSecond, 1000.0 / (nowMs - lastDecodedMs));
+        }
+        lastDecodedMs = nowMs;
+    }
+
+    /** Drawing a message took nanos. */
+    public void onPresented(long nanos) {
+        presentNanos = average(presentNanos, nanos);
+    }
+
+    /** A message went through the pipeline but wasn't drawn. */
+    public void onSkipped() {
+        skipped++;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /** Time spent suspended so far, including the current suspension. */
+    public long getSuspendedMs(long nowMs) {
+        return suspendedMs + (state == SUSPENDED ? nowMs - suspendedSinceMs : 0);
+    }
+
+    /** Drawing and decoding avoided, in milliseconds of CPU. */
+    public double getSavedCpuMs(long nowMs) {
+        return (skipped * presentNanos + getMessagesNotReceived(nowMs) * decodeNanos) / 1e6;
+    }
+
+    /** Estimated messages the broker didn't send while suspended. */
+    public long getMessagesNotReceived(long nowMs) {
+        return (long) (getSuspendedMs(nowMs) / 1000.0 * messagesPerSecond);
+    }
+
+    /** Estimated bytes the radio didn't receive while suspended. */
+    public long getSavedBytes(long nowMs) {
+        return (long) (getMessagesNotReceived(nowMs) * messageBytes);
+    }
+
+    private static double average(double current, double sample) {
+        return current == 0 ? sample : current + SMOOTHING * (sample - current);
+    }
+}
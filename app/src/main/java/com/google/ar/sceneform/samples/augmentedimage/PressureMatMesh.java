@@ -0,0 +1,160 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Flat grid of rows x cols quads lying on the XZ plane, facing +Y, used for the pressure mat.
+ *
+ * Every cell owns its four vertices so it can be coloured on its own. The colour of a cell is its
+ * horizontal texture coordinate into the palette texture of {@link MaterialPool}, so the whole mat
+ * is one submesh with one material whatever the number of cells. Changed cells are queued in a
+ * preallocated list, letting the renderer copy only those cells' coordinates each frame.
+ */
+public final class PressureMatMesh {
+
+    public static final int VERTICES_PER_CELL = 4;
+
+    private final int rows;
+    private final int cols;
+
+    private final float[] positions;
+    private final float[] uvs;
+    private final int[] triangleIndices;
+
+    // Texture coordinate currently assigned to every cell, NaN before the first update.
+    private final float[] cellU;
+
+    // Cells changed since clearDirty(), in first-change order, without duplicates.
+    private final int[] dirtyCells;
+    private final boolean[] dirtyFlags;
+    private int dirtyCount;
+
+    /**
+     * @param centerX centre of the mat relative to the anchor
+     * @param height  Y of the mat plane relative to the anchor
+     * @param centerZ centre of the mat relative to the anchor
+     * @param width   extent along X in meters
+     * @param depth   extent along Z in meters
+     */
+    public PressureMatMesh(int rows, int cols, float centerX, float height, float centerZ, float width, float depth) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("rows and cols must be positive");
+        }
+        this.rows = rows;
+        this.cols = cols;
+
+        int cells = rows * cols;
+        positions = new float[cells * VERTICES_PER_CELL * 3];
+        uvs = new float[cells * VERTICES_PER_CELL * 2];
+        triangleIndices = new int[cells * 6];
+        cellU = new float[cells];
+        dirtyCells = new int[cells];
+        dirtyFlags = new boolean[cells];
+
+        float cellWidth = width / cols;
+        float cellDepth = depth / rows;
+        float left = centerX - width / 2;
+        float back = centerZ - depth / 2;
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int cell = row * cols + col;
+                float x0 = left + col * cellWidth;
+                float x1 = x0 + cellWidth;
+                float z0 = back + row * cellDepth;
+                float z1 = z0 + cellDepth;
+
+                // Counter-clockwise seen from +Y
+                int vertex = cell * VERTICES_PER_CELL;
+                setPosition(vertex, x0, height, z0);
+                setPosition(vertex + 1, x0, height, z1);
+                setPosition(vertex + 2, x1, height, z1);
+                setPosition(vertex + 3, x1, height, z0);
+
+                int index = cell * 6;
+                triangleIndices[index] = vertex;
+                triangleIndices[index + 1] = vertex + 1;
+                triangleIndices[index + 2] = vertex + 2;
+                triangleIndices[index + 3] = vertex;
+                triangleIndices[index + 4] = vertex + 2;
+                triangleIndices[index + 5] = vertex + 3;
+
+                cellU[cell] = Float.NaN;
+                writeCell(cell, 0f);
+            }
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getCellCount() {
+        return rows * cols;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getUvs() {
+        return uvs;
+    }
+
+    public int[] getTriangleIndices() {
+        return triangleIndices;
+    }
+
+    /**
+     * Assigns the palette texture coordinate of one cell. Returns false when it is unchanged, which
+     * for a mostly idle mat is the common case.
+     */
+    public boolean setCellU(int cell, float u) {
+        if (cellU[cell] == u) {
+            return false;
+        }
+        writeCell(cell, u);
+        if (!dirtyFlags[cell]) {
+            dirtyFlags[cell] = true;
+            dirtyCells[dirtyCount++] = cell;
+        }
+        return true;
+    }
+
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /** Cell at position i of the dirty list, 0 <= i < getDirtyCount(). */
+    public int getDirtyCell(int i) {
+        return dirtyCells[i];
+    }
+
+    public void clearDirty() {
+        for (int i = 0; i < dirtyCount; i++) {
+            dirtyFlags[dirtyCells[i]] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    private void writeCell(int cell, float u) {
+        cellU[cell] = u;
+        int uv = cell * VERTICES_PER_CELL * 2;
+        for (int v = 0; v < VERTICES_PER_CELL; v++) {
+            uvs[uv + v * 2] = u;
+            uvs[uv + v * 2 + 1] = 0.5f;
+        }
+    }
+
+    private void setPosition(int vertex, float x, float y, float z) {
+        positions[vertex * 3] = x;
+        positions[vertex * 3 + 1] = y;
+        positions[vertex * 3 + 2] = z;
+    }
+}
@@ -0,0 +1,154 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.util.Log;
+
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.RenderableDefinition;
+import com.google.ar.sceneform.rendering.RenderableDefinition.Submesh;
+import com.google.ar.sceneform.rendering.Vertex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dense "pressure mat" surface: a {@link PressureMatMesh} grid drawn by one node with the palette
+ * material of a {@link MaterialPool}. A cell changes colour by moving its texture coordinate to
+ * another texel of the palette, so a 64 x 64 mat stays a single draw call and colour updates
+ * never create materials. Like the bar graph, the renderable is refreshed at most once per frame.
+ */
+@SuppressWarnings({"AndroidApiChecker"})
+class PressureMatRenderer {
+
+    private static final String TAG = "PressureMatRenderer";
+
+    private final Node matNode = new Node();
+    private final PressureMatMesh mesh;
+    private MaterialPool materialPool;
+
+    private final List<Vertex> vertices;
+    private final List<Vertex.UvCoordinate> vertexUvs;
+    private final List<Submesh> submeshes;
+    private final RenderableDefinition definition;
+    private ModelRenderable renderable;
+    private boolean released;
+
+    PressureMatRenderer(Node parent, PressureMatMesh mesh, MaterialPool materialPool) {
+        this.mesh = mesh;
+        this.materialPool = materialPool;
+        matNode.setParent(parent);
+
+        int vertexCount = mesh.getVertexCount();
+        vertices = new ArrayList<>(vertexCount);
+        vertexUvs = new ArrayList<>(vertexCount);
+        float[] positions = mesh.getPositions();
+        float[] uvs = mesh.getUvs();
+        Vector3 up = Vector3.up();
+        for (int v = 0; v < vertexCount; v++) {
+            Vertex.UvCoordinate uv = new Vertex.UvCoordinate(uvs[v * 2], uvs[v * 2 + 1]);
+            vertexUvs.add(uv);
+            vertices.add(
+                    Vertex.builder()
+                            .setPosition(new Vector3(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]))
+                            .setNormal(up)
+                            .setUvCoordinate(uv)
+                            .build());
+        }
+
+        int[] indices = mesh.getTriangleIndices();
+        List<Integer> triangleIndices = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            triangleIndices.add(index);
+        }
+        submeshes =
+                Collections.singletonList(
+                        Submesh.builder()
+                                .setTriangleIndices(triangleIndices)
+                                .setMaterial(materialPool.getPaletteMaterial())
+                                .build());
+
+        definition = RenderableDefinition.builder().setVertices(vertices).setSubmeshes(submeshes).build();
+
+        ModelRenderable.builder()
+                .setSource(definition)
+                .build()
+                .thenAccept(
+                        modelRenderable -> {
+                            // Replaced before the renderable was ready
+                            if (released) {
+                                return;
+                            }
+                            renderable = modelRenderable;
+                            renderable.setShadowCaster(false);
+                            matNode.setRenderable(renderable);
+                        })
+                .exceptionally(
+                        throwable -> {
+                            Log.e(TAG, "Unable to build pressure mat renderable", throwable);
+                            return null;
+                        });
+    }
+
+    PressureMatMesh getMesh() {
+        return mesh;
+    }
+
+    void setVisible(boolean visible) {
+        matNode.setEnabled(visible);
+    }
+
+    /** Takes the mat out of the scene and drops its renderable, for good. Main thread only. */
+    void release() {
+        released = true;
+        matNode.setRenderable(null);
+        matNode.setParent(null);
+        renderable = null;
+    }
+
+    /** Switches palette, the cells keep their buckets and are recoloured on the next commit. */
+    void setMaterialPool(MaterialPool materialPool) {
+        this.materialPool = materialPool;
+        submeshes.get(0).setMaterial(materialPool.getPaletteMaterial());
+        if (renderable != null) {
+            renderable.updateFromDefinition(definition);
+        }
+    }
+
+    /** Colours every cell from a row-major array of values, only changed cells are rewritten. */
+    void setCellValues(float[] values, int count) {
+        ColorLut colorLut = materialPool.getColorLut();
+        int cells = Math.min(count, mesh.getCellCount());
+        for (int cell = 0; cell < cells; cell++) {
+            mesh.setCellU(cell, colorLut.textureCoordinateOf(colorLut.bucketOf(values[cell])));
+        }
+    }
+
+    /** Colours a single cell, for sparse updates. */
+    void setCellValue(int cell, float value) {
+        ColorLut colorLut = materialPool.getColorLut();
+        mesh.setCellU(cell, colorLut.textureCoordinateOf(colorLut.bucketOf(value)));
+    }
+
+    /** Pushes the texture coordinates of dirty cells to the renderable. Call once per frame. */
+    void commit() {
+        if (renderable == null || mesh.getDirtyCount() == 0) {
+            return;
+        }
+
+        float[] uvs = mesh.getUvs();
+        for (int i = 0; i < mesh.getDirtyCount(); i++) {
+            int first = mesh.getDirtyCell(i) * PressureMatMesh.VERTICES_PER_CELL;
+            for (int v = first; v < first + PressureMatMesh.VERTICES_PER_CELL; v++) {
+                Vertex.UvCoordinate uv = vertexUvs.get(v);
+                uv.x = uvs[v * 2];
+                uv.y = uvs[v * 2 + 1];
+                vertices.get(v).setUvCoordinate(uv);
+            }
+        }
+        mesh.clearDirty();
+
+        renderable.updateFromDefinition(definition);
+    }
+}
@@ -0,0 +1,166 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Steps the rendering quality down when frames take too long or the device heats up, and back
+ * up once there is room again.
+ *
+ * Frame times are averaged over windows of WINDOW_FRAMES frames. Two windows in a row over budget
+ * lower the quality one level, UP_WINDOWS windows in a row well under budget raise it one level.
+ * A level is kept at least DOWN_DWELL_MS before going further down and UP_DWELL_MS before going
+ * back up, and the band between the two frame time limits is left alone, so the level doesn't
+ * oscillate around the budget. The thermal status sets a floor the level can't be raised above.
+ *
+ * Level 0 is full quality. Every level gives the settings below, the caller applies them. Pure
+ * Java so recorded frame time traces can be replayed through {@link #onFrame}. Does not allocate.
+ */
+public final class QualityGovernor {
+
+    public interface Listener {
+        /** @param value the average frame time in ms or the thermal status that caused the change */
+        void onLevelChanged(int from, int to, String trigger, float value);
+    }
+
+    public static final String TRIGGER_SLOW_FRAMES = "slow frames";
+    public static final String TRIGGER_FAST_FRAMES = "fast frames";
+    public static final String TRIGGER_THERMAL = "thermal status";
+
+    // Thermal status as in android.os.PowerManager, THERMAL_STATUS_NONE to THERMAL_STATUS_SHUTDOWN
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+    public static final int THERMAL_EMERGENCY = 5;
+    public static final int THERMAL_SHUTDOWN = 6;
+    private static final int[] THERMAL_FLOOR = {0, 0, 1, 2, 3, 3, 3};
+
+    // Settings per level, best first
+    private static final long[] LABEL_INTERVAL_MS = {0, 100, 250, 500};
+    private static final long[] STATS_REFRESH_MS = {500, 1000, 2000, 4000};
+    private static final long[] CONFLATION_MS = {0, 50, 100, 200};
+    private static final float[] LOD_DISTANCE_SCALE = {1f, 0.8f, 0.6f, 0.4f};
+    public static final int LEVEL_COUNT = LABEL_INTERVAL_MS.length;
+
+    /** Frame budget of the app, 30 fps. */
+    public static final float DEFAULT_BUDGET_MS = 1000f / 30;
+
+    private static final int WINDOW_FRAMES = 30;
+    private static final float OVER_BUDGET = 1.2f;
+    private static final float UNDER_BUDGET = 0.8f;
+    private static final int DOWN_WINDOWS = 2;
+    private static final int UP_WINDOWS = 10;
+    private static final long DOWN_DWELL_MS = 2_000;
+    private static final long UP_DWELL_MS = 10_000;
+
+    private final float budgetMs;
+    private Listener listener;
+    private int level;
+    private int thermalStatus;
+    private long lastChangeMs = Long.MIN_VALUE / 2;
+
+    private float windowSumMs;
+    private int windowFrames;
+    private int overWindows;
+    private int underWindows;
+    private float lastAverageMs;
+
+    /** @param budgetMs frame time to keep under, e.g. 33.3 for 30 fps */
+    public QualityGovernor(float budgetMs) {
+        this.budgetMs = budgetMs;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getThermalStatus() {
+        return thermalStatus;
+    }
+
+    /** Average frame time of the last complete window. */
+    public float getAverageFrameMs() {
+        return lastAverageMs;
+    }
+
+    /** Least time between two label texts of a chair. */
+    public long getLabelIntervalMs() {
+        return LABEL_INTERVAL_MS[level];
+    }
+
+    /** Least time between two refreshes of the statistics panels. */
+    public long getStatsRefreshMs() {
+        return STATS_REFRESH_MS[level];
+    }
+
+    /** Samples arriving closer together than this are not drawn, only the latest one is. */
+    public long getConflationMs() {
+        return CONFLATION_MS[level];
+    }
+
+    /** Multiplies the level of detail distances, so less is drawn in full. */
+    public float getLodDistanceScale() {
+        return LOD_DISTANCE_SCALE[level];
+    }
+
+    /**
+     * Takes the duration of one frame.
+     *
+     * @return the level, possibly changed
+     */
+    public int onFrame(float frameMs, long nowMs) {
+        windowSumMs += frameMs;
+        if (++windowFrames < WINDOW_FRAMES) {
+            return level;
+        }
+        lastAverageMs = windowSumMs / windowFrames;
+        windowSumMs = 0;
+        windowFrames = 0;
+
+        if (lastAverageMs > budgetMs * OVER_BUDGET) {
+            overWindows++;
+            underWindows = 0;
+        } else if (lastAverageMs < budgetMs * UNDER_BUDGET) {
+            underWindows++;
+            overWindows = 0;
+        } else {
+            overWindows = 0;
+            underWindows = 0;
+        }
+
+        if (overWindows >= DOWN_WINDOWS && level < LEVEL_COUNT - 1 && nowMs - lastChangeMs >= DOWN_DWELL_MS) {
+            overWindows = 0;
+            setLevel(level + 1, nowMs, TRIGGER_SLOW_FRAMES, lastAverageMs);
+        } else if (underWindows >= UP_WINDOWS && level > THERMAL_FLOOR[thermalStatus]
+                && nowMs - lastChangeMs >= UP_DWELL_MS) {
+            underWindows = 0;
+            setLevel(level - 1, nowMs, TRIGGER_FAST_FRAMES, lastAverageMs);
+        }
+        return level;
+    }
+
+    /**
+     * Takes the thermal status, THERMAL_NONE to THERMAL_SHUTDOWN. A hotter device lowers the
+     * quality at once, a cooler one only allows raising it again with the frame times.
+     */
+    public int onThermalStatus(int status, long nowMs) {
+        thermalStatus = Math.max(THERMAL_NONE, Math.min(THERMAL_SHUTDOWN, status));
+        int floor = THERMAL_FLOOR[thermalStatus];
+        if (level < floor) {
+            setLevel(floor, nowMs, TRIGGER_THERMAL, thermalStatus);
+        }
+        return level;
+    }
+
+    private void setLevel(int to, long nowMs, String trigger, float value) {
+        int from = level;
+        level = to;
+        lastChangeMs = nowMs;
+        if (listener != null) {
+            listener.onLevelChanged(from, to, trigger, value);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Count, mean, variance, min and max of a stream in constant memory (Welford's algorithm).
+ * Two instances can be merged exactly, e.g. the stats of several chairs or of several windows.
+ */
+public final class RunningStats {
+
+    private long count;
+    private double mean;
+    // Sum of squared differences from the mean
+    private double m2;
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+
+    public void add(float value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /** Adds everything other has seen, as if its values had been added here. */
+    public void merge(RunningStats other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            copyFrom(other);
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void copyFrom(RunningStats other) {
+        count = other.count;
+        mean = other.mean;
+        m2 = other.m2;
+        min = other.min;
+        max = other.max;
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /** Sample variance, NaN with fewer than two values. */
+    public double getVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public float getMin() {
+        return count == 0 ? Float.NaN : min;
+    }
+
+    public float getMax() {
+        return count == 0 ? Float.NaN : max;
+    }
+}
@@ -0,0 +1,112 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Which live samples the chair node draws and when its labels are refreshed, from the level of
+ * detail and the settings of the quality governor. Far away chairs are drawn at a lower rate,
+ * culled ones not at all, and samples closer together than the conflation window of the quality
+ * level are not drawn either. The samples still go through every stage of the pipeline. Labels
+ * are formatted into buffers the caller keeps. Pure Java so the soak run presents the same way
+ * the node does. Main thread only, does not allocate.
+ */
+public final class SamplePresentation {
+
+    public static final float LOD_FULL_DISTANCE = 2.5f;
+    public static final float LOD_CULL_DISTANCE = 10f;
+    public static final float LOD_RADIUS = 0.6f;
+    public static final float LOD_HYSTERESIS = 0.15f;
+    public static final long SIMPLIFIED_PRESENT_INTERVAL_MS = 200;
+
+    /** Enough for any float, sign, up to 19 digits, the point and a decimal. */
+    public static final int LABEL_CAPACITY = 24;
+    private static final char[] NAN = {'N', 'a', 'N'};
+    private static final char[] INFINITY = {'I', 'n', 'f', 'i', 'n', 'i', 't', 'y'};
+
+    private final LevelOfDetail levelOfDetail =
+            new LevelOfDetail(LOD_FULL_DISTANCE, LOD_CULL_DISTANCE, LOD_RADIUS, LOD_HYSTERESIS);
+    // Full quality until the governor says otherwise
+    private long labelIntervalMs;
+    private long conflationMs;
+    private long lastPresentMs;
+    private long lastLabelMs;
+
+    public LevelOfDetail getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /** See {@link LevelOfDetail#update}, call once per frame. */
+    public LevelOfDetail.Level updateLevelOfDetail(float[] view, float[] projection, float x, float y, float z) {
+        return levelOfDetail.update(view, projection, x, y, z);
+    }
+
+    /** Takes the label interval, conflation and level of detail of the governor's current level. */
+    public void applyQuality(QualityGovernor governor) {
+        labelIntervalMs = governor.getLabelIntervalMs();
+        conflationMs = governor.getConflationMs();
+        levelOfDetail.setDistanceScale(governor.getLodDistanceScale());
+    }
+
+    /** Whether a live sample arriving at nowMs is drawn, false when it is culled or conflated. */
+    public boolean shouldPresent(long nowMs) {
+        LevelOfDetail.Level level = levelOfDetail.getLevel();
+        long intervalMs = level == LevelOfDetail.Level.SIMPLIFIED
+                ? Math.max(SIMPLIFIED_PRESENT_INTERVAL_MS, conflationMs) : conflationMs;
+        if (level == LevelOfDetail.Level.CULLED || nowMs - lastPresentMs < intervalMs) {
+            return false;
+        }
+        lastPresentMs = nowMs;
+        return true;
+    }
+
+    /** Whether the labels show the values drawn at nowMs, only at full detail. */
+    public boolean shouldRefreshLabels(long nowMs) {
+        if (levelOfDetail.getLevel() != LevelOfDetail.Level.FULL || nowMs - lastLabelMs < labelIntervalMs) {
+            return false;
+        }
+        lastLabelMs = nowMs;
+        return true;
+    }
+
+    /** The next values drawn refresh the labels, to catch up after less was drawn. */
+    public void refreshLabelsNext() {
+        lastLabelMs = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * Writes the value rounded to one decimal into label, which has to hold LABEL_CAPACITY chars.
+     *
+     * @return the number of chars written
+     */
+    public static int formatLabel(float value, char[] label) {
+        if (Float.isNaN(value)) {
+            System.arraycopy(NAN, 0, label, 0, NAN.length);
+            return NAN.length;
+        }
+        int length = 0;
+        if (Float.isInfinite(value)) {
+            if (value < 0) {
+                label[length++] = '-';
+            }
+            System.arraycopy(INFINITY, 0, label, length, INFINITY.length);
+            return length + INFINITY.length;
+        }
+        // Saturates past 9.2e17, far beyond anything a sensor sends
+        long tenths = Math.round(Math.abs((double) value) * 10);
+        // No minus in front of a value that rounds to zero
+        if (value < 0 && tenths != 0) {
+            label[length++] = '-';
+        }
+        long whole = tenths / 10;
+        int digits = 1;
+        for (long rest = whole / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            label[i] = (char) ('0' + whole % 10);
+            whole /= 10;
+        }
+        length += digits;
+        label[length++] = '.';
+        label[length++] = (char) ('0' + tenths % 10);
+        return length;
+    }
+}
@@ -0,0 +1,155 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+
+/**
+ * What every sample of the chair goes through once the transport handed it over: decode, filters,
+ * derived channels, alerts, statistics and the recording, in that order. {@link SensorPipeline}
+ * runs it on the device and the soak run headless, so the code measured is the code shipped.
+ * Every stage is traced and, given a budget, its allocations counted. Single threaded.
+ */
+public final class SampleProcessor {
+
+    /** Takes every processed sample, the session file on the device. */
+    public interface Recorder {
+        void record(long timeMs, float[] values);
+    }
+
+    // Running statistics of every sensor over the session and the last minute
+    public static final long STATS_WINDOW_MS = 60_000;
+    public static final int STATS_WINDOW_BLOCKS = 6;
+
+    private final int sensorCount;
+    private final SensorDecoder decoder;
+    private final FilterChain filterChain;
+    private final DerivedChannels derivedChannels;
+    private final AlertRuleEngine alertRuleEngine;
+    private final Recorder recorder;
+    private final AllocationBudget allocations;
+    private final String[] channelNames;
+    // Sensors after the filter chain, followed by the derived channels
+    private final float[] values;
+    private final StreamingStats[] sensorStats;
+    private long sampleCount;
+    private long decodeNanos;
+
+    /**
+     * @param alertRuleEngine rules over channelNames, see {@link #getChannelNames}
+     * @param allocations null to only trace the stages
+     */
+    public SampleProcessor(String[] sensorNames, FilterChain filterChain, DerivedChannels derivedChannels,
+                           AlertRuleEngine alertRuleEngine, Recorder recorder, AllocationBudget allocations) {
+        sensorCount = sensorNames.length;
+        decoder = new SensorDecoder(sensorNames);
+        this.filterChain = filterChain;
+        this.derivedChannels = derivedChannels;
+        this.alertRuleEngine = alertRuleEngine;
+        this.recorder = recorder;
+        this.allocations = allocations;
+        channelNames = derivedChannels.allChannelNames(sensorNames);
+        values = new float[channelNames.length];
+        sensorStats = new StreamingStats[sensorCount];
+        for (int sensor = 0; sensor < sensorCount; sensor++) {
+            sensorStats[sensor] = new StreamingStats(STATS_WINDOW_MS, STATS_WINDOW_BLOCKS);
+        }
+    }
+
+    /** Traces the stage and counts what it allocates. */
+    public void beginStage(int stage) {
+        Tracing.RECORDER.begin(stage);
+        if (allocations != null) {
+            allocations.begin(stage);
+        }
+    }
+
+    public void endStage(int stage) {
+        if (allocations != null) {
+            allocations.end(stage);
+        }
+        Tracing.RECORDER.end(stage);
+    }
+
+    /**
+     * Runs one message through every stage.
+     *
+     * @return what {@link SensorDecoder#decode} returned, nothing past the decode ran for
+     * IGNORED and UNKNOWN_SCHEMA
+     */
+    public int process(String payload, long nowMs) throws JSONException {
+        beginStage(PipelineStages.DECODE);
+        // Negative when every cell of the mat changed, zero without a mat
+        int matChanged;
+        long decodeStartNanos = System.nanoTime();
+        try {
+            matChanged = decoder.decode(payload);
+        } finally {
+            endStage(PipelineStages.DECODE);
+        }
+        decodeNanos = System.nanoTime() - decodeStartNanos;
+        // Duplicates and messages too old to place change nothing
+        if (matChanged == SensorDecoder.UNKNOWN_SCHEMA || matChanged == SensorDecoder.IGNORED) {
+            return matChanged;
+        }
+
+        // Remove sensor noise before anything is shown
+        beginStage(PipelineStages.FILTER);
+        filterChain.process(decoder.getRawValues(), values, sensorCount);
+        endStage(PipelineStages.FILTER);
+
+        // One pass computing every derived channel after the sensors
+        beginStage(PipelineStages.DERIVED);
+        derivedChannels.evaluate(values);
+        endStage(PipelineStages.DERIVED);
+
+        beginStage(PipelineStages.ALERTS);
+        alertRuleEngine.evaluate(values, nowMs);
+        endStage(PipelineStages.ALERTS);
+
+        beginStage(PipelineStages.STATS);
+        for (int sensor = 0; sensor < sensorCount; sensor++) {
+            sensorStats[sensor].add(values[sensor], nowMs);
+        }
+        endStage(PipelineStages.STATS);
+
+        beginStage(PipelineStages.RECORD);
+        recorder.record(nowMs, values);
+        endStage(PipelineStages.RECORD);
+        sampleCount++;
+        return matChanged;
+    }
+
+    public SensorDecoder getDecoder() {
+        return decoder;
+    }
+
+    public DerivedChannels getDerivedChannels() {
+        return derivedChannels;
+    }
+
+    public AlertRuleEngine getAlertRuleEngine() {
+        return alertRuleEngine;
+    }
+
+    /** Sensors followed by the derived channels, after the last sample. */
+    public float[] getValues() {
+        return values;
+    }
+
+    public String[] getChannelNames() {
+        return channelNames;
+    }
+
+    public StreamingStats getSensorStats(int sensor) {
+        return sensorStats[sensor];
+    }
+
+    /** Samples that made it past the decode. */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** How long the last decode took, also for messages that were ignored. */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+}
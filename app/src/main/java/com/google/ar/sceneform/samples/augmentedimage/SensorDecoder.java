@@ -0,0 +1,594 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Turns sensor messages into raw sensor values and pressure mat cells. Takes the plain format
+ * <pre>
+ * {"value": {"left": 0.0, "mid": 0.0, "right": 0.0, "back": 0.0, "foot": 0.0},
+ *  "mat": {"rows": 64, "cols": 64, "cells": [ ... ]}}
+ * </pre>
+ * where the mat is optional and cells are row-major, and the sparse delta protocol
+ * <pre>
+ * {"seq": 41, "key": true, "value": {"left": 0.0, ...}, "mat": {"rows": 64, "cols": 64, "cells": [...]}}
+ * {"seq": 42, "delta": {"idx": [1, 4], "val": [23.5, 0.0]}}
+ * </pre>
+ * where delta indices count the sensors first, then the mat cells row-major. Messages with a
+ * "seq" carry either a keyframe of every channel or only the channels that changed, so only the
+ * mat cells that changed are listed.
+ *
+ * Once a {@link ChannelSchema} has been announced, values may come by position instead of by
+ * name, in the order of the schema, and the message may name the schema version it follows:
+ * <pre>
+ * {"schema": 2, "v": [0.0, 0.0, 0.0, 0.0, 0.0]}
+ * {"schema": 2, "seq": 41, "key": true, "v": [...], "mat": {...}}
+ * {"schema": 2, "seq": 42, "delta": {"idx": [1, 4], "val": [23.5, 0.0]}}
+ * </pre>
+ * where delta indices of a versioned message count the schema's channels first, then the mat
+ * cells. The schema is interned into a table from position to sensor, so decoding looks up no
+ * names. Channels the app has no sensor for are skipped, sensors the schema has no channel for
+ * read 0 and are reported by {@link #isMissing}. Values outside the range a channel announces are
+ * clamped to it and counted. A new version is taken on at its first message, or right away by
+ * senders that don't name the version, so the messages sent before the change still decode with
+ * the old one. Announcing the version before it again rolls back to it the same way.
+ *
+ * Plain positional messages, nothing but "schema" and "v", are read straight from the text
+ * without building JSON objects, every other message goes through org.json. Call from one thread.
+ */
+public final class SensorDecoder {
+
+    /** Returned by {@link #decode} for duplicates, messages too old to place and deltas without a keyframe. */
+    public static final int IGNORED = Integer.MIN_VALUE;
+
+    /** Returned by {@link #decode} for messages by position that follow a schema not announced yet. */
+    public static final int UNKNOWN_SCHEMA = Integer.MIN_VALUE + 1;
+
+    // decodePositional() couldn't read the message, org.json has to
+    private static final int NOT_POSITIONAL = Integer.MIN_VALUE + 2;
+    private static final int KEY_SCHEMA = 0;
+    private static final int KEY_VALUES = 1;
+    // Exact powers of ten as doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Digits beyond these don't change a float
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    // An interned schema, the sensor fed by each position or -1
+    private static final class SchemaTable {
+        final ChannelSchema schema;
+        final int version;
+        final int[] sensorAt;
+
+        SchemaTable(ChannelSchema schema, String[] sensorNames) {
+            this.schema = schema;
+            version = schema.getVersion();
+            sensorAt = schema.mapTo(sensorNames);
+        }
+    }
+
+    private final String[] sensorNames;
+    private final int sensorCount;
+    private final float[] rawValues;
+    private final boolean[] missing;
+    private long outOfRange;
+
+    // message received and converted into JSON and the extracted JSON
+    private String message;
+    private JSONObject messageJSON;
+    private JSONObject result;
+
+    // State of the sparse protocol, the sensors followed by the pressure mat cells
+    private DeltaState deltaState;
+    private float[] keyframeValues;
+    private int[] deltaChannels;
+    private float[] deltaValues;
+    private boolean keyframeNeeded;
+
+    // Latest pressure mat, row-major, and the cells changed by the last sparse message
+    private int matRows;
+    private int matCols;
+    private float[] matValues;
+    private int[] changedCells;
+
+    // Schema in force, the one before it for late messages and one announced but not yet used
+    private SchemaTable currentSchema;
+    private SchemaTable previousSchema;
+    private SchemaTable announcedSchema;
+
+    // Positional values of the message being decoded, as long as the longest schema
+    private float[] positional = new float[0];
+    private int positionalCount;
+    // Text and position of the positional reader
+    private String text;
+    private int pos;
+
+    public SensorDecoder(String[] sensorNames) {
+        this.sensorNames = sensorNames.clone();
+        sensorCount = sensorNames.length;
+        rawValues = new float[sensorCount];
+        missing = new boolean[sensorCount];
+    }
+
+    /** Sensors as decoded from the last message. */
+    public float[] getRawValues() {
+        return rawValues;
+    }
+
+    /** Whether the schema of the last message by position has no channel for the sensor, it then reads 0. */
+    public boolean isMissing(int sensor) {
+        return missing[sensor];
+    }
+
+    /** Values clamped to the range their channel announces, so far. */
+    public long getOutOfRangeCount() {
+        return outOfRange;
+    }
+
+    /** Whether to ask the sender for a keyframe, after a gap or a delta before any keyframe. */
+    public boolean isKeyframeNeeded() {
+        return keyframeNeeded;
+    }
+
+    /** Highest sequence number seen, -1 before the first keyframe. */
+    public long getHighestSequence() {
+        return deltaState == null ? -1 : deltaState.getSequences().getHighest();
+    }
+
+    public int getMatRows() {
+        return matRows;
+    }
+
+    public int getMatCols() {
+        return matCols;
+    }
+
+    /** Null until a message carried mat cells. */
+    public float[] getMatValues() {
+        return matValues;
+    }
+
+    public int getChangedCell(int i) {
+        return changedCells[i];
+    }
+
+    /** Schema positional messages are decoded with, null before the first one was announced. */
+    public ChannelSchema getSchema() {
+        return currentSchema == null ? null : currentSchema.schema;
+    }
+
+    /**
+     * Interns an announced schema. The first one, or the one in force announced again, applies
+     * right away, any other version with its first message, including the one before it.
+     */
+    public void setSchema(ChannelSchema schema) {
+        SchemaTable table = new SchemaTable(schema, sensorNames);
+        if (table.sensorAt.length > positional.length) {
+            positional = new float[table.sensorAt.length];
+        }
+        if (currentSchema == null || currentSchema.version == table.version) {
+            currentSchema = table;
+        } else {
+            announcedSchema = table;
+        }
+    }
+
+    private SchemaTable schemaFor(JSONObject json) throws JSONException {
+        boolean named = json.has("schema");
+        return schemaFor(named, named ? json.getInt("schema") : 0);
+    }
+
+    // Table for a message by position, null when its version wasn't announced.
+    private SchemaTable schemaFor(boolean named, int version) {
+        if (!named) {
+            // The sender doesn't say, the latest announcement is all there is to go by
+            if (announcedSchema != null) {
+                takeAnnouncedSchema();
+            }
+            return currentSchema;
+        }
+        if (currentSchema != null && currentSchema.version == version) {
+            return currentSchema;
+        }
+        // An announced rollback wins over late messages of the version it rolls back to
+        if (announcedSchema != null && announcedSchema.version == version) {
+            takeAnnouncedSchema();
+            return currentSchema;
+        }
+        if (previousSchema != null && previousSchema.version == version) {
+            return previousSchema;
+        }
+        return null;
+    }
+
+    private void takeAnnouncedSchema() {
+        previousSchema = currentSchema;
+        currentSchema = announcedSchema;
+        announcedSchema = null;
+    }
+
+    private void readPositional(JSONArray values, SchemaTable table, float[] into) throws JSONException {
+        positionalCount = Math.min(values.length(), table.sensorAt.length);
+        for (int i = 0; i < positionalCount; i++) {
+            positional[i] = (float) values.getDouble(i);
+        }
+        storePositional(table, into);
+    }
+
+    // The positional values into their sensors, 0 for the sensors the schema has no value for.
+    private void storePositional(SchemaTable table, float[] into) {
+        Arrays.fill(missing, true);
+        int count = Math.min(positionalCount, table.sensorAt.length);
+        for (int i = 0; i < count; i++) {
+            int sensor = table.sensorAt[i];
+            if (sensor >= 0) {
+                into[sensor] = inRange(table.schema, i, positional[i]);
+                missing[sensor] = false;
+            }
+        }
+        for (int sensor = 0; sensor < sensorCount; sensor++) {
+            if (missing[sensor]) {
+                into[sensor] = 0f;
+            }
+        }
+    }
+
+    private float inRange(ChannelSchema schema, int channel, float value) {
+        if (value < schema.getMin(channel)) {
+            outOfRange++;
+            return schema.getMin(channel);
+        }
+        if (value > schema.getMax(channel)) {
+            outOfRange++;
+            return schema.getMax(channel);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes one message into the raw values and the mat.
+     *
+     * @return the number of mat cells changed, negative when every cell did, or IGNORED
+     */
+    public int decode(String payload) throws JSONException {
+        keyframeNeeded = false;
+        int status = decodePositional(payload);
+        if (status != NOT_POSITIONAL) {
+            return status;
+        }
+        // Some senders quote with ', JSON wants "
+        message = payload.trim();
+        if (message.indexOf('\'') >= 0) {
+            message = message.replace('\'', '"');
+        }
+        messageJSON = new JSONObject(message);
+        if (messageJSON.has("seq")) {
+            return decodeDeltaMessage(messageJSON);
+        }
+        JSONArray positional = messageJSON.optJSONArray("v");
+        if (positional != null) {
+            SchemaTable table = schemaFor(messageJSON);
+            if (table == null) {
+                return UNKNOWN_SCHEMA;
+            }
+            readPositional(positional, table, rawValues);
+        } else {
+            result = messageJSON.getJSONObject("value");
+            for (int sensor = 0; sensor < sensorCount; sensor++) {
+                rawValues[sensor] = (float) result.getDouble(sensorNames[sensor]);
+            }
+            Arrays.fill(missing, false);
+        }
+        JSONObject mat = messageJSON.optJSONObject("mat");
+        return mat == null ? 0 : decodePressureMat(mat);
+    }
+
+    /**
+     * Reads {"schema": n, "v": [...]} or {"v": [...]} off the text, ' or " quotes, no other keys.
+     *
+     * @return 0, UNKNOWN_SCHEMA or NOT_POSITIONAL for any other message, nothing is changed then
+     */
+    private int decodePositional(String payload) {
+        text = payload;
+        pos = 0;
+        boolean named = false;
+        int version = 0;
+        try {
+            boolean hasValues = false;
+            skipSpace();
+            if (!take('{')) {
+                return NOT_POSITIONAL;
+            }
+            do {
+                skipSpace();
+                int key = readKey();
+                skipSpace();
+                if (key < 0 || !take(':')) {
+                    return NOT_POSITIONAL;
+                }
+                skipSpace();
+                if (key == KEY_SCHEMA && !named) {
+                    double number = readNumber();
+                    if (number != (int) number) {
+                        return NOT_POSITIONAL;
+                    }
+                    named = true;
+                    version = (int) number;
+                } else if (key == KEY_VALUES && !hasValues) {
+                    if (!readValues()) {
+                        return NOT_POSITIONAL;
+                    }
+                    hasValues = true;
+                } else {
+                    return NOT_POSITIONAL;
+                }
+                skipSpace();
+            } while (take(','));
+            if (!take('}')) {
+                return NOT_POSITIONAL;
+            }
+            skipSpace();
+            if (pos != text.length() || !hasValues) {
+                return NOT_POSITIONAL;
+            }
+        } finally {
+            text = null;
+        }
+        SchemaTable table = schemaFor(named, version);
+        if (table == null) {
+            return UNKNOWN_SCHEMA;
+        }
+        storePositional(table, rawValues);
+        return 0;
+    }
+
+    // KEY_SCHEMA, KEY_VALUES, or -1 for any other key.
+    private int readKey() {
+        if (pos >= text.length()) {
+            return -1;
+        }
+        char quote = text.charAt(pos);
+        if (quote != '"' && quote != '\'') {
+            return -1;
+        }
+        int start = pos + 1;
+        int end = text.indexOf(quote, start);
+        if (end < 0) {
+            return -1;
+        }
+        pos = end + 1;
+        if (end - start == 1 && text.charAt(start) == 'v') {
+            return KEY_VALUES;
+        }
+        if (end - start == 6 && text.startsWith("schema", start)) {
+            return KEY_SCHEMA;
+        }
+        return -1;
+    }
+
+    // The numbers of the array into positional, those past the longest schema are read and dropped.
+    private boolean readValues() {
+        positionalCount = 0;
+        if (!take('[')) {
+            return false;
+        }
+        skipSpace();
+        if (take(']')) {
+            return true;
+        }
+        do {
+            skipSpace();
+            double value = readNumber();
+            if (Double.isNaN(value)) {
+                return false;
+            }
+            if (positionalCount < positional.length) {
+                positional[positionalCount] = (float) value;
+            }
+            positionalCount++;
+            skipSpace();
+        } while (take(','));
+        return take(']');
+    }
+
+    // A JSON number, NaN when there is none.
+    private double readNumber() {
+        int length = text.length();
+        boolean negative = take('-');
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; pos < length && isDigit(text.charAt(pos)); pos++) {
+            any = true;
+            if (digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + (text.charAt(pos) - '0');
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                exponent++;
+            }
+        }
+        if (take('.')) {
+            for (; pos < length && isDigit(text.charAt(pos)); pos++) {
+                any = true;
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (text.charAt(pos) - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                }
+            }
+        }
+        if (!any) {
+            return Double.NaN;
+        }
+        if (take('e') || take('E')) {
+            boolean negativeExponent = take('-');
+            if (!negativeExponent) {
+                take('+');
+            }
+            int written = 0;
+            boolean anyExponent = false;
+            for (; pos < length && isDigit(text.charAt(pos)); pos++) {
+                anyExponent = true;
+                // Past this it's 0 or infinity anyway
+                if (written < 1000) {
+                    written = written * 10 + (text.charAt(pos) - '0');
+                }
+            }
+            if (!anyExponent) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -written : written;
+        }
+        double value = mantissa;
+        if (exponent > 0) {
+            value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+        } else if (exponent < 0) {
+            value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value / Math.pow(10, -exponent);
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private boolean take(char c) {
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    // Dense mat, every cell changed.
+    private int decodePressureMat(JSONObject mat) throws JSONException {
+        ensureMat(mat.getInt("rows"), mat.getInt("cols"));
+        JSONArray cells = mat.getJSONArray("cells");
+        int count = Math.min(cells.length(), matValues.length);
+        for (int i = 0; i < count; i++) {
+            matValues[i] = (float) cells.getDouble(i);
+        }
+        return -1;
+    }
+
+    private void ensureMat(int rows, int cols) {
+        if (matValues == null || matRows != rows || matCols != cols) {
+            matRows = rows;
+            matCols = cols;
+            matValues = new float[rows * cols];
+            changedCells = new int[rows * cols];
+        }
+    }
+
+    private int decodeDeltaMessage(JSONObject json) throws JSONException {
+        int sequence = json.getInt("seq");
+        // Versioned messages count positions and delta indices in the schema
+        SchemaTable table = null;
+        if (json.has("schema") || json.has("v")) {
+            table = schemaFor(json);
+            if (table == null) {
+                return UNKNOWN_SCHEMA;
+            }
+        }
+        int status;
+        JSONObject mat = null;
+        if (json.optBoolean("key")) {
+            mat = json.optJSONObject("mat");
+            int cells = mat == null ? 0 : mat.getInt("rows") * mat.getInt("cols");
+            if (deltaState == null || deltaState.getChannelCount() != sensorCount + cells) {
+                deltaState = new DeltaState(sensorCount + cells);
+                keyframeValues = new float[sensorCount + cells];
+                deltaChannels = new int[sensorCount + cells];
+                deltaValues = new float[sensorCount + cells];
+            }
+            JSONArray positional = json.optJSONArray("v");
+            if (positional != null) {
+                readPositional(positional, table, keyframeValues);
+            } else {
+                JSONObject value = json.getJSONObject("value");
+                for (int sensor = 0; sensor < sensorCount; sensor++) {
+                    keyframeValues[sensor] = (float) value.getDouble(sensorNames[sensor]);
+                }
+                Arrays.fill(missing, false);
+            }
+            if (mat != null) {
+                JSONArray cellValues = mat.getJSONArray("cells");
+                int count = Math.min(cellValues.length(), cells);
+                for (int i = 0; i < count; i++) {
+                    keyframeValues[sensorCount + i] = (float) cellValues.getDouble(i);
+                }
+            }
+            status = deltaState.applyKeyframe(sequence, keyframeValues);
+        } else {
+            if (deltaState == null) {
+                // Can't make sense of deltas before the first keyframe
+                keyframeNeeded = true;
+                return IGNORED;
+            }
+            JSONObject delta = json.getJSONObject("delta");
+            JSONArray indices = delta.getJSONArray("idx");
+            JSONArray changedValues = delta.getJSONArray("val");
+            int listed = Math.min(indices.length(), changedValues.length());
+            int count = 0;
+            for (int i = 0; i < listed && count < deltaChannels.length; i++) {
+                int channel = indices.getInt(i);
+                float value = (float) changedValues.getDouble(i);
+                if (table != null) {
+                    int channels = table.sensorAt.length;
+                    if (channel < 0) {
+                        continue;
+                    }
+                    if (channel < channels) {
+                        value = inRange(table.schema, channel, value);
+                        channel = table.sensorAt[channel];
+                    } else {
+                        channel = channel - channels + sensorCount;
+                    }
+                    if (channel < 0) {
+                        // No sensor for it in the app
+                        continue;
+                    }
+                }
+                deltaChannels[count] = channel;
+                deltaValues[count] = value;
+                count++;
+            }
+            status = deltaState.applyDelta(sequence, deltaChannels, deltaValues, count);
+        }
+
+        if (status == DeltaState.IGNORED) {
+            return IGNORED;
+        }
+        keyframeNeeded = deltaState.needsKeyframe();
+
+        float[] state = deltaState.getValues();
+        System.arraycopy(state, 0, rawValues, 0, sensorCount);
+
+        if (mat != null) {
+            ensureMat(mat.getInt("rows"), mat.getInt("cols"));
+        }
+        int changed = 0;
+        if (matValues != null && matValues.length == deltaState.getChannelCount() - sensorCount) {
+            for (int i = 0; i < deltaState.getChangedCount(); i++) {
+                int channel = deltaState.getChangedChannel(i);
+                if (channel >= sensorCount) {
+                    matValues[channel - sensorCount] = state[channel];
+                    changedCells[changed++] = channel - sensorCount;
+                }
+            }
+        }
+        return changed;
+    }
+}
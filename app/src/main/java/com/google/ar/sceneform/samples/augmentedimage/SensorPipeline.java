@@ -0,0 +1,663 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.LEFT;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.RIGHT;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.SENSOR_COUNT;
+import static com.google.ar.sceneform.samples.augmentedimage.ChairSensors.SENSOR_NAMES;
+
+/**
+ * Everything between the broker and the graphs: connection, decode, filters, derived channels,
+ * alerts, statistics and the session recording. Lives in {@link IngestService} so it keeps
+ * running, and stays warm, while the activity is re-created. The node only renders what the
+ * listener hands it. Everything here runs on the main thread.
+ */
+final class SensorPipeline {
+
+    /** Called on the main thread, at most one listener. */
+    interface Listener {
+        /** A sample went through the pipeline, see {@link #getValues}. */
+        void onSample(SensorPipeline pipeline, long timeMs);
+
+        /**
+         * Mat cells changed after the sample, every cell when changedCount is negative, otherwise
+         * the ones listed by {@link #getChangedCell}.
+         */
+        void onMatChanged(SensorPipeline pipeline, int changedCount);
+
+        void onAlert(String ruleId, boolean raised, float value);
+    }
+
+    private static final String TAG = "SensorPipeline";
+    private final String test_mqtt = "test_mqtt";
+    private final String test_json = "test_json";
+
+    private final Context context;
+    private Listener listener;
+
+    private MqttHelper mqttHelper;
+    // Where the samples come from: the MQTT data topic, UDP, a WebSocket or the loopback.
+    private SensorSource sensorSource;
+
+    // Calibration turning each raw sensor value into a bar length, compiled into lookup tables.
+    // Loaded from the asset first, then replaced whenever a new one is pushed on the calibration topic.
+    private static final String CALIBRATION_ASSET = "calibration.json";
+    private volatile Calibration calibration;
+
+    // Chairs of the whole facility ranked by load or time in alert, fed by the fleet topics.
+    private static final int FLEET_CAPACITY = 1024;
+    private FleetAggregator fleetAggregator;
+
+    // Plain and sparse delta messages into raw sensor values and mat cells. After a gap in the
+    // sparse protocol a keyframe is requested on the control topic, at most once per interval.
+    private static final long KEYFRAME_REQUEST_INTERVAL_MS = 1000;
+    private long lastKeyframeRequestMs;
+
+    // Senders announce their channels on the retained schema topic and may then send values by
+    // position. Messages following a schema version not announced yet wait here until it is,
+    // the oldest are dropped past the limit.
+    private static final int SCHEMA_BACKLOG = 256;
+    private static final int SCHEMA_DROP_LOG_INTERVAL = 100;
+    private final ArrayDeque<String> schemaBacklog = new ArrayDeque<>(SCHEMA_BACKLOG);
+    private long schemaBacklogDropped;
+    // Values clamped to the range of their channel, logged every so many
+    private static final long OUT_OF_RANGE_LOG_INTERVAL = 100;
+    private long outOfRangeLogged;
+
+    // While the chair is lost or the app is in the background, messages go through alerts and
+    // recording but nothing is drawn. After the grace period the source is stopped. Coming back
+    // draws the current values right away, see PipelineSuspension.
+    private final PipelineSuspension suspension = new PipelineSuspension(PipelineSuspension.DEFAULT_GRACE_MS);
+    private final Handler suspensionHandler = new Handler(Looper.getMainLooper());
+    private final Runnable suspensionCheck = this::updateSuspension;
+    private boolean tracking = true;
+    private boolean foreground = true;
+
+    // Decode, filters, derived channels, alerts, statistics and recording of every sample, in the
+    // pure class the soak run drives as well.
+    private final SampleProcessor processor;
+    private final SensorDecoder decoder;
+
+    // Channels computed from the filtered sensors (total load, centre of pressure, ratios),
+    // configured by derived_channels.json. The values hold the sensors followed by these.
+    private static final String DERIVED_CHANNELS_ASSET = "derived_channels.json";
+
+    // Channels moving the centre of pressure marker, from the same file
+    private int copXChannel = -1;
+    private int copZChannel = -1;
+    private int copWeightChannel = -1;
+    private float copMinWeight;
+
+    // Filters between decode and presentation so sensor noise doesn't make the bars twitch,
+    // configured by filters.json in the assets.
+    private static final String FILTERS_ASSET = "filters.json";
+
+    // Threshold, rate and asymmetry rules evaluated on every filtered sample, configured by alerts.json.
+    // Raised and cleared alerts are published on the alert topic and passed to the listener.
+    private static final String ALERTS_ASSET = "alerts.json";
+
+    private final SessionRecorder sessionRecorder;
+
+    // Samples are stamped with the wall clock time at start advanced by the monotonic clock, so
+    // the time being set or corrected by the network doesn't send recording, alerts and
+    // statistics back in time.
+    private final long sampleClockOffsetMs = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+
+    // Debug builds count what every frame, message and stage allocates, over budget stages are
+    // logged with the report. Stages and budgets are in PipelineStages, every build traces them,
+    // see Tracing.
+    private static final long ALLOCATION_REPORT_INTERVAL_MS = 30_000;
+    private final AllocationBudget allocations;
+    private long lastAllocationReportMs;
+
+    // Health of this tablet published on its status topic, configured by telemetry.json.
+    private static final String TELEMETRY_ASSET = "telemetry.json";
+    private final String deviceId;
+    private HealthTelemetry telemetry;
+    private TelemetryPublisher telemetryPublisher;
+
+    SensorPipeline(Context context) {
+        this.context = context;
+        loadCalibration();
+        FilterChain filterChain = loadFilters();
+        DerivedChannels derivedChannels = loadDerivedChannels();
+        String[] channelNames = derivedChannels.allChannelNames(SENSOR_NAMES);
+        AlertRuleEngine alertRuleEngine = loadAlertRules(channelNames);
+        sessionRecorder = new SessionRecorder(context.getFilesDir(), channelNames);
+        sessionRecorder.open();
+        allocations = BuildConfig.DEBUG
+                ? PipelineStages.newBudget(new DebugAllocationCounter())
+                : null;
+        processor = new SampleProcessor(SENSOR_NAMES, filterChain, derivedChannels, alertRuleEngine,
+                sessionRecorder::record, allocations);
+        decoder = processor.getDecoder();
+        String androidId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+        deviceId = androidId != null ? androidId : "unknown";
+        loadTelemetry();
+    }
+
+    /** Counts frames, messages and conflated samples for the status topic, main thread only. */
+    HealthTelemetry getHealthTelemetry() {
+        return telemetry;
+    }
+
+    private void loadTelemetry() {
+        try {
+            telemetry = HealthTelemetry.fromJson(new JSONObject(readAsset(TELEMETRY_ASSET)), deviceId);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to load " + TELEMETRY_ASSET + ", using the defaults", e);
+            telemetry = HealthTelemetry.withDefaults(deviceId);
+        }
+    }
+
+    /** Null in release builds, see PipelineStages. Main thread only. */
+    AllocationBudget getAllocationBudget() {
+        return allocations;
+    }
+
+    /** Traces the stage and counts what it allocates, main thread only. */
+    void beginStage(int stage) {
+        processor.beginStage(stage);
+    }
+
+    void endStage(int stage) {
+        processor.endStage(stage);
+    }
+
+    private void reportAllocations(long nowMs) {
+        if (allocations == null || nowMs - lastAllocationReportMs < ALLOCATION_REPORT_INTERVAL_MS) {
+            return;
+        }
+        lastAllocationReportMs = nowMs;
+        Log.i(TAG, "Allocations since start\n" + allocations.report());
+        try {
+            allocations.checkBudgets();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, e.getMessage());
+        }
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Sensors followed by the derived channels, after the last sample. */
+    float[] getValues() {
+        return processor.getValues();
+    }
+
+    String[] getChannelNames() {
+        return processor.getChannelNames();
+    }
+
+    /** Samples decoded since the pipeline started, zero while it is still cold. */
+    long getSampleCount() {
+        return processor.getSampleCount();
+    }
+
+    Calibration getCalibration() {
+        return calibration;
+    }
+
+    /** Statistics of a sensor, session stats of several chairs can be merged through these. */
+    StreamingStats getSensorStats(int sensor) {
+        return processor.getSensorStats(sensor);
+    }
+
+    int getCopXChannel() {
+        return copXChannel;
+    }
+
+    int getCopZChannel() {
+        return copZChannel;
+    }
+
+    int getCopWeightChannel() {
+        return copWeightChannel;
+    }
+
+    float getCopMinWeight() {
+        return copMinWeight;
+    }
+
+    int getMatRows() {
+        return decoder.getMatRows();
+    }
+
+    int getMatCols() {
+        return decoder.getMatCols();
+    }
+
+    /** Null until a message carried mat cells. */
+    float[] getMatValues() {
+        return decoder.getMatValues();
+    }
+
+    int getChangedCell(int i) {
+        return decoder.getChangedCell(i);
+    }
+
+    /** Whether the channel schema of the last message has no channel for the sensor. */
+    boolean isSensorMissing(int sensor) {
+        return decoder.isMissing(sensor);
+    }
+
+    /** Null until {@link #start}. */
+    FleetAggregator getFleetAggregator() {
+        return fleetAggregator;
+    }
+
+    /** Null until {@link #start}. */
+    ConnectionManager getConnectionManager() {
+        return mqttHelper == null ? null : mqttHelper.getConnectionManager();
+    }
+
+    PipelineSuspension getSuspension() {
+        return suspension;
+    }
+
+    /** The session being recorded, for range and threshold queries. Null if recording failed. */
+    SessionStore getSessionStore() {
+        return sessionRecorder.getStore();
+    }
+
+    /** See {@link SessionRecorder#export}. */
+    long exportSession(OutputStream out) throws IOException {
+        return sessionRecorder.export(out);
+    }
+
+    /** Whether the image is actively tracked, from the activity. */
+    void setTracking(boolean tracking) {
+        if (this.tracking != tracking) {
+            this.tracking = tracking;
+            updateSuspension();
+        }
+    }
+
+    /** Whether the activity is in the foreground. */
+    void setForeground(boolean foreground) {
+        if (this.foreground != foreground) {
+            this.foreground = foreground;
+            updateSuspension();
+        }
+    }
+
+    private void updateSuspension() {
+        suspensionHandler.removeCallbacks(suspensionCheck);
+        long nowMs = System.currentTimeMillis();
+        int previous = suspension.getState();
+        int state = suspension.update(tracking, foreground, nowMs);
+        if (state == PipelineSuspension.CHEAP) {
+            suspensionHandler.postDelayed(suspensionCheck, suspension.getGraceLeftMs(nowMs));
+        }
+        if (state == previous) {
+            return;
+        }
+
+        if (state == PipelineSuspension.SUSPENDED && sensorSource != null) {
+            Log.i(TAG, "Stopping " + sensorSource.getName() + " after " + PipelineSuspension.DEFAULT_GRACE_MS / 1000 + " s without the chair");
+            sensorSource.stop();
+        } else if (state == PipelineSuspension.ACTIVE) {
+            if (previous == PipelineSuspension.SUSPENDED && sensorSource != null) {
+                // Nothing came in while stopped, the next message is the first one drawn
+                sensorSource.start(this::onSensorMessage);
+            } else if (previous == PipelineSuspension.CHEAP) {
+                // The values kept up while cheap, show them at once rather than on the next message
+                presentCurrent(sampleTimeMs());
+            }
+            Log.i(TAG, String.format(Locale.US,
+                    "Resumed, so far %d messages not drawn, %d not received (%d KB), %.1f ms of CPU saved",
+                    suspension.getSkippedCount(), suspension.getMessagesNotReceived(nowMs),
+                    suspension.getSavedBytes(nowMs) / 1024, suspension.getSavedCpuMs(nowMs)));
+        }
+    }
+
+    /** Connects and starts the sensor source. */
+    void start() {
+        if (mqttHelper != null) {
+            return;
+        }
+        mqttHelper = new MqttHelper(context);
+        fleetAggregator = new FleetAggregator(mqttHelper.getFleetTopicPrefix(), FLEET_CAPACITY,
+                FleetAggregator.DEFAULT_SHOWN, FleetAggregator.DEFAULT_ALERT_LOAD);
+        mqttHelper.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean b, String s) {
+                Log.w(test_mqtt,"Connected! Successfully StartMqtt");
+
+            }
+
+            @Override
+            public void connectionLost(Throwable throwable) {
+                Log.w(test_mqtt,"Connection Lost!");
+
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+
+//                Log.w(test_mqtt, "Received: "+topic+" - "+mqttMessage.toString());
+
+                if (topic.equals(mqttHelper.getCalibrationTopic())) {
+                    updateCalibration(mqttMessage.toString());
+                    return;
+                }
+                if (topic.equals(mqttHelper.getSchemaTopic())) {
+                    updateSchema(mqttMessage.toString());
+                    return;
+                }
+                // A thousand chairs at 20 Hz arrive here on the main thread, the payload is
+                // scanned as received rather than decoded, see FleetAggregatorBenchmarkTest
+                if (fleetAggregator.handles(topic)) {
+                    fleetAggregator.onSample(topic, mqttMessage.getPayload(), System.currentTimeMillis());
+                    return;
+                }
+
+                Log.w(test_mqtt, "Unhandled message on " + topic);
+            }
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
+                Log.w(test_mqtt,"Delivery Complete");
+            }
+        });
+
+        // Samples come from the transport configured in sensor_source.json
+        sensorSource = SensorSources.create(context, mqttHelper);
+        Log.w(TAG, "Sensor source: " + sensorSource.getName());
+        sensorSource.start(this::onSensorMessage);
+
+        telemetryPublisher = new TelemetryPublisher(telemetry, mqttHelper, mqttHelper.getStatusTopicPrefix() + deviceId,
+                sensorSource::getLostCount, () -> mqttHelper.getConnectionManager().getReconnectTimes().getCount());
+        telemetryPublisher.start();
+    }
+
+    /** Stops receiving, writes out the session and disconnects, called when the service goes away. */
+    void close() {
+        listener = null;
+        suspensionHandler.removeCallbacks(suspensionCheck);
+        if (sensorSource != null) {
+            sensorSource.stop();
+        }
+        sessionRecorder.close();
+        if (mqttHelper == null) {
+            return;
+        }
+        // The last records are handed to the client before it is closed
+        if (telemetryPublisher != null) {
+            telemetryPublisher.close();
+        }
+        mqttHelper.close();
+        try {
+            IMqttToken disconToken = mqttHelper.mqttAndroidClient.disconnect();
+            disconToken.setActionCallback(new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    Log.w(test_mqtt,"Successfully Disconnected");
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    // something went wrong, but probably we are disconnected anyway
+                    Log.w(test_mqtt,"Cannot disconnect");
+                }
+            });
+        } catch (MqttException e) {
+            Log.w(test_mqtt, "Cannot disconnect", e);
+        }
+    }
+
+    private DerivedChannels loadDerivedChannels() {
+        DerivedChannels derivedChannels;
+        try {
+            JSONObject json = new JSONObject(readAsset(DERIVED_CHANNELS_ASSET));
+            derivedChannels = DerivedChannels.fromJson(json, SENSOR_NAMES);
+
+            JSONObject marker = json.optJSONObject("marker");
+            if (marker != null) {
+                copXChannel = derivedChannels.indexOf(marker.getString("x"));
+                copZChannel = derivedChannels.indexOf(marker.getString("z"));
+                copWeightChannel = derivedChannels.indexOf(marker.optString("weight", ""));
+                copMinWeight = (float) marker.optDouble("min_weight", 0.0);
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Unable to load " + DERIVED_CHANNELS_ASSET + ", no derived channels", e);
+            derivedChannels = DerivedChannels.empty(SENSOR_COUNT);
+            copXChannel = -1;
+            copZChannel = -1;
+        }
+        return derivedChannels;
+    }
+
+    private AlertRuleEngine loadAlertRules(String[] channelNames) {
+        AlertRuleEngine alertRuleEngine;
+        try {
+            alertRuleEngine = AlertRuleEngine.fromJson(new JSONObject(readAsset(ALERTS_ASSET)), channelNames);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Unable to load " + ALERTS_ASSET + ", alerts are disabled", e);
+            alertRuleEngine = AlertRuleEngine.empty();
+        }
+        alertRuleEngine.setListener(this::onAlert);
+        return alertRuleEngine;
+    }
+
+    // Only called when a rule is raised or cleared, never per sample.
+    private void onAlert(AlertRuleEngine engine, int rule, boolean raised, float value, long timeMs) {
+        String id = engine.getRuleId(rule);
+        Log.w(TAG, "Alert " + id + (raised ? " raised" : " cleared") + " at " + value);
+
+        if (listener != null) {
+            listener.onAlert(id, raised, value);
+        }
+
+        if (mqttHelper != null) {
+            try {
+                JSONObject alert = new JSONObject();
+                alert.put("rule", id);
+                alert.put("state", raised ? "raised" : "cleared");
+                alert.put("value", value);
+                alert.put("time", timeMs);
+                mqttHelper.publish(mqttHelper.getAlertTopic(), alert.toString(), 1);
+            } catch (JSONException e) {
+                Log.e(TAG, "Unable to encode alert " + id, e);
+            }
+        }
+    }
+
+    private FilterChain loadFilters() {
+        try {
+            return FilterChain.fromJson(new JSONObject(readAsset(FILTERS_ASSET)), SENSOR_COUNT);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to load " + FILTERS_ASSET + ", values are not filtered", e);
+            return FilterChain.passThrough(SENSOR_COUNT);
+        }
+    }
+
+    private String readAsset(String name) throws IOException {
+        try (InputStream is = context.getAssets().open(name)) {
+            byte[] buffer = new byte[is.available()];
+            int read = is.read(buffer);
+            return new String(buffer, 0, Math.max(read, 0), "UTF-8");
+        }
+    }
+
+    private void loadCalibration() {
+        try {
+            calibration = Calibration.fromJson(new JSONObject(readAsset(CALIBRATION_ASSET)), SENSOR_NAMES);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to load " + CALIBRATION_ASSET + ", using the default scale", e);
+            calibration = defaultCalibration();
+        }
+    }
+
+    /**
+     * Same mapping as the graphs always had: 0.0 - 100.0 scaled down to a length of 0.001 - 0.1,
+     * with the left and right graph scaled twice as fast.
+     */
+    private static Calibration defaultCalibration() {
+        Calibration.ChannelSpec[] specs = new Calibration.ChannelSpec[SENSOR_COUNT];
+        for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+            specs[sensor] = new Calibration.ChannelSpec();
+            specs[sensor].curve = TransferFunction.linear(0.001f, 0f);
+            specs[sensor].outMin = 0.001f;
+        }
+        specs[LEFT].gain = 2.0f;
+        specs[RIGHT].gain = 2.0f;
+        return new Calibration(specs, Calibration.DEFAULT_TABLE_SIZE, 0);
+    }
+
+    // A calibration pushed over MQTT is compiled off the sample path and swapped in as a whole.
+    private void updateCalibration(String json) {
+        try {
+            Calibration updated = Calibration.fromJson(new JSONObject(json), SENSOR_NAMES);
+            calibration = updated;
+            Log.w(TAG, "Calibration version " + updated.getVersion() + " applied");
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Rejected calibration update", e);
+        }
+    }
+
+    // A schema is interned once when announced, messages that were waiting for it go through now.
+    private void updateSchema(String json) {
+        ChannelSchema schema;
+        try {
+            schema = ChannelSchema.fromJson(new JSONObject(json));
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Rejected channel schema", e);
+            return;
+        }
+        decoder.setSchema(schema);
+        Log.w(TAG, "Announced " + schema);
+        int[] sensorAt = schema.mapTo(SENSOR_NAMES);
+        for (int channel = 0; channel < sensorAt.length; channel++) {
+            if (sensorAt[channel] < 0) {
+                Log.w(TAG, "No sensor for channel " + schema.getName(channel) + ", it is not shown");
+            }
+        }
+        // Still unknown ones go to the back again
+        int waiting = schemaBacklog.size();
+        for (int i = 0; i < waiting; i++) {
+            onSensorMessage(schemaBacklog.pollFirst());
+        }
+    }
+
+    private void holdForSchema(String payload) {
+        if (schemaBacklog.size() == SCHEMA_BACKLOG) {
+            schemaBacklog.pollFirst();
+            if (schemaBacklogDropped++ % SCHEMA_DROP_LOG_INTERVAL == 0) {
+                Log.w(TAG, schemaBacklogDropped + " messages dropped waiting for their channel schema");
+            }
+        }
+        schemaBacklog.addLast(payload);
+    }
+
+    // One JSON message from the sensor source, on the main thread.
+    private void onSensorMessage(String payload) {
+        long startNanos = System.nanoTime();
+        beginStage(PipelineStages.MESSAGE);
+        try {
+            decodeSensorMessage(payload);
+        } catch (JSONException e) {
+            Log.w(test_json, "Bad sensor message: " + e.getMessage());
+        }
+        endStage(PipelineStages.MESSAGE);
+        long nowMs = System.currentTimeMillis();
+        suspension.onDecoded(System.nanoTime() - startNanos, payload.length(), nowMs);
+        reportAllocations(nowMs);
+    }
+
+    private long sampleTimeMs() {
+        return sampleClockOffsetMs + SystemClock.elapsedRealtime();
+    }
+
+    private void decodeSensorMessage(String payload) throws JSONException {
+        long nowMs = sampleTimeMs();
+        // Negative when every cell of the mat changed, zero without a mat
+        int matChanged = processor.process(payload, nowMs);
+        telemetry.onMessage(processor.getDecodeNanos());
+        if (decoder.isKeyframeNeeded()) {
+            requestKeyframe();
+        }
+        if (matChanged == SensorDecoder.UNKNOWN_SCHEMA) {
+            holdForSchema(payload);
+            return;
+        }
+        if (matChanged == SensorDecoder.IGNORED) {
+            return;
+        }
+        long outOfRange = decoder.getOutOfRangeCount();
+        if (outOfRange > outOfRangeLogged && (outOfRangeLogged == 0 || outOfRange - outOfRangeLogged >= OUT_OF_RANGE_LOG_INTERVAL)) {
+            Log.w(TAG, outOfRange + " values clamped to the range of their channel");
+            outOfRangeLogged = outOfRange;
+        }
+
+        // Data is flowing, for the staleness label and the reconnect measurements
+        mqttHelper.getConnectionManager().onSample();
+
+        if (suspension.getState() != PipelineSuspension.ACTIVE) {
+            // Nothing is shown until the chair is back
+            suspension.onSkipped();
+            return;
+        }
+        if (listener != null) {
+            long presentStartNanos = System.nanoTime();
+            beginStage(PipelineStages.PRESENT);
+            listener.onSample(this, nowMs);
+            if (matChanged != 0) {
+                listener.onMatChanged(this, matChanged);
+            }
+            endStage(PipelineStages.PRESENT);
+            suspension.onPresented(System.nanoTime() - presentStartNanos);
+        }
+    }
+
+    // The current values and every mat cell, once the chair is back.
+    private void presentCurrent(long nowMs) {
+        if (listener == null || processor.getSampleCount() == 0) {
+            return;
+        }
+        beginStage(PipelineStages.PRESENT);
+        listener.onSample(this, nowMs);
+        if (decoder.getMatValues() != null) {
+            listener.onMatChanged(this, -1);
+        }
+        endStage(PipelineStages.PRESENT);
+    }
+
+    private void requestKeyframe() {
+        long nowMs = System.currentTimeMillis();
+        if (mqttHelper == null || nowMs - lastKeyframeRequestMs < KEYFRAME_REQUEST_INTERVAL_MS) {
+            return;
+        }
+        lastKeyframeRequestMs = nowMs;
+        try {
+            JSONObject request = new JSONObject();
+            request.put("request", "keyframe");
+            request.put("last_seq", decoder.getHighestSequence());
+            // Not queued, an old request is of no use once reconnected
+            mqttHelper.publish(mqttHelper.getControlTopic(), request.toString(), 0);
+        } catch (JSONException e) {
+            Log.e(TAG, "Unable to encode keyframe request", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * A transport delivering sensor messages to the app. Every source delivers the same JSON
+ * messages as the MQTT data topic, see AugmentedImageNode, and calls its listener on the main
+ * thread. The source in use is picked by {@link SensorSources}.
+ */
+interface SensorSource {
+
+    interface Listener {
+        void onMessage(String payload);
+    }
+
+    /** Short name for logs, e.g. "udp:5005". */
+    String getName();
+
+    void start(Listener listener);
+
+    void stop();
+
+    /** Messages delivered to the listener so far. */
+    long getReceivedCount();
+
+    /** Messages known to be lost, 0 for transports without sequence numbers. */
+    long getLostCount();
+}
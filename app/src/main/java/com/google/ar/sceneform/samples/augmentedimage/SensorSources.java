@@ -0,0 +1,63 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Picks the sensor transport from sensor_source.json in the assets, falling back to MQTT:
+ * <pre>
+ * { "type": "mqtt" }
+ * { "type": "mqtt5", "server": "tcp://sensor-gateway.local:1883", "topic": "test/result",
+ *   "username": "...", "password": "...", "client_id": "..." }
+ * { "type": "udp", "port": 5005 }
+ * { "type": "websocket", "url": "wss://sensor-gateway.local:8443/stream" }
+ * { "type": "loopback", "rate_hz": 50 }
+ * </pre>
+ */
+final class SensorSources {
+
+    private static final String TAG = "SensorSources";
+    static final String ASSET = "sensor_source.json";
+
+    private SensorSources() {}
+
+    static SensorSource create(Context context, MqttHelper mqttHelper) {
+        try (InputStream is = context.getAssets().open(ASSET)) {
+            byte[] buffer = new byte[is.available()];
+            int read = is.read(buffer);
+            return fromJson(new JSONObject(new String(buffer, 0, Math.max(read, 0), "UTF-8")), mqttHelper);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to load " + ASSET + ", using MQTT", e);
+            return new MqttSensorSource(mqttHelper);
+        }
+    }
+
+    static SensorSource fromJson(JSONObject json, MqttHelper mqttHelper) throws JSONException {
+        String type = json.getString("type");
+        switch (type) {
+            case "mqtt":
+                return new MqttSensorSource(mqttHelper);
+            case "mqtt5":
+                return new Mqtt5SensorSource(json.getString("server"),
+                        json.optString("topic", mqttHelper.getSubscriptionTopic()),
+                        json.has("username") ? json.getString("username") : null,
+                        json.has("password") ? json.getString("password") : null,
+                        // Stable so the broker resumes the session after a restart
+                        json.optString("client_id", "ExampleAndroidClient-v5"));
+            case "udp":
+                return new UdpSensorSource(json.getInt("port"));
+            case "websocket":
+                return new WebSocketSensorSource(json.getString("url"));
+            case "loopback":
+                return new LoopbackSensorSource((float) json.optDouble("rate_hz", 0.0));
+            default:
+                throw new IllegalArgumentException("Unknown sensor source " + type);
+        }
+    }
+}
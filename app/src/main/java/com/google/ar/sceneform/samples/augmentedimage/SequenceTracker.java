@@ -0,0 +1,124 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Classifies incoming sequence numbers as in order, after a gap, reordered or duplicate, and keeps
+ * loss counters.
+ *
+ * Sequence numbers are 32 bit and may wrap around. Besides the highest number seen, a 64 bit
+ * window remembers which of the 64 numbers below it arrived, so a late packet inside the window
+ * fills its gap (it is no longer counted as lost) and a packet seen twice is a duplicate.
+ * Anything older than the window is reported as too old and should be dropped, unless it is so
+ * far behind that the sender must have started over, e.g. a gateway restart: tracking then
+ * continues from that number.
+ */
+public final class SequenceTracker {
+
+    public static final int FIRST = 0;
+    public static final int IN_ORDER = 1;
+    /** Newer than expected, at least one number was skipped. */
+    public static final int GAP = 2;
+    /** Older than the highest one but not seen before, fills an earlier gap. */
+    public static final int REORDERED = 3;
+    public static final int DUPLICATE = 4;
+    /** Older than the window, can't tell whether it is a duplicate. */
+    public static final int TOO_OLD = 5;
+    /** At least RESTART_DISTANCE behind the highest, the sender started over from here. */
+    public static final int RESTARTED = 6;
+
+    /** Numbers further back than this are a restart of the sender rather than a late arrival. */
+    public static final int RESTART_DISTANCE = 1024;
+
+    private static final int WINDOW = 64;
+
+    private boolean started;
+    private int highest;
+    // Bit i set when highest - i arrived
+    private long window;
+
+    private long received;
+    private long lost;
+    private long reordered;
+    private long duplicates;
+    private long restarts;
+    private int lastGap;
+
+    /** Records one sequence number and returns one of the constants above. */
+    public int accept(int sequence) {
+        if (!started) {
+            started = true;
+            highest = sequence;
+            window = 1;
+            received++;
+            return FIRST;
+        }
+
+        int ahead = sequence - highest;
+        if (ahead > 0) {
+            window = ahead >= WINDOW ? 1 : (window << ahead) | 1;
+            highest = sequence;
+            received++;
+            lastGap = ahead - 1;
+            lost += lastGap;
+            return ahead == 1 ? IN_ORDER : GAP;
+        }
+
+        int behind = -ahead;
+        // Negative when exactly half the number range behind
+        if (behind >= RESTART_DISTANCE || behind < 0) {
+            restart();
+            accept(sequence);
+            return RESTARTED;
+        }
+        if (behind >= WINDOW) {
+            return TOO_OLD;
+        }
+        long bit = 1L << behind;
+        if ((window & bit) != 0) {
+            duplicates++;
+            return DUPLICATE;
+        }
+        window |= bit;
+        received++;
+        reordered++;
+        lost--;
+        return REORDERED;
+    }
+
+    /** Number of sequence numbers skipped by the last GAP. */
+    public int getLastGap() {
+        return lastGap;
+    }
+
+    public int getHighest() {
+        return highest;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    /** Skipped numbers that never arrived, late arrivals are taken back off. */
+    public long getLost() {
+        return lost;
+    }
+
+    public long getReordered() {
+        return reordered;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /** RESTARTED numbers and calls to {@link #restart}. */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /** Forgets the position, the next number is accepted as FIRST. Counters are kept. */
+    public void restart() {
+        started = false;
+        window = 0;
+        restarts++;
+    }
+}
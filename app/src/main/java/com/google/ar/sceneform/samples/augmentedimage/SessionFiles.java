@@ -0,0 +1,81 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * The session files of one directory. A session is a data file named session-&lt;start ms&gt;.dat
+ * and its index sidecar, see {@link SessionStore}. Names always sort in recording order, even
+ * when the clock was set back between two sessions, and the oldest sessions are deleted to keep
+ * the directory within a number of sessions and bytes.
+ */
+public final class SessionFiles {
+
+    public static final String PREFIX = "session-";
+    public static final String SUFFIX = ".dat";
+
+    private SessionFiles() {
+    }
+
+    /** Sessions in the directory, oldest first, empty when there is none. */
+    public static File[] list(File directory) {
+        File[] files = directory.listFiles((dir, name) -> startMs(name) >= 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(startMs(a.getName()), startMs(b.getName())));
+        return files;
+    }
+
+    /** The data file for a session starting at wallMs, named after every existing one. */
+    public static File newSession(File directory, long wallMs) {
+        long startMs = wallMs;
+        File[] sessions = list(directory);
+        if (sessions.length > 0) {
+            startMs = Math.max(startMs, startMs(sessions[sessions.length - 1].getName()) + 1);
+        }
+        return new File(directory, PREFIX + startMs + SUFFIX);
+    }
+
+    /**
+     * Deletes the oldest sessions until at most maxSessions are left and they take up at most
+     * maxBytes together.
+     *
+     * @return the number of sessions deleted
+     */
+    public static int prune(File directory, int maxSessions, long maxBytes) {
+        File[] sessions = list(directory);
+        long totalBytes = 0;
+        for (File session : sessions) {
+            totalBytes += bytes(session);
+        }
+        int deleted = 0;
+        while (deleted < sessions.length && (sessions.length - deleted > maxSessions || totalBytes > maxBytes)) {
+            File session = sessions[deleted++];
+            totalBytes -= bytes(session);
+            session.delete();
+            index(session).delete();
+        }
+        return deleted;
+    }
+
+    private static long bytes(File session) {
+        return session.length() + index(session).length();
+    }
+
+    private static File index(File session) {
+        return new File(session.getPath() + SessionStore.INDEX_SUFFIX);
+    }
+
+    // Start of the session in the name, -1 for anything else
+    private static long startMs(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records every filtered sample of the pipeline, derived channels included, into a session file
+ * under files/sessions. The oldest sessions are deleted when a new one starts, past MAX_SESSIONS
+ * or MAX_BYTES. A timestamp earlier than the last one recorded is recorded as the last one, so a
+ * clock step can't end the session. A failed write stops the recording, the pipeline goes on
+ * without it. Main thread only.
+ */
+final class SessionRecorder {
+
+    private static final String TAG = "SessionRecorder";
+    static final String SESSIONS_DIRECTORY = "sessions";
+    // Kept sessions, the new one included, and the space the finished ones may take up
+    static final int MAX_SESSIONS = 30;
+    static final long MAX_BYTES = 512L * 1024 * 1024;
+
+    private final File directory;
+    private final String[] channelNames;
+    private SessionStore sessionStore;
+    private long lastTimeMs = Long.MIN_VALUE;
+
+    SessionRecorder(File filesDir, String[] channelNames) {
+        directory = new File(filesDir, SESSIONS_DIRECTORY);
+        this.channelNames = channelNames;
+    }
+
+    /** Starts a new session file. */
+    void open() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create " + directory + ", the session is not recorded");
+            return;
+        }
+        int deleted = SessionFiles.prune(directory, MAX_SESSIONS - 1, MAX_BYTES);
+        if (deleted > 0) {
+            Log.i(TAG, "Deleted the " + deleted + " oldest sessions");
+        }
+        File file = SessionFiles.newSession(directory, System.currentTimeMillis());
+        lastTimeMs = Long.MIN_VALUE;
+        try {
+            sessionStore = SessionStore.create(file, channelNames, SessionStore.DEFAULT_SAMPLES_PER_BLOCK);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to create " + file + ", the session is not recorded", e);
+        }
+    }
+
+    /** The session being recorded, for range and threshold queries. Null if recording failed. */
+    SessionStore getStore() {
+        return sessionStore;
+    }
+
+    void record(long timeMs, float[] values) {
+        if (sessionStore == null) {
+            return;
+        }
+        lastTimeMs = Math.max(lastTimeMs, timeMs);
+        try {
+            sessionStore.append(lastTimeMs, values);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Recording stopped", e);
+            close();
+        }
+    }
+
+    /**
+     * Writes the session recorded so far in the compact columnar format, for uploading it.
+     * Streams one block at a time, does not close out.
+     */
+    long export(OutputStream out) throws IOException {
+        if (sessionStore == null) {
+            throw new IOException("No session recorded");
+        }
+        sessionStore.flush();
+        return ColumnarExporter.export(sessionStore, out, ColumnarExporter.DEFAULT_QUANTUM);
+    }
+
+    void close() {
+        if (sessionStore == null) {
+            return;
+        }
+        try {
+            sessionStore.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to close the session", e);
+        }
+        sessionStore = null;
+    }
+}
@@ -0,0 +1,426 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Recorded session on disk: fixed-size blocks of samples plus a sparse index of per-block summaries.
+ *
+ * The data file starts with a header (magic, version, channel count, samples per block, channel
+ * names) followed by blocks of samplesPerBlock samples, each sample being a long timestamp in ms
+ * and one float per channel. Block i always starts at headerBytes + i * blockBytes. The index lives
+ * in a sidecar ".idx" file with one fixed-size entry per block: first and last timestamp, sample
+ * count and the min, max and sum of every channel.
+ *
+ * The index is small (one entry per few hundred samples) and is kept in memory, so range
+ * aggregates are answered from it for every block fully inside the range and only the two blocks at
+ * the ends of the range are read from disk. "First time channel X exceeded Y" skips every block
+ * whose max is below Y and reads a single block. The block currently being recorded stays in
+ * memory and is queried the same way.
+ *
+ * Not thread safe, append and queries are expected on the same thread.
+ */
+public final class SessionStore implements Closeable {
+
+    public static final int DEFAULT_SAMPLES_PER_BLOCK = 256;
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x41525353; // "ARSS"
+    private static final int VERSION = 1;
+
+    /** Result of a range aggregate, reused by the caller between queries. */
+    public static final class Aggregate {
+        public long count;
+        public float min;
+        public float max;
+        public double sum;
+
+        public double getMean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        void clear() {
+            count = 0;
+            min = Float.POSITIVE_INFINITY;
+            max = Float.NEGATIVE_INFINITY;
+            sum = 0;
+        }
+    }
+
+    private final RandomAccessFile dataFile;
+    private final RandomAccessFile indexFile;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final boolean writable;
+
+    private final String[] channelNames;
+    private final int channelCount;
+    private final int samplesPerBlock;
+    private final int sampleBytes;
+    private final int blockBytes;
+    private final int indexEntryBytes;
+    private final long headerBytes;
+
+    // In memory index, one entry per block including the block being recorded.
+    private int blockCount;
+    private long[] blockFirstTime = new long[64];
+    private long[] blockLastTime = new long[64];
+    private int[] blockSamples = new int[64];
+    // block * channelCount + channel
+    private float[] blockMin;
+    private float[] blockMax;
+    private double[] blockSum;
+
+    // Block being recorded, the last one, and a scratch buffer for reading others.
+    private final ByteBuffer writeBlock;
+    private final ByteBuffer readBlock;
+    private int readBlockIndex = -1;
+    private final ByteBuffer indexEntry;
+
+    private SessionStore(File file, boolean writable, String[] channelNames, int samplesPerBlock) throws IOException {
+        this.writable = writable;
+        String mode = writable ? "rw" : "r";
+        this.dataFile = new RandomAccessFile(file, mode);
+        this.indexFile = new RandomAccessFile(new File(file.getPath() + INDEX_SUFFIX), mode);
+        this.data = dataFile.getChannel();
+        this.index = indexFile.getChannel();
+
+        if (writable) {
+            this.channelNames = channelNames.clone();
+            this.samplesPerBlock = samplesPerBlock;
+            dataFile.setLength(0);
+            indexFile.setLength(0);
+            dataFile.writeInt(MAGIC);
+            dataFile.writeInt(VERSION);
+            dataFile.writeInt(channelNames.length);
+            dataFile.writeInt(samplesPerBlock);
+            for (String name : channelNames) {
+                dataFile.writeUTF(name);
+            }
+        } else {
+            if (dataFile.readInt() != MAGIC || dataFile.readInt() != VERSION) {
+                close();
+                throw new IOException("Not a session file: " + file);
+            }
+            String[] names = new String[dataFile.readInt()];
+            this.samplesPerBlock = dataFile.readInt();
+            for (int i = 0; i < names.length; i++) {
+                names[i] = dataFile.readUTF();
+            }
+            this.channelNames = names;
+        }
+        this.headerBytes = dataFile.getFilePointer();
+
+        this.channelCount = this.channelNames.length;
+        this.sampleBytes = 8 + 4 * channelCount;
+        this.blockBytes = sampleBytes * this.samplesPerBlock;
+        this.indexEntryBytes = 8 + 8 + 4 + channelCount * (4 + 4 + 8);
+        this.blockMin = new float[blockFirstTime.length * channelCount];
+        this.blockMax = new float[blockFirstTime.length * channelCount];
+        this.blockSum = new double[blockFirstTime.length * channelCount];
+        this.writeBlock = ByteBuffer.allocate(blockBytes);
+        this.readBlock = ByteBuffer.allocate(blockBytes);
+        this.indexEntry = ByteBuffer.allocate(indexEntryBytes);
+
+        if (!writable) {
+            loadIndex();
+        }
+    }
+
+    /** Starts a new session file, replacing any file of that name. */
+    public static SessionStore create(File file, String[] channelNames, int samplesPerBlock) throws IOException {
+        if (samplesPerBlock < 1) {
+            throw new IllegalArgumentException("samplesPerBlock must be positive");
+        }
+        return new SessionStore(file, true, channelNames, samplesPerBlock);
+    }
+
+    /** Opens a recorded session for queries only. */
+    public static SessionStore open(File file) throws IOException {
+        return new SessionStore(file, false, null, 0);
+    }
+
+    public String[] getChannelNames() {
+        return channelNames.clone();
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public int getSamplesPerBlock() {
+        return samplesPerBlock;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public long getSampleCount() {
+        if (blockCount == 0) {
+            return 0;
+        }
+        return (long) (blockCount - 1) * samplesPerBlock + blockSamples[blockCount - 1];
+    }
+
+    /** Timestamp of the first sample, -1 when empty. */
+    public long getStartTime() {
+        return blockCount == 0 ? -1 : blockFirstTime[0];
+    }
+
+    /** Timestamp of the last sample, -1 when empty. */
+    public long getEndTime() {
+        return blockCount == 0 ? -1 : blockLastTime[blockCount - 1];
+    }
+
+    /**
+     * Records one sample. Timestamps must not go backwards. Only writes to disk when a block
+     * fills up, one block write and one index entry write per samplesPerBlock samples.
+     */
+    public void append(long timeMs, float[] values) throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("Session opened read only");
+        }
+        if (blockCount > 0 && timeMs < blockLastTime[blockCount - 1]) {
+            throw new IllegalArgumentException("Timestamps must not go backwards");
+        }
+        if (blockCount == 0 || blockSamples[blockCount - 1] == samplesPerBlock) {
+            startBlock(timeMs);
+        }
+
+        int block = blockCount - 1;
+        writeBlock.putLong(timeMs);
+        int base = block * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+            float value = values[channel];
+            writeBlock.putFloat(value);
+            if (value < blockMin[base + channel]) blockMin[base + channel] = value;
+            if (value > blockMax[base + channel]) blockMax[base + channel] = value;
+            blockSum[base + channel] += value;
+        }
+        blockLastTime[block] = timeMs;
+        blockSamples[block]++;
+
+        if (blockSamples[block] == samplesPerBlock) {
+            writeCurrentBlock();
+        }
+    }
+
+    /** Writes the partially filled block so that everything recorded so far is on disk. */
+    public void flush() throws IOException {
+        if (writable && blockCount > 0 && blockSamples[blockCount - 1] < samplesPerBlock) {
+            writeCurrentBlock();
+        }
+    }
+
+    /**
+     * Min, max, sum and count of a channel over from <= t <= to. Blocks fully inside the range are
+     * taken from the index, at most the two blocks straddling the range ends are read.
+     *
+     * @return false when there is no sample in the range
+     */
+    public boolean aggregate(int channel, long from, long to, Aggregate out) throws IOException {
+        out.clear();
+        int block = firstBlockEndingAtOrAfter(from);
+        for (; block < blockCount && blockFirstTime[block] <= to; block++) {
+            if (blockFirstTime[block] >= from && blockLastTime[block] <= to) {
+                int entry = block * channelCount + channel;
+                out.count += blockSamples[block];
+                out.min = Math.min(out.min, blockMin[entry]);
+                out.max = Math.max(out.max, blockMax[entry]);
+                out.sum += blockSum[entry];
+            } else {
+                ByteBuffer samples = blockBuffer(block);
+                for (int s = 0; s < blockSamples[block]; s++) {
+                    long time = samples.getLong(s * sampleBytes);
+                    if (time < from || time > to) {
+                        continue;
+                    }
+                    float value = samples.getFloat(s * sampleBytes + 8 + channel * 4);
+                    out.count++;
+                    out.min = Math.min(out.min, value);
+                    out.max = Math.max(out.max, value);
+                    out.sum += value;
+                }
+            }
+        }
+        return out.count > 0;
+    }
+
+    /**
+     * Time of the first sample at or after from where a channel is above threshold, -1 if none.
+     * Blocks whose max is not above the threshold are skipped using the index alone.
+     */
+    public long firstTimeAbove(int channel, float threshold, long from) throws IOException {
+        for (int block = firstBlockEndingAtOrAfter(from); block < blockCount; block++) {
+            if (!(blockMax[block * channelCount + channel] > threshold)) {
+                continue;
+            }
+            ByteBuffer samples = blockBuffer(block);
+            for (int s = 0; s < blockSamples[block]; s++) {
+                long time = samples.getLong(s * sampleBytes);
+                if (time >= from && samples.getFloat(s * sampleBytes + 8 + channel * 4) > threshold) {
+                    return time;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Values of the last sample at or before timeMs (the first sample if timeMs is earlier).
+     *
+     * @return the timestamp of the sample copied into out, -1 when the session is empty
+     */
+    public long sampleAt(long timeMs, float[] out) throws IOException {
+        if (blockCount == 0) {
+            return -1;
+        }
+        int block = Arrays.binarySearch(blockFirstTime, 0, blockCount, timeMs);
+        if (block < 0) {
+            block = Math.max(0, -block - 2);
+        }
+        ByteBuffer samples = blockBuffer(block);
+        int low = 0;
+        int high = blockSamples[block] - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (samples.getLong(middle * sampleBytes) <= timeMs) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int offset = low * sampleBytes;
+        for (int channel = 0; channel < channelCount; channel++) {
+            out[channel] = samples.getFloat(offset + 8 + channel * 4);
+        }
+        return samples.getLong(offset);
+    }
+
+    /**
+     * Copies one block out, for streaming through a whole session a block at a time.
+     * times needs getSamplesPerBlock() entries and values that many times getChannelCount(),
+     * values are stored sample after sample.
+     *
+     * @return the number of samples in the block
+     */
+    public int readBlock(int block, long[] times, float[] values) throws IOException {
+        ByteBuffer samples = blockBuffer(block);
+        int count = blockSamples[block];
+        for (int s = 0; s < count; s++) {
+            int offset = s * sampleBytes;
+            times[s] = samples.getLong(offset);
+            for (int channel = 0; channel < channelCount; channel++) {
+                values[s * channelCount + channel] = samples.getFloat(offset + 8 + channel * 4);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            dataFile.close();
+            indexFile.close();
+        }
+    }
+
+    private void startBlock(long timeMs) {
+        if (blockCount == blockFirstTime.length) {
+            int capacity = blockCount * 2;
+            blockFirstTime = Arrays.copyOf(blockFirstTime, capacity);
+            blockLastTime = Arrays.copyOf(blockLastTime, capacity);
+            blockSamples = Arrays.copyOf(blockSamples, capacity);
+            blockMin = Arrays.copyOf(blockMin, capacity * channelCount);
+            blockMax = Arrays.copyOf(blockMax, capacity * channelCount);
+            blockSum = Arrays.copyOf(blockSum, capacity * channelCount);
+        }
+        int block = blockCount++;
+        blockFirstTime[block] = timeMs;
+        blockLastTime[block] = timeMs;
+        blockSamples[block] = 0;
+        int base = block * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+            blockMin[base + channel] = Float.POSITIVE_INFINITY;
+            blockMax[base + channel] = Float.NEGATIVE_INFINITY;
+            blockSum[base + channel] = 0;
+        }
+        writeBlock.clear();
+        if (readBlockIndex == block) {
+            readBlockIndex = -1;
+        }
+    }
+
+    private void writeCurrentBlock() throws IOException {
+        int block = blockCount - 1;
+        ByteBuffer used = writeBlock.duplicate();
+        used.flip();
+        data.write(used, headerBytes + (long) block * blockBytes);
+
+        indexEntry.clear();
+        indexEntry.putLong(blockFirstTime[block]);
+        indexEntry.putLong(blockLastTime[block]);
+        indexEntry.putInt(blockSamples[block]);
+        int base = block * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+            indexEntry.putFloat(blockMin[base + channel]);
+            indexEntry.putFloat(blockMax[base + channel]);
+            indexEntry.putDouble(blockSum[base + channel]);
+        }
+        indexEntry.flip();
+        index.write(indexEntry, (long) block * indexEntryBytes);
+    }
+
+    private void loadIndex() throws IOException {
+        int entries = (int) (index.size() / indexEntryBytes);
+        for (int block = 0; block < entries; block++) {
+            indexEntry.clear();
+            index.read(indexEntry, (long) block * indexEntryBytes);
+            indexEntry.flip();
+            startBlock(indexEntry.getLong());
+            blockLastTime[block] = indexEntry.getLong();
+            blockSamples[block] = indexEntry.getInt();
+            int base = block * channelCount;
+            for (int channel = 0; channel < channelCount; channel++) {
+                blockMin[base + channel] = indexEntry.getFloat();
+                blockMax[base + channel] = indexEntry.getFloat();
+                blockSum[base + channel] = indexEntry.getDouble();
+            }
+        }
+    }
+
+    private int firstBlockEndingAtOrAfter(long timeMs) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (blockLastTime[middle] < timeMs) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Samples of a block, from memory for the block being recorded and from disk otherwise. */
+    private ByteBuffer blockBuffer(int block) throws IOException {
+        if (writable && block == blockCount - 1) {
+            return writeBlock;
+        }
+        if (readBlockIndex != block) {
+            readBlock.clear();
+            data.read(readBlock, headerBytes + (long) block * blockBytes);
+            readBlockIndex = block;
+        }
+        return readBlock;
+    }
+}
@@ -0,0 +1,109 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * Statistics of one sensor over the whole session and over a sliding time window.
+ *
+ * The session part is a {@link RunningStats} plus a {@link KllSketch}. The window is a ring of
+ * blocks, each with its own stats and sketch, and old blocks are recycled as time moves on. A
+ * window query merges the live blocks into scratch instances, which is cheap because both stats
+ * and sketches merge exactly. Memory stays fixed however long the session runs.
+ */
+public final class StreamingStats {
+
+    private static final int WINDOW_SKETCH_K = 100;
+
+    private final RunningStats session = new RunningStats();
+    private final KllSketch sessionSketch = new KllSketch();
+
+    private final long blockMs;
+    private final RunningStats[] blockStats;
+    private final KllSketch[] blockSketches;
+    // Index (timeMs / blockMs) of the block stored in each ring slot, -1 when unused.
+    private final long[] blockIds;
+
+    private final RunningStats window = new RunningStats();
+    private final KllSketch windowSketch = new KllSketch(WINDOW_SKETCH_K);
+
+    /**
+     * @param windowMs     length of the sliding window
+     * @param windowBlocks number of blocks the window is split into, the window slides per block
+     */
+    public StreamingStats(long windowMs, int windowBlocks) {
+        if (windowBlocks < 1 || windowMs < windowBlocks) {
+            throw new IllegalArgumentException("window must be at least one ms per block");
+        }
+        this.blockMs = windowMs / windowBlocks;
+        this.blockStats = new RunningStats[windowBlocks];
+        this.blockSketches = new KllSketch[windowBlocks];
+        this.blockIds = new long[windowBlocks];
+        for (int i = 0; i < windowBlocks; i++) {
+            blockStats[i] = new RunningStats();
+            blockSketches[i] = new KllSketch(WINDOW_SKETCH_K);
+            blockIds[i] = -1;
+        }
+    }
+
+    public void add(float value, long timeMs) {
+        session.add(value);
+        sessionSketch.update(value);
+
+        long blockId = timeMs / blockMs;
+        int slot = (int) (blockId % blockIds.length);
+        if (blockIds[slot] != blockId) {
+            blockIds[slot] = blockId;
+            blockStats[slot].reset();
+            blockSketches[slot].reset();
+        }
+        blockStats[slot].add(value);
+        blockSketches[slot].update(value);
+    }
+
+    /** Merges another sensor's session into this one, e.g. the same sensor of another chair. */
+    public void mergeSession(StreamingStats other) {
+        session.merge(other.session);
+        sessionSketch.merge(other.sessionSketch);
+    }
+
+    public RunningStats getSession() {
+        return session;
+    }
+
+    public KllSketch getSessionSketch() {
+        return sessionSketch;
+    }
+
+    /**
+     * Recomputes the window ending at nowMs into {@link #getWindow()} and
+     * {@link #getWindowSketch()}.
+     */
+    public void updateWindow(long nowMs) {
+        window.reset();
+        windowSketch.reset();
+        long oldest = nowMs / blockMs - blockIds.length + 1;
+        for (int slot = 0; slot < blockIds.length; slot++) {
+            // Unused slots are -1, which early in the session is within the window
+            if (blockIds[slot] >= 0 && blockIds[slot] >= oldest) {
+                window.merge(blockStats[slot]);
+                windowSketch.merge(blockSketches[slot]);
+            }
+        }
+    }
+
+    public RunningStats getWindow() {
+        return window;
+    }
+
+    public KllSketch getWindowSketch() {
+        return windowSketch;
+    }
+
+    public void reset() {
+        session.reset();
+        sessionSketch.reset();
+        for (int slot = 0; slot < blockIds.length; slot++) {
+            blockIds[slot] = -1;
+        }
+        window.reset();
+        windowSketch.reset();
+    }
+}
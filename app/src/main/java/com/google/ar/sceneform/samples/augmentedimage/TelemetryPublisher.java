@@ -0,0 +1,106 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes the {@link HealthTelemetry} of this tablet on its status topic. The counting happens
+ * on the main thread, the records are written out and published on a thread of their own, so
+ * neither JSON nor the client hold up a frame.
+ */
+final class TelemetryPublisher {
+
+    private static final String TAG = "TelemetryPublisher";
+    // How long close() waits for a record being written
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+
+    private final HealthTelemetry telemetry;
+    private final MqttHelper mqttHelper;
+    private final String topic;
+    private final LongSupplier droppedTotal;
+    private final LongSupplier reconnectsTotal;
+
+    private final Handler timer = new Handler(Looper.getMainLooper());
+    private final Runnable swap = this::swap;
+    private final Runnable write = this::write;
+    private HandlerThread thread;
+    private Handler handler;
+
+    /**
+     * @param droppedTotal samples lost so far, read on the main thread
+     * @param reconnectsTotal reconnects so far, read on the main thread
+     */
+    TelemetryPublisher(HealthTelemetry telemetry, MqttHelper mqttHelper, String topic,
+                       LongSupplier droppedTotal, LongSupplier reconnectsTotal) {
+        this.telemetry = telemetry;
+        this.mqttHelper = mqttHelper;
+        this.topic = topic;
+        this.droppedTotal = droppedTotal;
+        this.reconnectsTotal = reconnectsTotal;
+    }
+
+    void start() {
+        thread = new HandlerThread("HealthTelemetry");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        timer.postDelayed(swap, telemetry.getIntervalMs());
+    }
+
+    /**
+     * Stops the timer, lets the thread finish the record it has and publishes whatever records
+     * are left. Returns once they are handed to the client, so it can be closed right after.
+     */
+    void close() {
+        timer.removeCallbacks(swap);
+        if (thread == null) {
+            return;
+        }
+        thread.quitSafely();
+        try {
+            thread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            Log.w(TAG, "Still writing a record, the last ones are not published");
+            return;
+        }
+        // The thread is gone, this one is the writer now
+        try {
+            publish(telemetry.flush());
+        } catch (JSONException e) {
+            Log.e(TAG, "Unable to encode the health records", e);
+        }
+    }
+
+    // Main thread, once per interval. Never waits for the telemetry thread.
+    private void swap() {
+        timer.postDelayed(swap, telemetry.getIntervalMs());
+        Runtime runtime = Runtime.getRuntime();
+        if (telemetry.swap(System.currentTimeMillis(), droppedTotal.getAsLong(), reconnectsTotal.getAsLong(),
+                runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory())) {
+            handler.post(write);
+        }
+    }
+
+    // Telemetry thread. Best effort, a record lost while disconnected is not worth queueing.
+    private void write() {
+        try {
+            publish(telemetry.writeRecord());
+        } catch (JSONException e) {
+            Log.e(TAG, "Unable to encode the health record", e);
+        }
+    }
+
+    private void publish(String payload) {
+        if (payload != null) {
+            mqttHelper.publish(topic, payload, 0);
+        }
+    }
+}
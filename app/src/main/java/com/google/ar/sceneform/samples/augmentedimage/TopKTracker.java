@@ -0,0 +1,232 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * The k highest scores out of n ids, maintained as scores change one at a time.
+ *
+ * The leaders sit in an indexed min-heap of size k and everybody else in an indexed max-heap, so
+ * the weakest leader and the strongest challenger are both at a root. A score update fixes its
+ * heap in O(log n) and then at most one leader and one challenger swap places. The leaders are also
+ * kept in rank order in a small array (O(k) to move one), which tells whether the ranking as shown
+ * actually changed. Does not allocate after construction.
+ */
+public final class TopKTracker {
+
+    private static final byte NONE = 0;
+    private static final byte LEADER = 1;
+    private static final byte CHALLENGER = 2;
+
+    private final int k;
+    private final float[] scores;
+    private final byte[] membership;
+    private final IndexedHeap leaders;
+    private final IndexedHeap challengers;
+    // Leaders by descending score
+    private final int[] ranked;
+    private int rankedCount;
+
+    public TopKTracker(int capacity, int k) {
+        if (k < 1 || capacity < 1) {
+            throw new IllegalArgumentException("capacity and k must be positive");
+        }
+        this.k = k;
+        this.scores = new float[capacity];
+        this.membership = new byte[capacity];
+        this.leaders = new IndexedHeap(scores, capacity, false);
+        this.challengers = new IndexedHeap(scores, capacity, true);
+        this.ranked = new int[k];
+    }
+
+    public int getCapacity() {
+        return scores.length;
+    }
+
+    public float getScore(int id) {
+        return scores[id];
+    }
+
+    /** Number of leaders, k once at least k ids have a score. */
+    public int getCount() {
+        return rankedCount;
+    }
+
+    /** Id at a rank, 0 being the highest score. */
+    public int getId(int rank) {
+        return ranked[rank];
+    }
+
+    /**
+     * Sets the score of an id.
+     *
+     * @return true when the leaders or their order changed
+     */
+    public boolean update(int id, float score) {
+        scores[id] = score;
+        boolean changed = false;
+
+        switch (membership[id]) {
+            case NONE:
+                if (leaders.size() < k) {
+                    leaders.insert(id);
+                    membership[id] = LEADER;
+                    insertRanked(id);
+                    return true;
+                }
+                challengers.insert(id);
+                membership[id] = CHALLENGER;
+                break;
+            case LEADER:
+                leaders.update(id);
+                changed = moveRanked(id);
+                break;
+            default:
+                challengers.update(id);
+                break;
+        }
+
+        // Only one score changed, so at most one swap restores the split.
+        if (challengers.size() > 0 && scores[challengers.peek()] > scores[leaders.peek()]) {
+            int promoted = challengers.poll();
+            int demoted = leaders.poll();
+            leaders.insert(promoted);
+            challengers.insert(demoted);
+            membership[promoted] = LEADER;
+            membership[demoted] = CHALLENGER;
+            removeRanked(demoted);
+            insertRanked(promoted);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void insertRanked(int id) {
+        int i = rankedCount++;
+        ranked[i] = id;
+        moveUp(i);
+    }
+
+    private void removeRanked(int id) {
+        int i = indexOfRanked(id);
+        System.arraycopy(ranked, i + 1, ranked, i, rankedCount - i - 1);
+        rankedCount--;
+    }
+
+    // Re-sorts one leader whose score changed, true if its rank did.
+    private boolean moveRanked(int id) {
+        int i = indexOfRanked(id);
+        int moved = moveUp(i);
+        if (moved != i) {
+            return true;
+        }
+        while (i + 1 < rankedCount && scores[ranked[i + 1]] > scores[id]) {
+            ranked[i] = ranked[i + 1];
+            ranked[++i] = id;
+        }
+        return i != moved;
+    }
+
+    private int moveUp(int i) {
+        int id = ranked[i];
+        while (i > 0 && scores[ranked[i - 1]] < scores[id]) {
+            ranked[i] = ranked[i - 1];
+            ranked[--i] = id;
+        }
+        return i;
+    }
+
+    private int indexOfRanked(int id) {
+        for (int i = 0; i < rankedCount; i++) {
+            if (ranked[i] == id) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Leader " + id + " not ranked");
+    }
+
+    /** Binary heap of ids ordered by a shared score array, knowing where each id sits. */
+    private static final class IndexedHeap {
+        private final float[] scores;
+        private final boolean max;
+        private final int[] heap;
+        private final int[] position;
+        private int size;
+
+        IndexedHeap(float[] scores, int capacity, boolean max) {
+            this.scores = scores;
+            this.max = max;
+            this.heap = new int[capacity];
+            this.position = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int peek() {
+            return heap[0];
+        }
+
+        void insert(int id) {
+            heap[size] = id;
+            position[id] = size;
+            siftUp(size++);
+        }
+
+        int poll() {
+            int root = heap[0];
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                position[heap[0]] = 0;
+                siftDown(0);
+            }
+            return root;
+        }
+
+        void update(int id) {
+            int i = position[id];
+            siftUp(i);
+            siftDown(position[id]);
+        }
+
+        // True when a belongs above b
+        private boolean above(int a, int b) {
+            return max ? scores[a] > scores[b] : scores[a] < scores[b];
+        }
+
+        private void siftUp(int i) {
+            int id = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(id, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                position[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = id;
+            position[id] = i;
+        }
+
+        private void siftDown(int i) {
+            int id = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!above(heap[child], id)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                position[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = id;
+            position[id] = i;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring buffer of trace events, the last events of every thread in one place, so a slow frame can
+ * be seen next to the messages that arrived around it. Exported in the Chrome trace event format,
+ * which chrome://tracing and ui.perfetto.dev open.
+ *
+ * Event names are fixed when the recorder is made and referred to by index, recording one is a
+ * clock read, an atomic increment and a few ordered array writes, no locks and no allocation. Any
+ * thread may record. Spans opened with {@link #begin} are closed with {@link #end} on the same thread,
+ * async spans pair up by id and may cross threads, e.g. a message handed to the main thread.
+ * Once the ring is full the oldest events are overwritten.
+ */
+public final class TraceRecorder {
+
+    private static final byte BEGIN = 0;
+    private static final byte END = 1;
+    private static final byte ASYNC_BEGIN = 2;
+    private static final byte ASYNC_END = 3;
+    private static final byte INSTANT = 4;
+    private static final char[] PHASES = {'B', 'E', 'b', 'e', 'i'};
+    // Time, thread, id, name and phase of an event
+    private static final int SLOT_FIELDS = 4;
+
+    private final String[] names;
+    private final String[] quotedNames;
+    private final int mask;
+    private final long originNanos;
+
+    // One slot per event, the sequence is published last and marks the slot complete. The fields
+    // are written and read in order as well, so the export can tell a slot it read was changed
+    // under it by re-checking the sequence afterwards.
+    private final AtomicLongArray slots;
+    private final AtomicLongArray published;
+    private final AtomicLong next = new AtomicLong();
+
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+
+    /**
+     * @param names every event name, recorded by index
+     * @param capacity events kept, rounded up to a power of two
+     */
+    public TraceRecorder(String[] names, int capacity) {
+        if (capacity < 1 || capacity > 1 << 24) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        this.names = names.clone();
+        quotedNames = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            quotedNames[i] = quote(names[i]);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new AtomicLongArray(size * SLOT_FIELDS);
+        published = new AtomicLongArray(size);
+        originNanos = System.nanoTime();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public int getNameCount() {
+        return names.length;
+    }
+
+    public String getName(int name) {
+        return names[name];
+    }
+
+    /** Events recorded so far, including the overwritten ones. */
+    public long getRecordedCount() {
+        return next.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** When disabled, recording is a single volatile read. */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Names the calling thread in exported traces, once per thread. */
+    public void nameCurrentThread(String name) {
+        threadNames.put(Thread.currentThread().getId(), name);
+    }
+
+    public void begin(int name) {
+        record(name, BEGIN, 0);
+    }
+
+    public void end(int name) {
+        record(name, END, 0);
+    }
+
+    public void asyncBegin(int name, long id) {
+        record(name, ASYNC_BEGIN, id);
+    }
+
+    public void asyncEnd(int name, long id) {
+        record(name, ASYNC_END, id);
+    }
+
+    public void instant(int name) {
+        record(name, INSTANT, 0);
+    }
+
+    private void record(int name, byte phase, long id) {
+        if (!enabled) {
+            return;
+        }
+        long nanos = System.nanoTime();
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        int field = slot * SLOT_FIELDS;
+        slots.lazySet(field, nanos);
+        slots.lazySet(field + 1, Thread.currentThread().getId());
+        slots.lazySet(field + 2, id);
+        slots.lazySet(field + 3, (long) name << 8 | phase);
+        // Readers take the slot once it carries this sequence
+        published.lazySet(slot, sequence + 1);
+    }
+
+    /** Drops every event recorded so far. Not to be called while other threads record. */
+    public void clear() {
+        for (int slot = 0; slot <= mask; slot++) {
+            published.set(slot, 0);
+        }
+        next.set(0);
+    }
+
+    /**
+     * Writes the events in the ring as a Chrome trace event JSON object, oldest first, with
+     * times in microseconds since the recorder was made. Events being written or overwritten
+     * while exporting are left out, spans missing their begin or end are shown open or ignored
+     * by the viewers.
+     *
+     * @return the number of events written
+     */
+    public int writeChromeTrace(Appendable out) throws IOException {
+        long last = next.get();
+        long first = Math.max(0, last - mask - 1);
+        out.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        int written = 0;
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            out.append(written == 0 ? "\n" : ",\n");
+            out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(thread.getKey().toString())
+                    .append(",\"args\":{\"name\":").append(quote(thread.getValue())).append("}}");
+            written++;
+        }
+        int events = 0;
+        for (long sequence = first; sequence < last; sequence++) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence + 1) {
+                continue;
+            }
+            int field = slot * SLOT_FIELDS;
+            long nanos = slots.get(field);
+            long thread = slots.get(field + 1);
+            long id = slots.get(field + 2);
+            long nameAndPhase = slots.get(field + 3);
+            int name = (int) (nameAndPhase >> 8);
+            byte phase = (byte) nameAndPhase;
+            // A writer that came round the ring since may have changed the slot under us, it took
+            // its sequence before writing any field we could have read
+            if (next.get() - sequence > mask + 1 || published.get(slot) != sequence + 1) {
+                continue;
+            }
+            if (name < 0 || name >= quotedNames.length || phase < 0 || phase >= PHASES.length) {
+                continue;
+            }
+            out.append(written == 0 ? "\n" : ",\n");
+            out.append("{\"name\":").append(quotedNames[name])
+                    .append(",\"ph\":\"").append(PHASES[phase])
+                    .append("\",\"ts\":");
+            appendMicros(out, nanos - originNanos);
+            out.append(",\"pid\":1,\"tid\":").append(Long.toString(thread));
+            if (phase == ASYNC_BEGIN || phase == ASYNC_END) {
+                out.append(",\"cat\":\"async\",\"id\":").append(Long.toString(id));
+            } else if (phase == INSTANT) {
+                out.append(",\"s\":\"t\"");
+            }
+            out.append('}');
+            written++;
+            events++;
+        }
+        out.append("\n]}\n");
+        return events;
+    }
+
+    /** The trace as a string, see {@link #writeChromeTrace}. */
+    public String toChromeTrace() {
+        StringBuilder trace = new StringBuilder();
+        try {
+            writeChromeTrace(trace);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return trace.toString();
+    }
+
+    // Microseconds with three decimals, viewers take fractions.
+    private static void appendMicros(Appendable out, long nanos) throws IOException {
+        if (nanos < 0) {
+            out.append('-');
+            nanos = -nanos;
+        }
+        long fraction = nanos % 1000;
+        out.append(Long.toString(nanos / 1000)).append('.');
+        if (fraction < 100) {
+            out.append('0');
+        }
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(Long.toString(fraction));
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+/**
+ * The process-wide trace of ingest and frame events, shared by the sensor sources, the pipeline
+ * and the scene. Events 0 to 9 are the {@link PipelineStages}, same indices, then the
+ * events below. Dumped with
+ * <pre>
+ * adb shell dumpsys activity service com.google.ar.sceneform.samples.augmentedimage/.IngestService trace
+ * </pre>
+ */
+final class Tracing {
+
+    // A message off the network, on the transport's thread
+    static final int RECEIVE = 10;
+    // From the transport's thread to the main thread, async by message
+    static final int HANDOFF = 11;
+    // Parts of a frame
+    static final int QUALITY = 12;
+    static final int FLEET_PANEL = 13;
+    static final int LEVEL_OF_DETAIL = 14;
+    static final int IMAGE_TRACKING = 15;
+    // Vertex changes pushed to the renderables
+    static final int GRAPH_COMMIT = 16;
+    static final int MAT_COMMIT = 17;
+
+    private static final String[] EVENTS = {
+            "receive", "handoff", "quality", "fleet panel",
+            "level of detail", "image tracking", "graph commit", "mat commit"
+    };
+
+    // About 15 s of a 50 Hz stream at 60 fps, 37 bytes an event
+    private static final int CAPACITY = 1 << 15;
+
+    static final TraceRecorder RECORDER = new TraceRecorder(names(), CAPACITY);
+
+    private Tracing() {}
+
+    private static String[] names() {
+        String[] stages = PipelineStages.NAMES;
+        String[] names = new String[stages.length + EVENTS.length];
+        System.arraycopy(stages, 0, names, 0, stages.length);
+        System.arraycopy(EVENTS, 0, names, stages.length, EVENTS.length);
+        if (names[RECEIVE] != EVENTS[0]) {
+            throw new AssertionError("Trace events out of step with the pipeline stages");
+        }
+        return names;
+    }
+}
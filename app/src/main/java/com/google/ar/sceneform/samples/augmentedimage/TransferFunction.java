@@ -0,0 +1,67 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.util.Arrays;
+
+/**
+ * Curve mapping a (zero corrected) sensor reading to a calibrated value.
+ *
+ * These are only evaluated when a {@link Calibration} is compiled, never per sample, so they can
+ * be as expensive as they like.
+ */
+public interface TransferFunction {
+
+    float apply(float x);
+
+    /** slope * x + intercept */
+    static TransferFunction linear(float slope, float intercept) {
+        return x -> slope * x + intercept;
+    }
+
+    /** a * ln(1 + b * x), a usual fit for resistive force sensors. Negative inputs give 0. */
+    static TransferFunction log(float a, float b) {
+        return x -> x <= 0f ? 0f : (float) (a * Math.log1p(b * x));
+    }
+
+    /**
+     * Straight lines between (xs[i], ys[i]) points, flat outside the first and last point.
+     * xs must be strictly increasing.
+     */
+    static TransferFunction piecewise(float[] xs, float[] ys) {
+        if (xs.length != ys.length || xs.length < 2) {
+            throw new IllegalArgumentException("piecewise needs at least two matching points");
+        }
+        for (int i = 1; i < xs.length; i++) {
+            if (!(xs[i] > xs[i - 1])) {
+                throw new IllegalArgumentException("piecewise x values must be increasing");
+            }
+        }
+        float[] px = xs.clone();
+        float[] py = ys.clone();
+        return x -> {
+            if (x <= px[0]) return py[0];
+            if (x >= px[px.length - 1]) return py[py.length - 1];
+            int i = Arrays.binarySearch(px, x);
+            if (i >= 0) return py[i];
+            int upper = -i - 1;
+            int lower = upper - 1;
+            float t = (x - px[lower]) / (px[upper] - px[lower]);
+            return py[lower] + (py[upper] - py[lower]) * t;
+        };
+    }
+
+    /** coefficients[0] + coefficients[1] * x + coefficients[2] * x^2 + ... */
+    static TransferFunction polynomial(float[] coefficients) {
+        if (coefficients.length == 0) {
+            throw new IllegalArgumentException("polynomial needs at least one coefficient");
+        }
+        float[] c = coefficients.clone();
+        return x -> {
+            // Horner's method
+            double result = 0;
+            for (int i = c.length - 1; i >= 0; i--) {
+                result = result * x + c[i];
+            }
+            return (float) result;
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * The receive thread behind {@link UdpSensorSource}: datagrams with a sequence header, without the
+ * Android parts so it runs on the JVM. Accepted messages are handed to the executor.
+ *
+ * Every start gets its own thread and socket. A thread that was stopped before it got its socket
+ * closes it right away, and one that ends late doesn't touch the socket of the thread after it.
+ */
+final class UdpReceiver {
+
+    /** What the receiver went through, for the log. */
+    interface Events {
+        void onGatewayRestarted(int sequence);
+
+        /** At most once per LOSS_REPORT_INTERVAL_MS, however bursty the loss. */
+        void onLoss(long lostInInterval, long intervalMs, long lost, long total);
+
+        void onError(String what, Exception e);
+    }
+
+    static final int MAX_DATAGRAM_BYTES = 65507;
+    static final int HEADER_BYTES = 4;
+    static final long LOSS_REPORT_INTERVAL_MS = 10_000;
+
+    private final int port;
+    private final Executor deliverer;
+    private final Events events;
+    private final SequenceTracker sequences = new SequenceTracker();
+    // Guarded by this
+    private Thread receiveThread;
+    private DatagramSocket socket;
+    private volatile long delivered;
+
+    /** @param port 0 for any free port, see {@link #getLocalPort()} */
+    UdpReceiver(int port, Executor deliverer, Events events) {
+        this.port = port;
+        this.deliverer = deliverer;
+        this.events = events;
+    }
+
+    synchronized void start(SensorSource.Listener listener) {
+        if (receiveThread != null) {
+            return;
+        }
+        receiveThread = new Thread(() -> receive(listener), "UdpSensorSource");
+        receiveThread.start();
+    }
+
+    void stop() {
+        Thread stopping;
+        DatagramSocket current;
+        synchronized (this) {
+            stopping = receiveThread;
+            current = socket;
+            receiveThread = null;
+        }
+        if (stopping != null) {
+            stopping.interrupt();
+        }
+        if (current != null) {
+            // Unblocks receive()
+            current.close();
+        }
+    }
+
+    /** Port the running thread is bound to, -1 before it is. */
+    synchronized int getLocalPort() {
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    long getReceivedCount() {
+        return delivered;
+    }
+
+    synchronized long getLostCount() {
+        return sequences.getLost();
+    }
+
+    private synchronized boolean isCurrent() {
+        return receiveThread == Thread.currentThread();
+    }
+
+    private void receive(SensorSource.Listener listener) {
+        TraceRecorder trace = Tracing.RECORDER;
+        trace.nameCurrentThread("UdpSensorSource");
+        DatagramSocket datagramSocket = null;
+        try {
+            datagramSocket = new DatagramSocket(null);
+            // A restart can bind while the thread before it is still letting go of the port
+            datagramSocket.setReuseAddress(true);
+            datagramSocket.bind(new InetSocketAddress(port));
+        } catch (SocketException e) {
+            if (datagramSocket != null) {
+                datagramSocket.close();
+            }
+            if (isCurrent()) {
+                events.onError("Unable to bind port " + port, e);
+            }
+            return;
+        }
+        synchronized (this) {
+            // Stopped while binding, stop() had no socket to close
+            if (receiveThread != Thread.currentThread()) {
+                datagramSocket.close();
+                return;
+            }
+            socket = datagramSocket;
+        }
+
+        byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        long handoffs = 0;
+        long lastLossReportMs = System.nanoTime() / 1_000_000;
+        long lostAtLastReport = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                packet.setLength(buffer.length);
+                datagramSocket.receive(packet);
+                if (packet.getLength() < HEADER_BYTES) {
+                    continue;
+                }
+                trace.begin(Tracing.RECEIVE);
+                int sequence = ((buffer[0] & 0xFF) << 24) | ((buffer[1] & 0xFF) << 16)
+                        | ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
+                int kind;
+                long lost;
+                long total;
+                synchronized (this) {
+                    kind = sequences.accept(sequence);
+                    lost = sequences.getLost();
+                    total = sequences.getReceived() + lost;
+                }
+                if (kind == SequenceTracker.DUPLICATE || kind == SequenceTracker.TOO_OLD) {
+                    trace.end(Tracing.RECEIVE);
+                    continue;
+                }
+                if (kind == SequenceTracker.RESTARTED) {
+                    events.onGatewayRestarted(sequence);
+                } else if (kind == SequenceTracker.GAP) {
+                    long nowMs = System.nanoTime() / 1_000_000;
+                    if (nowMs - lastLossReportMs >= LOSS_REPORT_INTERVAL_MS) {
+                        events.onLoss(lost - lostAtLastReport, nowMs - lastLossReportMs, lost, total);
+                        lastLossReportMs = nowMs;
+                        lostAtLastReport = lost;
+                    }
+                }
+                String payload = new String(buffer, HEADER_BYTES, packet.getLength() - HEADER_BYTES,
+                        StandardCharsets.UTF_8);
+                long handoff = ++handoffs;
+                trace.asyncBegin(Tracing.HANDOFF, handoff);
+                deliverer.execute(() -> {
+                    trace.asyncEnd(Tracing.HANDOFF, handoff);
+                    delivered++;
+                    listener.onMessage(payload);
+                });
+                trace.end(Tracing.RECEIVE);
+            }
+        } catch (SocketException e) {
+            // Closing the socket is how stop() ends the loop, anything else is a real failure
+            if (isCurrent()) {
+                events.onError("Socket failed on port " + port, e);
+            }
+        } catch (IOException e) {
+            events.onError("Receive failed on port " + port, e);
+        } finally {
+            datagramSocket.close();
+            synchronized (this) {
+                // A later start may already have its own socket here
+                if (socket == datagramSocket) {
+                    socket = null;
+                }
+            }
+        }
+    }
+}
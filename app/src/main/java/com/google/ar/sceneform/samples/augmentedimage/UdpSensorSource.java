@@ -0,0 +1,71 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Raw UDP datagrams straight from a sensor gateway on the same LAN, no broker in between.
+ *
+ * Each datagram is a 4 byte big endian sequence number followed by one JSON message in UTF-8.
+ * The sequence numbers give loss, reordering and duplicate counts. Duplicates and datagrams too
+ * old to place are dropped, reordered ones are still delivered since each message carries the
+ * full state. A large jump back in the numbers is a restart of the gateway, tracking continues
+ * from there.
+ *
+ * The receive thread itself is {@link UdpReceiver}, this hands its messages to the main thread.
+ */
+class UdpSensorSource implements SensorSource {
+
+    private static final String TAG = "UdpSensorSource";
+
+    private final int port;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final UdpReceiver receiver;
+
+    UdpSensorSource(int port) {
+        this.port = port;
+        receiver = new UdpReceiver(port, mainHandler::post, new UdpReceiver.Events() {
+            @Override
+            public void onGatewayRestarted(int sequence) {
+                Log.i(TAG, "Gateway restarted, sequence now " + sequence);
+            }
+
+            @Override
+            public void onLoss(long lostInInterval, long intervalMs, long lost, long total) {
+                Log.w(TAG, "Lost " + lostInInterval + " datagrams in the last " + intervalMs / 1000 + " s, "
+                        + lost + " of " + total + " in total");
+            }
+
+            @Override
+            public void onError(String what, Exception e) {
+                Log.e(TAG, what, e);
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "udp:" + port;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        receiver.start(listener);
+    }
+
+    @Override
+    public void stop() {
+        receiver.stop();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return receiver.getReceivedCount();
+    }
+
+    @Override
+    public long getLostCount() {
+        return receiver.getLostCount();
+    }
+}
@@ -0,0 +1,144 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * A WebSocket stream of JSON messages, one per text frame (binary frames are read as UTF-8).
+ * Reconnects with a jittered backoff when the stream fails. The app doesn't allow cleartext
+ * traffic, so the url should be wss://.
+ */
+class WebSocketSensorSource implements SensorSource {
+
+    private static final String TAG = "WebSocketSensorSource";
+    private static final long PING_INTERVAL_S = 10;
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30_000;
+
+    private final String url;
+    private final OkHttpClient client;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Backoff backoff = new Backoff(BACKOFF_BASE_MS, BACKOFF_MAX_MS);
+    private WebSocket webSocket;
+    private Listener listener;
+    private boolean started;
+    private long received;
+    // Reader thread only, for the trace
+    private boolean readerNamed;
+    private long handoffs;
+
+    WebSocketSensorSource(String url) {
+        this.url = url;
+        this.client = new OkHttpClient.Builder()
+                .pingInterval(PING_INTERVAL_S, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "websocket:" + url;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        started = true;
+        open();
+    }
+
+    @Override
+    public void stop() {
+        started = false;
+        mainHandler.removeCallbacksAndMessages(null);
+        if (webSocket != null) {
+            webSocket.close(1000, null);
+            webSocket = null;
+        }
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received;
+    }
+
+    @Override
+    public long getLostCount() {
+        return 0;
+    }
+
+    private void open() {
+        if (!started) {
+            return;
+        }
+        webSocket = client.newWebSocket(new Request.Builder().url(url).build(), new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket socket, Response response) {
+                mainHandler.post(backoff::reset);
+            }
+
+            @Override
+            public void onMessage(WebSocket socket, String text) {
+                handOff(socket, text);
+            }
+
+            @Override
+            public void onMessage(WebSocket socket, ByteString bytes) {
+                Tracing.RECORDER.begin(Tracing.RECEIVE);
+                String text = bytes.utf8();
+                Tracing.RECORDER.end(Tracing.RECEIVE);
+                handOff(socket, text);
+            }
+
+            @Override
+            public void onFailure(WebSocket socket, Throwable t, Response response) {
+                Log.w(TAG, "Stream from " + url + " failed: " + t);
+                mainHandler.post(() -> reopen(socket));
+            }
+
+            @Override
+            public void onClosed(WebSocket socket, int code, String reason) {
+                mainHandler.post(() -> reopen(socket));
+            }
+        });
+    }
+
+    // On the socket's reader thread, traced until the main thread takes the message.
+    private void handOff(WebSocket socket, String text) {
+        TraceRecorder trace = Tracing.RECORDER;
+        if (!readerNamed) {
+            readerNamed = true;
+            trace.nameCurrentThread("WebSocketSensorSource");
+        }
+        long handoff = ++handoffs;
+        trace.asyncBegin(Tracing.HANDOFF, handoff);
+        mainHandler.post(() -> {
+            trace.asyncEnd(Tracing.HANDOFF, handoff);
+            deliver(socket, text);
+        });
+    }
+
+    private void deliver(WebSocket socket, String text) {
+        if (socket == webSocket && listener != null) {
+            received++;
+            listener.onMessage(text);
+        }
+    }
+
+    private void reopen(WebSocket socket) {
+        if (socket != webSocket || !started) {
+            return;
+        }
+        webSocket = null;
+        mainHandler.postDelayed(this::open, backoff.nextDelayMs());
+    }
+}
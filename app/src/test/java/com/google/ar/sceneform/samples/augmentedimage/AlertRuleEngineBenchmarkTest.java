@@ -0,0 +1,82 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/** 1,000 rules of every type over 64 channels, evaluated per sample. Timed with -Dbenchmark=true. */
+public class AlertRuleEngineBenchmarkTest {
+
+    private static final int RULES = 1000;
+    private static final int CHANNELS = 64;
+    private static final int WARMUP_SAMPLES = 20_000;
+    private static final int MEASURED_SAMPLES = 5_000;
+    // Evaluating every rule must fit well within a 1 kHz sample period, loose for CI machines
+    private static final long SAMPLE_BUDGET_NANOS = 250_000;
+
+    private static AlertRuleEngine thousandRules() throws JSONException {
+        String[] channelNames = new String[CHANNELS];
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            channelNames[channel] = "ch" + channel;
+        }
+        JSONArray rules = new JSONArray();
+        for (int rule = 0; rule < RULES; rule++) {
+            JSONObject json = new JSONObject();
+            json.put("id", "rule" + rule);
+            json.put("channel", channelNames[rule % CHANNELS]);
+            json.put("duration_ms", rule % 3 * 500);
+            json.put("clear_ms", 200);
+            json.put("debounce_ms", 1000);
+            switch (rule % 3) {
+                case 0:
+                    json.put("type", "threshold");
+                    json.put("above", 50 + rule % 40);
+                    break;
+                case 1:
+                    json.put("type", "rate");
+                    json.put("limit", 100 + rule % 50);
+                    break;
+                default:
+                    json.put("type", "asymmetry");
+                    json.put("other", channelNames[(rule + 1) % CHANNELS]);
+                    json.put("limit", 0.3);
+            }
+            rules.put(json);
+        }
+        return AlertRuleEngine.fromJson(new JSONObject().put("rules", rules), channelNames);
+    }
+
+    private final float[] values = new float[CHANNELS];
+    private int sample;
+    private long events;
+
+    @Test
+    public void thousandRulesPerSample() throws Exception {
+        AlertRuleEngine engine = thousandRules();
+        engine.setListener((e, rule, raised, value, timeMs) -> events++);
+        Benchmarks.time(RULES + " alert rules, per sample", WARMUP_SAMPLES, MEASURED_SAMPLES,
+                SAMPLE_BUDGET_NANOS, count -> run(engine, count));
+        // The load swings across the limits, the rules did fire
+        assertTrue(events > 0);
+    }
+
+    @Test
+    public void evaluationDoesNotAllocate() throws Exception {
+        AlertRuleEngine engine = thousandRules();
+        engine.setListener((e, rule, raised, value, timeMs) -> events++);
+        Benchmarks.assertDoesNotAllocate("alerts", WARMUP_SAMPLES, 10, count -> run(engine, count));
+    }
+
+    // The next samples at 1 kHz, loads swinging between 0 and 100
+    private void run(AlertRuleEngine engine, int count) {
+        for (int end = sample + count; sample < end; sample++) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                values[channel] = 50f + 50f * (float) Math.sin(sample * 0.003 + channel);
+            }
+            engine.evaluate(values, sample);
+        }
+    }
+}
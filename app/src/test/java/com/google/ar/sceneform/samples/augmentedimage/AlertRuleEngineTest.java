@@ -0,0 +1,123 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlertRuleEngineTest {
+
+    private static final String[] CHANNELS = {"left", "mid", "right", "back", "foot"};
+    private static final int LEFT = 0;
+    private static final int RIGHT = 2;
+    private static final int BACK = 3;
+    private static final int FOOT = 4;
+
+    private final List<String> events = new ArrayList<>();
+
+    private AlertRuleEngine engine(String rules) throws JSONException {
+        AlertRuleEngine engine = AlertRuleEngine.fromJson(new JSONObject("{'rules': [" + rules + "]}"), CHANNELS);
+        engine.setListener((e, rule, raised, value, timeMs) ->
+                events.add((raised ? "raise " : "clear ") + e.getRuleId(rule) + " at " + timeMs));
+        return engine;
+    }
+
+    private static float[] sample(int channel, float value) {
+        float[] values = new float[CHANNELS.length];
+        values[channel] = value;
+        return values;
+    }
+
+    @Test
+    public void thresholdMustHoldForItsDuration() throws JSONException {
+        AlertRuleEngine engine = engine("{'id': 'back', 'type': 'threshold', 'channel': 'back', 'above': 80, 'duration_ms': 2000}");
+        engine.evaluate(sample(BACK, 90), 0);
+        engine.evaluate(sample(BACK, 90), 1000);
+        // Dipping below restarts the duration
+        engine.evaluate(sample(BACK, 70), 1500);
+        engine.evaluate(sample(BACK, 90), 2000);
+        engine.evaluate(sample(BACK, 90), 3999);
+        assertTrue(events.isEmpty());
+        engine.evaluate(sample(BACK, 90), 4000);
+        assertEquals("[raise back at 4000]", events.toString());
+        assertTrue(engine.isRaised(0));
+    }
+
+    @Test
+    public void belowThreshold() throws JSONException {
+        AlertRuleEngine engine = engine("{'id': 'foot_low', 'type': 'threshold', 'channel': 'foot', 'below': 2}");
+        engine.evaluate(sample(FOOT, 5), 0);
+        engine.evaluate(sample(FOOT, 1), 10);
+        assertEquals("[raise foot_low at 10]", events.toString());
+    }
+
+    @Test
+    public void clearWaitsForClearTimeAndDebounceHoldsOffTheNextRaise() throws JSONException {
+        AlertRuleEngine engine = engine("{'id': 'back', 'type': 'threshold', 'channel': 'back', 'above': 80,"
+                + " 'clear_ms': 1000, 'debounce_ms': 5000}");
+        engine.evaluate(sample(BACK, 90), 0);
+        engine.evaluate(sample(BACK, 70), 100);
+        engine.evaluate(sample(BACK, 70), 1099);
+        assertTrue(engine.isRaised(0));
+        engine.evaluate(sample(BACK, 70), 1100);
+        assertFalse(engine.isRaised(0));
+        // Hovering at the limit within the debounce raises nothing
+        engine.evaluate(sample(BACK, 90), 2000);
+        engine.evaluate(sample(BACK, 90), 6099);
+        engine.evaluate(sample(BACK, 90), 6100);
+        assertEquals("[raise back at 0, clear back at 1100, raise back at 6100]", events.toString());
+    }
+
+    @Test
+    public void rateIsUnitsPerSecond() throws JSONException {
+        AlertRuleEngine engine = engine("{'id': 'jump', 'type': 'rate', 'channel': 'foot', 'limit': 150}");
+        engine.evaluate(sample(FOOT, 0), 0);
+        // 100 per second
+        engine.evaluate(sample(FOOT, 10), 100);
+        assertTrue(events.isEmpty());
+        // 200 per second
+        engine.evaluate(sample(FOOT, 30), 200);
+        assertEquals("[raise jump at 200]", events.toString());
+    }
+
+    @Test
+    public void asymmetryOfTwoChannelsIgnoresAnEmptySeat() throws JSONException {
+        AlertRuleEngine engine = engine("{'id': 'seat', 'type': 'asymmetry', 'channel': 'left', 'other': 'right', 'limit': 0.4}");
+        float[] values = new float[CHANNELS.length];
+        engine.evaluate(values, 0);
+        values[LEFT] = 60;
+        values[RIGHT] = 40;
+        engine.evaluate(values, 10);
+        assertTrue(events.isEmpty());
+        values[LEFT] = 80;
+        values[RIGHT] = 20;
+        engine.evaluate(values, 20);
+        assertEquals("[raise seat at 20]", events.toString());
+    }
+
+    @Test
+    public void resetDropsRaisedRulesSilently() throws JSONException {
+        AlertRuleEngine engine = engine("{'id': 'back', 'type': 'threshold', 'channel': 'back', 'above': 80}");
+        engine.evaluate(sample(BACK, 90), 0);
+        engine.reset();
+        assertFalse(engine.isRaised(0));
+        engine.evaluate(sample(BACK, 0), 10);
+        assertEquals(1, events.size());
+    }
+
+    @Test(expected = JSONException.class)
+    public void unknownChannelIsRejected() throws JSONException {
+        engine("{'id': 'x', 'type': 'threshold', 'channel': 'seat', 'above': 1}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void unknownTypeIsRejected() throws JSONException {
+        engine("{'id': 'x', 'type': 'spike', 'channel': 'back', 'limit': 1}");
+    }
+}
@@ -0,0 +1,145 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AllocationBudgetTest {
+
+    // Counts what the test says was allocated, plus what every read costs like a boxing counter.
+    private static final class FakeCounter implements AllocationBudget.Counter {
+        static final long READ_OBJECTS = 1;
+        static final long READ_BYTES = 16;
+        long objects;
+        long bytes;
+
+        void allocate(long count, long size) {
+            objects += count;
+            bytes += size;
+        }
+
+        @Override
+        public long getCount() {
+            long value = objects;
+            objects += READ_OBJECTS;
+            return value;
+        }
+
+        @Override
+        public long getBytes() {
+            long value = bytes;
+            bytes += READ_BYTES;
+            return value;
+        }
+    }
+
+    private static final String[] STAGES = {"message", "decode", "filter"};
+    private static final int MESSAGE = 0;
+    private static final int DECODE = 1;
+    private static final int FILTER = 2;
+
+    @Test
+    public void costOfReadingTheCounterIsNotCounted() {
+        FakeCounter counter = new FakeCounter();
+        AllocationBudget budget = new AllocationBudget(STAGES, new long[]{0, 0, 0}, counter);
+        for (int i = 0; i < 100; i++) {
+            budget.begin(FILTER);
+            budget.end(FILTER);
+        }
+        assertEquals(100, budget.getEvents(FILTER));
+        assertEquals(0, budget.getBytes(FILTER));
+        assertEquals(0, budget.getObjects(FILTER));
+        assertEquals(0, budget.getOverBudgetCount(FILTER));
+        budget.checkBudgets();
+    }
+
+    @Test
+    public void countsEveryStageOnItsOwn() {
+        FakeCounter counter = new FakeCounter();
+        AllocationBudget budget = new AllocationBudget(STAGES, new long[]{1024, 512, 0}, counter);
+        for (int i = 0; i < 10; i++) {
+            budget.begin(MESSAGE);
+            budget.begin(DECODE);
+            counter.allocate(3, 120);
+            budget.end(DECODE);
+            budget.begin(FILTER);
+            budget.end(FILTER);
+            counter.allocate(1, 40);
+            budget.end(MESSAGE);
+        }
+        assertEquals(10, budget.getEvents(DECODE));
+        assertEquals(1200, budget.getBytes(DECODE));
+        assertEquals(30, budget.getObjects(DECODE));
+        assertEquals(120, budget.getMaxBytes(DECODE));
+        assertEquals(0, budget.getBytes(FILTER));
+        // Nested stages are part of the message, so are the reads of the counter they made
+        assertTrue(budget.getBytes(MESSAGE) >= 1600);
+        assertEquals(0, budget.getOverBudgetCount(MESSAGE));
+        budget.checkBudgets();
+    }
+
+    @Test
+    public void flagsEveryEventOverItsBudget() {
+        FakeCounter counter = new FakeCounter();
+        AllocationBudget budget = new AllocationBudget(STAGES, new long[]{1024, 512, 0}, counter);
+        for (int i = 0; i < 20; i++) {
+            budget.begin(FILTER);
+            if (i % 5 == 0) {
+                // A boxed float sneaking into the filter
+                counter.allocate(1, 16);
+            }
+            budget.end(FILTER);
+            budget.begin(DECODE);
+            counter.allocate(2, i == 7 ? 600 : 400);
+            budget.end(DECODE);
+        }
+        assertEquals(4, budget.getOverBudgetCount(FILTER));
+        assertEquals(16, budget.getMaxBytes(FILTER));
+        assertEquals(1, budget.getOverBudgetCount(DECODE));
+        assertEquals(600, budget.getMaxBytes(DECODE));
+        try {
+            budget.checkBudgets();
+            fail("Over budget stages not reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("decode 1 of 20 events, up to 600 bytes of 512"));
+            assertTrue(e.getMessage(), e.getMessage().contains("filter 4 of 20 events, up to 16 bytes of 0"));
+            assertTrue(e.getMessage(), !e.getMessage().contains("message"));
+        }
+
+        budget.reset();
+        assertEquals(0, budget.getEvents(FILTER));
+        assertEquals(0, budget.getOverBudgetCount(FILTER));
+        budget.checkBudgets();
+    }
+
+    @Test
+    public void reportListsTheStagesThatRan() {
+        FakeCounter counter = new FakeCounter();
+        AllocationBudget budget = new AllocationBudget(STAGES, new long[]{1024, 512, 0}, counter);
+        budget.begin(DECODE);
+        counter.allocate(4, 256);
+        budget.end(DECODE);
+        String report = budget.report();
+        assertEquals(report, 2, report.split("\n").length);
+        assertTrue(report, report.contains("decode"));
+        assertTrue(report, !report.contains("filter"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oneBudgetPerStage() {
+        new AllocationBudget(STAGES, new long[]{0, 0}, new FakeCounter());
+    }
+
+    @Test
+    public void pipelineStagesHaveABudgetEach() {
+        assertEquals(PipelineStages.NAMES.length, PipelineStages.BUDGETS.length);
+        AllocationBudget budget = PipelineStages.newBudget(new FakeCounter());
+        assertEquals(PipelineStages.NAMES.length, budget.getStageCount());
+        assertEquals("filter", budget.getStageName(PipelineStages.FILTER));
+        assertEquals(0, budget.getBudgetBytes(PipelineStages.FILTER));
+        assertEquals(0, budget.getBudgetBytes(PipelineStages.DERIVED));
+        assertEquals(0, budget.getBudgetBytes(PipelineStages.STATS));
+    }
+}
@@ -0,0 +1,94 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackoffTest {
+
+    // Always the same draw, 0 for the shortest delay, just below 1 for the longest
+    private static final class FixedRandom extends Random {
+        private final double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    private static final double HIGHEST = Math.nextDown(1.0);
+
+    @Test
+    public void doublesUpToTheMaximum() {
+        Backoff backoff = new Backoff(500, 30_000, new FixedRandom(HIGHEST));
+        long[] ceilings = {500, 1000, 2000, 4000, 8000, 16_000, 30_000, 30_000, 30_000};
+        for (int i = 0; i < ceilings.length; i++) {
+            assertEquals(ceilings[i], backoff.nextDelayMs());
+            assertEquals(i + 1, backoff.getAttempt());
+        }
+    }
+
+    @Test
+    public void jitterStaysWithinZeroAndTheCeiling() {
+        assertEquals(0, new Backoff(500, 30_000, new FixedRandom(0)).nextDelayMs());
+        Backoff backoff = new Backoff(100, 5000, new Random(36));
+        long[] lowest = new long[8];
+        long[] highest = new long[8];
+        Arrays.fill(lowest, Long.MAX_VALUE);
+        for (int run = 0; run < 2000; run++) {
+            backoff.reset();
+            for (int attempt = 0; attempt < lowest.length; attempt++) {
+                long ceiling = Math.min(5000, 100L << attempt);
+                long delay = backoff.nextDelayMs();
+                assertTrue(delay + " over " + ceiling, delay >= 0 && delay <= ceiling);
+                lowest[attempt] = Math.min(lowest[attempt], delay);
+                highest[attempt] = Math.max(highest[attempt], delay);
+            }
+        }
+        // Full jitter, the whole range is used
+        for (int attempt = 0; attempt < lowest.length; attempt++) {
+            long ceiling = Math.min(5000, 100L << attempt);
+            assertTrue(lowest[attempt] < ceiling / 10);
+            assertTrue(highest[attempt] > ceiling * 9 / 10);
+        }
+    }
+
+    @Test
+    public void shiftNeverOverflows() {
+        // An odd base whose shifts would wrap around to small positive ceilings
+        Backoff backoff = new Backoff(9, Long.MAX_VALUE, new FixedRandom(HIGHEST));
+        long previous = 0;
+        for (int attempt = 0; attempt < 200; attempt++) {
+            long delay = backoff.nextDelayMs();
+            assertTrue("attempt " + attempt + ": " + delay + " after " + previous, delay >= previous);
+            previous = delay;
+        }
+        // At the maximum, as far as a double tells
+        assertTrue(previous > Long.MAX_VALUE / 4 * 3);
+        assertTrue(new Backoff(1, Long.MAX_VALUE, new Random(1)).nextDelayMs() >= 0);
+    }
+
+    @Test
+    public void resetStartsFromTheBase() {
+        Backoff backoff = new Backoff(500, 30_000, new FixedRandom(HIGHEST));
+        for (int i = 0; i < 10; i++) {
+            backoff.nextDelayMs();
+        }
+        backoff.reset();
+        assertEquals(0, backoff.getAttempt());
+        assertEquals(500, backoff.nextDelayMs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAMaximumBelowTheBase() {
+        new Backoff(1000, 500);
+    }
+}
@@ -0,0 +1,93 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Assume;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What the *BenchmarkTest classes share. Timings only run when asked for, with
+ * -Dbenchmark=true, since a wall clock budget on a loaded build machine fails for reasons that
+ * have nothing to do with the code. They are then reported on standard output and held to their
+ * budgets. The allocation checks run every time, wherever the JVM can count allocations.
+ */
+final class Benchmarks {
+
+    static final String PROPERTY = "benchmark";
+    // Timed runs, the best one counts
+    private static final int RUNS = 5;
+    // Allocation checks, each a begin/end pair around the workload
+    private static final int CHECKS = 100;
+
+    /** Runs count operations. */
+    interface Workload {
+        void run(int count) throws Exception;
+    }
+
+    private Benchmarks() {
+    }
+
+    /** Skips the calling test unless timings were asked for. */
+    static void assumeRequested() {
+        Assume.assumeTrue("Timings run with -D" + PROPERTY + "=true", Boolean.getBoolean(PROPERTY));
+    }
+
+    /** One line of results, only while timings were asked for. */
+    static void report(String line) {
+        if (Boolean.getBoolean(PROPERTY)) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Times count operations of the workload after warmup, best of a few runs, reports it and
+     * fails when an operation took budgetNanos or more. Skips the calling test unless timings were
+     * asked for.
+     *
+     * @return nanoseconds per operation
+     */
+    static double time(String operation, int warmup, int count, double budgetNanos, Workload workload)
+            throws Exception {
+        assumeRequested();
+        workload.run(warmup);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            workload.run(count);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double nanos = (double) best / count;
+        report(String.format(Locale.US, "%s: %s, budget %s", operation, format(nanos), format(budgetNanos)));
+        assertTrue(operation + " took " + format(nanos), nanos < budgetNanos);
+        return nanos;
+    }
+
+    /**
+     * Fails when count operations of the workload allocate anything once warmed up. Skips the
+     * calling test on a JVM that can't count allocations.
+     */
+    static void assertDoesNotAllocate(String operation, int warmup, int count, Workload workload)
+            throws Exception {
+        JvmAllocationCounter counter = JvmAllocationCounter.create();
+        Assume.assumeNotNull(counter);
+        workload.run(warmup);
+        AllocationBudget budget = new AllocationBudget(new String[] {operation}, new long[] {0}, counter);
+        for (int check = 0; check < CHECKS; check++) {
+            budget.begin(0);
+            workload.run(count);
+            budget.end(0);
+        }
+        budget.checkBudgets();
+    }
+
+    private static String format(double nanos) {
+        if (nanos >= 1e6) {
+            return String.format(Locale.US, "%.2f ms", nanos / 1e6);
+        }
+        if (nanos >= 1e3) {
+            return String.format(Locale.US, "%.1f us", nanos / 1e3);
+        }
+        return String.format(Locale.US, "%.1f ns", nanos);
+    }
+}
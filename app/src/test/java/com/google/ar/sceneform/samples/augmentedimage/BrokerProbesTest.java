@@ -0,0 +1,101 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BrokerProbesTest {
+
+    private static final String GATEWAY = "tcp://gateway:1883";
+    private static final String FALLBACK = "tcp://fallback:1883";
+    private static final String CLOUD = "ssl://cloud:8883";
+    private static final String[] BROKERS = {GATEWAY, FALLBACK, CLOUD};
+    private static final int TIMEOUT_MS = 500;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // How long each broker takes to answer, -1 for refusing
+    private final Map<String, Long> answerMs = new HashMap<>();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private String probe() {
+        return new BrokerProbes(BROKERS, TIMEOUT_MS, executor, (serverUri, timeoutMs) -> {
+            long ms = answerMs.getOrDefault(serverUri, -1L);
+            if (ms < 0) {
+                throw new IOException("Connection refused");
+            }
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                throw new IOException("Cancelled");
+            }
+        }).firstReachable();
+    }
+
+    @Test
+    public void prefersTheFirstBrokerOfTheList() {
+        answerMs.put(GATEWAY, 0L);
+        answerMs.put(FALLBACK, 0L);
+        answerMs.put(CLOUD, 0L);
+        assertEquals(GATEWAY, probe());
+    }
+
+    @Test
+    public void waitsForTheGatewayEvenWhenAFallbackAnswersFirst() {
+        answerMs.put(GATEWAY, 200L);
+        answerMs.put(FALLBACK, 0L);
+        assertEquals(GATEWAY, probe());
+    }
+
+    @Test
+    public void fallsBackInListOrder() {
+        answerMs.put(FALLBACK, 100L);
+        answerMs.put(CLOUD, 0L);
+        assertEquals(FALLBACK, probe());
+        answerMs.remove(FALLBACK);
+        assertEquals(CLOUD, probe());
+    }
+
+    @Test
+    public void gatewayTooSlowCountsAsUnreachable() {
+        answerMs.put(GATEWAY, 5000L);
+        answerMs.put(CLOUD, 0L);
+        long start = System.nanoTime();
+        assertEquals(CLOUD, probe());
+        // One timeout for all the probes, not one per broker
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 2 * TIMEOUT_MS);
+    }
+
+    @Test
+    public void nullWhenNoBrokerAnswers() {
+        assertNull(probe());
+    }
+
+    @Test
+    public void tcpProbeConnects() throws IOException {
+        try (ServerSocket broker = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            String reachable = "tcp://127.0.0.1:" + broker.getLocalPort();
+            String refused;
+            try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                refused = "tcp://127.0.0.1:" + closed.getLocalPort();
+            }
+            BrokerProbes probes = new BrokerProbes(new String[] {refused, reachable}, TIMEOUT_MS, executor,
+                    BrokerProbes.TCP);
+            assertEquals(reachable, probes.firstReachable());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColumnarExporterTest {
+
+    private static final String[] CHANNELS = {"left", "mid", "right", "back", "foot"};
+    private static final int SAMPLES_PER_BLOCK = 64;
+    // 10 s at 100 Hz, the last block partly filled
+    private static final int SAMPLES = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+
+    // A sitting person: slow drift, a little noise, the odd late sample
+    private SessionStore record(File file) throws IOException {
+        SessionStore store = SessionStore.create(file, CHANNELS, SAMPLES_PER_BLOCK);
+        float[] values = new float[CHANNELS.length];
+        long time = 1_700_000_000_000L;
+        for (int s = 0; s < SAMPLES; s++) {
+            time += s % 97 == 0 ? 13 : 10;
+            for (int channel = 0; channel < values.length; channel++) {
+                values[channel] = (float) (200 + 50 * channel + 20 * Math.sin(s / 150.0 + channel)
+                        + random.nextGaussian() * 0.5);
+            }
+            store.append(time, values);
+        }
+        store.flush();
+        return store;
+    }
+
+    private static byte[] export(SessionStore store, float quantum) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(store.getSampleCount(), ColumnarExporter.export(store, out, quantum));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTripIsExactUpToTheQuantum() throws IOException {
+        try (SessionStore store = record(folder.newFile())) {
+            byte[] exported = export(store, ColumnarExporter.DEFAULT_QUANTUM);
+
+            ColumnarExporter.Decoder decoder = new ColumnarExporter.Decoder(new ByteArrayInputStream(exported));
+            assertArrayEquals(CHANNELS, decoder.getChannelNames());
+            assertEquals(SAMPLES_PER_BLOCK, decoder.getSamplesPerBlock());
+            assertEquals(ColumnarExporter.DEFAULT_QUANTUM, decoder.getQuantum(), 0f);
+
+            long[] expectedTimes = new long[SAMPLES_PER_BLOCK];
+            float[] expectedValues = new float[SAMPLES_PER_BLOCK * CHANNELS.length];
+            long[] times = new long[SAMPLES_PER_BLOCK];
+            float[] values = new float[SAMPLES_PER_BLOCK * CHANNELS.length];
+            int total = 0;
+            for (int block = 0; block < store.getBlockCount(); block++) {
+                int expected = store.readBlock(block, expectedTimes, expectedValues);
+                assertEquals(expected, decoder.nextBlock(times, values));
+                for (int s = 0; s < expected; s++) {
+                    assertEquals(expectedTimes[s], times[s]);
+                }
+                for (int i = 0; i < expected * CHANNELS.length; i++) {
+                    assertEquals(expectedValues[i], values[i], ColumnarExporter.DEFAULT_QUANTUM / 2 + 1e-4f);
+                }
+                total += expected;
+            }
+            assertEquals(-1, decoder.nextBlock(times, values));
+            assertEquals(-1, decoder.nextBlock(times, values));
+            assertEquals(SAMPLES, total);
+        }
+    }
+
+    @Test
+    public void nonFiniteValuesExportAsZero() throws IOException {
+        try (SessionStore store = SessionStore.create(folder.newFile(), new String[]{"a", "b", "c"}, 4)) {
+            store.append(0, new float[]{Float.NaN, Float.POSITIVE_INFINITY, -2.5f});
+            store.append(7, new float[]{1, Float.NEGATIVE_INFINITY, 3});
+            store.flush();
+            ColumnarExporter.Decoder decoder =
+                    new ColumnarExporter.Decoder(new ByteArrayInputStream(export(store, 0.5f)));
+            long[] times = new long[4];
+            float[] values = new float[12];
+            assertEquals(2, decoder.nextBlock(times, values));
+            assertEquals(0, times[0]);
+            assertEquals(7, times[1]);
+            assertArrayEquals(new float[]{0, 0, -2.5f, 1, 0, 3}, Arrays.copyOf(values, 6), 0f);
+        }
+    }
+
+    @Test
+    public void corruptedBlockFailsTheChecksum() throws IOException {
+        try (SessionStore store = record(folder.newFile())) {
+            byte[] exported = export(store, ColumnarExporter.DEFAULT_QUANTUM);
+            // Well inside the payload of the first block
+            exported[exported.length / 20] ^= 0x10;
+
+            ColumnarExporter.Decoder decoder = new ColumnarExporter.Decoder(new ByteArrayInputStream(exported));
+            long[] times = new long[SAMPLES_PER_BLOCK];
+            float[] values = new float[SAMPLES_PER_BLOCK * CHANNELS.length];
+            try {
+                decoder.nextBlock(times, values);
+                fail("Corrupted block decoded");
+            } catch (IOException expected) {
+                // Checksum mismatch, or a broken varint caught before it
+            }
+        }
+    }
+
+    @Test
+    public void truncatedExportFails() throws IOException {
+        try (SessionStore store = record(folder.newFile())) {
+            byte[] exported = export(store, ColumnarExporter.DEFAULT_QUANTUM);
+            byte[] truncated = Arrays.copyOf(exported, exported.length - 40);
+
+            ColumnarExporter.Decoder decoder = new ColumnarExporter.Decoder(new ByteArrayInputStream(truncated));
+            long[] times = new long[SAMPLES_PER_BLOCK];
+            float[] values = new float[SAMPLES_PER_BLOCK * CHANNELS.length];
+            try {
+                while (decoder.nextBlock(times, values) > 0) {
+                    // Every block but the last decodes
+                }
+                fail("Truncated export decoded to the end");
+            } catch (IOException expected) {
+                // EOF inside the last block
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        new ColumnarExporter.Decoder(new ByteArrayInputStream("{\"t\": 1}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void muchSmallerThanJson() throws IOException, JSONException {
+        try (SessionStore store = record(folder.newFile())) {
+            int exported = export(store, ColumnarExporter.DEFAULT_QUANTUM).length;
+
+            // The same samples as the sensors send them, one JSON object per sample at 0.01
+            long[] times = new long[SAMPLES_PER_BLOCK];
+            float[] values = new float[SAMPLES_PER_BLOCK * CHANNELS.length];
+            long json = 0;
+            for (int block = 0; block < store.getBlockCount(); block++) {
+                int count = store.readBlock(block, times, values);
+                for (int s = 0; s < count; s++) {
+                    JSONObject value = new JSONObject();
+                    for (int channel = 0; channel < CHANNELS.length; channel++) {
+                        value.put(CHANNELS[channel], Double.valueOf(
+                                String.format(Locale.US, "%.2f", values[s * CHANNELS.length + channel])));
+                    }
+                    JSONObject sample = new JSONObject().put("t", times[s]).put("value", value);
+                    json += sample.toString().getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+            }
+
+            double ratio = (double) json / exported;
+            Benchmarks.report(String.format(Locale.US,
+                    "Columnar export: %d bytes, JSON: %d bytes, %.1fx smaller, %.2f bytes per value",
+                    exported, json, ratio, (double) exported / (SAMPLES * CHANNELS.length)));
+            assertTrue("only " + ratio + "x smaller than JSON", ratio > 8);
+        }
+    }
+}
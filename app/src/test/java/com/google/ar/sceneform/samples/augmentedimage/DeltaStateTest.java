@@ -0,0 +1,86 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaStateTest {
+
+    private static final int[] CHANNEL_0 = {0};
+
+    @Test
+    public void deltasUpdateOnlyTheirChannels() {
+        DeltaState state = new DeltaState(3);
+        assertTrue(state.needsKeyframe());
+        assertEquals(DeltaState.APPLIED, state.applyKeyframe(1, new float[]{1f, 2f, 3f}));
+        assertFalse(state.needsKeyframe());
+        assertEquals(3, state.getChangedCount());
+
+        assertEquals(DeltaState.APPLIED, state.applyDelta(2, new int[]{1}, new float[]{20f}, 1));
+        assertEquals(1, state.getChangedCount());
+        assertEquals(1, state.getChangedChannel(0));
+        assertEquals(1f, state.getValues()[0], 0f);
+        assertEquals(20f, state.getValues()[1], 0f);
+    }
+
+    @Test
+    public void lateDeltaDoesNotOverwriteNewerValue() {
+        DeltaState state = new DeltaState(1);
+        state.applyKeyframe(1, new float[]{1f});
+        state.applyDelta(3, CHANNEL_0, new float[]{3f}, 1);
+        assertEquals(DeltaState.GAP, state.applyDelta(2, CHANNEL_0, new float[]{2f}, 1));
+        assertEquals(3f, state.getValues()[0], 0f);
+        assertEquals(DeltaState.IGNORED, state.applyDelta(3, CHANNEL_0, new float[]{3f}, 1));
+    }
+
+    @Test
+    public void gapAsksForKeyframe() {
+        DeltaState state = new DeltaState(1);
+        state.applyKeyframe(1, new float[]{1f});
+        assertEquals(DeltaState.GAP, state.applyDelta(5, CHANNEL_0, new float[]{5f}, 1));
+        assertTrue(state.needsKeyframe());
+        assertEquals(DeltaState.APPLIED, state.applyKeyframe(6, new float[]{6f}));
+        assertFalse(state.needsKeyframe());
+    }
+
+    @Test
+    public void keyframeAfterSenderRestartIsApplied() {
+        DeltaState state = new DeltaState(1);
+        state.applyKeyframe(5000, new float[]{5000f});
+        for (int sequence = 5001; sequence <= 5009; sequence++) {
+            state.applyDelta(sequence, CHANNEL_0, new float[]{sequence}, 1);
+        }
+        assertEquals(5009f, state.getValues()[0], 0f);
+
+        assertEquals(DeltaState.APPLIED, state.applyKeyframe(0, new float[]{0f}));
+        assertEquals(0f, state.getValues()[0], 0f);
+        assertFalse(state.needsKeyframe());
+        assertEquals(DeltaState.APPLIED, state.applyDelta(1, CHANNEL_0, new float[]{1f}, 1));
+        assertEquals(1f, state.getValues()[0], 0f);
+    }
+
+    @Test
+    public void keyframeTooOldToPlaceRestartsTracking() {
+        // Within the restart distance, a delta this far back would be dropped
+        DeltaState state = new DeltaState(1);
+        state.applyKeyframe(500, new float[]{500f});
+        assertEquals(DeltaState.IGNORED, state.applyDelta(100, CHANNEL_0, new float[]{100f}, 1));
+
+        assertEquals(DeltaState.APPLIED, state.applyKeyframe(100, new float[]{100f}));
+        assertEquals(100f, state.getValues()[0], 0f);
+        assertEquals(1, state.getSequences().getRestarts());
+        assertEquals(DeltaState.APPLIED, state.applyDelta(101, CHANNEL_0, new float[]{101f}, 1));
+        assertEquals(101f, state.getValues()[0], 0f);
+    }
+
+    @Test
+    public void deltaAfterSenderRestartWaitsForKeyframe() {
+        DeltaState state = new DeltaState(2);
+        state.applyKeyframe(5000, new float[]{1f, 2f});
+        assertEquals(DeltaState.GAP, state.applyDelta(3, CHANNEL_0, new float[]{3f}, 1));
+        assertEquals(3f, state.getValues()[0], 0f);
+        assertTrue(state.needsKeyframe());
+    }
+}
@@ -0,0 +1,161 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DerivedChannelsTest {
+
+    private static final String[] INPUTS = {"left", "right", "back"};
+
+    // The value of one expression with left = 2, right = 8, back = -3
+    private static float eval(String expression) {
+        DerivedChannels derived = DerivedChannels.compile(INPUTS, new String[] {"x"}, new String[] {expression});
+        float[] values = {2, 8, -3, Float.NaN};
+        derived.evaluate(values);
+        return values[3];
+    }
+
+    private static void assertRejected(String expression, String message) {
+        try {
+            eval(expression);
+            fail("Compiled " + expression);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    @Test
+    public void multiplicationBindsTighterThanAddition() {
+        assertEquals(7, eval("1 + 2 * 3"), 0);
+        assertEquals(9, eval("(1 + 2) * 3"), 0);
+        assertEquals(18, eval("left + right * 2"), 0);
+        assertEquals(5, eval("right / left + 1"), 0);
+        assertEquals(0.2f, eval("left / (right + 2)"), 1e-6f);
+    }
+
+    @Test
+    public void operatorsOfTheSameLevelGroupLeftToRight() {
+        assertEquals(3, eval("10 - 4 - 3"), 0);
+        assertEquals(1, eval("8 / 4 / 2"), 0);
+        assertEquals(-4, eval("left - right + left"), 0);
+    }
+
+    @Test
+    public void unaryMinus() {
+        assertEquals(-2, eval("-left"), 0);
+        assertEquals(2, eval("--left"), 0);
+        assertEquals(5, eval("2 - -3"), 0);
+        assertEquals(-16, eval("-left * right"), 0);
+        assertEquals(-3, eval("-(1 + 2)"), 0);
+        assertEquals(3, eval("abs(back)"), 0);
+        assertEquals(6, eval("left * -back"), 0);
+    }
+
+    @Test
+    public void functions() {
+        assertEquals(2, eval("min(left, right)"), 0);
+        assertEquals(8, eval("max(left, right)"), 0);
+        assertEquals(4, eval("sqrt(left * right)"), 0);
+        assertEquals(7, eval("max(min(left, back) * -1, right - 1)"), 0);
+        assertTrue(Float.isNaN(eval("sqrt(back)")));
+        assertEquals(Float.POSITIVE_INFINITY, eval("right / 0"), 0);
+    }
+
+    @Test
+    public void laterChannelsUseEarlierOnes() {
+        DerivedChannels derived = DerivedChannels.compile(INPUTS,
+                new String[] {"total", "share"},
+                new String[] {"left + right + back", "left / max(total, 0.001)"});
+        assertEquals(2, derived.getCount());
+        assertEquals(3, derived.indexOf("total"));
+        assertEquals(4, derived.indexOf("share"));
+        assertEquals(-1, derived.indexOf("left"));
+        assertArrayEquals(new String[] {"left", "right", "back", "total", "share"}, derived.allChannelNames(INPUTS));
+
+        float[] values = {2, 8, 0, 0, 0};
+        derived.evaluate(values);
+        assertArrayEquals(new float[] {2, 8, 0, 10, 0.2f}, values, 1e-6f);
+        // Again with new inputs, nothing left over from the last evaluation
+        values[0] = 0;
+        values[1] = 0;
+        derived.evaluate(values);
+        assertArrayEquals(new float[] {0, 0, 0, 0, 0}, values, 0);
+    }
+
+    @Test
+    public void rejectsBadExpressions() {
+        assertRejected("left +", "Unexpected end of expression");
+        assertRejected("left right", "Unexpected 'r'");
+        assertRejected("(left + right", "Expected ')'");
+        assertRejected("max(left)", "Expected ','");
+        assertRejected("pow(left, 2)", "Unknown function pow");
+        assertRejected("front * 2", "Unknown channel front");
+        assertRejected("1..2", "Bad number");
+        assertRejected("left # 2", "Unexpected '#'");
+        assertRejected("", "Unexpected end of expression");
+        // A channel can't use itself or a channel declared after it
+        assertRejected("x + 1", "Unknown channel x");
+        try {
+            DerivedChannels.compile(INPUTS, new String[] {"a", "b"}, new String[] {"b", "left"});
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown channel b"));
+        }
+    }
+
+    @Test
+    public void configErrorsAreJsonErrors() throws JSONException {
+        JSONObject config = new JSONObject("{\"channels\": [{\"name\": \"total\", \"expr\": \"left + right\"}]}");
+        assertEquals(1, DerivedChannels.fromJson(config, INPUTS).getCount());
+        try {
+            DerivedChannels.fromJson(new JSONObject("{\"channels\": [{\"name\": \"x\", \"expr\": \"left +\"}]}"), INPUTS);
+            fail();
+        } catch (JSONException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected end of expression"));
+        }
+    }
+
+    @Test
+    public void emptyLeavesTheValuesAlone() {
+        DerivedChannels derived = DerivedChannels.empty(INPUTS.length);
+        float[] values = {1, 2, 3};
+        derived.evaluate(values);
+        assertArrayEquals(new float[] {1, 2, 3}, values, 0);
+        assertEquals(0, derived.getCount());
+    }
+
+    @Test
+    public void evaluationDoesNotAllocate() {
+        JvmAllocationCounter counter = JvmAllocationCounter.create();
+        Assume.assumeNotNull(counter);
+        DerivedChannels derived = DerivedChannels.compile(INPUTS,
+                new String[] {"total", "ratio", "spread"},
+                new String[] {"left + right + back", "left / max(right, 0.001)", "sqrt(abs(-left * right)) - min(back, 0)"});
+        float[] values = new float[INPUTS.length + derived.getCount()];
+        // Compiled before measuring, switching to compiled code allocates once
+        evaluate(derived, values, 1_000_000);
+        AllocationBudget budget = new AllocationBudget(new String[] {"evaluate"}, new long[] {0}, counter);
+        for (int run = 0; run < 200; run++) {
+            budget.begin(0);
+            evaluate(derived, values, 1000);
+            budget.end(0);
+        }
+        budget.checkBudgets();
+    }
+
+    private static void evaluate(DerivedChannels derived, float[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            values[0] = i;
+            values[1] = i * 0.5f;
+            values[2] = -i;
+            derived.evaluate(values);
+        }
+    }
+}
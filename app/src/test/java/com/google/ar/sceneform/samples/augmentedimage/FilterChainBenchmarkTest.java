@@ -0,0 +1,65 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * The full chain of filters.json at 64 channels has to keep up with 1 kHz on one core: 1,000
+ * samples must take well under a second, here they must fit in a quarter of it. Timed with
+ * -Dbenchmark=true, see {@link Benchmarks}.
+ */
+public class FilterChainBenchmarkTest {
+
+    private static final int CHANNELS = 64;
+    private static final int RATE_HZ = 1000;
+    private static final int WARMUP_SAMPLES = 20_000;
+    // A quarter of the core, loose for loaded CI machines
+    private static final double SAMPLE_BUDGET_NANOS = 0.25e9 / RATE_HZ;
+    private static final String FULL_CHAIN =
+            "{'filters': [{'type': 'median', 'window': 5}, {'type': 'ewma', 'alpha': 0.3},"
+                    + " {'type': 'kalman', 'process_noise': 0.05, 'measurement_noise': 2.0},"
+                    + " {'type': 'deadband', 'band': 0.5}]}";
+
+    private final float[][] samples = noisySamples(RATE_HZ);
+    private final float[] out = new float[CHANNELS];
+
+    private static FilterChain fullChain() throws JSONException {
+        return FilterChain.fromJson(new JSONObject(FULL_CHAIN), CHANNELS);
+    }
+
+    @Test
+    public void fullChainKeepsUpWithOneKilohertzOf64Channels() throws Exception {
+        FilterChain chain = fullChain();
+        Benchmarks.time("Filter chain, " + CHANNELS + " channels, per sample", WARMUP_SAMPLES, RATE_HZ,
+                SAMPLE_BUDGET_NANOS, count -> run(chain, count));
+    }
+
+    @Test
+    public void filteringDoesNotAllocate() throws Exception {
+        FilterChain chain = fullChain();
+        Benchmarks.assertDoesNotAllocate("filter", WARMUP_SAMPLES, 100, count -> run(chain, count));
+    }
+
+    private void run(FilterChain chain, int count) {
+        for (int i = 0; i < count; i++) {
+            chain.process(samples[i % samples.length], out, CHANNELS);
+        }
+    }
+
+    // Slow load changes with sensor noise and the odd spike
+    private static float[][] noisySamples(int count) {
+        Random random = new Random(29);
+        float[][] samples = new float[count][CHANNELS];
+        for (int i = 0; i < count; i++) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                float load = 400f + 300f * (float) Math.sin(i * 0.002 + channel);
+                float noise = (float) random.nextGaussian() * 2f;
+                samples[i][channel] = random.nextInt(500) == 0 ? load * 4f : load + noise;
+            }
+        }
+        return samples;
+    }
+}
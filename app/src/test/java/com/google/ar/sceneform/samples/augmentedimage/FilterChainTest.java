@@ -0,0 +1,103 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilterChainTest {
+
+    @Test
+    public void medianRejectsSingleSpikes() {
+        MedianFilter median = new MedianFilter(1, 3);
+        assertEquals(10f, median.filter(0, 10f), 0f);
+        assertEquals(10f, median.filter(0, 10f), 0f);
+        assertEquals(10f, median.filter(0, 500f), 0f);
+        assertEquals(10f, median.filter(0, 10f), 0f);
+        // A step gets through once it's the majority
+        median.filter(0, 20f);
+        assertEquals(20f, median.filter(0, 20f), 0f);
+    }
+
+    @Test
+    public void medianOfEvenFillIsTheMeanOfTheMiddleTwo() {
+        MedianFilter median = new MedianFilter(1, 5);
+        median.filter(0, 1f);
+        assertEquals(2f, median.filter(0, 3f), 0f);
+    }
+
+    @Test
+    public void ewmaStartsAtTheFirstReading() {
+        EwmaFilter ewma = new EwmaFilter(1, 0.5f);
+        assertEquals(8f, ewma.filter(0, 8f), 0f);
+        assertEquals(6f, ewma.filter(0, 4f), 0f);
+        assertEquals(5f, ewma.filter(0, 4f), 0f);
+        ewma.reset();
+        assertEquals(100f, ewma.filter(0, 100f), 0f);
+    }
+
+    @Test
+    public void kalmanSmoothsNoiseAroundAConstant() {
+        KalmanFilter kalman = new KalmanFilter(1, 0.01f, 4f);
+        float estimate = 0f;
+        for (int i = 0; i < 500; i++) {
+            // +-2 around 50
+            estimate = kalman.filter(0, i % 2 == 0 ? 52f : 48f);
+        }
+        assertEquals(50f, estimate, 0.5f);
+    }
+
+    @Test
+    public void deadBandHoldsUntilTheInputMovesFarEnough() {
+        DeadBandFilter deadBand = new DeadBandFilter(1, 0.5f);
+        assertEquals(10f, deadBand.filter(0, 10f), 0f);
+        assertEquals(10f, deadBand.filter(0, 10.4f), 0f);
+        assertEquals(10f, deadBand.filter(0, 9.6f), 0f);
+        assertEquals(10.6f, deadBand.filter(0, 10.6f), 0f);
+    }
+
+    @Test
+    public void channelsAreFilteredIndependently() {
+        FilterChain chain = new FilterChain(2, new EwmaFilter(2, 0.5f));
+        float[] values = {0f, 100f};
+        chain.process(values, values, 2);
+        values[0] = 10f;
+        values[1] = 100f;
+        chain.process(values, values, 2);
+        assertEquals(5f, values[0], 0f);
+        assertEquals(100f, values[1], 0f);
+    }
+
+    @Test
+    public void chainAppliesFiltersInOrder() throws JSONException {
+        FilterChain chain = FilterChain.fromJson(new JSONObject(
+                "{'filters': [{'type': 'median', 'window': 3}, {'type': 'deadband', 'band': 5}]}"), 1);
+        assertEquals(2, chain.getFilterCount());
+        chain.filter(0, 10f);
+        assertEquals(10f, chain.filter(0, 10f), 0f);
+        // The spike never reaches the dead band
+        assertEquals(10f, chain.filter(0, 1000f), 0f);
+        assertEquals(10f, chain.filter(0, 12f), 0f);
+    }
+
+    @Test(expected = JSONException.class)
+    public void unknownFilterTypeIsRejected() throws JSONException {
+        FilterChain.fromJson(new JSONObject("{'filters': [{'type': 'lowpass'}]}"), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badParametersAreRejected() {
+        new EwmaFilter(1, 0f);
+    }
+
+    @Test
+    public void passThroughChangesNothing() {
+        FilterChain chain = FilterChain.passThrough(3);
+        float[] out = new float[3];
+        chain.process(new float[]{1f, -2f, 3.5f}, out, 3);
+        assertEquals(-2f, out[1], 0f);
+        assertTrue(chain.getFilterCount() == 0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A facility of a thousand chairs publishing at 20 Hz, fed to the aggregator the way the pipeline
+ * does on the main thread: the paho message's payload bytes, the topic as paho hands it over.
+ * Timed with -Dbenchmark=true, see {@link Benchmarks}.
+ */
+public class FleetAggregatorBenchmarkTest {
+
+    private static final String PREFIX = "test/fleet/";
+    private static final int CHAIRS = 1000;
+    private static final int RATE_HZ = 20;
+    private static final int VARIANTS = 8;
+    private static final int WARMUP_SECONDS = 20;
+    private static final int MEASURED_SECONDS = 10;
+    // Share of every second of the main thread the fleet may take, loose for a loaded CI machine
+    private static final double MAIN_THREAD_BUDGET = 0.2;
+
+    private final String[] topics = new String[CHAIRS];
+    // Messages each chair cycles through
+    private final MqttMessage[][] messages = new MqttMessage[CHAIRS][VARIANTS];
+    private int second;
+
+    public FleetAggregatorBenchmarkTest() {
+        Random random = new Random(40);
+        for (int chair = 0; chair < CHAIRS; chair++) {
+            topics[chair] = PREFIX + "chair-" + chair;
+            for (int variant = 0; variant < VARIANTS; variant++) {
+                StringBuilder payload = new StringBuilder("{\"seq\": ").append(variant).append(", \"value\": {");
+                String[] names = ChairSensors.SENSOR_NAMES;
+                for (int sensor = 0; sensor < names.length; sensor++) {
+                    if (sensor > 0) {
+                        payload.append(", ");
+                    }
+                    payload.append('"').append(names[sensor]).append("\": ")
+                            .append(String.format(Locale.US, "%.2f", random.nextFloat() * 130));
+                }
+                payload.append("}}");
+                messages[chair][variant] = new MqttMessage(payload.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private FleetAggregator fleet() {
+        return new FleetAggregator(PREFIX, CHAIRS, FleetAggregator.DEFAULT_SHOWN, FleetAggregator.DEFAULT_ALERT_LOAD);
+    }
+
+    // The next seconds of the facility, the chairs interleaved as a broker would deliver them
+    private void run(FleetAggregator fleet, int seconds) {
+        for (int end = second + seconds; second < end; second++) {
+            long startMs = second * 1000L;
+            for (int tick = 0; tick < RATE_HZ; tick++) {
+                long nowMs = startMs + tick * (1000L / RATE_HZ);
+                for (int chair = 0; chair < CHAIRS; chair++) {
+                    MqttMessage message = messages[chair][(second * RATE_HZ + tick + chair) % VARIANTS];
+                    fleet.onSample(topics[chair], message.getPayload(), nowMs);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void thousandChairsAtTwentyHertz() throws Exception {
+        FleetAggregator fleet = fleet();
+        fleet.setListener(f -> { });
+        Benchmarks.time("Fleet of " + CHAIRS + " chairs at " + RATE_HZ + " Hz, per second", WARMUP_SECONDS,
+                MEASURED_SECONDS, MAIN_THREAD_BUDGET * 1e9, seconds -> run(fleet, seconds));
+    }
+
+    @Test
+    public void samplesDoNotAllocate() throws Exception {
+        FleetAggregator fleet = fleet();
+        fleet.setListener(f -> { });
+        Benchmarks.assertDoesNotAllocate("fleet second", WARMUP_SECONDS, 1, seconds -> run(fleet, seconds));
+        assertEquals(CHAIRS, fleet.getChairCount());
+    }
+}
@@ -0,0 +1,85 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FleetAggregatorTest {
+
+    private static final String PREFIX = "test/fleet/";
+
+    private static byte[] utf8(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sumsTheValuesOfTheSample() {
+        assertEquals(60f, FleetAggregator.sumValues("{\"value\": {\"left\": 10, \"right\": 20.5, \"back\": 29.5}}"), 0);
+        assertEquals(-1.5f, FleetAggregator.sumValues("{\"seq\": 4, \"value\":{\"a\":-3e0,\"b\":1.5}}"), 0);
+        assertTrue(Float.isNaN(FleetAggregator.sumValues("{\"values\": [1, 2]}")));
+    }
+
+    @Test
+    public void bytesAndStringsGiveTheSameRanking() {
+        FleetAggregator fromBytes = new FleetAggregator(PREFIX, 8, 3, 100);
+        FleetAggregator fromStrings = new FleetAggregator(PREFIX, 8, 3, 100);
+        String[] payloads = {
+                "{\"value\": {\"left\": 10, \"right\": 20}}",
+                // Multi-byte names pass through the byte scan
+                "{\"value\": {\"gauche\": 50, \"d\u00e9j\u00e0\": 70.25}}",
+                "{\"value\": {\"\u6905\u5b50\": 5}}",
+                "{\"value\": {\"left\": 1e2, \"right\": -20}}",
+        };
+        long now = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int chair = 0; chair < 6; chair++) {
+                String topic = PREFIX + "chair-" + chair;
+                String payload = payloads[(chair + round) % payloads.length];
+                assertTrue(fromBytes.onSample(topic, utf8(payload), now));
+                assertTrue(fromStrings.onSample(topic, payload, now));
+                now += 50;
+            }
+        }
+        assertEquals(fromStrings.getRankedCount(), fromBytes.getRankedCount());
+        for (int rank = 0; rank < fromBytes.getRankedCount(); rank++) {
+            int chair = fromBytes.getRankedChair(rank);
+            assertEquals(fromStrings.getRankedChair(rank), chair);
+            assertEquals(fromStrings.getLoad(chair), fromBytes.getLoad(chair), 0);
+        }
+        assertEquals(120.25f, fromBytes.getLoad(fromBytes.getRankedChair(0)), 0);
+    }
+
+    @Test
+    public void ignoresOtherTopicsAndChairsBeyondCapacity() {
+        FleetAggregator fleet = new FleetAggregator(PREFIX, 2, 2, 100);
+        byte[] payload = utf8("{\"value\": {\"left\": 1}}");
+        assertFalse(fleet.onSample("test/other/chair-0", payload, 0));
+        assertFalse(fleet.onSample(PREFIX + "chair-0", utf8("{\"seq\": 1}"), 0));
+        assertTrue(fleet.onSample(PREFIX + "chair-0", payload, 0));
+        assertTrue(fleet.onSample(PREFIX + "chair-1", payload, 0));
+        assertFalse(fleet.onSample(PREFIX + "chair-2", payload, 0));
+        assertEquals(2, fleet.getChairCount());
+        assertEquals(1, fleet.getRejectedCount());
+        assertEquals("chair-1", fleet.getName(1));
+    }
+
+    @Test
+    public void ranksByTimeInAlert() {
+        FleetAggregator fleet = new FleetAggregator(PREFIX, 4, 2, 100);
+        fleet.setRanking(FleetAggregator.BY_ALERT_DURATION);
+        fleet.onSample(PREFIX + "a", "{\"value\": {\"x\": 150}}", 0);
+        fleet.onSample(PREFIX + "b", "{\"value\": {\"x\": 500}}", 1000);
+        fleet.onSample(PREFIX + "a", "{\"value\": {\"x\": 120}}", 2000);
+        fleet.onSample(PREFIX + "b", "{\"value\": {\"x\": 400}}", 2000);
+        assertEquals("a", fleet.getName(fleet.getRankedChair(0)));
+        assertEquals(2000, fleet.getAlertDurationMs(fleet.getRankedChair(0), 2000));
+        // Out of alert goes to the back
+        fleet.onSample(PREFIX + "a", "{\"value\": {\"x\": 10}}", 3000);
+        assertEquals("b", fleet.getName(fleet.getRankedChair(0)));
+        assertEquals(0, fleet.getAlertDurationMs(fleet.getRankedChair(1), 3000));
+    }
+}
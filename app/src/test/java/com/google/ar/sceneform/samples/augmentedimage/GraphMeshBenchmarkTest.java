@@ -0,0 +1,52 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+/**
+ * Vertex work for a 256 channel chair, every bar changing every frame. Timed with
+ * -Dbenchmark=true and failing only when far off the frame budget, see {@link Benchmarks}. Fails
+ * in every run when updates allocate.
+ */
+public class GraphMeshBenchmarkTest {
+
+    private static final int CHANNELS = 256;
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int FRAMES = 1000;
+    // A quarter of a 60 Hz frame, generous for a busy build machine
+    private static final double FRAME_BUDGET_NANOS = 4_000_000;
+
+    private static GraphMesh newMesh(GraphMesh.Shape shape) {
+        float[] centers = new float[CHANNELS * 3];
+        for (int bar = 0; bar < CHANNELS; bar++) {
+            centers[bar * 3] = (bar % 16) * 0.05f;
+            centers[bar * 3 + 1] = (bar / 16) * 0.05f;
+        }
+        return new GraphMesh(shape, centers, 0.03f, 0.1f);
+    }
+
+    @Test
+    public void everyBarEveryFrame() throws Exception {
+        Benchmarks.assumeRequested();
+        for (GraphMesh.Shape shape : GraphMesh.Shape.values()) {
+            GraphMesh mesh = newMesh(shape);
+            Benchmarks.time(shape + ", " + CHANNELS + " bars, " + mesh.getVertexCount() + " vertices, per frame",
+                    WARMUP_FRAMES, FRAMES, FRAME_BUDGET_NANOS, frames -> runFrames(mesh, frames));
+        }
+    }
+
+    @Test
+    public void updatesDoNotAllocate() throws Exception {
+        GraphMesh mesh = newMesh(GraphMesh.Shape.CYLINDER);
+        Benchmarks.assertDoesNotAllocate("frame", WARMUP_FRAMES, 10, frames -> runFrames(mesh, frames));
+    }
+
+    private static void runFrames(GraphMesh mesh, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            float phase = frame * 0.01f;
+            for (int bar = 0; bar < CHANNELS; bar++) {
+                mesh.setBarLength(bar, 0.1f + 0.05f * (float) Math.sin(phase + bar));
+            }
+            mesh.clearDirty();
+        }
+    }
+}
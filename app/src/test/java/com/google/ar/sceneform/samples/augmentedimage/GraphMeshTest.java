@@ -0,0 +1,144 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GraphMeshTest {
+
+    private static final float[] CENTERS = {
+            -0.3f, 0.2f, -0.18f,
+            0f, 0.2f, -0.15f,
+            0.3f, 0.2f, -0.18f,
+            0f, 0f, -0.3f,
+            0f, 0.35f, 0.3f
+    };
+    private static final float WIDTH = 0.03f;
+
+    @Test
+    public void vertexAndIndexCountsPerShape() {
+        // Cube: 6 faces of 4 vertices and 2 triangles
+        assertCounts(GraphMesh.Shape.CUBE, 24, 36);
+        // Cylinder: a 16 segment wall of 17 vertex pairs and two capped disks of 1 + 17 vertices
+        assertCounts(GraphMesh.Shape.CYLINDER, 34 + 2 * 18, 16 * 6 + 2 * 16 * 3);
+        // Arrow: shaft wall and cap, head cone and its base
+        assertCounts(GraphMesh.Shape.ARROW, 2 * 34 + 2 * 18, 2 * 16 * 6 + 2 * 16 * 3);
+    }
+
+    private static void assertCounts(GraphMesh.Shape shape, int verticesPerBar, int indicesPerBar) {
+        GraphMesh mesh = new GraphMesh(shape, CENTERS, WIDTH, 0.1f);
+        assertEquals(5, mesh.getBarCount());
+        assertEquals(verticesPerBar, mesh.getVerticesPerBar());
+        assertEquals(indicesPerBar, mesh.getIndicesPerBar());
+        assertEquals(5 * verticesPerBar, mesh.getVertexCount());
+        assertEquals(5 * verticesPerBar * 3, mesh.getPositions().length);
+        assertEquals(5 * verticesPerBar * 3, mesh.getNormals().length);
+        assertEquals(5 * verticesPerBar * 2, mesh.getUvs().length);
+        assertEquals(5 * indicesPerBar, mesh.getTriangleIndices().length);
+    }
+
+    @Test
+    public void indicesOfEveryBarStayInsideItsVertices() {
+        for (GraphMesh.Shape shape : GraphMesh.Shape.values()) {
+            GraphMesh mesh = new GraphMesh(shape, CENTERS, WIDTH, 0.1f);
+            int[] indices = mesh.getTriangleIndices();
+            int perBar = mesh.getIndicesPerBar();
+            int verticesPerBar = mesh.getVerticesPerBar();
+            for (int i = 0; i < indices.length; i++) {
+                int bar = i / perBar;
+                assertTrue(shape + " index " + i, indices[i] >= bar * verticesPerBar);
+                assertTrue(shape + " index " + i, indices[i] < (bar + 1) * verticesPerBar);
+            }
+        }
+    }
+
+    @Test
+    public void barsSpanTheirLengthAroundTheirCenter() {
+        GraphMesh mesh = new GraphMesh(GraphMesh.Shape.CUBE, CENTERS, WIDTH, 0.1f);
+        mesh.setBarLength(3, 0.4f);
+        float[] positions = mesh.getPositions();
+        int perBar = mesh.getVerticesPerBar();
+        float minZ = Float.MAX_VALUE;
+        float maxZ = -Float.MAX_VALUE;
+        float minX = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        for (int v = 3 * perBar; v < 4 * perBar; v++) {
+            minX = Math.min(minX, positions[v * 3]);
+            maxX = Math.max(maxX, positions[v * 3]);
+            minZ = Math.min(minZ, positions[v * 3 + 2]);
+            maxZ = Math.max(maxZ, positions[v * 3 + 2]);
+        }
+        assertEquals(-0.3f - 0.2f, minZ, 1e-6f);
+        assertEquals(-0.3f + 0.2f, maxZ, 1e-6f);
+        assertEquals(-WIDTH / 2, minX, 1e-6f);
+        assertEquals(WIDTH / 2, maxX, 1e-6f);
+    }
+
+    @Test
+    public void settingALengthMarksOnlyThatBarDirty() {
+        GraphMesh mesh = new GraphMesh(GraphMesh.Shape.CYLINDER, CENTERS, WIDTH, 0.1f);
+        assertFalse(mesh.isDirty());
+
+        float[] before = mesh.getPositions().clone();
+        assertTrue(mesh.setBarLength(2, 0.25f));
+        assertTrue(mesh.isDirty());
+        assertEquals(2, mesh.getDirtyFrom());
+        assertEquals(2, mesh.getDirtyTo());
+
+        // Vertices of the other bars are untouched
+        float[] after = mesh.getPositions();
+        int perBar = mesh.getVerticesPerBar();
+        for (int i = 0; i < after.length; i++) {
+            int bar = i / 3 / perBar;
+            if (bar != 2) {
+                assertEquals("position " + i, before[i], after[i], 0f);
+            }
+        }
+        assertEquals(0.25f, mesh.getBarLength(2), 0f);
+    }
+
+    @Test
+    public void dirtyRangeCoversEveryChangedBar() {
+        GraphMesh mesh = new GraphMesh(GraphMesh.Shape.ARROW, CENTERS, WIDTH, 0.1f);
+        mesh.setBarLength(3, 0.2f);
+        mesh.setBarLength(1, 0.3f);
+        assertEquals(1, mesh.getDirtyFrom());
+        assertEquals(3, mesh.getDirtyTo());
+
+        mesh.clearDirty();
+        assertFalse(mesh.isDirty());
+    }
+
+    @Test
+    public void unchangedLengthIsNoWork() {
+        GraphMesh mesh = new GraphMesh(GraphMesh.Shape.CUBE, CENTERS, WIDTH, 0.1f);
+        assertFalse(mesh.setBarLength(0, 0.1f));
+        assertFalse(mesh.isDirty());
+    }
+
+    @Test
+    public void barColourMovesOnlyItsTextureCoordinates() {
+        GraphMesh mesh = new GraphMesh(GraphMesh.Shape.CUBE, CENTERS, WIDTH, 0.1f);
+        for (int bar = 0; bar < mesh.getBarCount(); bar++) {
+            mesh.setBarU(bar, 0.05f);
+        }
+        mesh.clearDirty();
+
+        assertTrue(mesh.setBarU(3, 0.75f));
+        assertEquals(3, mesh.getDirtyFrom());
+        assertEquals(3, mesh.getDirtyTo());
+        float[] uvs = mesh.getUvs();
+        int perBar = mesh.getVerticesPerBar();
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            float u = v / perBar == 3 ? 0.75f : 0.05f;
+            assertEquals("u of vertex " + v, u, uvs[v * 2], 0f);
+            assertEquals("v of vertex " + v, 0.5f, uvs[v * 2 + 1], 0f);
+        }
+
+        mesh.clearDirty();
+        assertFalse(mesh.setBarU(3, 0.75f));
+        assertFalse(mesh.isDirty());
+    }
+}
@@ -0,0 +1,62 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HealthTelemetryTest {
+
+    // Room for about two records
+    private static final int SMALL_PAYLOAD_BYTES = 600;
+
+    private static String interval(HealthTelemetry telemetry, long nowMs) throws JSONException {
+        telemetry.onMessage(120_000);
+        telemetry.onFrame(16.6f);
+        assertTrue(telemetry.swap(nowMs, 0, 0, 1 << 20, 1 << 24));
+        return telemetry.writeRecord();
+    }
+
+    @Test
+    public void recordsGoOutInBatches() throws JSONException {
+        HealthTelemetry telemetry = new HealthTelemetry("tablet-1", 1000, 2, 4096);
+        assertNull(interval(telemetry, 1000));
+        JSONObject payload = new JSONObject(interval(telemetry, 2000));
+        assertEquals("tablet-1", payload.getString("device"));
+        assertEquals(2, payload.getJSONArray("records").length());
+        assertFalse(payload.has("left_out"));
+        assertNull(telemetry.flush());
+    }
+
+    @Test
+    public void leftOutCountsOnlyItsOwnBatch() throws JSONException {
+        HealthTelemetry telemetry = new HealthTelemetry("tablet-1", 1000, 4, SMALL_PAYLOAD_BYTES);
+        String payload = null;
+        for (int i = 1; i <= 4; i++) {
+            payload = interval(telemetry, i * 1000);
+        }
+        JSONObject first = new JSONObject(payload);
+        int kept = first.getJSONArray("records").length();
+        assertTrue(kept < 4);
+        assertEquals(4 - kept, first.getLong("left_out"));
+
+        // A batch that fits says nothing was left out, even after an earlier one did
+        interval(telemetry, 5000);
+        JSONObject second = new JSONObject(telemetry.flush());
+        assertEquals(1, second.getJSONArray("records").length());
+        assertFalse(second.has("left_out"));
+        assertEquals(4 - kept, telemetry.getRecordsLeftOutTotal());
+    }
+
+    @Test
+    public void swapIsSkippedWhileTheWriterIsBusy() {
+        HealthTelemetry telemetry = new HealthTelemetry("tablet-1", 1000, 4, 4096);
+        assertTrue(telemetry.swap(1000, 0, 0, 0, 0));
+        assertFalse(telemetry.swap(2000, 0, 0, 0, 0));
+        assertEquals(1, telemetry.getSkippedSwaps());
+    }
+}
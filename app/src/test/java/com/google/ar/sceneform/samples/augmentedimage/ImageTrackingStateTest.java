@@ -0,0 +1,101 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import static com.google.ar.sceneform.samples.augmentedimage.ImageTrackingState.State.DETECTED;
+import static com.google.ar.sceneform.samples.augmentedimage.ImageTrackingState.State.LAST_KNOWN_POSE;
+import static com.google.ar.sceneform.samples.augmentedimage.ImageTrackingState.State.NONE;
+import static com.google.ar.sceneform.samples.augmentedimage.ImageTrackingState.State.STOPPED;
+import static com.google.ar.sceneform.samples.augmentedimage.ImageTrackingState.State.TRACKING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageTrackingStateTest {
+
+    private static final long SETTLE_MS = ImageTrackingState.DEFAULT_SETTLE_MS;
+
+    // Tracked since 1000
+    private static ImageTrackingState tracked() {
+        ImageTrackingState tracking = new ImageTrackingState(SETTLE_MS);
+        assertEquals(NONE, tracking.getState());
+        assertTrue(tracking.report(TRACKING, 1000));
+        return tracking;
+    }
+
+    @Test
+    public void firstReportCountsAtOnce() {
+        ImageTrackingState tracking = new ImageTrackingState(SETTLE_MS);
+        assertTrue(tracking.report(DETECTED, 0));
+        assertEquals(DETECTED, tracking.getState());
+        assertFalse(tracking.report(DETECTED, 10));
+    }
+
+    @Test
+    public void backToTrackingCountsAtOnce() {
+        ImageTrackingState tracking = tracked();
+        tracking.report(LAST_KNOWN_POSE, 2000);
+        assertTrue(tracking.tick(2000 + SETTLE_MS));
+        assertEquals(LAST_KNOWN_POSE, tracking.getState());
+        assertTrue(tracking.report(TRACKING, 2400));
+        assertEquals(TRACKING, tracking.getState());
+    }
+
+    @Test
+    public void otherChangesSettleFirst() {
+        ImageTrackingState tracking = tracked();
+        assertFalse(tracking.report(LAST_KNOWN_POSE, 2000));
+        assertFalse(tracking.report(LAST_KNOWN_POSE, 2100));
+        assertFalse(tracking.report(LAST_KNOWN_POSE, 2000 + SETTLE_MS - 1));
+        assertEquals(TRACKING, tracking.getState());
+        assertTrue(tracking.report(LAST_KNOWN_POSE, 2000 + SETTLE_MS));
+        assertEquals(LAST_KNOWN_POSE, tracking.getState());
+        assertFalse(tracking.report(LAST_KNOWN_POSE, 3000));
+    }
+
+    @Test
+    public void singleBadFrameChangesNothing() {
+        ImageTrackingState tracking = tracked();
+        for (long t = 2000; t < 5000; t += 33) {
+            // One frame out of view now and then
+            ImageTrackingState.State reported = (t / 33) % 5 == 0 ? LAST_KNOWN_POSE : TRACKING;
+            assertFalse(tracking.report(reported, t));
+            assertFalse(tracking.tick(t));
+            assertEquals(TRACKING, tracking.getState());
+        }
+    }
+
+    @Test
+    public void interruptionRestartsTheSettleTime() {
+        ImageTrackingState tracking = tracked();
+        tracking.report(LAST_KNOWN_POSE, 2000);
+        tracking.report(TRACKING, 2200);
+        tracking.report(LAST_KNOWN_POSE, 2250);
+        assertFalse(tracking.tick(2000 + SETTLE_MS));
+        // Another state in between restarts it as well
+        tracking.report(STOPPED, 2400);
+        assertFalse(tracking.tick(2250 + SETTLE_MS));
+        assertEquals(TRACKING, tracking.getState());
+        assertTrue(tracking.tick(2400 + SETTLE_MS));
+        assertEquals(STOPPED, tracking.getState());
+    }
+
+    @Test
+    public void tickCommitsWithoutFurtherReports() {
+        ImageTrackingState tracking = tracked();
+        // ARCore reports the change once and then nothing while the image stays out of view
+        assertFalse(tracking.report(STOPPED, 2000));
+        assertFalse(tracking.tick(2100));
+        assertFalse(tracking.tick(2000 + SETTLE_MS - 1));
+        assertTrue(tracking.tick(2000 + SETTLE_MS));
+        assertEquals(STOPPED, tracking.getState());
+        assertFalse(tracking.tick(4000));
+    }
+
+    @Test
+    public void tickDoesNothingWithoutAPendingState() {
+        ImageTrackingState tracking = tracked();
+        assertFalse(tracking.tick(100_000));
+        assertEquals(TRACKING, tracking.getState());
+    }
+}
@@ -0,0 +1,61 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.lang.reflect.Method;
+
+/**
+ * Bytes allocated by the calling thread from the thread MX bean of a HotSpot JVM, for running
+ * the pipeline headless. Looked up by reflection since neither class exists on Android. The JVM
+ * doesn't count objects.
+ *
+ * While the JVM is still compiling the reflective call, reading the counter allocates a few
+ * hundred bytes now and then, which would land in whatever stage is being measured. create()
+ * reads it until that has settled.
+ */
+final class JvmAllocationCounter implements AllocationBudget.Counter {
+
+    private static final int WARMUP_READS = 20_000;
+
+    private final Object bean;
+    private final Method allocatedBytes;
+
+    private JvmAllocationCounter(Object bean, Method allocatedBytes) {
+        this.bean = bean;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /** Null when the JVM can't count allocations per thread. */
+    static JvmAllocationCounter create() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (!beanClass.isInstance(bean)
+                    || !(Boolean) beanClass.getMethod("isThreadAllocatedMemorySupported").invoke(bean)) {
+                return null;
+            }
+            beanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(bean, true);
+            JvmAllocationCounter counter =
+                    new JvmAllocationCounter(bean, beanClass.getMethod("getThreadAllocatedBytes", long.class));
+            for (int i = 0; i < WARMUP_READS; i++) {
+                counter.getBytes();
+            }
+            return counter;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return -1;
+    }
+
+    @Override
+    public long getBytes() {
+        try {
+            return (Long) allocatedBytes.invoke(bean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
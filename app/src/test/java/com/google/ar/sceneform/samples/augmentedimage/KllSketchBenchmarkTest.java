@@ -0,0 +1,89 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Update and query throughput of the sketch and of the per-sensor stats built on it. Timed with
+ * -Dbenchmark=true, see {@link Benchmarks}.
+ */
+public class KllSketchBenchmarkTest {
+
+    private static final int VALUES = 1 << 16;
+    private static final int WARMUP_UPDATES = 5_000_000;
+    private static final int MEASURED_UPDATES = 2_000_000;
+    private static final int MEASURED_QUERIES = 2_000;
+    // Loose, a loaded CI machine must still pass
+    private static final double UPDATE_BUDGET_NANOS = 500;
+    private static final double QUERY_BUDGET_NANOS = 1_000_000;
+
+    private final float[] values = values();
+    private final float[] fractions = {0.5f, 0.9f, 0.99f};
+    private final float[] quantiles = new float[fractions.length];
+    private int next;
+
+    private static float[] values() {
+        Random random = new Random(32);
+        float[] values = new float[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = (float) random.nextGaussian() * 100f + 400f;
+        }
+        return values;
+    }
+
+    @Test
+    public void updateThroughput() throws Exception {
+        KllSketch sketch = new KllSketch();
+        Benchmarks.time("KLL k=" + sketch.getK() + ", per update", WARMUP_UPDATES, MEASURED_UPDATES,
+                UPDATE_BUDGET_NANOS, count -> update(sketch, count));
+    }
+
+    @Test
+    public void queryThroughput() throws Exception {
+        KllSketch sketch = new KllSketch();
+        update(sketch, WARMUP_UPDATES);
+        Benchmarks.time("KLL k=" + sketch.getK() + ", per p50/p90/p99 query", MEASURED_QUERIES, MEASURED_QUERIES,
+                QUERY_BUDGET_NANOS, count -> query(sketch, count));
+    }
+
+    @Test
+    public void streamingStatsThroughput() throws Exception {
+        StreamingStats stats = new StreamingStats(60_000, 6);
+        // Session and window sketch, twice a sketch update
+        Benchmarks.time("StreamingStats, per sample", WARMUP_UPDATES, MEASURED_UPDATES,
+                2 * UPDATE_BUDGET_NANOS, count -> add(stats, count));
+    }
+
+    @Test
+    public void updatesDoNotAllocate() throws Exception {
+        KllSketch sketch = new KllSketch();
+        Benchmarks.assertDoesNotAllocate("update", WARMUP_UPDATES, 10_000, count -> update(sketch, count));
+    }
+
+    @Test
+    public void queriesDoNotAllocate() throws Exception {
+        KllSketch sketch = new KllSketch();
+        update(sketch, WARMUP_UPDATES);
+        Benchmarks.assertDoesNotAllocate("query", 10_000, 1, count -> query(sketch, count));
+    }
+
+    private void update(KllSketch sketch, int count) {
+        for (int i = 0; i < count; i++) {
+            sketch.update(values[next++ & (VALUES - 1)]);
+        }
+    }
+
+    private void query(KllSketch sketch, int count) {
+        for (int i = 0; i < count; i++) {
+            sketch.getQuantiles(fractions, quantiles);
+        }
+    }
+
+    // One sample a millisecond
+    private void add(StreamingStats stats, int count) {
+        for (int i = 0; i < count; i++) {
+            stats.add(values[next & (VALUES - 1)], next++);
+        }
+    }
+}
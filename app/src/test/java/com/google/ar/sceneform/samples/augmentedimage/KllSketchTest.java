@@ -0,0 +1,126 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KllSketchTest {
+
+    private static final float[] FRACTIONS = {0.01f, 0.1f, 0.25f, 0.5f, 0.75f, 0.9f, 0.99f};
+    // About 1.7% for k = 200, with some room
+    private static final double MAX_RANK_ERROR = 0.03;
+
+    @Test
+    public void emptySketchHasNoQuantiles() {
+        assertTrue(Float.isNaN(new KllSketch().getQuantile(0.5f)));
+    }
+
+    @Test
+    public void smallStreamsAreExact() {
+        KllSketch sketch = new KllSketch();
+        for (int i = 1; i <= 101; i++) {
+            sketch.update(i);
+        }
+        assertEquals(51f, sketch.getQuantile(0.5f), 0f);
+        assertEquals(1f, sketch.getQuantile(0f), 0f);
+        assertEquals(101f, sketch.getQuantile(1f), 0f);
+    }
+
+    @Test
+    public void rankErrorOnUniformData() {
+        Random random = new Random(32);
+        float[] data = new float[1_000_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextFloat() * 1000f;
+        }
+        assertRankError(data);
+    }
+
+    @Test
+    public void rankErrorOnSkewedAndSortedData() {
+        Random random = new Random(33);
+        float[] skewed = new float[500_000];
+        for (int i = 0; i < skewed.length; i++) {
+            skewed[i] = (float) Math.exp(random.nextGaussian() * 2);
+        }
+        assertRankError(skewed);
+
+        float[] sorted = new float[500_000];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        assertRankError(sorted);
+    }
+
+    @Test
+    public void memoryStaysBounded() {
+        KllSketch sketch = new KllSketch();
+        int most = 0;
+        for (int i = 0; i < 5_000_000; i++) {
+            sketch.update(i);
+            most = Math.max(most, sketch.getRetainedItems());
+        }
+        assertEquals(5_000_000, sketch.getCount());
+        // O(k), about 3k for KLL
+        assertTrue("Retained " + most, most < 4 * KllSketch.DEFAULT_K);
+    }
+
+    @Test
+    public void mergedSketchesAreAsAccurateAsOne() {
+        Random random = new Random(34);
+        float[] data = new float[400_000];
+        KllSketch merged = new KllSketch();
+        KllSketch[] parts = new KllSketch[8];
+        for (int part = 0; part < parts.length; part++) {
+            parts[part] = new KllSketch();
+        }
+        for (int i = 0; i < data.length; i++) {
+            // Each part sees a different range, as chairs with different loads would
+            data[i] = (i % parts.length) * 100f + random.nextFloat() * 150f;
+            parts[i % parts.length].update(data[i]);
+        }
+        for (KllSketch part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(data.length, merged.getCount());
+        assertRankError(data, merged);
+    }
+
+    private static void assertRankError(float[] data) {
+        KllSketch sketch = new KllSketch();
+        for (float value : data) {
+            sketch.update(value);
+        }
+        assertRankError(data, sketch);
+    }
+
+    private static void assertRankError(float[] data, KllSketch sketch) {
+        float[] sorted = data.clone();
+        Arrays.sort(sorted);
+        float[] quantiles = new float[FRACTIONS.length];
+        sketch.getQuantiles(FRACTIONS, quantiles);
+        for (int i = 0; i < FRACTIONS.length; i++) {
+            double rank = rankOf(sorted, quantiles[i]);
+            assertEquals("rank of p" + (int) (FRACTIONS[i] * 100), FRACTIONS[i], rank, MAX_RANK_ERROR);
+        }
+    }
+
+    // Middle of the ranks the value takes in the data, as a fraction
+    private static double rankOf(float[] sorted, float value) {
+        int below = 0;
+        int upTo = 0;
+        for (float v : sorted) {
+            if (v < value) {
+                below++;
+            }
+            if (v <= value) {
+                upTo++;
+            }
+        }
+        return (below + upTo) / 2.0 / sorted.length;
+    }
+}
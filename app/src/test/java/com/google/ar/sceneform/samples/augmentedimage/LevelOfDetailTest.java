@@ -0,0 +1,130 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.ar.sceneform.samples.augmentedimage.LevelOfDetail.Level.CULLED;
+import static com.google.ar.sceneform.samples.augmentedimage.LevelOfDetail.Level.FULL;
+import static com.google.ar.sceneform.samples.augmentedimage.LevelOfDetail.Level.SIMPLIFIED;
+import static org.junit.Assert.assertEquals;
+
+public class LevelOfDetailTest {
+
+    private static final float FULL_DISTANCE = 2.5f;
+    private static final float CULL_DISTANCE = 10f;
+    private static final float RADIUS = 0.6f;
+    private static final float HYSTERESIS = 0.15f;
+    // Of the perspective below, x and y in clip space per meter at one meter depth
+    private static final float FOCAL = 1.5f;
+
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+    private LevelOfDetail levelOfDetail;
+
+    @Before
+    public void setUp() {
+        // Camera at the origin looking down -z
+        view[0] = 1;
+        view[5] = 1;
+        view[10] = 1;
+        view[15] = 1;
+        float near = 0.1f;
+        float far = 100f;
+        projection[0] = FOCAL;
+        projection[5] = FOCAL;
+        projection[10] = -(far + near) / (far - near);
+        projection[11] = -1;
+        projection[14] = -2 * far * near / (far - near);
+        levelOfDetail = new LevelOfDetail(FULL_DISTANCE, CULL_DISTANCE, RADIUS, HYSTERESIS);
+    }
+
+    private LevelOfDetail.Level at(float x, float y, float z) {
+        return levelOfDetail.update(view, projection, x, y, z);
+    }
+
+    // On the axis of the camera
+    private LevelOfDetail.Level ahead(float distance) {
+        return at(0, 0, -distance);
+    }
+
+    @Test
+    public void crossesTheFullDistanceOnlyPastItsBand() {
+        assertEquals(FULL, ahead(1));
+        // Out to 2.5 * 1.15
+        assertEquals(FULL, ahead(2.8f));
+        assertEquals(SIMPLIFIED, ahead(2.9f));
+        // Back in to 2.5 * 0.85
+        assertEquals(SIMPLIFIED, ahead(2.5f));
+        assertEquals(SIMPLIFIED, ahead(2.2f));
+        assertEquals(FULL, ahead(2.1f));
+        assertEquals(2.1f, levelOfDetail.getDistance(), 1e-5f);
+    }
+
+    @Test
+    public void crossesTheCullDistanceOnlyPastItsBand() {
+        assertEquals(SIMPLIFIED, ahead(5));
+        // Out to 10 * 1.15
+        assertEquals(SIMPLIFIED, ahead(11.4f));
+        assertEquals(CULLED, ahead(11.6f));
+        // Back in to 10 * 0.85
+        assertEquals(CULLED, ahead(10));
+        assertEquals(CULLED, ahead(8.6f));
+        assertEquals(SIMPLIFIED, ahead(8.4f));
+        // And from culled straight to full
+        assertEquals(CULLED, ahead(20));
+        assertEquals(FULL, ahead(1));
+    }
+
+    @Test
+    public void cullsWhatIsBehindTheCamera() {
+        assertEquals(CULLED, at(0, 0, 3));
+        assertEquals(CULLED, at(0, 0, 1));
+        // The sphere around an anchor just behind still reaches in front of the camera
+        assertEquals(FULL, at(0, 0, 0.3f));
+        assertEquals(CULLED, at(0, 0, 0.7f));
+    }
+
+    @Test
+    public void keepsChairsAtTheScreenEdgeWithinTheMargin() {
+        // At one meter the screen edge is 1 / 1.5 m off the axis, the margin is the radius and
+        // its band on top, 0.69 m, on the way out
+        float edge = 1 / FOCAL;
+        assertEquals(FULL, at(edge + 0.1f, 0, -1));
+        assertEquals(FULL, at(edge + 0.65f, 0, -1));
+        assertEquals(CULLED, at(edge + 0.75f, 0, -1));
+        // 0.6 m on the way back in
+        assertEquals(CULLED, at(edge + 0.65f, 0, -1));
+        assertEquals(FULL, at(edge + 0.55f, 0, -1));
+
+        // The same on every side
+        assertEquals(FULL, at(0, -(edge + 0.65f), -1));
+        assertEquals(CULLED, at(0, -(edge + 0.75f), -1));
+        assertEquals(FULL, at(-(edge + 0.55f), 0, -1));
+        assertEquals(CULLED, at(0, edge + 0.75f, -1));
+    }
+
+    @Test
+    public void measuresFromWhereTheCameraIs() {
+        // Camera moved to z = 5, the anchor at the origin is 5 m ahead of it
+        view[14] = -5;
+        assertEquals(SIMPLIFIED, at(0, 0, 0));
+        assertEquals(5, levelOfDetail.getDistance(), 1e-5f);
+        assertEquals(FULL, at(0, 0, 3));
+    }
+
+    @Test
+    public void distanceScaleDrawsLessInFull() {
+        assertEquals(FULL, ahead(2));
+        levelOfDetail.setDistanceScale(0.4f);
+        // Full up to 2.5 * 0.4 * 1.15, culled beyond 10 * 0.4 * 1.15
+        assertEquals(SIMPLIFIED, ahead(2));
+        assertEquals(CULLED, ahead(4.7f));
+        levelOfDetail.setDistanceScale(1);
+        assertEquals(SIMPLIFIED, ahead(4.7f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCullingBeforeFull() {
+        new LevelOfDetail(5, 4, RADIUS, HYSTERESIS);
+    }
+}
@@ -0,0 +1,239 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The MQTT 5 source against {@link StandInBroker}: the options it connects with, topic aliases,
+ * receive maximum holding the broker back while samples wait for the main thread, samples that
+ * expire while the connection is down, and a broker that isn't up yet when the app starts.
+ */
+public class Mqtt5SubscriptionTest {
+
+    private static final String CLIENT_ID = "mqtt5-subscription-test";
+    private static final String TOPIC = "chairs/+/pressure";
+    private static final long TIMEOUT_MS = 10_000;
+
+    // What the listener got, in order
+    private static final class Samples implements SensorSource.Listener {
+        private final List<String> payloads = new ArrayList<>();
+
+        @Override
+        public synchronized void onMessage(String payload) {
+            payloads.add(payload);
+            notifyAll();
+        }
+
+        synchronized List<String> await(int count, long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            long left;
+            while (payloads.size() < count && (left = deadline - System.currentTimeMillis()) > 0) {
+                wait(left);
+            }
+            return new ArrayList<>(payloads);
+        }
+    }
+
+    private static final class Events implements Mqtt5Subscription.Events {
+        volatile int reconnects;
+        volatile int errors;
+        volatile Throwable error;
+
+        @Override
+        public void onConnected(boolean reconnect, String serverUri) {
+            if (reconnect) {
+                reconnects++;
+            }
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+        }
+
+        @Override
+        public void onError(String what, Throwable e) {
+            errors++;
+            error = e;
+        }
+    }
+
+    private StandInBroker broker;
+    private ExecutorService mainThread;
+    private ScheduledExecutorService retries;
+    private Mqtt5Subscription subscription;
+    private final Samples samples = new Samples();
+    private final Events events = new Events();
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new StandInBroker();
+        broker.start();
+        mainThread = Executors.newSingleThreadExecutor();
+        retries = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (subscription != null) {
+            subscription.stop();
+        }
+        mainThread.shutdownNow();
+        retries.shutdownNow();
+        broker.kill();
+    }
+
+    private Mqtt5Subscription start(Executor deliverer) throws Exception {
+        subscription = new Mqtt5Subscription(broker.getUri(), TOPIC, "chair-app", null, CLIENT_ID,
+                deliverer, (task, delayMs) -> retries.schedule(task, delayMs, TimeUnit.MILLISECONDS),
+                new Backoff(10, 200), events);
+        subscription.start(samples);
+        assertTrue(broker.awaitSubscribed(CLIENT_ID, TOPIC, TIMEOUT_MS));
+        return subscription;
+    }
+
+    private void publish(String topic, String payload, long messageExpiry) throws Exception {
+        broker.publish(topic, payload.getBytes(StandardCharsets.UTF_8), 1, messageExpiry);
+    }
+
+    // The ack goes out after the listener returns, a kill before it lands would resend the sample
+    private void awaitAcked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (broker.getInFlight(CLIENT_ID) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, broker.getInFlight(CLIENT_ID));
+    }
+
+    @Test(timeout = 30_000)
+    public void connectsWithAPersistentSessionAndFlowControl() throws Exception {
+        start(mainThread);
+        StandInBroker.Connect connect = broker.getConnect(CLIENT_ID);
+        assertEquals(5, connect.level);
+        assertFalse(connect.cleanStart);
+        assertEquals("chair-app", connect.username);
+        assertEquals(Mqtt5Subscription.SESSION_EXPIRY_S, connect.sessionExpiry);
+        assertEquals(Mqtt5Subscription.RECEIVE_MAXIMUM, connect.receiveMaximum);
+        assertEquals(Mqtt5Subscription.TOPIC_ALIAS_MAXIMUM, connect.topicAliasMaximum);
+    }
+
+    @Test(timeout = 30_000)
+    public void retriesUntilTheBrokerIsUp() throws Exception {
+        broker.kill();
+        // Up a moment after the app tried, several failed attempts later
+        retries.schedule(() -> {
+            broker.start();
+            return null;
+        }, 500, TimeUnit.MILLISECONDS);
+        start(mainThread);
+        assertTrue(events.errors > 1);
+        assertNotNull(events.error);
+
+        publish("chairs/1/pressure", "{\"late\":0}", -1);
+        assertEquals(1, samples.await(1, TIMEOUT_MS).size());
+    }
+
+    @Test(timeout = 30_000)
+    public void topicAliasesReplaceRepeatedTopics() throws Exception {
+        start(mainThread);
+        int chairs = 8;
+        int rounds = 25;
+        List<String> expected = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (int chair = 0; chair < chairs; chair++) {
+                String payload = "{\"chair\":" + chair + ",\"round\":" + round + "}";
+                publish("chairs/" + chair + "/pressure", payload, -1);
+                expected.add(payload);
+            }
+        }
+        assertEquals(expected, samples.await(expected.size(), TIMEOUT_MS));
+        // Only the first sample of every chair carries its topic name
+        assertEquals(chairs * (rounds - 1), broker.getAliasedCount());
+        assertEquals(expected.size(), subscription.getReceivedCount());
+        assertEquals(null, events.error);
+    }
+
+    @Test(timeout = 30_000)
+    public void receiveMaximumHoldsTheBrokerBack() throws Exception {
+        // A main thread busy with a long frame: nothing is processed until the test says so
+        BlockingQueue<Runnable> frame = new LinkedBlockingQueue<>();
+        start(frame::add);
+        int count = 50;
+        for (int i = 0; i < count; i++) {
+            publish("chairs/1/pressure", "{\"i\":" + i + "}", -1);
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (frame.size() < Mqtt5Subscription.RECEIVE_MAXIMUM && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Would have arrived by now if the broker didn't wait for acks
+        Thread.sleep(200);
+        assertEquals(Mqtt5Subscription.RECEIVE_MAXIMUM, frame.size());
+        assertEquals(Mqtt5Subscription.RECEIVE_MAXIMUM, broker.getInFlight(CLIENT_ID));
+        assertEquals(count - Mqtt5Subscription.RECEIVE_MAXIMUM, broker.getPending(CLIENT_ID));
+        assertEquals(0, samples.await(0, 0).size());
+
+        // Every processed sample lets the next one in
+        for (int i = 0; i < count; i++) {
+            Runnable sample = frame.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("Sample " + i + " never came", sample);
+            sample.run();
+        }
+        List<String> received = samples.await(count, TIMEOUT_MS);
+        for (int i = 0; i < count; i++) {
+            assertEquals("{\"i\":" + i + "}", received.get(i));
+        }
+        assertEquals(Mqtt5Subscription.RECEIVE_MAXIMUM, broker.getMaxInFlight(CLIENT_ID));
+        assertEquals(0, broker.getPending(CLIENT_ID));
+    }
+
+    @Test(timeout = 30_000)
+    public void staleSamplesExpireWhileTheBrokerIsDown() throws Exception {
+        start(mainThread);
+        publish("chairs/1/pressure", "{\"before\":0}", 5);
+        assertEquals(1, samples.await(1, TIMEOUT_MS).size());
+        awaitAcked();
+
+        broker.kill();
+        // Queued in the session while the connection is down, these go stale
+        for (int i = 0; i < 10; i++) {
+            publish("chairs/1/pressure", "{\"stale\":" + i + "}", 5);
+        }
+        broker.advanceClock(10_000);
+        List<String> expected = new ArrayList<>();
+        expected.add("{\"before\":0}");
+        for (int i = 0; i < 5; i++) {
+            publish("chairs/1/pressure", "{\"fresh\":" + i + "}", 5);
+            expected.add("{\"fresh\":" + i + "}");
+        }
+        // Without an expiry they are kept however long it takes
+        publish("chairs/1/pressure", "{\"kept\":0}", -1);
+        expected.add("{\"kept\":0}");
+        broker.advanceClock(1000);
+        broker.start();
+
+        // Back on its own with the same session, no subscribe needed for the queued samples
+        assertEquals(expected, samples.await(expected.size(), TIMEOUT_MS));
+        assertEquals(10, broker.getExpiredCount());
+        assertTrue(events.reconnects > 0);
+        Thread.sleep(200);
+        assertEquals(expected.size(), samples.await(0, 0).size());
+    }
+}
@@ -0,0 +1,353 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundQueueTest {
+
+    private static final String TOPIC = "test/alert";
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] payload(int i) {
+        return String.format(Locale.US, "{\"alert\": %d}", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int index(byte[] payload) {
+        String text = new String(payload, StandardCharsets.UTF_8);
+        return Integer.parseInt(text.substring(text.indexOf(':') + 2, text.length() - 1));
+    }
+
+    private static void appendRange(OutboundQueue queue, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            queue.append(TOPIC, payload(i), 1);
+        }
+    }
+
+    // Removes count messages, checking they come in order from first on
+    private static void removeRange(OutboundQueue queue, int first, int count) throws IOException {
+        for (int i = first; i < first + count; i++) {
+            OutboundQueue.Message message = queue.peek();
+            assertNotNull("queue ended before " + i, message);
+            assertEquals(i, index(message.payload));
+            assertTrue(queue.remove(message));
+        }
+    }
+
+    private File[] segmentFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void messagesComeBackInOrderAcrossSegments() throws IOException {
+        try (OutboundQueue queue = new OutboundQueue(folder.newFolder(), 64 * 1024, 256, 16, NEVER)) {
+            queue.append("test/ack", new byte[]{1, 2, 3}, 2);
+            appendRange(queue, 0, 100);
+            assertEquals(101, queue.getDepth());
+            assertTrue(queue.getSegmentCount() > 10);
+
+            OutboundQueue.Message first = queue.peek();
+            assertEquals("test/ack", first.topic);
+            assertEquals(2, first.qos);
+            assertArrayEquals(new byte[]{1, 2, 3}, first.payload);
+            assertTrue(queue.remove(first));
+
+            removeRange(queue, 0, 100);
+            assertNull(queue.peek());
+            assertEquals(0, queue.getDepth());
+            assertEquals(1, queue.getSegmentCount());
+            assertEquals(101, queue.getRemovedCount());
+        }
+    }
+
+    @Test
+    public void closedQueueReopensWhereItStopped() throws IOException {
+        File directory = folder.newFolder();
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 1024, 16, NEVER)) {
+            appendRange(queue, 0, 50);
+            removeRange(queue, 0, 30);
+        }
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 1024, 16, NEVER)) {
+            assertEquals(20, queue.getDepth());
+            appendRange(queue, 50, 60);
+            removeRange(queue, 30, 30);
+            assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    public void crashResendsOnlyWhatWasRemovedSinceTheLastSync() throws IOException {
+        File directory = folder.newFolder();
+        // Never closed, as after a crash of the app
+        OutboundQueue crashed = new OutboundQueue(directory, 64 * 1024, 1024, 1, NEVER);
+        appendRange(crashed, 0, 40);
+        removeRange(crashed, 0, 20);
+        crashed.sync();
+        removeRange(crashed, 20, 5);
+
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 1024, 1, NEVER)) {
+            // Segments before the cursor are gone, the 5 unsynced removals come again
+            assertEquals(20, queue.getDepth());
+            removeRange(queue, 20, 20);
+            assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    public void tornWriteAtTheEndIsCutOff() throws IOException {
+        File directory = folder.newFolder();
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            appendRange(queue, 0, 10);
+        }
+        File[] segments = segmentFiles(directory);
+        File last = segments[segments.length - 1];
+        long intact = last.length();
+        // Header of a 100 byte record, only part of its body made it to disk
+        try (FileOutputStream out = new FileOutputStream(last, true)) {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 1, 0, 10});
+        }
+
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            assertEquals(10, queue.getDepth());
+            assertEquals(intact, last.length());
+            // Appended right after the last good record, not after the torn one
+            appendRange(queue, 10, 11);
+        }
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            removeRange(queue, 0, 11);
+            assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    public void corruptLastRecordIsCutOff() throws IOException {
+        File directory = folder.newFolder();
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            appendRange(queue, 0, 10);
+        }
+        File[] segments = segmentFiles(directory);
+        try (RandomAccessFile file = new RandomAccessFile(segments[segments.length - 1], "rw")) {
+            file.seek(file.length() - 2);
+            file.write('X');
+        }
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            assertEquals(9, queue.getDepth());
+            removeRange(queue, 0, 9);
+            assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    public void tornCursorSendsTheOldestSegmentAgain() throws IOException {
+        File directory = folder.newFolder();
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            appendRange(queue, 0, 10);
+            removeRange(queue, 0, 4);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "cursor"))) {
+            out.write(new byte[]{0, 0, 0});
+        }
+        try (OutboundQueue queue = new OutboundQueue(directory, 64 * 1024, 4096, 16, NEVER)) {
+            assertEquals(10, queue.getDepth());
+            removeRange(queue, 0, 10);
+        }
+    }
+
+    @Test
+    public void diskUsageStaysBoundedAndKeepsTheNewest() throws IOException {
+        File directory = folder.newFolder();
+        long maxBytes = 4 * 1024;
+        try (OutboundQueue queue = new OutboundQueue(directory, maxBytes, 1024, 16, NEVER)) {
+            appendRange(queue, 0, 1000);
+            assertTrue(queue.getBytes() <= maxBytes);
+            assertEquals(1000, queue.getAppendedCount());
+            assertEquals(1000, queue.getDroppedCount() + queue.getDepth());
+            assertTrue(queue.getDroppedCount() > 800);
+        }
+        long onDisk = 0;
+        for (File segment : segmentFiles(directory)) {
+            onDisk += segment.length();
+        }
+        assertTrue(onDisk <= maxBytes);
+
+        try (OutboundQueue queue = new OutboundQueue(directory, maxBytes, 1024, 16, NEVER)) {
+            int depth = (int) queue.getDepth();
+            assertTrue(depth > 0);
+            // What is left is the newest messages, in order, without holes
+            removeRange(queue, 1000 - depth, depth);
+            assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    public void headDroppedWhileSendingIsNotRemovedTwice() throws IOException {
+        try (OutboundQueue queue = new OutboundQueue(folder.newFolder(), 2 * 1024, 1024, 16, NEVER)) {
+            appendRange(queue, 0, 10);
+            OutboundQueue.Message sending = queue.peek();
+            // Pushes the segment of the head out
+            appendRange(queue, 10, 200);
+            assertFalse(queue.remove(sending));
+            assertEquals(200 - queue.getDepth(), queue.getDroppedCount());
+        }
+    }
+
+    // The drain of MqttHelper: one message in flight, removed once the broker has acknowledged it.
+    private static void drain(OutboundQueue queue, MqttAsyncClient client, AtomicBoolean stop) throws IOException,
+            InterruptedException {
+        while (!stop.get()) {
+            OutboundQueue.Message queued = client.isConnected() ? queue.peek() : null;
+            if (queued == null) {
+                Thread.sleep(5);
+                continue;
+            }
+            MqttMessage message = new MqttMessage(queued.payload);
+            message.setQos(queued.qos);
+            try {
+                client.publish(queued.topic, message).waitForCompletion(5000);
+            } catch (MqttException e) {
+                // Lost with the connection, sent again once reconnected
+                continue;
+            }
+            queue.remove(queued);
+        }
+    }
+
+    private static MqttAsyncClient connect(StandInBroker broker, String clientId) throws MqttException {
+        MqttAsyncClient client = new MqttAsyncClient(broker.getUri(), clientId, new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setAutomaticReconnect(true);
+        options.setCleanSession(true);
+        client.connect(options).waitForCompletion(5000);
+        return client;
+    }
+
+    private static Thread startDrain(OutboundQueue queue, MqttAsyncClient client, AtomicBoolean stop,
+                                     AtomicReference<Throwable> failure) {
+        Thread thread = new Thread(() -> {
+            try {
+                drain(queue, client, stop);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "OutboundQueueTest-drain");
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitEmpty(OutboundQueue queue, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (queue.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, queue.getDepth());
+    }
+
+    // Every message arrived, in order, at most extra times more than once.
+    private static void assertDeliveredInOrder(StandInBroker broker, int count, int extra) {
+        List<StandInBroker.Received> received = broker.getReceived();
+        Set<Integer> distinct = new LinkedHashSet<>();
+        for (StandInBroker.Received message : received) {
+            assertEquals(TOPIC, message.topic);
+            assertEquals(1, message.qos);
+            distinct.add(index(message.payload));
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, new ArrayList<>(distinct));
+        assertTrue(received.size() + " received", received.size() <= count + extra);
+    }
+
+    @Test(timeout = 60_000)
+    public void drainSurvivesBrokerRestart() throws Exception {
+        StandInBroker broker = new StandInBroker();
+        broker.start();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (OutboundQueue queue = new OutboundQueue(folder.newFolder(), 1024 * 1024, 8 * 1024, 16, 1000)) {
+            appendRange(queue, 0, 200);
+            MqttAsyncClient client = connect(broker, "outbound-queue-test");
+            Thread drain = startDrain(queue, client, stop, failure);
+
+            assertTrue(broker.awaitReceived(60, 10_000));
+            broker.kill();
+            // Published while the broker is down
+            appendRange(queue, 200, 300);
+            Thread.sleep(200);
+            assertTrue(queue.getDepth() > 100);
+            broker.start();
+
+            awaitEmpty(queue, 30_000);
+            stop.set(true);
+            drain.join();
+            client.disconnect().waitForCompletion(5000);
+            client.close();
+        } finally {
+            stop.set(true);
+            broker.kill();
+        }
+        assertNull(failure.get());
+        // The one in flight at the kill may have arrived before its ack was lost
+        assertDeliveredInOrder(broker, 300, 1);
+    }
+
+    @Test(timeout = 60_000)
+    public void messagesQueuedDuringAnOutageSurviveAnAppCrash() throws Exception {
+        StandInBroker broker = new StandInBroker();
+        File directory = folder.newFolder();
+        // The broker is down, the app queues and crashes without closing the queue
+        OutboundQueue crashed = new OutboundQueue(directory, 1024 * 1024, 8 * 1024, 16, 1000);
+        appendRange(crashed, 0, 50);
+
+        broker.start();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (OutboundQueue queue = new OutboundQueue(directory, 1024 * 1024, 8 * 1024, 16, 1000)) {
+            assertEquals(50, queue.getDepth());
+            MqttAsyncClient client = connect(broker, "outbound-queue-test");
+            Thread drain = startDrain(queue, client, stop, failure);
+            awaitEmpty(queue, 30_000);
+            stop.set(true);
+            drain.join();
+            client.disconnect().waitForCompletion(5000);
+            client.close();
+        } finally {
+            stop.set(true);
+            broker.kill();
+        }
+        assertNull(failure.get());
+        assertDeliveredInOrder(broker, 50, 0);
+    }
+}
@@ -0,0 +1,144 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QualityGovernorTest {
+
+    private static final float BUDGET_MS = QualityGovernor.DEFAULT_BUDGET_MS;
+    private static final float SLOW_MS = 50;
+    private static final float FAST_MS = 10;
+
+    private QualityGovernor governor;
+    private final List<String> changes = new ArrayList<>();
+    // Time of the frame being replayed, advanced by every frame's duration
+    private long nowMs;
+
+    @Before
+    public void setUp() {
+        governor = new QualityGovernor(BUDGET_MS);
+        governor.setListener((from, to, trigger, value) -> changes.add(from + ">" + to + " " + trigger + " " + value));
+    }
+
+    // Replays frames of the given time for durationMs
+    private void replay(float frameMs, long durationMs) {
+        long endMs = nowMs + durationMs;
+        while (nowMs < endMs) {
+            nowMs += (long) frameMs;
+            governor.onFrame(frameMs, nowMs);
+        }
+    }
+
+    // Replays frames until the level changes, the time it did or -1 after maxMs
+    private long untilChange(float frameMs, long maxMs) {
+        int level = governor.getLevel();
+        long endMs = nowMs + maxMs;
+        while (nowMs < endMs) {
+            nowMs += (long) frameMs;
+            if (governor.onFrame(frameMs, nowMs) != level) {
+                return nowMs;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void twoSlowWindowsStepDown() {
+        // One window of 30 frames over budget isn't enough
+        replay(SLOW_MS, 30 * 50);
+        assertEquals(0, governor.getLevel());
+        assertEquals(60 * 50, untilChange(SLOW_MS, 10_000));
+        assertEquals(1, governor.getLevel());
+        assertEquals(SLOW_MS, governor.getAverageFrameMs(), 1e-3);
+        assertEquals("0>1 " + QualityGovernor.TRIGGER_SLOW_FRAMES + " 50.0", changes.get(0));
+    }
+
+    @Test
+    public void slowWindowsApartDoNotStepDown() {
+        for (int i = 0; i < 20; i++) {
+            replay(SLOW_MS, 30 * 50);
+            replay(BUDGET_MS, 30 * 33);
+        }
+        assertEquals(0, governor.getLevel());
+        assertEquals(0, changes.size());
+    }
+
+    @Test
+    public void stepsDownNoFurtherThanTheLastLevel() {
+        replay(SLOW_MS, 120_000);
+        assertEquals(QualityGovernor.LEVEL_COUNT - 1, governor.getLevel());
+        assertEquals(QualityGovernor.LEVEL_COUNT - 1, changes.size());
+    }
+
+    @Test
+    public void waitsTheDownDwellAfterAChange() {
+        // Moderate heat lowers the level at 1100, while the slow frames are already counted
+        long thermalMs = 1100;
+        replay(SLOW_MS, thermalMs);
+        governor.onThermalStatus(QualityGovernor.THERMAL_MODERATE, nowMs);
+        assertEquals(1, governor.getLevel());
+        // The second slow window ends at 3000, 1900 ms after the change
+        replay(SLOW_MS, 3000 - nowMs);
+        assertEquals(1, governor.getLevel());
+        long changeMs = untilChange(SLOW_MS, 10_000);
+        assertEquals(4500, changeMs);
+        assertEquals(2, governor.getLevel());
+    }
+
+    @Test
+    public void waitsTheUpDwellBeforeSteppingBackUp() {
+        long downMs = untilChange(SLOW_MS, 10_000);
+        assertEquals(1, governor.getLevel());
+        // Ten fast windows take 3 s, the level is held for 10 s
+        long upMs = untilChange(FAST_MS, 30_000);
+        assertEquals(0, governor.getLevel());
+        long windowMs = (long) (30 * FAST_MS);
+        assertTrue(upMs - downMs >= 10_000 && upMs - downMs < 10_000 + windowMs);
+        assertEquals("1>0 " + QualityGovernor.TRIGGER_FAST_FRAMES + " 10.0", changes.get(1));
+    }
+
+    @Test
+    public void leavesTheLevelAloneAroundTheBudget() {
+        untilChange(SLOW_MS, 10_000);
+        assertEquals(1, governor.getLevel());
+        // Just inside 0.8 to 1.2 times the budget, either way, for a long time
+        for (int i = 0; i < 30; i++) {
+            replay(BUDGET_MS * 1.19f, 2000);
+            replay(BUDGET_MS * 0.81f, 2000);
+        }
+        assertEquals(1, governor.getLevel());
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void heatSetsAFloor() {
+        governor.onThermalStatus(QualityGovernor.THERMAL_SEVERE, 0);
+        assertEquals(2, governor.getLevel());
+        assertEquals("0>2 " + QualityGovernor.TRIGGER_THERMAL + " 3.0", changes.get(0));
+        // Hotter still lowers at once, regardless of the dwell
+        governor.onThermalStatus(QualityGovernor.THERMAL_CRITICAL, 100);
+        assertEquals(3, governor.getLevel());
+
+        // Fast frames can't raise it above the floor
+        replay(FAST_MS, 60_000);
+        assertEquals(3, governor.getLevel());
+        governor.onThermalStatus(QualityGovernor.THERMAL_MODERATE, nowMs);
+        assertEquals(3, governor.getLevel());
+        // A cooler device lets the fast frames counted so far raise it with the next window
+        assertTrue(untilChange(FAST_MS, 1000) > 0);
+        assertEquals(2, governor.getLevel());
+        replay(FAST_MS, 60_000);
+        assertEquals(1, governor.getLevel());
+
+        // Cooled down, back to full quality a level at a time
+        governor.onThermalStatus(QualityGovernor.THERMAL_NONE, nowMs);
+        assertTrue(untilChange(FAST_MS, 20_000) > 0);
+        assertEquals(0, governor.getLevel());
+    }
+}
@@ -0,0 +1,145 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SamplePresentationTest {
+
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+
+    // Camera at the origin looking down -z, the chair on the axis
+    private LevelOfDetail.Level at(SamplePresentation presentation, float distance) {
+        view[0] = 1;
+        view[5] = 1;
+        view[10] = 1;
+        view[15] = 1;
+        float near = 0.1f;
+        float far = 100f;
+        projection[0] = 1.5f;
+        projection[5] = 1.5f;
+        projection[10] = -(far + near) / (far - near);
+        projection[11] = -1;
+        projection[14] = -2 * far * near / (far - near);
+        return presentation.updateLevelOfDetail(view, projection, 0, 0, -distance);
+    }
+
+    private static String label(float value) {
+        char[] chars = new char[SamplePresentation.LABEL_CAPACITY];
+        return new String(chars, 0, SamplePresentation.formatLabel(value, chars));
+    }
+
+    @Test
+    public void labelsHaveOneDecimal() {
+        assertEquals("0.0", label(0f));
+        assertEquals("42.0", label(42f));
+        assertEquals("12.3", label(12.34f));
+        assertEquals("12.4", label(12.35f));
+        assertEquals("-7.5", label(-7.46f));
+        assertEquals("1000000.0", label(1e6f));
+        // Rounds to zero without a sign
+        assertEquals("0.0", label(-0.04f));
+        assertEquals("0.0", label(-0f));
+        assertEquals("NaN", label(Float.NaN));
+        assertEquals("Infinity", label(Float.POSITIVE_INFINITY));
+        assertEquals("-Infinity", label(Float.NEGATIVE_INFINITY));
+        assertEquals(Long.toString(Long.MAX_VALUE / 10) + ".7", label(Float.MAX_VALUE));
+    }
+
+    @Test
+    public void labelsMatchFormat() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            float value = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8)));
+            String expected = String.format(Locale.US, "%.1f", value);
+            if (expected.equals("-0.0")) {
+                expected = "0.0";
+            }
+            assertEquals(expected, label(value));
+        }
+    }
+
+    @Test
+    public void formattingDoesNotAllocate() {
+        JvmAllocationCounter counter = JvmAllocationCounter.create();
+        Assume.assumeNotNull(counter);
+        char[] chars = new char[SamplePresentation.LABEL_CAPACITY];
+        AllocationBudget budget = new AllocationBudget(new String[] {"label"}, new long[] {0}, counter);
+        for (int run = 0; run < 200; run++) {
+            budget.begin(0);
+            for (int i = 0; i < 1000; i++) {
+                SamplePresentation.formatLabel(i * 0.37f - 100, chars);
+            }
+            budget.end(0);
+        }
+        budget.checkBudgets();
+    }
+
+    @Test
+    public void everySampleIsDrawnCloseUpAtFullQuality() {
+        SamplePresentation presentation = new SamplePresentation();
+        assertEquals(LevelOfDetail.Level.FULL, at(presentation, 1));
+        for (long t = 1000; t < 1100; t += 20) {
+            assertTrue(presentation.shouldPresent(t));
+            assertTrue(presentation.shouldRefreshLabels(t));
+        }
+    }
+
+    @Test
+    public void simplifiedChairsAreDrawnLessOftenWithoutLabels() {
+        SamplePresentation presentation = new SamplePresentation();
+        assertEquals(LevelOfDetail.Level.SIMPLIFIED, at(presentation, 5));
+        int drawn = 0;
+        for (long t = 1000; t < 2000; t += 20) {
+            if (presentation.shouldPresent(t)) {
+                drawn++;
+            }
+            assertFalse(presentation.shouldRefreshLabels(t));
+        }
+        assertEquals(1000 / SamplePresentation.SIMPLIFIED_PRESENT_INTERVAL_MS, drawn);
+    }
+
+    @Test
+    public void culledChairsAreNotDrawn() {
+        SamplePresentation presentation = new SamplePresentation();
+        assertEquals(LevelOfDetail.Level.CULLED, at(presentation, 20));
+        for (long t = 1000; t < 2000; t += 20) {
+            assertFalse(presentation.shouldPresent(t));
+        }
+    }
+
+    @Test
+    public void lowerQualityConflatesSamplesAndLabels() {
+        QualityGovernor governor = new QualityGovernor(1000f / 30);
+        long t = 0;
+        while (governor.getLevel() == 0) {
+            governor.onFrame(100, t += 100);
+        }
+        SamplePresentation presentation = new SamplePresentation();
+        presentation.applyQuality(governor);
+        at(presentation, 1);
+        int drawn = 0;
+        int labels = 0;
+        for (long now = 10_000; now < 11_000; now += 10) {
+            if (presentation.shouldPresent(now)) {
+                drawn++;
+            }
+            if (presentation.shouldRefreshLabels(now)) {
+                labels++;
+            }
+        }
+        assertEquals(1000 / governor.getConflationMs(), drawn);
+        assertEquals(1000 / governor.getLabelIntervalMs(), labels);
+
+        // Coming back to full detail refreshes the labels at once
+        presentation.refreshLabelsNext();
+        assertTrue(presentation.shouldRefreshLabels(11_000));
+    }
+}
@@ -0,0 +1,160 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorDecoderTest {
+
+    private static final String[] SENSORS = {"left", "mid", "right", "back", "foot"};
+
+    private static ChannelSchema schema(String json) throws JSONException {
+        return ChannelSchema.fromJson(new JSONObject(json));
+    }
+
+    private static final String SCHEMA_1 =
+            "{'version': 1, 'channels': [{'name': 'left'}, {'name': 'mid'}, {'name': 'right'},"
+                    + " {'name': 'back'}, {'name': 'foot'}]}";
+    // Reversed, without foot, with a channel the app has no sensor for
+    private static final String SCHEMA_2 =
+            "{'version': 2, 'channels': [{'name': 'back'}, {'name': 'right'}, {'name': 'spare'},"
+                    + " {'name': 'mid'}, {'name': 'left'}]}";
+
+    @Test
+    public void namedValues() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        assertEquals(0, decoder.decode("{'value': {'left': 1, 'mid': 2, 'right': 3, 'back': 4, 'foot': 5}}"));
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5}, decoder.getRawValues(), 0f);
+    }
+
+    @Test
+    public void positionalValuesWithEitherQuotes() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema(SCHEMA_1));
+        assertEquals(0, decoder.decode("{\"schema\": 1, \"v\": [1.5, -2, 3e1, 4.25E-1, 0]}"));
+        assertArrayEquals(new float[]{1.5f, -2f, 30f, 0.425f, 0f}, decoder.getRawValues(), 0f);
+        assertEquals(0, decoder.decode(" { 'v' : [ 5 , 4 , 3 , 2 , 1 ] , 'schema' : 1 } "));
+        assertArrayEquals(new float[]{5, 4, 3, 2, 1}, decoder.getRawValues(), 0f);
+    }
+
+    @Test
+    public void positionalReaderAgreesWithOrgJson() throws JSONException {
+        String[] numbers = {"0", "-0.0", "12.5", "0.1", "0.30000000000000004", "123456.789", "1e-7",
+                "-9.87654321e+3", "3.4028235e38", "0.000123456789012345678901", "98765432109876543210"};
+        SensorDecoder decoder = new SensorDecoder(new String[]{"x"});
+        decoder.setSchema(schema("{'version': 1, 'channels': [{'name': 'x'}]}"));
+        for (String number : numbers) {
+            decoder.decode("{'schema': 1, 'v': [" + number + "]}");
+            float expected = (float) new JSONObject("{'v': " + number + "}").getDouble("v");
+            assertEquals(number, expected, decoder.getRawValues()[0], Math.ulp(expected));
+        }
+    }
+
+    @Test
+    public void otherMessagesFallBackToOrgJson() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema(SCHEMA_1));
+        // A mat is not read by the positional reader
+        assertEquals(-1, decoder.decode("{'schema': 1, 'v': [1, 2, 3, 4, 5], 'mat': {'rows': 1, 'cols': 2, 'cells': [7, 8]}}"));
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5}, decoder.getRawValues(), 0f);
+        assertArrayEquals(new float[]{7, 8}, decoder.getMatValues(), 0f);
+    }
+
+    @Test(expected = JSONException.class)
+    public void badPositionalMessageStillFails() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema(SCHEMA_1));
+        decoder.decode("{'schema': 1, 'v': [1, null, 3, 4, 5]}");
+    }
+
+    @Test
+    public void unknownVersionWaits() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        assertEquals(SensorDecoder.UNKNOWN_SCHEMA, decoder.decode("{'schema': 1, 'v': [1, 2, 3, 4, 5]}"));
+        decoder.setSchema(schema(SCHEMA_1));
+        assertEquals(SensorDecoder.UNKNOWN_SCHEMA, decoder.decode("{'schema': 3, 'v': [1, 2, 3, 4, 5]}"));
+    }
+
+    @Test
+    public void sensorsWithoutChannelAreMissing() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema(SCHEMA_1));
+        decoder.decode("{'schema': 1, 'v': [1, 2, 3, 4, 5]}");
+        assertFalse(decoder.isMissing(4));
+
+        decoder.setSchema(schema(SCHEMA_2));
+        decoder.decode("{'schema': 2, 'v': [40, 30, 99, 20, 10]}");
+        assertArrayEquals(new float[]{10, 20, 30, 40, 0}, decoder.getRawValues(), 0f);
+        assertTrue(decoder.isMissing(4));
+        for (int sensor = 0; sensor < 4; sensor++) {
+            assertFalse(decoder.isMissing(sensor));
+        }
+
+        // A short message leaves the sensors past its end missing too
+        decoder.decode("{'schema': 2, 'v': [41, 31]}");
+        assertTrue(decoder.isMissing(0));
+        assertEquals(0f, decoder.getRawValues()[0], 0f);
+
+        decoder.decode("{'value': {'left': 1, 'mid': 2, 'right': 3, 'back': 4, 'foot': 5}}");
+        assertFalse(decoder.isMissing(4));
+    }
+
+    @Test
+    public void previousVersionCanBeAnnouncedAgain() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema(SCHEMA_1));
+        decoder.setSchema(schema(SCHEMA_2));
+        decoder.decode("{'schema': 2, 'v': [4, 3, 0, 2, 1]}");
+        assertEquals(2, decoder.getSchema().getVersion());
+        // Late message of version 1 still decodes with it, without switching back
+        decoder.decode("{'schema': 1, 'v': [1, 2, 3, 4, 5]}");
+        assertEquals(2, decoder.getSchema().getVersion());
+
+        // Rolled back
+        decoder.setSchema(schema(SCHEMA_1));
+        decoder.decode("{'schema': 1, 'v': [6, 7, 8, 9, 10]}");
+        assertEquals(1, decoder.getSchema().getVersion());
+        assertArrayEquals(new float[]{6, 7, 8, 9, 10}, decoder.getRawValues(), 0f);
+    }
+
+    @Test
+    public void valuesAreClampedToTheAnnouncedRange() throws JSONException {
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema("{'version': 1, 'channels': [{'name': 'left', 'unit': 'N', 'min': 0, 'max': 100},"
+                + " {'name': 'mid', 'min': -1}, {'name': 'right'}, {'name': 'back'}, {'name': 'foot'}]}"));
+        decoder.decode("{'schema': 1, 'v': [150, -5, -1000, 1e9, 50]}");
+        assertArrayEquals(new float[]{100, -1, -1000, 1e9f, 50}, decoder.getRawValues(), 0f);
+        assertEquals(2, decoder.getOutOfRangeCount());
+
+        // Deltas by position too
+        decoder.decode("{'schema': 1, 'seq': 1, 'key': true, 'v': [1, 2, 3, 4, 5]}");
+        decoder.decode("{'schema': 1, 'seq': 2, 'delta': {'idx': [0], 'val': [-3]}}");
+        assertEquals(0f, decoder.getRawValues()[0], 0f);
+        assertEquals(3, decoder.getOutOfRangeCount());
+    }
+
+    @Test
+    public void positionalReaderDoesNotAllocate() throws JSONException {
+        JvmAllocationCounter counter = JvmAllocationCounter.create();
+        Assume.assumeNotNull(counter);
+        SensorDecoder decoder = new SensorDecoder(SENSORS);
+        decoder.setSchema(schema(SCHEMA_1));
+        String message = "{\"schema\": 1, \"v\": [12.5, 0.25, 1e2, -3, 400.125]}";
+        for (int i = 0; i < 10_000; i++) {
+            decoder.decode(message);
+        }
+        AllocationBudget budget = new AllocationBudget(new String[] {"decode"}, new long[] {0}, counter);
+        for (int i = 0; i < 1000; i++) {
+            budget.begin(0);
+            decoder.decode(message);
+            budget.end(0);
+        }
+        budget.checkBudgets();
+    }
+}
@@ -0,0 +1,53 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SequenceTrackerTest {
+
+    @Test
+    public void classifiesGapsReorderingAndDuplicates() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertEquals(SequenceTracker.FIRST, tracker.accept(10));
+        assertEquals(SequenceTracker.IN_ORDER, tracker.accept(11));
+        assertEquals(SequenceTracker.GAP, tracker.accept(14));
+        assertEquals(2, tracker.getLastGap());
+        assertEquals(2, tracker.getLost());
+        assertEquals(SequenceTracker.REORDERED, tracker.accept(12));
+        assertEquals(1, tracker.getLost());
+        assertEquals(SequenceTracker.DUPLICATE, tracker.accept(12));
+        assertEquals(1, tracker.getDuplicates());
+        assertEquals(14, tracker.getHighest());
+    }
+
+    @Test
+    public void wrapsAroundTheNumberRange() {
+        SequenceTracker tracker = new SequenceTracker();
+        tracker.accept(Integer.MAX_VALUE);
+        assertEquals(SequenceTracker.IN_ORDER, tracker.accept(Integer.MIN_VALUE));
+        assertEquals(SequenceTracker.DUPLICATE, tracker.accept(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void lateArrivalBeyondTheWindowIsTooOld() {
+        SequenceTracker tracker = new SequenceTracker();
+        tracker.accept(1000);
+        assertEquals(SequenceTracker.TOO_OLD, tracker.accept(900));
+        assertEquals(1000, tracker.getHighest());
+        assertEquals(0, tracker.getRestarts());
+    }
+
+    @Test
+    public void largeBackwardJumpIsARestart() {
+        SequenceTracker tracker = new SequenceTracker();
+        for (int sequence = 5000; sequence < 5010; sequence++) {
+            tracker.accept(sequence);
+        }
+        assertEquals(SequenceTracker.RESTARTED, tracker.accept(0));
+        assertEquals(1, tracker.getRestarts());
+        assertEquals(0, tracker.getHighest());
+        assertEquals(SequenceTracker.IN_ORDER, tracker.accept(1));
+        assertEquals(0, tracker.getLost());
+    }
+}
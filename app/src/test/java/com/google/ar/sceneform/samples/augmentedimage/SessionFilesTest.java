@@ -0,0 +1,106 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SessionFilesTest {
+
+    private static final String[] CHANNELS = {"left", "right"};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // A session of the given number of samples, data file and index
+    private static File record(File directory, long startMs, int samples) throws IOException {
+        File file = SessionFiles.newSession(directory, startMs);
+        try (SessionStore store = SessionStore.create(file, CHANNELS, 16)) {
+            for (int i = 0; i < samples; i++) {
+                store.append(startMs + i, new float[] {i, -i});
+            }
+        }
+        return file;
+    }
+
+    private static long bytes(File session) {
+        return session.length() + new File(session.getPath() + SessionStore.INDEX_SUFFIX).length();
+    }
+
+    @Test
+    public void listsSessionsOldestFirst() throws IOException {
+        File directory = folder.getRoot();
+        record(directory, 9_000, 1);
+        record(directory, 10_000, 1);
+        record(directory, 20_000, 1);
+        // Neither a session nor its index
+        assertTrue(new File(directory, "notes.txt").createNewFile());
+        assertTrue(new File(directory, "session-x.dat").createNewFile());
+
+        File[] sessions = SessionFiles.list(directory);
+        assertEquals(3, sessions.length);
+        assertEquals("session-9000.dat", sessions[0].getName());
+        assertEquals("session-10000.dat", sessions[1].getName());
+        assertEquals("session-20000.dat", sessions[2].getName());
+        assertEquals(0, SessionFiles.list(new File(directory, "missing")).length);
+    }
+
+    @Test
+    public void newSessionsComeLastAfterTheClockWasSetBack() throws IOException {
+        File directory = folder.getRoot();
+        record(directory, 50_000, 1);
+        File earlier = SessionFiles.newSession(directory, 20_000);
+        assertEquals("session-50001.dat", earlier.getName());
+        assertEquals("session-60000.dat", SessionFiles.newSession(directory, 60_000).getName());
+    }
+
+    @Test
+    public void pruneKeepsTheNewestSessions() throws IOException {
+        File directory = folder.getRoot();
+        File[] recorded = new File[5];
+        for (int i = 0; i < recorded.length; i++) {
+            recorded[i] = record(directory, 1000 * (i + 1), 10);
+        }
+        assertEquals(2, SessionFiles.prune(directory, 3, Long.MAX_VALUE));
+        for (int i = 0; i < recorded.length; i++) {
+            assertEquals(i >= 2, recorded[i].exists());
+            assertEquals(i >= 2, new File(recorded[i].getPath() + SessionStore.INDEX_SUFFIX).exists());
+        }
+        assertEquals(0, SessionFiles.prune(directory, 3, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void pruneKeepsTheSessionsWithinTheBytes() throws IOException {
+        File directory = folder.getRoot();
+        File small = record(directory, 1000, 10);
+        File large = record(directory, 2000, 1000);
+        File newest = record(directory, 3000, 10);
+        assertEquals(2, SessionFiles.prune(directory, 10, bytes(newest) + bytes(small)));
+        assertFalse(small.exists());
+        assertFalse(large.exists());
+        assertTrue(newest.exists());
+
+        // Even the newest goes when it alone is too large
+        assertEquals(1, SessionFiles.prune(directory, 10, 0));
+        assertEquals(0, SessionFiles.list(directory).length);
+    }
+
+    @Test
+    public void pruneLeavesOtherFilesAlone() throws IOException {
+        File directory = folder.getRoot();
+        File notes = new File(directory, "notes.txt");
+        try (FileOutputStream out = new FileOutputStream(notes)) {
+            out.write(new byte[4096]);
+        }
+        record(directory, 1000, 10);
+        assertEquals(1, SessionFiles.prune(directory, 0, Long.MAX_VALUE));
+        assertTrue(notes.exists());
+    }
+}
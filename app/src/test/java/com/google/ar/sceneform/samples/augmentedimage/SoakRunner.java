@@ -0,0 +1,754 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Runs the ingest and presentation logic headless for hours of simulated time, to catch slow
+ * leaks and drift of all-day sessions off the device.
+ *
+ * A synthetic publisher sends the sparse delta protocol with gaps and duplicates, and fleet
+ * samples of other chairs. The samples go through the {@link SampleProcessor} of SensorPipeline,
+ * with the filters, derived channels and alerts from the assets, into statistics, a session file
+ * and the outbound queue. A fake scene sink stands in for the node, behind its
+ * {@link SamplePresentation}, the quality governor and the debounced tracking state, all with the
+ * constants the app uses. The schedule loses the chair, sends the app to the background, cuts the
+ * broker off and re-creates the sink, as a day at a clinic would.
+ *
+ * Every checkpoint records the heap after GC, live sinks, instances per class of this package,
+ * queue depth, message latency and bytes allocated per message. The report lists them and flags
+ * every series that kept growing after the warmup, and every stage that went over its allocation
+ * budget in {@link PipelineStages} more than now and then. SoakRunnerTest runs a short day, a
+ * full one runs from the unit test class path on a HotSpot JVM:
+ * <pre>
+ * java -cp &lt;unit test class path&gt; com.google.ar.sceneform.samples.augmentedimage.SoakRunner \
+ *     app/src/main/assets 8 soak-report.txt
+ * </pre>
+ * Exits with status 1 when something kept growing or went over budget.
+ */
+final class SoakRunner {
+
+    /** Stands in for the chair node, gets what would be drawn. */
+    interface SceneSink {
+        void present(float[] values, LevelOfDetail.Level level);
+    }
+
+    /** Settings of a run, the defaults are a working day at 50 Hz. */
+    static final class Options {
+        long durationMs = 8 * HOUR_MS;
+        float messageHz = 50;
+        float frameHz = 30;
+        long checkpointMs = 10 * MINUTE_MS;
+        /** Checkpoints left out of the growth check while caches and the JIT settle. */
+        int warmupCheckpoints = 3;
+        int keyframeEvery = 100;
+        float dropRate = 0.001f;
+        float duplicateRate = 0.001f;
+        int fleetChairs = 100;
+        long fleetIntervalMs = 1000;
+        long recreateEveryMs = HOUR_MS;
+        long outageEveryMs = HOUR_MS;
+        long outageMs = 5 * MINUTE_MS;
+        // As MqttHelper drains the queue
+        int drainPerSecond = 20;
+        /** Share of the steps after the warmup a series has to rise or stay level to be flagged. */
+        float growthSteps = 0.8f;
+        /**
+         * Share of a stage's events per checkpoint that may go over its allocation budget after the
+         * warmup: a sketch gaining a level, the session index growing, an alert being queued. A
+         * regression in the hot path goes over on nearly every event.
+         */
+        float overBudgetShare = 0.001f;
+        long seed = 1;
+    }
+
+    private static final long MINUTE_MS = 60_000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    // Simulated clock, the session store wants plausible timestamps
+    private static final long START_MS = 1_600_000_000_000L;
+
+    // What the synthetic chair sends
+    private static final String[] SENSOR_NAMES = ChairSensors.SENSOR_NAMES;
+    private static final int SENSOR_COUNT = ChairSensors.SENSOR_COUNT;
+    private static final float[] SENSOR_BASE = {40, 55, 40, 30, 25};
+    private static final float[] SENSOR_SWING = {8, 6, 8, 15, 20};
+    private static final float DELTA_THRESHOLD = 0.5f;
+
+    private static final String FLEET_PREFIX = "soak/fleet/";
+    private static final String ALERT_TOPIC = "soak/alert";
+
+    // Checkpoints after the warmup needed to call something a trend
+    private static final int MIN_GROWTH_STEPS = 5;
+
+    private final File assets;
+    private final File workDirectory;
+    private final Options options;
+    private final Random random;
+
+    // Pipeline, the stages of SensorPipeline
+    private SampleProcessor processor;
+    private SessionStore sessionStore;
+    private File sessionFile;
+    private OutboundQueue outboundQueue;
+    private final FleetAggregator fleet;
+    private final PipelineSuspension suspension = new PipelineSuspension(PipelineSuspension.DEFAULT_GRACE_MS);
+    private final AllocationBudget allocations;
+    // Stages over their allocation budget, one line per stage and checkpoint
+    private final List<String> overBudget = new ArrayList<>();
+
+    // Presentation
+    private final ImageTrackingState trackingState = new ImageTrackingState(ImageTrackingState.DEFAULT_SETTLE_MS);
+    private final SamplePresentation presentation = new SamplePresentation();
+    private final QualityGovernor governor = new QualityGovernor(QualityGovernor.DEFAULT_BUDGET_MS);
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private SceneSink sink;
+    private final List<WeakReference<SceneSink>> oldSinks = new ArrayList<>();
+    private long presentCount;
+    // Label text of every sensor, as the node keeps it
+    private final char[][] labels = new char[SENSOR_COUNT][SamplePresentation.LABEL_CAPACITY];
+    private final int[] labelLengths = new int[SENSOR_COUNT];
+
+    // Publisher
+    private final float[] published = new float[SENSOR_COUNT];
+    private final float[] sent = new float[SENSOR_COUNT];
+    private final StringBuilder payload = new StringBuilder();
+    private int sequence;
+    private boolean keyframeRequested = true;
+    private String lastPayload;
+
+    // Counters of the run
+    private long delivered;
+    private long recorded;
+    private long ignored;
+    private long badMessages;
+    private long keyframeRequests;
+    private long alertCount;
+    private final KllSketch latencyUs = new KllSketch();
+
+    SoakRunner(File assets, File workDirectory, Options options) {
+        this.assets = assets;
+        this.workDirectory = workDirectory;
+        this.options = options;
+        random = new Random(options.seed);
+        fleet = new FleetAggregator(FLEET_PREFIX, Math.max(1, options.fleetChairs),
+                FleetAggregator.DEFAULT_SHOWN, FleetAggregator.DEFAULT_ALERT_LOAD);
+        JvmAllocationCounter counter = JvmAllocationCounter.create();
+        allocations = counter == null ? null : PipelineStages.newBudget(counter);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SoakRunner <assets directory> <simulated hours> <report file>");
+            System.exit(2);
+        }
+        Options options = new Options();
+        options.durationMs = (long) (Double.parseDouble(args[1]) * HOUR_MS);
+        File work = new File(System.getProperty("java.io.tmpdir"), "soak-" + System.currentTimeMillis());
+        if (!work.mkdirs()) {
+            throw new IOException("Unable to create " + work);
+        }
+        boolean clean;
+        try (PrintWriter report = new PrintWriter(new FileWriter(args[2]))) {
+            clean = new SoakRunner(new File(args[0]), work, options).run(report);
+        }
+        System.out.println((clean ? "No growth, report in " : "Growth found, see ") + args[2]);
+        System.exit(clean ? 0 : 1);
+    }
+
+    /**
+     * Runs the whole simulated duration and writes the report.
+     *
+     * @return false when a series kept growing or a stage went over its allocation budget
+     */
+    boolean run(Writer report) throws IOException {
+        setUp();
+        int checkpoints = (int) Math.max(1, options.durationMs / options.checkpointMs);
+        Series heap = new Series("heap after GC (KB)");
+        Series sinks = new Series("old sinks alive");
+        Series queue = new Series("outbound queue depth");
+        Series chairs = new Series("fleet chairs");
+        Series p50 = new Series("message p50 (us)");
+        Series p99 = new Series("message p99 (us)");
+        Series allocated = new Series("bytes per message");
+        Series session = new Series("session file (KB)");
+        // Grows by design, reported but not flagged
+        session.expected = true;
+        // Wall clock timings are noisy, only a clear trend counts
+        p50.tolerance = 0.25;
+        p99.tolerance = 0.25;
+        Series[] fixed = {heap, sinks, queue, chairs, p50, p99, allocated, session};
+        Map<String, Series> instances = new TreeMap<>();
+
+        double messageInterval = 1000.0 / options.messageHz;
+        double frameInterval = 1000.0 / options.frameHz;
+        double nextMessage = 0;
+        double nextFrame = 0;
+        long nextFleet = 0;
+        long nextSecond = 0;
+        long nextRecreate = options.recreateEveryMs;
+        long nextCheckpoint = options.checkpointMs;
+        long wallStart = System.nanoTime();
+
+        for (int checkpoint = 0; checkpoint < checkpoints; ) {
+            long t = (long) Math.min(Math.min(nextMessage, nextFrame),
+                    Math.min(Math.min(nextFleet, nextSecond), Math.min(nextRecreate, nextCheckpoint)));
+            long now = START_MS + t;
+            if (t == (long) nextMessage) {
+                publish(t, now);
+                nextMessage += messageInterval;
+            } else if (t == (long) nextFrame) {
+                frame(t, now, (float) frameInterval);
+                nextFrame += frameInterval;
+            } else if (t == nextFleet) {
+                publishFleet(now);
+                nextFleet += options.fleetIntervalMs;
+            } else if (t == nextSecond) {
+                everySecond(t, now);
+                nextSecond += 1000;
+            } else if (t == nextRecreate) {
+                recreateSink();
+                nextRecreate += options.recreateEveryMs;
+            } else {
+                heap.add(heapAfterGcKb());
+                sinks.add(liveOldSinks());
+                queue.add(outboundQueue.getDepth());
+                chairs.add(fleet.getChairCount());
+                p50.add(latencyUs.getQuantile(0.5f));
+                p99.add(latencyUs.getQuantile(0.99f));
+                latencyUs.reset();
+                long messages = allocations == null ? 0 : allocations.getEvents(PipelineStages.MESSAGE);
+                allocated.add(messages == 0 ? 0 : (double) allocations.getBytes(PipelineStages.MESSAGE) / messages);
+                if (allocations != null) {
+                    checkBudgets(checkpoint);
+                    allocations.reset();
+                }
+                session.add(sessionFile.length() / 1024.0);
+                for (Map.Entry<String, Long> count : classHistogram().entrySet()) {
+                    Series series = instances.get(count.getKey());
+                    if (series == null) {
+                        series = new Series(count.getKey());
+                        series.padTo(checkpoint);
+                        instances.put(count.getKey(), series);
+                    }
+                    series.add(count.getValue());
+                }
+                checkpoint++;
+                for (Series series : instances.values()) {
+                    series.padTo(checkpoint);
+                }
+                nextCheckpoint += options.checkpointMs;
+            }
+        }
+        long wallMs = (System.nanoTime() - wallStart) / 1_000_000;
+        tearDown();
+
+        List<Series> all = new ArrayList<>();
+        for (Series series : fixed) {
+            all.add(series);
+        }
+        all.addAll(instances.values());
+        return writeReport(report, all, checkpoints, wallMs);
+    }
+
+    private void setUp() throws IOException {
+        FilterChain filterChain;
+        try {
+            filterChain = FilterChain.fromJson(readJson("filters.json"), SENSOR_COUNT);
+        } catch (IOException | JSONException e) {
+            filterChain = FilterChain.passThrough(SENSOR_COUNT);
+        }
+        DerivedChannels derivedChannels;
+        try {
+            derivedChannels = DerivedChannels.fromJson(readJson("derived_channels.json"), SENSOR_NAMES);
+        } catch (IOException | JSONException e) {
+            derivedChannels = DerivedChannels.empty(SENSOR_COUNT);
+        }
+        String[] channelNames = derivedChannels.allChannelNames(SENSOR_NAMES);
+        AlertRuleEngine alertRuleEngine;
+        try {
+            alertRuleEngine = AlertRuleEngine.fromJson(readJson("alerts.json"), channelNames);
+        } catch (IOException | JSONException e) {
+            alertRuleEngine = AlertRuleEngine.empty();
+        }
+        alertRuleEngine.setListener(this::onAlert);
+        sessionFile = new File(workDirectory, "session.dat");
+        sessionStore = SessionStore.create(sessionFile, channelNames, SessionStore.DEFAULT_SAMPLES_PER_BLOCK);
+        processor = new SampleProcessor(SENSOR_NAMES, filterChain, derivedChannels, alertRuleEngine,
+                this::record, allocations);
+        outboundQueue = new OutboundQueue(new File(workDirectory, "outbound"), OutboundQueue.DEFAULT_MAX_BYTES,
+                OutboundQueue.DEFAULT_SEGMENT_BYTES, OutboundQueue.DEFAULT_SYNC_EVERY,
+                OutboundQueue.DEFAULT_SYNC_INTERVAL_MS);
+
+        // Camera looking down -z, the chair sits on the axis at a distance set per frame
+        viewMatrix[0] = 1;
+        viewMatrix[5] = 1;
+        viewMatrix[10] = 1;
+        viewMatrix[15] = 1;
+        float near = 0.1f;
+        float far = 100f;
+        float focal = 1.5f;
+        projectionMatrix[0] = focal;
+        projectionMatrix[5] = focal;
+        projectionMatrix[10] = -(far + near) / (far - near);
+        projectionMatrix[11] = -1;
+        projectionMatrix[14] = -2 * far * near / (far - near);
+        recreateSink();
+    }
+
+    private void tearDown() throws IOException {
+        sessionStore.close();
+        outboundQueue.close();
+        deleteRecursively(workDirectory);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private JSONObject readJson(String name) throws IOException, JSONException {
+        try (InputStream is = new FileInputStream(new File(assets, name))) {
+            byte[] buffer = new byte[is.available()];
+            int read = is.read(buffer);
+            return new JSONObject(new String(buffer, 0, Math.max(read, 0), StandardCharsets.UTF_8));
+        }
+    }
+
+    // The activity is re-created, a new node gets the samples. The old one should be collected.
+    private void recreateSink() {
+        if (sink != null) {
+            oldSinks.add(new WeakReference<>(sink));
+        }
+        SceneSink created = new CountingSink();
+        sink = created;
+        fleet.setListener(aggregator -> created.present(processor.getValues(), LevelOfDetail.Level.FULL));
+    }
+
+    private int liveOldSinks() {
+        int alive = 0;
+        for (WeakReference<SceneSink> reference : oldSinks) {
+            if (reference.get() != null) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    // Schedule of the simulated day, all from the simulated time.
+    private boolean isSeated(long t) {
+        return t % (40 * MINUTE_MS) < 35 * MINUTE_MS;
+    }
+
+    private boolean isChairLost(long t) {
+        return t % (20 * MINUTE_MS) >= 18 * MINUTE_MS;
+    }
+
+    private boolean isForeground(long t) {
+        return t % (2 * HOUR_MS) < 110 * MINUTE_MS;
+    }
+
+    private boolean isBrokerDown(long t) {
+        return t % options.outageEveryMs >= options.outageEveryMs - options.outageMs;
+    }
+
+    private boolean isFrameHeavy(long t) {
+        return t % (30 * MINUTE_MS) < MINUTE_MS;
+    }
+
+    // One message of the chair's sensor gateway, sparse protocol.
+    private void publish(long t, long now) {
+        double seconds = t / 1000.0;
+        boolean seated = isSeated(t);
+        // Leaning to one side for a while every quarter hour raises the asymmetry alert
+        boolean leaning = t % (15 * MINUTE_MS) < 20_000;
+        for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+            float value = seated
+                    ? SENSOR_BASE[sensor] + SENSOR_SWING[sensor] * (float) Math.sin(seconds / (7 + sensor * 3))
+                    : 0;
+            if (leaning && sensor == ChairSensors.LEFT) {
+                value *= 2.5f;
+            }
+            published[sensor] = Math.max(0, Math.round((value + (float) random.nextGaussian()) * 10) / 10f);
+        }
+
+        sequence++;
+        payload.setLength(0);
+        boolean keyframe = keyframeRequested || sequence % options.keyframeEvery == 0;
+        payload.append("{\"seq\":").append(sequence);
+        if (keyframe) {
+            keyframeRequested = false;
+            payload.append(",\"key\":true,\"value\":{");
+            for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+                payload.append(sensor == 0 ? "\"" : ",\"").append(SENSOR_NAMES[sensor]).append("\":").append(published[sensor]);
+                sent[sensor] = published[sensor];
+            }
+            payload.append("}}");
+        } else {
+            StringBuilder indices = new StringBuilder();
+            StringBuilder changed = new StringBuilder();
+            for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+                if (Math.abs(published[sensor] - sent[sensor]) >= DELTA_THRESHOLD) {
+                    indices.append(indices.length() == 0 ? "" : ",").append(sensor);
+                    changed.append(changed.length() == 0 ? "" : ",").append(published[sensor]);
+                    sent[sensor] = published[sensor];
+                }
+            }
+            payload.append(",\"delta\":{\"idx\":[").append(indices).append("],\"val\":[").append(changed).append("]}}");
+        }
+
+        if (random.nextFloat() < options.dropRate) {
+            return;
+        }
+        String message = payload.toString();
+        receive(message, now);
+        if (lastPayload != null && random.nextFloat() < options.duplicateRate) {
+            receive(lastPayload, now);
+        }
+        lastPayload = message;
+    }
+
+    // What the sensor source hands the pipeline, minus the transport.
+    private void receive(String message, long now) {
+        if (suspension.getState() == PipelineSuspension.SUSPENDED) {
+            // The source is stopped, nothing arrives
+            return;
+        }
+        long startNanos = System.nanoTime();
+        processor.beginStage(PipelineStages.MESSAGE);
+        process(message, now);
+        processor.endStage(PipelineStages.MESSAGE);
+        long nanos = System.nanoTime() - startNanos;
+        latencyUs.update(nanos / 1000f);
+        suspension.onDecoded(nanos, message.length(), now);
+    }
+
+    // What SensorPipeline does with a message, the node standing in as the sink.
+    private void process(String message, long now) {
+        int matChanged;
+        try {
+            matChanged = processor.process(message, now);
+        } catch (JSONException e) {
+            badMessages++;
+            return;
+        }
+        if (processor.getDecoder().isKeyframeNeeded()) {
+            keyframeRequests++;
+            keyframeRequested = true;
+        }
+        if (matChanged == SensorDecoder.IGNORED) {
+            ignored++;
+            return;
+        }
+        delivered++;
+
+        if (suspension.getState() != PipelineSuspension.ACTIVE) {
+            suspension.onSkipped();
+            return;
+        }
+        long presentStartNanos = System.nanoTime();
+        present(now);
+        suspension.onPresented(System.nanoTime() - presentStartNanos);
+    }
+
+    private void present(long now) {
+        processor.beginStage(PipelineStages.PRESENT);
+        if (presentation.shouldPresent(now)) {
+            presentCount++;
+            float[] values = processor.getValues();
+            sink.present(values, presentation.getLevelOfDetail().getLevel());
+            if (presentation.shouldRefreshLabels(now)) {
+                for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+                    labelLengths[sensor] = SamplePresentation.formatLabel(values[sensor], labels[sensor]);
+                }
+            }
+        }
+        processor.endStage(PipelineStages.PRESENT);
+    }
+
+    private void record(long timeMs, float[] values) {
+        try {
+            sessionStore.append(timeMs, values);
+            recorded++;
+        } catch (IOException e) {
+            throw new IllegalStateException("Recording failed", e);
+        }
+    }
+
+    private void onAlert(AlertRuleEngine engine, int rule, boolean raised, float value, long timeMs) {
+        alertCount++;
+        try {
+            JSONObject alert = new JSONObject();
+            alert.put("rule", engine.getRuleId(rule));
+            alert.put("state", raised ? "raised" : "cleared");
+            alert.put("value", value);
+            alert.put("time", timeMs);
+            outboundQueue.append(ALERT_TOPIC, alert.toString().getBytes(StandardCharsets.UTF_8), 1);
+        } catch (JSONException | IOException e) {
+            throw new IllegalStateException("Unable to queue alert", e);
+        }
+    }
+
+    private void publishFleet(long now) {
+        StringBuilder fleetPayload = new StringBuilder();
+        for (int chair = 0; chair < options.fleetChairs; chair++) {
+            fleetPayload.setLength(0);
+            fleetPayload.append("{\"value\":{");
+            for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+                fleetPayload.append(sensor == 0 ? "\"" : ",\"").append(SENSOR_NAMES[sensor]).append("\":")
+                        .append(random.nextInt(1000) / 10f);
+            }
+            fleetPayload.append("}}");
+            fleet.onSample(FLEET_PREFIX + "chair-" + chair, fleetPayload.toString(), now);
+        }
+    }
+
+    private void frame(long t, long now, float frameMs) {
+        // Heavy stretches push the governor down, it comes back up after
+        float ms = frameMs * (isFrameHeavy(t) ? 1.6f : 0.7f) + (float) Math.abs(random.nextGaussian()) * 2;
+        governor.onFrame(ms, now);
+        presentation.applyQuality(governor);
+
+        // Walking around the chair, from one to twelve meters away
+        viewMatrix[14] = -(1 + 11 * (0.5f + 0.5f * (float) Math.sin(t / 97_000.0)));
+        presentation.updateLevelOfDetail(viewMatrix, projectionMatrix, 0, 0, 0);
+
+        // An odd bad frame, which the debounce should swallow
+        boolean lost = isChairLost(t) || random.nextFloat() < 0.01f;
+        trackingState.report(lost ? ImageTrackingState.State.LAST_KNOWN_POSE : ImageTrackingState.State.TRACKING, now);
+        trackingState.tick(now);
+    }
+
+    private void everySecond(long t, long now) throws IOException {
+        boolean tracking = trackingState.getState() == ImageTrackingState.State.TRACKING;
+        int previous = suspension.getState();
+        int state = suspension.update(tracking, isForeground(t), now);
+        if (state == PipelineSuspension.ACTIVE && previous == PipelineSuspension.CHEAP && processor.getSampleCount() > 0) {
+            present(now);
+        }
+
+        // The drain of MqttHelper, paused while the broker is unreachable
+        if (!isBrokerDown(t)) {
+            for (int i = 0; i < options.drainPerSecond; i++) {
+                OutboundQueue.Message message = outboundQueue.peek();
+                if (message == null) {
+                    break;
+                }
+                outboundQueue.remove(message);
+            }
+        }
+        outboundQueue.syncIfDue();
+    }
+
+    // The JIT allocates on and off during the warmup, like everything else it isn't judged.
+    private void checkBudgets(int checkpoint) {
+        if (checkpoint < options.warmupCheckpoints) {
+            return;
+        }
+        for (int stage = 0; stage < allocations.getStageCount(); stage++) {
+            long over = allocations.getOverBudgetCount(stage);
+            if (over > allocations.getEvents(stage) * options.overBudgetShare) {
+                overBudget.add(String.format(Locale.US, "%s at checkpoint %d: %d of %d events, up to %d bytes of %d",
+                        allocations.getStageName(stage), checkpoint + 1, over, allocations.getEvents(stage),
+                        allocations.getMaxBytes(stage), allocations.getBudgetBytes(stage)));
+            }
+        }
+    }
+
+    private static double heapAfterGcKb() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024.0;
+    }
+
+    /**
+     * Live instances of every class of this package but the runner's, from the class histogram of the diagnostic
+     * command bean, which collects garbage first. Empty when the JVM has no such bean.
+     */
+    private static Map<String, Long> classHistogram() {
+        Map<String, Long> counts = new TreeMap<>();
+        String histogram;
+        try {
+            Object server = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getPlatformMBeanServer").invoke(null);
+            Class<?> objectName = Class.forName("javax.management.ObjectName");
+            Object name = objectName.getConstructor(String.class).newInstance("com.sun.management:type=DiagnosticCommand");
+            Method invoke = Class.forName("javax.management.MBeanServerConnection")
+                    .getMethod("invoke", objectName, String.class, Object[].class, String[].class);
+            histogram = (String) invoke.invoke(server, name, "gcClassHistogram",
+                    new Object[] {new String[0]}, new String[] {String[].class.getName()});
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return counts;
+        }
+        String prefix = SoakRunner.class.getPackage().getName() + ".";
+        // The runner's own bookkeeping is left out
+        String own = SoakRunner.class.getName();
+        for (String line : histogram.split("\n")) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length >= 4 && columns[0].endsWith(":") && columns[3].startsWith(prefix)
+                    && !columns[3].startsWith(own)) {
+                counts.put(columns[3].substring(prefix.length()), Long.parseLong(columns[1]));
+            }
+        }
+        return counts;
+    }
+
+    private boolean writeReport(Writer out, List<Series> all, int checkpoints, long wallMs) throws IOException {
+        PrintWriter report = new PrintWriter(out);
+        report.printf(Locale.US, "Soak run: %.1f h simulated in %.1f s, checkpoint every %d min, %d warmup%n",
+                options.durationMs / (double) HOUR_MS, wallMs / 1000.0, options.checkpointMs / MINUTE_MS,
+                options.warmupCheckpoints);
+        report.printf(Locale.US, "Messages: %d decoded, %d recorded, %d ignored, %d bad, %d keyframe requests, %d presented%n",
+                delivered, recorded, ignored, badMessages, keyframeRequests, presentCount);
+        report.printf(Locale.US, "Alerts: %d, queue appended %d, delivered %d, dropped %d%n",
+                alertCount, outboundQueue.getAppendedCount(), outboundQueue.getRemovedCount(),
+                outboundQueue.getDroppedCount());
+        report.printf(Locale.US, "Suspension: %d samples not drawn, %.1f ms of CPU saved%n",
+                suspension.getSkippedCount(), suspension.getSavedCpuMs(START_MS + options.durationMs));
+        if (allocations == null) {
+            report.println("Allocations: not counted, the JVM has no per thread counter");
+        }
+        for (String checkpoint : overBudget) {
+            report.println("OVER BUDGET " + checkpoint);
+        }
+        report.println();
+
+        report.printf(Locale.US, "%-32s", "checkpoint (min)");
+        for (int i = 0; i < checkpoints; i++) {
+            report.printf(Locale.US, " %9d", (i + 1) * options.checkpointMs / MINUTE_MS);
+        }
+        report.println();
+        for (Series series : all) {
+            report.printf(Locale.US, "%-32s", series.name);
+            for (int i = 0; i < series.count; i++) {
+                report.printf(Locale.US, " %9.1f", series.values[i]);
+            }
+            report.println();
+        }
+        report.println();
+
+        if (checkpoints - options.warmupCheckpoints - 1 < MIN_GROWTH_STEPS) {
+            report.println("Too short to judge growth, run at least " + (options.warmupCheckpoints + MIN_GROWTH_STEPS + 1)
+                    + " checkpoints");
+            report.flush();
+            return overBudget.isEmpty();
+        }
+        boolean clean = true;
+        for (Series series : all) {
+            if (!series.expected && isGrowing(series.values, options.warmupCheckpoints, series.count,
+                    options.growthSteps, series.tolerance)) {
+                clean = false;
+                report.printf(Locale.US, "GROWING %s: %.1f -> %.1f after the warmup%n", series.name,
+                        series.values[Math.min(options.warmupCheckpoints, series.count - 1)],
+                        series.values[series.count - 1]);
+            }
+        }
+        if (clean) {
+            report.println("Nothing kept growing");
+        }
+        report.flush();
+        return clean && overBudget.isEmpty();
+    }
+
+    /** Messages that made it past the decode. */
+    long getDeliveredCount() {
+        return delivered;
+    }
+
+    long getRecordedCount() {
+        return recorded;
+    }
+
+    PipelineSuspension getSuspension() {
+        return suspension;
+    }
+
+    /**
+     * Whether values[from .. count - 1] kept growing: at least the given share of the steps rise
+     * or stay level, and the last value is above the first by more than the tolerance, a fraction.
+     */
+    static boolean isGrowing(double[] values, int from, int count, float growthSteps, double tolerance) {
+        int steps = count - from - 1;
+        if (steps < MIN_GROWTH_STEPS) {
+            return false;
+        }
+        int notFalling = 0;
+        for (int i = from; i < count - 1; i++) {
+            if (values[i + 1] >= values[i]) {
+                notFalling++;
+            }
+        }
+        double first = values[from];
+        double last = values[count - 1];
+        return notFalling >= growthSteps * steps && last > first + Math.max(0.5, Math.abs(first) * tolerance);
+    }
+
+    // Values of one measurement per checkpoint.
+    private static final class Series {
+        final String name;
+        boolean expected;
+        double tolerance = 0.05;
+        double[] values = new double[16];
+        int count;
+
+        Series(String name) {
+            this.name = name;
+        }
+
+        void add(double value) {
+            if (count == values.length) {
+                double[] grown = new double[count * 2];
+                System.arraycopy(values, 0, grown, 0, count);
+                values = grown;
+            }
+            values[count++] = value;
+        }
+
+        // Classes first seen later had no instances before
+        void padTo(int checkpoints) {
+            while (count < checkpoints) {
+                add(0);
+            }
+        }
+    }
+
+    // Counts what it would draw.
+    private static final class CountingSink implements SceneSink {
+        long presented;
+        long simplified;
+
+        @Override
+        public void present(float[] values, LevelOfDetail.Level level) {
+            presented++;
+            if (level == LevelOfDetail.Level.SIMPLIFIED) {
+                simplified++;
+            }
+        }
+    }
+}
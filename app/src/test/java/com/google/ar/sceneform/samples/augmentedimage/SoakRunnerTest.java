@@ -0,0 +1,90 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SoakRunnerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Gradle runs the tests in the module directory, an IDE may use the project
+    private static File assets() {
+        File assets = new File("src/main/assets");
+        if (!assets.isDirectory()) {
+            assets = new File("app/src/main/assets");
+        }
+        assertTrue("No assets in " + assets.getAbsolutePath(), new File(assets, "filters.json").isFile());
+        return assets;
+    }
+
+    /**
+     * The headless pipeline with the filters, derived channels and alerts of the assets, through
+     * an outage, a re-created sink and the chair going out of view, held to the budgets of
+     * {@link PipelineStages} after the first checkpoint. Too short to judge growth, that is what
+     * the real soak run is for.
+     */
+    @Test
+    public void headlessPipelineStaysWithinItsAllocationBudgets() throws IOException {
+        Assume.assumeNotNull(JvmAllocationCounter.create());
+        SoakRunner.Options options = new SoakRunner.Options();
+        options.durationMs = 20 * 60_000;
+        options.checkpointMs = 5 * 60_000;
+        options.warmupCheckpoints = 1;
+        options.recreateEveryMs = 7 * 60_000;
+        options.outageEveryMs = 10 * 60_000;
+        options.outageMs = 2 * 60_000;
+        options.fleetChairs = 20;
+
+        StringWriter report = new StringWriter();
+        boolean clean = new SoakRunner(assets(), folder.newFolder(), options).run(report);
+        System.out.println(report);
+        assertFalse(report.toString(), report.toString().contains("not counted"));
+        assertTrue(report.toString(), clean);
+    }
+
+    /** A lost chair isn't drawn, but every sample is still recorded until the source is stopped. */
+    @Test
+    public void lostChairKeepsRecording() throws IOException {
+        SoakRunner.Options options = new SoakRunner.Options();
+        options.durationMs = 20 * 60_000;
+        options.checkpointMs = 10 * 60_000;
+        options.fleetChairs = 1;
+        options.dropRate = 0;
+        options.duplicateRate = 0;
+
+        SoakRunner runner = new SoakRunner(assets(), folder.newFolder(), options);
+        runner.run(new StringWriter());
+        PipelineSuspension suspension = runner.getSuspension();
+        // The chair is lost for the last two minutes, half a minute cheap then suspended until it
+        // is back right at the end
+        long cheapMessages = (long) (PipelineSuspension.DEFAULT_GRACE_MS / 1000 * options.messageHz);
+        assertEquals(cheapMessages, suspension.getSkippedCount(), options.messageHz);
+        assertEquals(PipelineSuspension.ACTIVE, suspension.getState());
+        assertEquals(2 * 60_000 - PipelineSuspension.DEFAULT_GRACE_MS, suspension.getSuspendedMs(0), 2000);
+        assertEquals(runner.getDeliveredCount(), runner.getRecordedCount());
+    }
+
+    @Test
+    public void growthNeedsARisingTrend() {
+        double[] flat = {10, 12, 11, 10, 11, 10, 11, 10, 11, 10};
+        double[] rising = {10, 12, 11, 12, 13, 13, 14, 15, 16, 17};
+        double[] noisy = {100, 101, 100, 101, 102, 101, 102, 103, 102, 103};
+        assertFalse(SoakRunner.isGrowing(flat, 3, flat.length, 0.8f, 0));
+        assertTrue(SoakRunner.isGrowing(rising, 3, rising.length, 0.8f, 0));
+        // Within the tolerance
+        assertFalse(SoakRunner.isGrowing(noisy, 3, noisy.length, 0.8f, 0.25));
+        // Too few checkpoints after the warmup
+        assertFalse(SoakRunner.isGrowing(rising, 6, rising.length, 0.8f, 0));
+    }
+}
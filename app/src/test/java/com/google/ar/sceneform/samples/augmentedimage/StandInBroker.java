@@ -0,0 +1,799 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Just enough of an MQTT 3.1.1 and MQTT 5 broker for the JVM tests to run the Paho clients
+ * against: QoS 0 to 2 in both directions, subscriptions with + and #, sessions that outlive the
+ * connection, and on MQTT 5 receive maximum, topic aliases and message expiry.
+ *
+ * {@link #kill()} closes the listening socket and every connection at once, the way a crashed
+ * broker looks to its clients, and {@link #start()} brings it back on the same port. Sessions
+ * survive a kill, as on a broker with persistence. Message expiry runs on a clock the test moves
+ * with {@link #advanceClock(long)}.
+ */
+final class StandInBroker {
+
+    /** A PUBLISH a client sent to the broker. */
+    static final class Received {
+        final String clientId;
+        final String topic;
+        final byte[] payload;
+        final int qos;
+        final boolean dup;
+        // -1 when absent
+        final int topicAlias;
+        final long messageExpiry;
+
+        Received(String clientId, String topic, byte[] payload, int qos, boolean dup, int topicAlias,
+                 long messageExpiry) {
+            this.clientId = clientId;
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.dup = dup;
+            this.topicAlias = topicAlias;
+            this.messageExpiry = messageExpiry;
+        }
+
+        String payloadString() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** What a client asked for in its last CONNECT. Properties it did not send are -1. */
+    static final class Connect {
+        int level;
+        boolean cleanStart;
+        int keepAlive;
+        String clientId;
+        String username;
+        long sessionExpiry = -1;
+        int receiveMaximum = -1;
+        int topicAliasMaximum = -1;
+    }
+
+    // MQTT 5 properties the broker looks at, -1 when absent
+    private static final class Properties {
+        long messageExpiry = -1;
+        long sessionExpiry = -1;
+        int receiveMaximum = -1;
+        int topicAliasMaximum = -1;
+        int topicAlias = -1;
+    }
+
+    private static final class Outgoing {
+        final String topic;
+        final byte[] payload;
+        final int qos;
+        // Broker clock, -1 without expiry
+        final long expiresAtMs;
+        int packetId;
+
+        Outgoing(String topic, byte[] payload, int qos, long expiresAtMs) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private static final class Session {
+        final Map<String, Integer> filters = new LinkedHashMap<>();
+        final ArrayDeque<Outgoing> pending = new ArrayDeque<>();
+        final Map<Integer, Outgoing> inFlight = new LinkedHashMap<>();
+        // QoS 2 publishes of the client waiting for their PUBREL
+        final Set<Integer> releasing = new HashSet<>();
+        boolean persistent;
+        Connection connection;
+        int nextPacketId = 1;
+        int maxInFlight;
+        Connect connect;
+    }
+
+    private final class Connection implements Runnable {
+        final Socket socket;
+        final OutputStream out;
+        final Map<String, Integer> outgoingAliases = new HashMap<>();
+        final Map<Integer, String> incomingAliases = new HashMap<>();
+        int level;
+        int receiveMaximum = 0xFFFF;
+        int topicAliasMaximum;
+        String clientId;
+        Session session;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public void run() {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                while (true) {
+                    int header = in.read();
+                    if (header < 0) {
+                        break;
+                    }
+                    int length = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        int b = in.readUnsignedByte();
+                        length |= (b & 0x7F) << shift;
+                        if ((b & 0x80) == 0) {
+                            break;
+                        }
+                    }
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    if (!handle(this, header, ByteBuffer.wrap(body))) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // Dropped by the client or by kill()
+            } finally {
+                close();
+                disconnected(this);
+            }
+        }
+
+        void send(byte[] packet) throws IOException {
+            synchronized (out) {
+                out.write(packet);
+                out.flush();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private static final long BIND_TIMEOUT_MS = 2000;
+
+    private final int port;
+    private int topicAliasMaximum;
+    private ServerSocket serverSocket;
+    private final List<Connection> connections = new ArrayList<>();
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final List<Received> received = new ArrayList<>();
+    private long clockOffsetMs;
+    private long expiredCount;
+    private long aliasedCount;
+    private long publishBytesSent;
+    private int anonymousClients;
+
+    StandInBroker() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+    }
+
+    String getUri() {
+        return "tcp://127.0.0.1:" + port;
+    }
+
+    /** Topic aliases the broker accepts from each MQTT 5 client, 0 for none. Set before clients connect. */
+    synchronized void setTopicAliasMaximum(int topicAliasMaximum) {
+        this.topicAliasMaximum = topicAliasMaximum;
+    }
+
+    synchronized void start() throws IOException {
+        ServerSocket socket = bind();
+        serverSocket = socket;
+        Thread acceptor = new Thread(() -> accept(socket), "StandInBroker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Right after a kill the port can still be held: the JDK only lets go of a listening socket
+    // once the thread blocked in accept() has returned.
+    private ServerSocket bind() throws IOException {
+        long deadline = System.currentTimeMillis() + BIND_TIMEOUT_MS;
+        while (true) {
+            ServerSocket socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            try {
+                socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                return socket;
+            } catch (BindException e) {
+                socket.close();
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while binding port " + port, e);
+            }
+        }
+    }
+
+    /** Drops the listening socket and every connection without a word to the clients. */
+    synchronized void kill() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // Gone either way
+            }
+            serverSocket = null;
+        }
+        // Publishes from now on queue for the sessions, whenever the readers notice
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+            disconnected(connection);
+        }
+    }
+
+    /** Drops the connection of one client while the broker keeps running, like a network outage. */
+    synchronized void dropConnection(String clientId) {
+        Session session = sessions.get(clientId);
+        Connection connection = session == null ? null : session.connection;
+        if (connection != null) {
+            connection.close();
+            disconnected(connection);
+        }
+    }
+
+    /** Moves the broker clock on, for message expiry. */
+    synchronized void advanceClock(long ms) {
+        clockOffsetMs += ms;
+    }
+
+    /**
+     * Publishes to every matching subscription, as if another client had. Sessions that are
+     * offline keep the message until they are back or it expires.
+     *
+     * @param messageExpiry seconds, -1 for none
+     */
+    synchronized void publish(String topic, byte[] payload, int qos, long messageExpiry) throws IOException {
+        long expiresAtMs = messageExpiry < 0 ? -1 : now() + messageExpiry * 1000;
+        for (Session session : sessions.values()) {
+            int granted = matchingQos(session, topic);
+            if (granted < 0 || (session.connection == null && !session.persistent)) {
+                continue;
+            }
+            session.pending.addLast(new Outgoing(topic, payload, Math.min(qos, granted), expiresAtMs));
+            pump(session);
+        }
+    }
+
+    synchronized List<Received> getReceived() {
+        return new ArrayList<>(received);
+    }
+
+    /** Waits until clients have published count messages in total. */
+    synchronized boolean awaitReceived(int count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (received.size() < count) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    /** Waits until the client is connected and subscribed to filter. */
+    synchronized boolean awaitSubscribed(String clientId, String filter, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            Session session = sessions.get(clientId);
+            if (session != null && session.connection != null && session.filters.containsKey(filter)) {
+                return true;
+            }
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+    }
+
+    synchronized Connect getConnect(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? null : session.connect;
+    }
+
+    synchronized boolean isConnected(String clientId) {
+        Session session = sessions.get(clientId);
+        return session != null && session.connection != null;
+    }
+
+    /** Most QoS 1 and 2 messages that were ever unacknowledged at once towards the client. */
+    synchronized int getMaxInFlight(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? 0 : session.maxInFlight;
+    }
+
+    synchronized int getInFlight(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? 0 : session.inFlight.size();
+    }
+
+    /** Messages held back for the client, by receive maximum or while it is offline. */
+    synchronized int getPending(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? 0 : session.pending.size();
+    }
+
+    /** Messages dropped because they expired before they could be sent. */
+    synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /** PUBLISH packets sent with an empty topic name and an alias instead. */
+    synchronized long getAliasedCount() {
+        return aliasedCount;
+    }
+
+    /** Bytes of every PUBLISH packet sent to clients. */
+    synchronized long getPublishBytesSent() {
+        return publishBytesSent;
+    }
+
+    private long now() {
+        return System.currentTimeMillis() + clockOffsetMs;
+    }
+
+    private void accept(ServerSocket socket) {
+        while (true) {
+            Connection connection;
+            try {
+                Socket client = socket.accept();
+                client.setTcpNoDelay(true);
+                connection = new Connection(client);
+            } catch (IOException e) {
+                return;
+            }
+            synchronized (this) {
+                connections.add(connection);
+            }
+            Thread reader = new Thread(connection, "StandInBroker-connection");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private synchronized void disconnected(Connection connection) {
+        connections.remove(connection);
+        Session session = connection.session;
+        if (session != null && session.connection == connection) {
+            session.connection = null;
+            if (!session.persistent) {
+                sessions.remove(connection.clientId);
+            }
+        }
+        notifyAll();
+    }
+
+    // Returns false once the client has disconnected.
+    private synchronized boolean handle(Connection connection, int header, ByteBuffer body) throws IOException {
+        int type = header >>> 4;
+        if (type != 1 && connection.session == null) {
+            throw new IOException("Packet before CONNECT");
+        }
+        switch (type) {
+            case 1:
+                onConnect(connection, body);
+                return true;
+            case 3:
+                onPublish(connection, header, body);
+                return true;
+            case 4: // PUBACK
+            case 7: { // PUBCOMP
+                Session session = connection.session;
+                session.inFlight.remove(body.getShort() & 0xFFFF);
+                pump(session);
+                return true;
+            }
+            case 5: { // PUBREC, answered with PUBREL
+                PacketWriter pubrel = new PacketWriter();
+                pubrel.writeShort(body.getShort() & 0xFFFF);
+                connection.send(pubrel.toPacket(0x62));
+                return true;
+            }
+            case 6: { // PUBREL, answered with PUBCOMP
+                int packetId = body.getShort() & 0xFFFF;
+                connection.session.releasing.remove(packetId);
+                PacketWriter pubcomp = new PacketWriter();
+                pubcomp.writeShort(packetId);
+                connection.send(pubcomp.toPacket(0x70));
+                return true;
+            }
+            case 8:
+                onSubscribe(connection, body);
+                return true;
+            case 10:
+                onUnsubscribe(connection, body);
+                return true;
+            case 12:
+                connection.send(new PacketWriter().toPacket(0xD0));
+                return true;
+            case 14:
+                return false;
+            default:
+                throw new IOException("Unexpected packet type " + type);
+        }
+    }
+
+    private void onConnect(Connection connection, ByteBuffer body) throws IOException {
+        if (!"MQTT".equals(readString(body))) {
+            throw new IOException("Not MQTT");
+        }
+        Connect connect = new Connect();
+        connect.level = body.get();
+        int flags = body.get() & 0xFF;
+        connect.cleanStart = (flags & 0x02) != 0;
+        connect.keepAlive = body.getShort() & 0xFFFF;
+        if (connect.level == 5) {
+            Properties properties = readProperties(body);
+            connect.sessionExpiry = properties.sessionExpiry;
+            connect.receiveMaximum = properties.receiveMaximum;
+            connect.topicAliasMaximum = properties.topicAliasMaximum;
+        }
+        connect.clientId = readString(body);
+        if ((flags & 0x04) != 0) {
+            if (connect.level == 5) {
+                readProperties(body);
+            }
+            readString(body);
+            readString(body);
+        }
+        if ((flags & 0x80) != 0) {
+            connect.username = readString(body);
+        }
+        if (connect.clientId.isEmpty()) {
+            connect.clientId = "anonymous-" + ++anonymousClients;
+        }
+
+        connection.level = connect.level;
+        connection.clientId = connect.clientId;
+        if (connect.receiveMaximum > 0) {
+            connection.receiveMaximum = connect.receiveMaximum;
+        }
+        connection.topicAliasMaximum = Math.max(0, connect.topicAliasMaximum);
+
+        Session session = sessions.get(connect.clientId);
+        if (session != null && session.connection != null) {
+            // Taken over by the new connection
+            session.connection.session = null;
+            session.connection.close();
+            session.connection = null;
+        }
+        boolean present = session != null && !connect.cleanStart;
+        if (!present) {
+            session = new Session();
+            sessions.put(connect.clientId, session);
+        }
+        session.persistent = connect.level == 5 ? connect.sessionExpiry > 0 : !connect.cleanStart;
+        session.connection = connection;
+        session.connect = connect;
+        connection.session = session;
+
+        PacketWriter connack = new PacketWriter();
+        connack.writeByte(present ? 1 : 0);
+        connack.writeByte(0);
+        if (connect.level == 5) {
+            PacketWriter properties = new PacketWriter();
+            if (topicAliasMaximum > 0) {
+                properties.writeByte(0x22);
+                properties.writeShort(topicAliasMaximum);
+            }
+            connack.writeProperties(properties);
+        }
+        connection.send(connack.toPacket(0x20));
+
+        // What was unacknowledged when the last connection dropped goes out again first
+        for (Outgoing outgoing : session.inFlight.values()) {
+            sendPublish(connection, outgoing, true);
+        }
+        pump(session);
+        notifyAll();
+    }
+
+    private void onPublish(Connection connection, int header, ByteBuffer body) throws IOException {
+        int qos = (header >>> 1) & 0x03;
+        boolean dup = (header & 0x08) != 0;
+        String topic = readString(body);
+        int packetId = qos > 0 ? body.getShort() & 0xFFFF : 0;
+        Properties properties = connection.level == 5 ? readProperties(body) : new Properties();
+        if (properties.topicAlias > 0) {
+            if (properties.topicAlias > topicAliasMaximum) {
+                throw new IOException("Topic alias " + properties.topicAlias + " above the maximum");
+            }
+            if (topic.isEmpty()) {
+                topic = connection.incomingAliases.get(properties.topicAlias);
+                if (topic == null) {
+                    throw new IOException("Unknown topic alias " + properties.topicAlias);
+                }
+            } else {
+                connection.incomingAliases.put(properties.topicAlias, topic);
+            }
+        }
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+
+        Session session = connection.session;
+        boolean duplicate = qos == 2 && !session.releasing.add(packetId);
+        if (!duplicate) {
+            received.add(new Received(connection.clientId, topic, payload, qos, dup, properties.topicAlias,
+                    properties.messageExpiry));
+            notifyAll();
+            publish(topic, payload, qos, properties.messageExpiry);
+        }
+        if (qos > 0) {
+            PacketWriter ack = new PacketWriter();
+            ack.writeShort(packetId);
+            connection.send(ack.toPacket(qos == 1 ? 0x40 : 0x50));
+        }
+    }
+
+    private void onSubscribe(Connection connection, ByteBuffer body) throws IOException {
+        int packetId = body.getShort() & 0xFFFF;
+        if (connection.level == 5) {
+            readProperties(body);
+        }
+        PacketWriter suback = new PacketWriter();
+        suback.writeShort(packetId);
+        if (connection.level == 5) {
+            suback.writeProperties(new PacketWriter());
+        }
+        while (body.hasRemaining()) {
+            String filter = readString(body);
+            int qos = Math.min(2, body.get() & 0x03);
+            connection.session.filters.put(filter, qos);
+            suback.writeByte(qos);
+        }
+        connection.send(suback.toPacket(0x90));
+        notifyAll();
+    }
+
+    private void onUnsubscribe(Connection connection, ByteBuffer body) throws IOException {
+        int packetId = body.getShort() & 0xFFFF;
+        if (connection.level == 5) {
+            readProperties(body);
+        }
+        PacketWriter unsuback = new PacketWriter();
+        unsuback.writeShort(packetId);
+        if (connection.level == 5) {
+            unsuback.writeProperties(new PacketWriter());
+        }
+        while (body.hasRemaining()) {
+            connection.session.filters.remove(readString(body));
+            if (connection.level == 5) {
+                unsuback.writeByte(0);
+            }
+        }
+        connection.send(unsuback.toPacket(0xB0));
+    }
+
+    // Sends pending messages while the client's receive maximum allows.
+    private void pump(Session session) throws IOException {
+        Connection connection = session.connection;
+        if (connection == null) {
+            return;
+        }
+        long now = now();
+        Iterator<Outgoing> pending = session.pending.iterator();
+        while (pending.hasNext()) {
+            Outgoing outgoing = pending.next();
+            if (outgoing.expiresAtMs >= 0 && outgoing.expiresAtMs <= now) {
+                pending.remove();
+                expiredCount++;
+                continue;
+            }
+            if (outgoing.qos > 0) {
+                if (session.inFlight.size() >= connection.receiveMaximum) {
+                    break;
+                }
+                outgoing.packetId = session.nextPacketId;
+                session.nextPacketId = session.nextPacketId == 0xFFFF ? 1 : session.nextPacketId + 1;
+                session.inFlight.put(outgoing.packetId, outgoing);
+                session.maxInFlight = Math.max(session.maxInFlight, session.inFlight.size());
+            }
+            pending.remove();
+            sendPublish(connection, outgoing, false);
+        }
+    }
+
+    private void sendPublish(Connection connection, Outgoing outgoing, boolean dup) throws IOException {
+        PacketWriter publish = new PacketWriter();
+        PacketWriter properties = new PacketWriter();
+        String topic = outgoing.topic;
+        if (connection.level == 5) {
+            if (outgoing.expiresAtMs >= 0) {
+                properties.writeByte(0x02);
+                properties.writeInt(Math.max(0, (outgoing.expiresAtMs - now() + 999) / 1000));
+            }
+            Integer alias = connection.outgoingAliases.get(topic);
+            if (alias != null) {
+                topic = "";
+                aliasedCount++;
+            } else if (connection.outgoingAliases.size() < connection.topicAliasMaximum) {
+                alias = connection.outgoingAliases.size() + 1;
+                connection.outgoingAliases.put(topic, alias);
+            }
+            if (alias != null) {
+                properties.writeByte(0x23);
+                properties.writeShort(alias);
+            }
+        }
+        publish.writeString(topic);
+        if (outgoing.qos > 0) {
+            publish.writeShort(outgoing.packetId);
+        }
+        if (connection.level == 5) {
+            publish.writeProperties(properties);
+        }
+        publish.writeBytes(outgoing.payload);
+        byte[] packet = publish.toPacket(0x30 | (dup ? 0x08 : 0) | outgoing.qos << 1);
+        publishBytesSent += packet.length;
+        connection.send(packet);
+    }
+
+    private static int matchingQos(Session session, String topic) {
+        int qos = -1;
+        for (Map.Entry<String, Integer> filter : session.filters.entrySet()) {
+            if (matches(filter.getKey(), topic)) {
+                qos = Math.max(qos, filter.getValue());
+            }
+        }
+        return qos;
+    }
+
+    private static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length || !(filterLevels[i].equals("+") || filterLevels[i].equals(topicLevels[i]))) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static String readString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getShort() & 0xFFFF];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(ByteBuffer body) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = body.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static Properties readProperties(ByteBuffer body) throws IOException {
+        Properties properties = new Properties();
+        int end = readVarint(body) + body.position();
+        while (body.position() < end) {
+            int id = readVarint(body);
+            switch (id) {
+                case 0x01: case 0x17: case 0x19: case 0x24: case 0x25: case 0x28: case 0x29: case 0x2A:
+                    body.get();
+                    break;
+                case 0x02:
+                    properties.messageExpiry = body.getInt() & 0xFFFFFFFFL;
+                    break;
+                case 0x11:
+                    properties.sessionExpiry = body.getInt() & 0xFFFFFFFFL;
+                    break;
+                case 0x18: case 0x27:
+                    body.getInt();
+                    break;
+                case 0x13:
+                    body.getShort();
+                    break;
+                case 0x21:
+                    properties.receiveMaximum = body.getShort() & 0xFFFF;
+                    break;
+                case 0x22:
+                    properties.topicAliasMaximum = body.getShort() & 0xFFFF;
+                    break;
+                case 0x23:
+                    properties.topicAlias = body.getShort() & 0xFFFF;
+                    break;
+                case 0x0B:
+                    readVarint(body);
+                    break;
+                case 0x03: case 0x08: case 0x09: case 0x12: case 0x15: case 0x16: case 0x1A: case 0x1C: case 0x1F:
+                    readString(body);
+                    break;
+                case 0x26:
+                    readString(body);
+                    readString(body);
+                    break;
+                default:
+                    throw new IOException("Unknown property " + id);
+            }
+        }
+        return properties;
+    }
+
+    private static final class PacketWriter {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        void writeByte(int value) {
+            body.write(value);
+        }
+
+        void writeShort(int value) {
+            body.write(value >>> 8);
+            body.write(value);
+        }
+
+        void writeInt(long value) {
+            writeShort((int) (value >>> 16) & 0xFFFF);
+            writeShort((int) value & 0xFFFF);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeShort(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeBytes(byte[] bytes) {
+            body.write(bytes, 0, bytes.length);
+        }
+
+        void writeVarint(int value) {
+            do {
+                int b = value & 0x7F;
+                value >>>= 7;
+                body.write(value > 0 ? b | 0x80 : b);
+            } while (value > 0);
+        }
+
+        void writeProperties(PacketWriter properties) {
+            writeVarint(properties.body.size());
+            writeBytes(properties.body.toByteArray());
+        }
+
+        byte[] toPacket(int header) {
+            PacketWriter packet = new PacketWriter();
+            packet.writeByte(header);
+            packet.writeVarint(body.size());
+            packet.writeBytes(body.toByteArray());
+            return packet.body.toByteArray();
+        }
+    }
+}
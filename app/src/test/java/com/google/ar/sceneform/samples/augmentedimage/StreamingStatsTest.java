@@ -0,0 +1,79 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingStatsTest {
+
+    @Test
+    public void sessionMomentsAreExact() {
+        StreamingStats stats = new StreamingStats(60_000, 6);
+        double sum = 0;
+        double sumOfSquares = 0;
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            float value = (i % 97) * 0.5f;
+            stats.add(value, i * 10L);
+            sum += value;
+            sumOfSquares += value * value;
+        }
+        double mean = sum / n;
+        RunningStats session = stats.getSession();
+        assertEquals(n, session.getCount());
+        assertEquals(mean, session.getMean(), 1e-9);
+        assertEquals((sumOfSquares - n * mean * mean) / (n - 1), session.getVariance(), 1e-6);
+        assertEquals(0f, session.getMin(), 0f);
+        assertEquals(48f, session.getMax(), 0f);
+    }
+
+    @Test
+    public void windowOnlyCoversItsLastBlocks() {
+        // Six blocks of ten seconds
+        StreamingStats stats = new StreamingStats(60_000, 6);
+        for (long t = 0; t < 60_000; t += 100) {
+            stats.add(1f, t);
+        }
+        for (long t = 60_000; t < 120_000; t += 100) {
+            stats.add(100f, t);
+        }
+        stats.updateWindow(119_999);
+        assertEquals(100.0, stats.getWindow().getMean(), 1e-9);
+        assertEquals(600, stats.getWindow().getCount());
+        assertEquals(100f, stats.getWindowSketch().getQuantile(0.5f), 0f);
+
+        // Half the window later, half of it is the old level
+        stats.updateWindow(149_999);
+        assertEquals(300, stats.getWindow().getCount());
+
+        assertEquals(1200, stats.getSession().getCount());
+        assertEquals(50.5, stats.getSession().getMean(), 1e-9);
+    }
+
+    @Test
+    public void sessionsOfSeveralChairsMerge() {
+        StreamingStats first = new StreamingStats(10_000, 5);
+        StreamingStats second = new StreamingStats(10_000, 5);
+        for (int i = 0; i < 1000; i++) {
+            first.add(10f, i);
+            second.add(30f, i);
+        }
+        first.mergeSession(second);
+        assertEquals(2000, first.getSession().getCount());
+        assertEquals(20.0, first.getSession().getMean(), 1e-9);
+        float p90 = first.getSessionSketch().getQuantile(0.9f);
+        assertEquals(30f, p90, 0f);
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        StreamingStats stats = new StreamingStats(10_000, 5);
+        stats.add(5f, 0);
+        stats.reset();
+        stats.updateWindow(0);
+        assertEquals(0, stats.getSession().getCount());
+        assertEquals(0, stats.getWindow().getCount());
+        assertTrue(Float.isNaN(stats.getWindowSketch().getQuantile(0.5f)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKTrackerTest {
+
+    // Ids by descending score, the k first of those with a score
+    private static int[] bruteForce(float[] scores, boolean[] scored, int k) {
+        Integer[] ids = new Integer[scores.length];
+        int count = 0;
+        for (int id = 0; id < scores.length; id++) {
+            if (scored[id]) {
+                ids[count++] = id;
+            }
+        }
+        Arrays.sort(ids, 0, count, (a, b) -> Float.compare(scores[b], scores[a]));
+        int[] top = new int[Math.min(k, count)];
+        for (int rank = 0; rank < top.length; rank++) {
+            top[rank] = ids[rank];
+        }
+        return top;
+    }
+
+    private static int[] leaders(TopKTracker tracker) {
+        int[] ids = new int[tracker.getCount()];
+        for (int rank = 0; rank < ids.length; rank++) {
+            ids[rank] = tracker.getId(rank);
+        }
+        return ids;
+    }
+
+    private static void replay(int capacity, int k, int updates, long seed) {
+        Random random = new Random(seed);
+        TopKTracker tracker = new TopKTracker(capacity, k);
+        float[] scores = new float[capacity];
+        boolean[] scored = new boolean[capacity];
+        int[] expected = new int[0];
+        for (int i = 0; i < updates; i++) {
+            int id = random.nextInt(capacity);
+            // Unique and exact as floats, so the ranking is never a matter of ties
+            float score = random.nextInt(1 << 12) * capacity + id;
+            scores[id] = score;
+            scored[id] = true;
+            boolean changed = tracker.update(id, score);
+
+            int[] previous = expected;
+            expected = bruteForce(scores, scored, k);
+            assertArrayEquals("update " + i, expected, leaders(tracker));
+            assertEquals("update " + i, !Arrays.equals(previous, expected), changed);
+            assertEquals(score, tracker.getScore(id), 0);
+        }
+    }
+
+    @Test
+    public void matchesSortingWhileFillingUp() {
+        replay(50, 10, 200, 1);
+    }
+
+    @Test
+    public void matchesSortingUnderRandomUpdates() {
+        for (long seed = 0; seed < 20; seed++) {
+            replay(200, 10, 5000, seed);
+        }
+    }
+
+    @Test
+    public void matchesSortingWithFewChallengers() {
+        replay(12, 10, 5000, 3);
+        replay(10, 10, 2000, 4);
+        replay(5, 1, 2000, 5);
+    }
+
+    @Test
+    public void keepsTheOrderWhenOnlyTheScoreMoves() {
+        TopKTracker tracker = new TopKTracker(4, 2);
+        tracker.update(0, 10);
+        tracker.update(1, 20);
+        tracker.update(2, 5);
+        // Still second, nothing to redraw
+        assertFalse(tracker.update(0, 15));
+        assertTrue(tracker.update(0, 25));
+        assertArrayEquals(new int[] {0, 1}, leaders(tracker));
+        assertTrue(tracker.update(2, 30));
+        assertArrayEquals(new int[] {2, 0}, leaders(tracker));
+        // A challenger moving below the leaders changes nothing shown
+        assertFalse(tracker.update(1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroK() {
+        new TopKTracker(4, 0);
+    }
+}
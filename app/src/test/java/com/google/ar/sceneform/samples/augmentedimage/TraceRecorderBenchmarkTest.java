@@ -0,0 +1,47 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.Test;
+
+/**
+ * Recording has to stay cheap enough to leave on: little more than the clock read an event,
+ * nothing allocated. Timed with -Dbenchmark=true, see {@link Benchmarks}.
+ */
+public class TraceRecorderBenchmarkTest {
+
+    private static final String[] NAMES = {"decode", "filter"};
+    private static final int WARMUP_SPANS = 200_000;
+    private static final int MEASURED_SPANS = 1_000_000;
+    // Loose for loaded CI machines. Most of an event is the clock read, 20 to 40 ns on a desktop JVM
+    private static final double EVENT_BUDGET_NANOS = 200;
+
+    @Test
+    public void recordingTakesAFewNanoseconds() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 1 << 15);
+        Benchmarks.time("TraceRecorder, per span of four events", WARMUP_SPANS, MEASURED_SPANS,
+                4 * EVENT_BUDGET_NANOS, spans -> record(recorder, spans));
+    }
+
+    @Test
+    public void recordingWhileDisabled() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 1 << 15);
+        recorder.setEnabled(false);
+        Benchmarks.time("TraceRecorder disabled, per span of four events", WARMUP_SPANS, MEASURED_SPANS,
+                4 * EVENT_BUDGET_NANOS, spans -> record(recorder, spans));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 1 << 10);
+        Benchmarks.assertDoesNotAllocate("record", WARMUP_SPANS, 1000, spans -> record(recorder, spans));
+    }
+
+    // Four events a span
+    private static void record(TraceRecorder recorder, int spans) {
+        for (int i = 0; i < spans; i++) {
+            recorder.begin(0);
+            recorder.asyncBegin(1, i);
+            recorder.asyncEnd(1, i);
+            recorder.end(0);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TraceRecorderTest {
+
+    private static final String[] NAMES = {"receive", "decode", "frame"};
+    private static final int RECEIVE = 0;
+    private static final int DECODE = 1;
+    private static final int FRAME = 2;
+
+    // The trace events of an export, thread names left out
+    private static List<JSONObject> events(String trace) throws JSONException {
+        JSONArray all = new JSONObject(trace).getJSONArray("traceEvents");
+        List<JSONObject> events = new ArrayList<>();
+        for (int i = 0; i < all.length(); i++) {
+            JSONObject event = all.getJSONObject(i);
+            if (!"M".equals(event.getString("ph"))) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static Map<Long, String> threadNames(String trace) throws JSONException {
+        JSONArray all = new JSONObject(trace).getJSONArray("traceEvents");
+        Map<Long, String> names = new HashMap<>();
+        for (int i = 0; i < all.length(); i++) {
+            JSONObject event = all.getJSONObject(i);
+            if ("M".equals(event.getString("ph"))) {
+                assertEquals("thread_name", event.getString("name"));
+                names.put(event.getLong("tid"), event.getJSONObject("args").getString("name"));
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void exportsChromeTraceEvents() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 64);
+        recorder.nameCurrentThread("main");
+        recorder.begin(FRAME);
+        recorder.instant(DECODE);
+        recorder.asyncBegin(RECEIVE, 42);
+        recorder.end(FRAME);
+        // The hand-off ends on another thread
+        Thread transport = new Thread(() -> {
+            recorder.nameCurrentThread("transport");
+            recorder.asyncEnd(RECEIVE, 42);
+        });
+        transport.start();
+        transport.join();
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(5, recorder.writeChromeTrace(out));
+        String trace = out.toString();
+        assertEquals("ms", new JSONObject(trace).getString("displayTimeUnit"));
+        List<JSONObject> events = events(trace);
+        assertEquals(5, events.size());
+        String[] phases = {"B", "i", "b", "E", "e"};
+        String[] names = {"frame", "decode", "receive", "frame", "receive"};
+        long main = Thread.currentThread().getId();
+        double previous = -1;
+        for (int i = 0; i < events.size(); i++) {
+            JSONObject event = events.get(i);
+            assertEquals(phases[i], event.getString("ph"));
+            assertEquals(names[i], event.getString("name"));
+            assertEquals(1, event.getInt("pid"));
+            assertEquals(i == 4 ? transport.getId() : main, event.getLong("tid"));
+            assertTrue(event.getDouble("ts") >= previous);
+            previous = event.getDouble("ts");
+        }
+        assertEquals("t", events.get(1).getString("s"));
+        for (int i : new int[]{2, 4}) {
+            assertEquals("async", events.get(i).getString("cat"));
+            assertEquals(42, events.get(i).getLong("id"));
+        }
+
+        Map<Long, String> threads = threadNames(trace);
+        assertEquals("main", threads.get(main));
+        assertEquals("transport", threads.get(transport.getId()));
+        assertEquals(trace, recorder.toChromeTrace());
+    }
+
+    @Test
+    public void fullRingKeepsTheNewestEvents() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 5);
+        assertEquals(8, recorder.getCapacity());
+        for (int i = 0; i < 20; i++) {
+            recorder.asyncBegin(RECEIVE, i);
+        }
+        assertEquals(20, recorder.getRecordedCount());
+        List<JSONObject> events = events(recorder.toChromeTrace());
+        assertEquals(8, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(12 + i, events.get(i).getLong("id"));
+        }
+    }
+
+    @Test
+    public void namesAreEscaped() throws Exception {
+        String[] names = {"say \"hi\"", "back\\slash", "two\nlines\tand\u0001"};
+        TraceRecorder recorder = new TraceRecorder(names, 8);
+        recorder.nameCurrentThread("the \"main\" thread");
+        for (int i = 0; i < names.length; i++) {
+            recorder.instant(i);
+        }
+        String trace = recorder.toChromeTrace();
+        List<JSONObject> events = events(trace);
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], events.get(i).getString("name"));
+        }
+        assertEquals("the \"main\" thread", threadNames(trace).get(Thread.currentThread().getId()));
+    }
+
+    @Test
+    public void disabledRecorderRecordsNothing() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 8);
+        recorder.setEnabled(false);
+        recorder.begin(FRAME);
+        recorder.end(FRAME);
+        assertEquals(0, recorder.getRecordedCount());
+        recorder.setEnabled(true);
+        recorder.instant(DECODE);
+        assertEquals(1, events(recorder.toChromeTrace()).size());
+    }
+
+    @Test
+    public void clearDropsEveryEvent() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 8);
+        for (int i = 0; i < 12; i++) {
+            recorder.instant(DECODE);
+        }
+        recorder.clear();
+        assertEquals(0, recorder.getRecordedCount());
+        assertEquals(0, events(recorder.toChromeTrace()).size());
+        recorder.instant(FRAME);
+        List<JSONObject> events = events(recorder.toChromeTrace());
+        assertEquals(1, events.size());
+        assertEquals("frame", events.get(0).getString("name"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new TraceRecorder(NAMES, 0);
+    }
+
+    @Test
+    public void concurrentWritersLoseNothingThatFits() throws Exception {
+        int writers = 4;
+        int perWriter = 10_000;
+        TraceRecorder recorder = new TraceRecorder(NAMES, writers * 2 * perWriter);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            threads[w] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perWriter; i++) {
+                    recorder.begin(DECODE);
+                    recorder.end(DECODE);
+                }
+            });
+            threads[w].start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<JSONObject> events = events(recorder.toChromeTrace());
+        assertEquals(writers * 2 * perWriter, events.size());
+        Map<Long, Integer> perThread = new HashMap<>();
+        Map<Long, Double> lastTime = new HashMap<>();
+        for (JSONObject event : events) {
+            long tid = event.getLong("tid");
+            perThread.merge(tid, 1, Integer::sum);
+            // Every thread's spans nest and its times only go forward
+            String expected = perThread.get(tid) % 2 == 1 ? "B" : "E";
+            assertEquals(expected, event.getString("ph"));
+            Double last = lastTime.get(tid);
+            assertTrue(last == null || event.getDouble("ts") >= last);
+            lastTime.put(tid, event.getDouble("ts"));
+        }
+        assertEquals(writers, perThread.size());
+        for (int count : perThread.values()) {
+            assertEquals(2 * perWriter, count);
+        }
+    }
+
+    @Test
+    public void exportWhileWritersGoRoundTheRing() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(NAMES, 256);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[3];
+        for (int w = 0; w < threads.length; w++) {
+            int name = w;
+            threads[w] = new Thread(() -> {
+                while (!stop.get()) {
+                    recorder.asyncBegin(name, 7);
+                }
+            });
+            threads[w].start();
+        }
+        try {
+            for (int i = 0; i < 200; i++) {
+                // Slots overwritten while exporting are left out, the rest is still valid JSON
+                List<JSONObject> events = events(recorder.toChromeTrace());
+                assertTrue(events.size() <= recorder.getCapacity());
+                for (JSONObject event : events) {
+                    assertEquals(7, event.getLong("id"));
+                    assertEquals("b", event.getString("ph"));
+                }
+            }
+        } catch (Throwable e) {
+            failure.set(e);
+        } finally {
+            stop.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void processTraceHasAnEventPerStage() {
+        TraceRecorder recorder = Tracing.RECORDER;
+        assertEquals("filter", recorder.getName(PipelineStages.FILTER));
+        assertEquals("present", recorder.getName(PipelineStages.PRESENT));
+        assertEquals("receive", recorder.getName(Tracing.RECEIVE));
+        assertEquals("mat commit", recorder.getName(Tracing.MAT_COMMIT));
+        assertEquals(Tracing.MAT_COMMIT + 1, recorder.getNameCount());
+    }
+}
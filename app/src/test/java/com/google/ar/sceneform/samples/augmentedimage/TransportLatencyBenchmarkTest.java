@@ -0,0 +1,292 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * One-way latency and jitter of the transports over localhost, from the sender to the main thread
+ * of the app:
+ *
+ * <ul>
+ *   <li>udp: datagrams with a sequence header into the receive thread of the UDP source</li>
+ *   <li>mqtt5: a gateway publishing to {@link StandInBroker}, the broker hop and the MQTT 5
+ *   session of the broker source with its manual acks</li>
+ *   <li>tcp: a bare stream, what the WebSocket source sits on (its OkHttp client doesn't run in
+ *   these tests)</li>
+ *   <li>in-process: a hand-off between threads, the loopback source</li>
+ * </ul>
+ *
+ * Each message carries its send time, the receiver keeps the latency in a KLL sketch. Jitter is
+ * the mean change of latency between consecutive messages, as in RFC 3550. Runs with
+ * -Dbenchmark=true, see {@link Benchmarks}.
+ */
+public class TransportLatencyBenchmarkTest {
+
+    private static final int MESSAGES = 2000;
+    private static final int WARMUP = 200;
+    // 2 kHz, well above the sensor rate but not a flood
+    private static final long SEND_INTERVAL_NANOS = 500_000;
+    private static final int PAYLOAD_BYTES = 200;
+    // Loose, a loaded CI machine must still pass
+    private static final float P50_BUDGET_MICROS = 20_000f;
+    private static final long TIMEOUT_MS = 10_000;
+
+    private static final class Latency {
+        final KllSketch micros = new KllSketch();
+        double jitterSum;
+        float previous = Float.NaN;
+        volatile long received;
+
+        void add(long sentNanos, long receivedNanos, int sequence) {
+            received++;
+            if (sequence < WARMUP) {
+                return;
+            }
+            float latency = (receivedNanos - sentNanos) / 1000f;
+            micros.update(latency);
+            if (!Float.isNaN(previous)) {
+                jitterSum += Math.abs(latency - previous);
+            }
+            previous = latency;
+        }
+
+        String report(String transport) {
+            long measured = micros.getCount();
+            return String.format(Locale.US, "%-10s p50 %7.1f us, p99 %7.1f us, jitter %6.1f us, %d of %d received",
+                    transport, micros.getQuantile(0.5f), micros.getQuantile(0.99f),
+                    measured > 1 ? jitterSum / (measured - 1) : 0, received, MESSAGES);
+        }
+
+        // Takes a message of the sources, {"seq": n, "sent": nanos, ...}
+        void add(String payload, long receivedNanos) {
+            add(field(payload, "\"sent\":"), receivedNanos, (int) field(payload, "\"seq\":"));
+        }
+
+        void await(long count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (received < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        private static long field(String payload, String key) {
+            int start = payload.indexOf(key) + key.length();
+            int end = start;
+            while (Character.isDigit(payload.charAt(end))) {
+                end++;
+            }
+            return Long.parseLong(payload.substring(start, end));
+        }
+    }
+
+    // A JSON message of PAYLOAD_BYTES, padded
+    private static byte[] message(int sequence, long sentNanos, int bytes) {
+        StringBuilder json = new StringBuilder("{\"seq\":").append(sequence)
+                .append(",\"sent\":").append(sentNanos).append(",\"pad\":\"");
+        while (json.length() < bytes - 2) {
+            json.append('x');
+        }
+        return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void compareLocalhostTransports() throws Exception {
+        Benchmarks.assumeRequested();
+        Latency udp = udp();
+        Latency mqtt5 = mqtt5();
+        Latency tcp = tcp();
+        Latency inProcess = inProcess();
+        Benchmarks.report(udp.report("udp"));
+        Benchmarks.report(mqtt5.report("mqtt5"));
+        Benchmarks.report(tcp.report("tcp"));
+        Benchmarks.report(inProcess.report("in-process"));
+
+        // Streams and QoS 1 don't lose messages, localhost datagrams hardly ever do
+        assertEquals(MESSAGES, mqtt5.received);
+        assertEquals(MESSAGES, tcp.received);
+        assertEquals(MESSAGES, inProcess.received);
+        assertTrue("udp received " + udp.received, udp.received >= MESSAGES * 0.9);
+        for (Latency latency : new Latency[]{udp, mqtt5, tcp, inProcess}) {
+            assertTrue(latency.micros.getQuantile(0.5f) < P50_BUDGET_MICROS);
+        }
+    }
+
+    private static Latency udp() throws Exception {
+        Latency latency = new Latency();
+        ExecutorService mainThread = Executors.newSingleThreadExecutor();
+        UdpReceiver receiver = new UdpReceiver(0, mainThread, new UdpReceiver.Events() {
+            @Override
+            public void onGatewayRestarted(int sequence) {
+            }
+
+            @Override
+            public void onLoss(long lostInInterval, long intervalMs, long lost, long total) {
+            }
+
+            @Override
+            public void onError(String what, Exception e) {
+                throw new AssertionError(what, e);
+            }
+        });
+        receiver.start(payload -> latency.add(payload, System.nanoTime()));
+        try (DatagramSocket sender = new DatagramSocket()) {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (receiver.getLocalPort() <= 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            byte[] buffer = new byte[PAYLOAD_BYTES];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length,
+                    InetAddress.getLoopbackAddress(), receiver.getLocalPort());
+            for (int sequence = 0; sequence < MESSAGES; sequence++) {
+                writeInt(buffer, 0, sequence);
+                byte[] message = message(sequence, System.nanoTime(), PAYLOAD_BYTES - UdpReceiver.HEADER_BYTES);
+                System.arraycopy(message, 0, buffer, UdpReceiver.HEADER_BYTES, message.length);
+                packet.setLength(UdpReceiver.HEADER_BYTES + message.length);
+                sender.send(packet);
+                LockSupport.parkNanos(SEND_INTERVAL_NANOS);
+            }
+            // A lost datagram is not waited for long
+            latency.await(MESSAGES);
+        } finally {
+            receiver.stop();
+            mainThread.shutdown();
+            mainThread.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        return latency;
+    }
+
+    private static Latency mqtt5() throws Exception {
+        Latency latency = new Latency();
+        StandInBroker broker = new StandInBroker();
+        broker.start();
+        ExecutorService mainThread = Executors.newSingleThreadExecutor();
+        Mqtt5Subscription subscription = new Mqtt5Subscription(broker.getUri(), "chairs/+/pressure", null, null,
+                "latency-app", mainThread, (task, delayMs) -> {
+                    throw new AssertionError("The broker is up");
+                }, new Backoff(10, 100), new Mqtt5Subscription.Events() {
+                    @Override
+                    public void onConnected(boolean reconnect, String serverUri) {
+                    }
+
+                    @Override
+                    public void onDisconnected(String reason) {
+                    }
+
+                    @Override
+                    public void onError(String what, Throwable e) {
+                        throw new AssertionError(what, e);
+                    }
+                });
+        MqttClient gateway = new MqttClient(broker.getUri(), "latency-gateway", new MemoryPersistence());
+        try {
+            subscription.start(payload -> latency.add(payload, System.nanoTime()));
+            assertTrue(broker.awaitSubscribed("latency-app", "chairs/+/pressure", TIMEOUT_MS));
+            gateway.connect();
+            for (int sequence = 0; sequence < MESSAGES; sequence++) {
+                gateway.publish("chairs/1/pressure", message(sequence, System.nanoTime(), PAYLOAD_BYTES),
+                        Mqtt5Subscription.SAMPLE_QOS, false);
+                LockSupport.parkNanos(SEND_INTERVAL_NANOS);
+            }
+            latency.await(MESSAGES);
+        } finally {
+            gateway.disconnect();
+            gateway.close();
+            subscription.stop();
+            mainThread.shutdown();
+            mainThread.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            broker.kill();
+        }
+        return latency;
+    }
+
+    private static Latency tcp() throws Exception {
+        Latency latency = new Latency();
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            client.setTcpNoDelay(true);
+            Thread receiveThread = new Thread(() -> {
+                byte[] body = new byte[PAYLOAD_BYTES - 12];
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(accepted.getInputStream()))) {
+                    while (latency.received < MESSAGES) {
+                        int sequence = in.readInt();
+                        long sent = in.readLong();
+                        in.readFully(body);
+                        latency.add(sent, System.nanoTime(), sequence);
+                    }
+                } catch (EOFException e) {
+                    // Sender closed early
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            receiveThread.start();
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+            byte[] body = new byte[PAYLOAD_BYTES - 12];
+            for (int sequence = 0; sequence < MESSAGES; sequence++) {
+                out.writeInt(sequence);
+                out.writeLong(System.nanoTime());
+                out.write(body);
+                out.flush();
+                LockSupport.parkNanos(SEND_INTERVAL_NANOS);
+            }
+            receiveThread.join(5000);
+        }
+        return latency;
+    }
+
+    private static Latency inProcess() throws Exception {
+        Latency latency = new Latency();
+        BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(MESSAGES);
+        Thread receiveThread = new Thread(() -> {
+            try {
+                while (latency.received < MESSAGES) {
+                    long[] message = queue.poll(1, TimeUnit.SECONDS);
+                    if (message == null) {
+                        return;
+                    }
+                    latency.add(message[1], System.nanoTime(), (int) message[0]);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        receiveThread.start();
+        for (int sequence = 0; sequence < MESSAGES; sequence++) {
+            queue.put(new long[]{sequence, System.nanoTime()});
+            LockSupport.parkNanos(SEND_INTERVAL_NANOS);
+        }
+        receiveThread.join(5000);
+        return latency;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            buffer[offset + i] = (byte) (value >>> (24 - 8 * i));
+        }
+    }
+}
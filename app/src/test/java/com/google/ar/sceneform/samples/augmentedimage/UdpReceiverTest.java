@@ -0,0 +1,177 @@
+package com.google.ar.sceneform.samples.augmentedimage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UdpReceiverTest {
+
+    private static final long TIMEOUT_MS = 10_000;
+
+    // What the listener got, in order
+    private static final class Messages implements SensorSource.Listener {
+        private final List<String> payloads = new ArrayList<>();
+
+        @Override
+        public synchronized void onMessage(String payload) {
+            payloads.add(payload);
+            notifyAll();
+        }
+
+        synchronized List<String> await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            long left;
+            while (payloads.size() < count && (left = deadline - System.currentTimeMillis()) > 0) {
+                wait(left);
+            }
+            return new ArrayList<>(payloads);
+        }
+    }
+
+    private static final class Events implements UdpReceiver.Events {
+        volatile Exception error;
+
+        @Override
+        public void onGatewayRestarted(int sequence) {
+        }
+
+        @Override
+        public void onLoss(long lostInInterval, long intervalMs, long lost, long total) {
+        }
+
+        @Override
+        public void onError(String what, Exception e) {
+            error = e;
+        }
+    }
+
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+    private final Messages messages = new Messages();
+    private final Events events = new Events();
+    private UdpReceiver receiver;
+
+    @After
+    public void tearDown() {
+        if (receiver != null) {
+            receiver.stop();
+        }
+        mainThread.shutdownNow();
+    }
+
+    private static int freePort() throws Exception {
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    private static int awaitBound(UdpReceiver receiver) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (receiver.getLocalPort() <= 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(receiver.getLocalPort() > 0);
+        return receiver.getLocalPort();
+    }
+
+    private static void send(int port, int sequence, String payload) throws Exception {
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        byte[] datagram = new byte[UdpReceiver.HEADER_BYTES + body.length];
+        for (int i = 0; i < UdpReceiver.HEADER_BYTES; i++) {
+            datagram[i] = (byte) (sequence >>> (24 - 8 * i));
+        }
+        System.arraycopy(body, 0, datagram, UdpReceiver.HEADER_BYTES, body.length);
+        try (DatagramSocket sender = new DatagramSocket()) {
+            sender.send(new DatagramPacket(datagram, datagram.length, InetAddress.getLoopbackAddress(), port));
+        }
+    }
+
+    // Threads of receivers that were started, finished or not
+    private static int receiveThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("UdpSensorSource")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void awaitReceiveThreads(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (receiveThreads() > count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, receiveThreads());
+    }
+
+    @Test(timeout = 30_000)
+    public void dropsDuplicatesAndCountsLoss() throws Exception {
+        receiver = new UdpReceiver(0, mainThread, events);
+        receiver.start(messages);
+        int port = awaitBound(receiver);
+        send(port, 0, "{\"a\":0}");
+        send(port, 1, "{\"a\":1}");
+        send(port, 3, "{\"a\":3}");
+        send(port, 3, "{\"a\":3}");
+        send(port, 2, "{\"a\":2}");
+        send(port, 4, "{\"a\":4}");
+
+        List<String> received = messages.await(5);
+        assertEquals(5, received.size());
+        // Late but still delivered, the duplicate is not
+        assertEquals("{\"a\":2}", received.get(3));
+        assertEquals("{\"a\":4}", received.get(4));
+        assertEquals(5, receiver.getReceivedCount());
+        assertEquals(0, receiver.getLostCount());
+        assertEquals(null, events.error);
+    }
+
+    @Test(timeout = 30_000)
+    public void stopBeforeTheSocketIsBoundEndsTheThread() throws Exception {
+        int port = freePort();
+        int before = receiveThreads();
+        for (int i = 0; i < 50; i++) {
+            receiver = new UdpReceiver(port, mainThread, events);
+            receiver.start(messages);
+            receiver.stop();
+        }
+        awaitReceiveThreads(before);
+        // And the port is free again
+        new DatagramSocket(port).close();
+        assertEquals(null, events.error);
+    }
+
+    @Test(timeout = 30_000)
+    public void restartKeepsTheNewSocket() throws Exception {
+        int port = freePort();
+        receiver = new UdpReceiver(port, mainThread, events);
+        for (int i = 0; i < 20; i++) {
+            receiver.start(messages);
+            receiver.stop();
+        }
+        receiver.start(messages);
+        awaitBound(receiver);
+        // Every earlier thread has run its cleanup
+        awaitReceiveThreads(1);
+        assertEquals(port, receiver.getLocalPort());
+
+        send(port, 0, "{\"after\":0}");
+        assertEquals(1, messages.await(1).size());
+        receiver.stop();
+        awaitReceiveThreads(0);
+        assertFalse(receiver.getLocalPort() > 0);
+        assertEquals(null, events.error);
+    }
+}